@@ -6,7 +6,9 @@ import io.dazzleduck.sql.common.Headers;
 import io.dazzleduck.sql.client.ArrowProducer;
 import io.dazzleduck.sql.client.BackPressureException;
 import io.dazzleduck.sql.client.grpc.auth.AuthUtils;
+import com.google.protobuf.Any;
 import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.FlightDescriptor;
 import org.apache.arrow.flight.FlightRuntimeException;
 import org.apache.arrow.flight.FlightStatusCode;
 import org.apache.arrow.flight.Location;
@@ -21,14 +23,21 @@ import java.time.Clock;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(GrpcArrowProducer.class);
 
+    private final FlightClient flightClient;
     private final FlightSqlClient client;
     private final BufferAllocator allocator;
-    private final FlightSqlClient.ExecuteIngestOptions ingestOptions;
+    private final Map<String, String> ingestParams;
+    private final Object streamLock = new Object();
+    // The open ingest stream when batches are streamed, null until the first one is sent
+    private IngestStream stream;
+    private volatile boolean streamingIngest;
     private final long maxMem;
     private final long maxDisk;
     private final Duration grpcTimeout;
@@ -75,14 +84,14 @@ public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer
         logger.info("Initializing GrpcFlightSender with location={}, timeout={}",
                     location.getUri(), this.grpcTimeout);
 
-        this.client = new FlightSqlClient(FlightClient.builder(allocator, location)
+        this.flightClient = FlightClient.builder(allocator, location)
                         .intercept(AuthUtils.createClientMiddlewareFactory(
                                 username,
                                 password,
                                 Map.of()
                         ))
-                        .build()
-        );
+                        .build();
+        this.client = new FlightSqlClient(flightClient);
 
         Map<String, String> enrichedParams = new java.util.HashMap<>(ingestParams);
         if (!getPartitionBy().isEmpty()) {
@@ -90,15 +99,83 @@ public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer
             enrichedParams.put(Headers.HEADER_DATA_PARTITION, partitionByValue);
         }
 
-        this.ingestOptions = new FlightSqlClient.ExecuteIngestOptions("", FlightSql.CommandStatementIngest
-                                .TableDefinitionOptions
-                                .newBuilder()
-                                .build(),
-                        false,
-                        "",
-                        "",
-                        enrichedParams
-                );
+        this.ingestParams = enrichedParams;
+    }
+
+    /**
+     * Sends all batches on one long-lived ingest stream instead of one DoPut call per batch, so that the call setup
+     * and the schema message are paid once. The server acknowledges each batch on the stream as soon as it is
+     * written. Off by default.
+     */
+    public void setStreamingIngest(boolean streamingIngest) {
+        this.streamingIngest = streamingIngest;
+    }
+
+    public boolean isStreamingIngest() {
+        return streamingIngest;
+    }
+
+    /**
+     * The DoPut command of an ingest stream: the ingest parameters, with the producer id once the producer
+     * identifies its batches and the sort order when it sorts them.
+     */
+    private FlightDescriptor ingestDescriptor() {
+        Map<String, String> params = new java.util.HashMap<>(ingestParams);
+        if (getProducerId() != null) {
+            params.put(Headers.HEADER_PRODUCER_ID, getProducerId());
+        }
+        if (!getSortOrder().isEmpty()) {
+            params.put(Headers.HEADER_SORT_ORDER, String.join(",", getSortOrder()));
+        }
+        var command = FlightSql.CommandStatementIngest.newBuilder()
+                .setTableDefinitionOptions(FlightSql.CommandStatementIngest.TableDefinitionOptions.newBuilder().build())
+                .setTable("")
+                .putAllOptions(params)
+                .build();
+        return FlightDescriptor.command(Any.pack(command).toByteArray());
+    }
+
+    /**
+     * The options sent with one element: its batch id, and its partition values and whether it is sorted when the
+     * producer split or sorted it.
+     */
+    private static Map<String, String> batchOptions(ProducerElement element) {
+        Map<String, String> options = new java.util.LinkedHashMap<>();
+        options.put(Headers.HEADER_PRODUCER_BATCH_ID, String.valueOf(element.getMaxBatchId()));
+        if (element.getPartitionValues() != null) {
+            options.put(Headers.HEADER_PARTITION_VALUES, encodePartitionValues(element.getPartitionValues()));
+        }
+        if (element.isSorted()) {
+            options.put(Headers.HEADER_PRESORTED, "true");
+        }
+        return options;
+    }
+
+    /**
+     * @return the open ingest stream, opened again if the previous one ended
+     */
+    private IngestStream openStream() {
+        synchronized (streamLock) {
+            if (stream == null || !stream.isOpen()) {
+                if (stream != null) {
+                    stream.close();
+                }
+                stream = new IngestStream(flightClient, ingestDescriptor(), getSchema(), allocator);
+            }
+            return stream;
+        }
+    }
+
+    private static long longValue(Map<String, String> ack, String name) {
+        var value = ack.get(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @Override
@@ -120,19 +197,31 @@ public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer
 
         logger.debug("Sending element via gRPC");
 
-        // Read the element and send it via gRPC
-        // Use child allocator for better memory management
-        try (org.apache.arrow.memory.BufferAllocator childAllocator =
-                allocator.newChildAllocator("grpc-send", 0, Long.MAX_VALUE)) {
-
-            try (java.io.InputStream in = element.read();
-                 org.apache.arrow.vector.ipc.ArrowStreamReader reader =
-                    new org.apache.arrow.vector.ipc.ArrowStreamReader(in, childAllocator)) {
-
-                client.executeIngest(reader, ingestOptions);
-                logger.info("Successfully sent element via gRPC");
+        // Without streaming ingest, each element is sent on a stream of its own
+        var streaming = streamingIngest;
+        try {
+            var ingestStream = streaming ? openStream() : new IngestStream(flightClient, ingestDescriptor(), getSchema(), allocator);
+            try {
+                var ack = ingestStream.send(element, batchOptions(element)).get(grpcTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                onServerFeedback(longValue(ack, Headers.HEADER_PENDING_WRITE_HEADROOM),
+                        longValue(ack, Headers.HEADER_DRAIN_RATE));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FlightRuntimeException) {
+                    throw (FlightRuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                if (!streaming) {
+                    ingestStream.close();
+                }
             }
+            logger.debug("Successfully sent element via gRPC");
         } catch (FlightRuntimeException e) {
+            if (e.status().code() == FlightStatusCode.ALREADY_EXISTS && getProducerId() != null) {
+                // The server already has this batch id, typically a batch replayed from the spool
+                logger.debug("Server already ingested batch, skipping: {}", e.getMessage());
+                return;
+            }
             // Check for back pressure (RESOURCE_EXHAUSTED)
             if (e.status().code() == FlightStatusCode.RESOURCE_EXHAUSTED) {
                 logger.warn("Server returned RESOURCE_EXHAUSTED: {}", e.getMessage());
@@ -148,6 +237,8 @@ public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer
             }
             logger.error("gRPC ingestion failed for element", e);
             throw new RuntimeException("gRPC ingestion failed", e);
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Exception e) {
             // If interrupted during operation, throw InterruptedException instead
             if (Thread.currentThread().isInterrupted()) {
@@ -170,6 +261,13 @@ public final class GrpcArrowProducer extends ArrowProducer.AbstractArrowProducer
             logger.error("Error closing FlightSender resources", e);
         }
 
+        synchronized (streamLock) {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+
         // Always attempt to close the client
         try {
             client.close();
@@ -0,0 +1,229 @@
+package io.dazzleduck.sql.client.grpc;
+
+import io.dazzleduck.sql.client.ArrowProducer;
+import io.dazzleduck.sql.common.Headers;
+import io.dazzleduck.sql.common.IngestMetadata;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.flight.CallOption;
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.FlightDescriptor;
+import org.apache.arrow.flight.FlightRuntimeException;
+import org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One DoPut call that carries many producer batches. The record batches of each element are sent on the open stream
+ * and the last one carries the options of the element as {@link IngestMetadata}; the server acknowledges every
+ * element with its batch id once it is written, so that the stream is opened, and its schema sent, only once.
+ * <p>
+ * Dictionary encoded columns are decoded before they are sent, as a DoPut stream cannot replace its dictionaries.
+ */
+final class IngestStream implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestStream.class);
+
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final FlightClient.ClientStreamListener listener;
+    private final Map<Long, CompletableFuture<Map<String, String>>> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    IngestStream(FlightClient client, FlightDescriptor descriptor, Schema schema, BufferAllocator allocator,
+                 CallOption... options) {
+        this.allocator = allocator;
+        this.root = VectorSchemaRoot.create(schema, allocator);
+        try {
+            this.listener = client.startPut(descriptor, root, new AckListener(), options);
+        } catch (RuntimeException e) {
+            root.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return false once the server ended the call or the stream failed
+     */
+    boolean isOpen() {
+        return !done.isDone();
+    }
+
+    /**
+     * Sends the record batches of {@code element}.
+     *
+     * @return completed with the acknowledgement once the server ingested the element, exceptionally with a
+     * {@link org.apache.arrow.flight.FlightRuntimeException} when it did not
+     */
+    synchronized CompletableFuture<Map<String, String>> send(ArrowProducer.ProducerElement element, Map<String, String> options)
+            throws IOException {
+        var batchId = element.getMaxBatchId();
+        var ack = new CompletableFuture<Map<String, String>>();
+        pending.put(batchId, ack);
+        if (done.isDone()) {
+            fail(new IllegalStateException("The ingest stream is closed"));
+            return ack;
+        }
+        var metadata = IngestMetadata.encode(options);
+        try (InputStream in = element.read();
+             ArrowStreamReader reader = new ArrowStreamReader(in, allocator, CommonsCompressionFactory.INSTANCE)) {
+            var more = reader.loadNextBatch();
+            if (!more) {
+                pending.remove(batchId);
+                ack.complete(Map.of());
+                return ack;
+            }
+            while (more) {
+                load(reader);
+                more = reader.loadNextBatch();
+                if (more) {
+                    listener.putNext();
+                } else {
+                    var buffer = allocator.buffer(metadata.length);
+                    buffer.writeBytes(metadata);
+                    // The listener takes ownership of the buffer
+                    listener.putNext(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The server cannot tell where the element ended, so the stream is not used again
+            pending.remove(batchId);
+            listener.error(e);
+            done.completeExceptionally(e);
+            fail(e);
+            throw e;
+        }
+        return ack;
+    }
+
+    /**
+     * Copies the current batch of {@code reader} into the stream root, decoding dictionary encoded columns.
+     */
+    private void load(ArrowStreamReader reader) throws IOException {
+        var source = reader.getVectorSchemaRoot();
+        var vectors = new ArrayList<FieldVector>();
+        var decoded = new ArrayList<FieldVector>();
+        try {
+            for (FieldVector vector : source.getFieldVectors()) {
+                var encoding = vector.getField().getDictionary();
+                if (encoding == null) {
+                    vectors.add(vector);
+                } else {
+                    var values = (FieldVector) DictionaryEncoder.decode(vector, reader.lookup(encoding.getId()));
+                    decoded.add(values);
+                    vectors.add(values);
+                }
+            }
+            var batch = new VectorSchemaRoot(root.getSchema().getFields(), vectors, source.getRowCount());
+            try (ArrowRecordBatch recordBatch = new VectorUnloader(batch).getRecordBatch()) {
+                new VectorLoader(root).load(recordBatch);
+            }
+        } finally {
+            decoded.forEach(FieldVector::close);
+        }
+    }
+
+    /**
+     * Ends the call once the server acknowledged every element sent.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (!done.isDone()) {
+                listener.completed();
+                listener.getResult();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ingest stream ended with an error", e);
+        } finally {
+            fail(new IllegalStateException("The ingest stream is closed"));
+            root.close();
+        }
+    }
+
+    private void fail(Throwable cause) {
+        for (var batchId : pending.keySet()) {
+            var ack = pending.remove(batchId);
+            if (ack != null) {
+                ack.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private final class AckListener implements FlightClient.PutListener {
+
+        @Override
+        public void onNext(PutResult result) {
+            var metadata = result.getApplicationMetadata();
+            if (metadata == null) {
+                return;
+            }
+            var bytes = new byte[(int) metadata.readableBytes()];
+            metadata.getBytes(metadata.readerIndex(), bytes);
+            var ack = IngestMetadata.decode(bytes);
+            var batchId = ack.get(Headers.HEADER_PRODUCER_BATCH_ID);
+            var future = batchId == null || batchId.isEmpty() ? null : pending.remove(Long.parseLong(batchId));
+            if (future == null) {
+                logger.debug("Ignoring acknowledgement of unknown batch {}", ack);
+                return;
+            }
+            var status = ack.get(IngestMetadata.STATUS);
+            if (status == null) {
+                future.complete(ack);
+            } else {
+                future.completeExceptionally(new CallStatus(FlightStatusCode.valueOf(status), null,
+                        ack.get(IngestMetadata.MESSAGE), null).toRuntimeException());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.completeExceptionally(t);
+            fail(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            done.complete(null);
+            fail(new IllegalStateException("The server ended the ingest stream"));
+        }
+
+        /**
+         * Stops the client waiting for the call to be ready to send once it ended.
+         */
+        @Override
+        public boolean isCancelled() {
+            return done.isDone();
+        }
+
+        @Override
+        public void getResult() {
+            try {
+                done.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof FlightRuntimeException) {
+                    throw (FlightRuntimeException) e.getCause();
+                }
+                throw CallStatus.UNKNOWN.withCause(e.getCause()).toRuntimeException();
+            }
+        }
+    }
+}
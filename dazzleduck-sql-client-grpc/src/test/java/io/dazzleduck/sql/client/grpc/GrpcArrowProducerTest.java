@@ -128,6 +128,50 @@ class GrpcArrowProducerTest {
         assertEquals(List.of("Aman", "Sid", "Yash"), values);
     }
 
+    @Test
+    void ingestOverOneStream() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("level", FieldType.nullable(new ArrowType.Utf8()), null)));
+        String path = "streamed";
+        Files.createDirectories(Path.of(ingestionPath, path));
+
+        try (GrpcArrowProducer sender = new GrpcArrowProducer(
+                schema,
+                1,
+                2048,
+                Duration.ofMillis(50),
+                Clock.systemUTC(),
+                3,
+                1000,
+                List.of(),
+                5_000_000,
+                20_000_000,
+                allocator,
+                Location.forGrpcInsecure(HOST, flightPort),
+                USER,
+                PASSWORD,
+                Map.of(Headers.QUERY_PARAMETER_INGESTION_QUEUE, path),
+                Duration.ofSeconds(30)
+        )) {
+            sender.setStreamingIngest(true);
+            // Dictionary encoded columns are decoded before they are put on the stream
+            sender.setDictionaryColumns(List.of("level"));
+            for (int i = 0; i < 10; i++) {
+                sender.addRow(new JavaRow(new Object[]{i, i % 2 == 0 ? "INFO" : "WARN"}));
+                Thread.sleep(100);
+            }
+        }
+
+        var query = String.format("SELECT count(*), count(DISTINCT level) FROM read_parquet('%s/%s/*.parquet')", ingestionPath, path);
+        FlightInfo flightInfo = client.execute(query);
+        try (FlightStream stream = client.getStream(flightInfo.getEndpoints().get(0).getTicket())) {
+            stream.next();
+            assertEquals(10L, ((org.apache.arrow.vector.BigIntVector) stream.getRoot().getVector(0)).get(0));
+            assertEquals(2L, ((org.apache.arrow.vector.BigIntVector) stream.getRoot().getVector(1)).get(0));
+        }
+    }
+
 
 
 
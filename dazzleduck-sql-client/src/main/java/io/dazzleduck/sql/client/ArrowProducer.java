@@ -1,7 +1,7 @@
 package io.dazzleduck.sql.client;
 
 import io.dazzleduck.sql.common.types.JavaRow;
-import io.dazzleduck.sql.common.types.VectorSchemaRootWriter;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
@@ -9,6 +9,8 @@ import org.apache.arrow.vector.VectorLoader;
 import org.apache.arrow.vector.VectorUnloader;
 import org.apache.arrow.compression.CommonsCompressionFactory;
 import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
@@ -26,8 +28,14 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 public interface ArrowProducer extends Closeable {
 
@@ -40,8 +48,9 @@ public interface ArrowProducer extends Closeable {
     void enqueue(byte[] input);
 
     /**
-     * Creates combined Arrow stream bytes from a list of SendElements.
-     * This utility method reads all Arrow batches from the input elements and combines them
+     * Creates a combined Arrow stream from a list of SendElements.
+     * Elements sharing the same schema message are coalesced without decoding: see {@link CoalescedElement}.
+     * Otherwise this reads all Arrow batches from the input elements and combines them
      * into a single Arrow stream byte array.
      *
      * @param elements List of SendElements to combine
@@ -66,6 +75,12 @@ public interface ArrowProducer extends Closeable {
             return elements.get(0);
         }
 
+        // Batches of the same producer are concatenated as they are, without decompressing and recompressing them
+        var coalesced = CoalescedElement.of(elements);
+        if (coalesced != null) {
+            return coalesced;
+        }
+
         // Calculate min and max batch IDs from all elements
         long minBatchId = Long.MAX_VALUE;
         long maxBatchId = Long.MIN_VALUE;
@@ -74,6 +89,22 @@ public interface ArrowProducer extends Closeable {
             maxBatchId = Math.max(maxBatchId, element.getMaxBatchId());
         }
 
+        // Dictionary encoded columns are written with the dictionaries of the element being read
+        class CurrentDictionaries implements DictionaryProvider {
+            private DictionaryProvider reader;
+
+            @Override
+            public Dictionary lookup(long id) {
+                return reader.lookup(id);
+            }
+
+            @Override
+            public Set<Long> getDictionaryIds() {
+                return reader.getDictionaryIds();
+            }
+        }
+        var dictionaries = new CurrentDictionaries();
+
         ByteArrayOutputStream combinedOutput = new ByteArrayOutputStream();
         Schema actualSchema = null;
         VectorSchemaRoot root = null;
@@ -86,11 +117,12 @@ public interface ArrowProducer extends Closeable {
                 try (InputStream in = element.read();
                      ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
 
+                    dictionaries.reader = reader;
                     if (i == 0) {
                         // First element - get schema and initialize writer
                         actualSchema = reader.getVectorSchemaRoot().getSchema();
                         root = VectorSchemaRoot.create(actualSchema, allocator);
-                        writer = createArrowStreamWriter(root, combinedOutput, compressionType);
+                        writer = createArrowStreamWriter(root, dictionaries, combinedOutput, compressionType);
                         writer.start();
                     }
 
@@ -141,12 +173,25 @@ public interface ArrowProducer extends Closeable {
             VectorSchemaRoot root,
             OutputStream outputStream,
             CompressionUtil.CodecType compressionType) {
+        return createArrowStreamWriter(root, null, outputStream, compressionType);
+    }
+
+    /**
+     * Creates an ArrowStreamWriter with optional compression for a root with dictionary encoded columns.
+     *
+     * @param provider The dictionaries of the encoded columns, null when there are none
+     */
+    static ArrowStreamWriter createArrowStreamWriter(
+            VectorSchemaRoot root,
+            DictionaryProvider provider,
+            OutputStream outputStream,
+            CompressionUtil.CodecType compressionType) {
         if (compressionType == CompressionUtil.CodecType.NO_COMPRESSION) {
-            return new ArrowStreamWriter(root, null, outputStream);
+            return new ArrowStreamWriter(root, provider, outputStream);
         }
         return new ArrowStreamWriter(
                 root,
-                null,
+                provider,
                 Channels.newChannel(outputStream),
                 IpcOption.DEFAULT,
                 CommonsCompressionFactory.INSTANCE,
@@ -154,6 +199,19 @@ public interface ArrowProducer extends Closeable {
     }
 
     void addRow(JavaRow row);
+
+    /**
+     * Appends one row by setting its columns directly on the Arrow vectors of the current batch, without building
+     * a {@link JavaRow}. The row ends when {@code row} returns; columns it did not set are null.
+     */
+    void appendRow(Consumer<VectorSchemaRootAppender> row);
+
+    /**
+     * Appends {@code count} rows to one batch, taking its lock once rather than once per row. {@code rows} is called
+     * with the appender and the index of each row in turn; a row it throws on is dropped along with the rows after it.
+     */
+    void appendRows(int count, ObjIntConsumer<VectorSchemaRootAppender> rows);
+
     long getMaxInMemorySize();
 
     long getMaxOnDiskSize();
@@ -161,15 +219,26 @@ public interface ArrowProducer extends Closeable {
     abstract class AbstractArrowProducer implements ArrowProducer {
 
         private static final Logger logger  = LoggerFactory.getLogger(AbstractArrowProducer.class);
+
+        private static ThreadFactory daemon(String name) {
+            return r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            };
+        }
         private final BlockingQueue<ProducerElement> queue = new ArrayBlockingQueue<>(1024 * 1024);
         protected final Clock clock;
         private volatile boolean shutdown = false;
         private volatile boolean forceShutdown = false;
+        // Set by close() before the stripes are flushed for the last time
+        private volatile boolean closing = false;
 
         protected final Thread senderThread;
 
-        private long inMemorySize = 0;
-        private long onDiskSize = 0;
+        // Budgets are reserved with compare-and-set so that writers never wait on each other for them
+        private final java.util.concurrent.atomic.AtomicLong inMemorySize = new java.util.concurrent.atomic.AtomicLong(0);
+        private final java.util.concurrent.atomic.AtomicLong onDiskSize = new java.util.concurrent.atomic.AtomicLong(0);
 
         // Counters for tracking send statistics
         private final java.util.concurrent.atomic.AtomicLong totalRetryCount = new java.util.concurrent.atomic.AtomicLong(0);
@@ -177,10 +246,11 @@ public interface ArrowProducer extends Closeable {
         private final java.util.concurrent.atomic.AtomicLong sentElementCount = new java.util.concurrent.atomic.AtomicLong(0);
         private final java.util.concurrent.atomic.AtomicLong backPressureCount = new java.util.concurrent.atomic.AtomicLong(0);
 
-        private final long minBatchSize;
-
         private final long maxBatchSize;
 
+        // Paces sends and sizes batches by the flow control feedback of the server
+        private final SendRateController rateController;
+
         private final Duration maxDataSendInterval;
 
         private final int retryCount;
@@ -191,14 +261,37 @@ public interface ArrowProducer extends Closeable {
 
         private final CompressionUtil.CodecType compressionType;
 
-        private Instant lastSent;
-        private Bucket currentBucket;
+        // Splits batches by partition and sorts them before they are sent, null to send rows as they were added
+        private volatile BatchSplitter splitter;
+        private volatile boolean prePartitioned;
+        private volatile List<String> sortOrder = List.of();
+
+        // Low-cardinality string columns sent dictionary encoded, null to send every column as it is
+        private volatile DictionaryColumns dictionaryColumns;
+
+        // Writer threads are spread over stripes, each with its own bucket, so that they do not contend on one lock
+        private volatile Stripe[] stripes;
         final Schema schema;
 
         protected final RootAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
 
         private final ScheduledExecutorService executorService;
 
+        // Pipelined sends: up to maxInFlightSends batches are sent at once, retries wait on a timer
+        private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(daemon("arrow-producer-retry"));
+        private final ExecutorService sendExecutor = Executors.newCachedThreadPool(daemon("arrow-producer-send"));
+        private final Set<SendTask> inFlight = ConcurrentHashMap.newKeySet();
+        private final Object inFlightLock = new Object();
+        private volatile int maxInFlightSends = 1;
+        private final TreeMap<Long, Long> completedBatchIds = new TreeMap<>();
+        private long nextCompletedBatchId = 0;
+
+        // Overflow spool, null to use a temporary file per element
+        private DiskSpool spool;
+        private volatile String producerId;
+
+        // Guards batch id assignment, so that batch ids are queued in order
+        private final Object enqueueLock = new Object();
         private long currentBatchId = 0;
 
 
@@ -251,8 +344,8 @@ public interface ArrowProducer extends Closeable {
             }
 
             logger.info("FlightSender started at {} with send interval {}, retryCount {}, retryIntervalMillis {}, partitionBy {}, compression {}", clock.instant(), maxDataSendInterval, retryCount, retryIntervalMillis, partitionBy, compressionType);
-            this.minBatchSize = minBatchSize;
             this.maxBatchSize = maxBatchSize;
+            this.rateController = new SendRateController(minBatchSize, maxBatchSize, System::nanoTime);
             this.maxDataSendInterval = maxDataSendInterval;
             this.retryCount = retryCount;
             this.retryIntervalMillis = retryIntervalMillis;
@@ -260,35 +353,17 @@ public interface ArrowProducer extends Closeable {
             this.compressionType = compressionType;
             this.clock = clock;
             this.schema = schema;
-            this.lastSent = clock.instant();
-            this.currentBucket = new Bucket();
+            this.stripes = newStripes(defaultStripeCount());
             this.senderThread = new Thread(() -> {
                 boolean error = false;
                 while (!shutdown || !queue.isEmpty()) {
                     try {
                         var current = queue.poll(100, java.util.concurrent.TimeUnit.MILLISECONDS);
                         if (current != null) {
-                            java.util.List<ProducerElement> batch = new java.util.ArrayList<>();
-                            batch.add(current);
-                            long batchSize = current.length();
-
-                            // Try to batch additional elements from the queue
-                            // Stop batching if we reach 100 elements or maxBatchSize bytes
-                            ProducerElement additional;
-                            while (batch.size() < 100 && (additional = queue.peek()) != null) {
-                                long additionalSize = additional.length();
-                                if (batchSize + additionalSize > maxBatchSize) {
-                                    // Don't remove the element, just stop batching
-                                    break;
-                                }
-                                // Size is OK, now actually remove it from the queue
-                                queue.poll();
-                                batch.add(additional);
-                                batchSize += additionalSize;
-                            }
-
+                            var batch = takeBatch(current);
                             try {
-                                processBatch(batch);
+                                awaitSendSlot();
+                                startSend(batch);
                             } catch (Exception e) {
                                 error = true;
                                 shutdown = true;
@@ -305,15 +380,11 @@ public interface ArrowProducer extends Closeable {
                                 Thread.currentThread().interrupt();
                             }
 
-                            // Drain and process remaining items
-                            java.util.List<ProducerElement> batch = new java.util.ArrayList<>();
+                            // Drain and process remaining items, combining them like the loop above
                             ProducerElement element;
-                            while ((element = queue.poll()) != null) {
-                                batch.add(element);
-                            }
-                            if (!batch.isEmpty() && !error) {
+                            while (!error && (element = queue.poll()) != null) {
                                 try {
-                                    processBatch(batch);
+                                    processBatch(takeBatch(element));
                                 } catch (InterruptedException ex) {
                                     Thread.currentThread().interrupt();
                                 } catch (IOException ex) {
@@ -324,6 +395,11 @@ public interface ArrowProducer extends Closeable {
                         break;
                     }
                 }
+                try {
+                    awaitInFlightSends();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             });
             this.executorService = scheduledExecutorService;
             // Set daemon flag before thread is started
@@ -332,42 +408,171 @@ public interface ArrowProducer extends Closeable {
             executorService.submit(() -> enqueueOrScheduleCurrentBucket(maxDataSendInterval));
         }
 
-        private synchronized void enqueueCurrentBucket(){
-            if (this.currentBucket.size() > 0) {
-                serializeAndEnqueueBucket();
+        /**
+         * A bucket and its lock. A writer thread always uses the same stripe, so its rows keep their order.
+         * A full bucket is swapped for an empty one under the lock and serialized outside of it, so that writers
+         * of the stripe only wait for the swap and not for the compression.
+         */
+        private final class Stripe {
+            private Bucket bucket;
+            private Bucket spare;
+            private int flushing;
+            private boolean closed;
+            private volatile Instant lastSent = clock.instant();
+
+            private Bucket bucket() {
+                if (bucket == null) {
+                    bucket = new Bucket(schema, bufferAllocator);
+                }
+                return bucket;
+            }
+
+            /**
+             * Swaps the bucket for an empty one, holding the stripe lock.
+             *
+             * @return the bucket with the rows, or null when there are none
+             */
+            private Bucket take() {
+                if (bucket == null || bucket.rowCount() == 0) {
+                    return null;
+                }
+                var full = bucket;
+                bucket = spare;
+                spare = null;
+                flushing++;
+                return full;
+            }
+        }
+
+        /**
+         * Stripe hash of the calling thread, fixed per thread so that a writer keeps to its stripe.
+         */
+        private static final ThreadLocal<Integer> STRIPE_PROBE = ThreadLocal.withInitial(() -> ThreadLocalRandom.current().nextInt());
+
+        private static int defaultStripeCount() {
+            return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        }
+
+        private Stripe[] newStripes(int count) {
+            var result = new Stripe[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = new Stripe();
+            }
+            return result;
+        }
+
+        private Stripe stripe() {
+            var current = stripes;
+            return current[STRIPE_PROBE.get() & (current.length - 1)];
+        }
+
+        /**
+         * Sets the number of stripes rows are written to, rounded up to a power of two. More stripes let more
+         * threads add rows at once, at the cost of smaller batches and up to two buckets of memory per stripe.
+         * Defaults to the number of processors, rounded up. Must be called before the first row is added.
+         */
+        public synchronized void setWriterStripes(int count) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("count must be positive, got: " + count);
+            }
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    if (stripe.bucket != null) {
+                        throw new IllegalStateException("The writer stripes must be set before the first row is added");
+                    }
+                }
+            }
+            this.stripes = newStripes(count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1);
+        }
+
+        public int getWriterStripes() {
+            return stripes.length;
+        }
+
+        private void enqueueCurrentBucket(){
+            for (Stripe stripe : stripes) {
+                flush(stripe);
+            }
+        }
+
+        private void flush(Stripe stripe) {
+            Bucket full;
+            synchronized (stripe) {
+                full = stripe.take();
+            }
+            if (full != null) {
+                serializeAndEnqueueBucket(stripe, full);
             }
         }
 
         /**
-         * Serializes the current bucket to Arrow bytes and enqueues it for sending.
-         * Creates a new empty bucket before enqueuing to avoid "already serialized" errors
-         * if enqueue throws an exception.
+         * Serializes a bucket taken from a stripe to Arrow bytes and enqueues it for sending.
+         * The bucket is emptied by the serialization, so its rows are not sent twice
+         * if enqueue throws an exception. It is then kept as the spare bucket of the stripe.
          */
-        private synchronized void serializeAndEnqueueBucket() {
-            try (var c = bufferAllocator.newChildAllocator("child", minBatchSize, Long.MAX_VALUE)) {
-                var bytes = currentBucket.getArrowBytes(schema, c, compressionType);
-                if (bytes != null && bytes.length > 0) {
-                    // IMPORTANT: Create new bucket BEFORE enqueue() to avoid "already serialized" error
-                    // if enqueue() throws (shutdown, queue full, etc.)
-                    currentBucket = new Bucket();
-                    enqueue(bytes);
-                    lastSent = clock.instant();
+        private void serializeAndEnqueueBucket(Stripe stripe, Bucket full) {
+            try {
+                var currentSplitter = splitter;
+                var currentDictionaries = dictionaryColumns;
+                if (currentSplitter == null) {
+                    var bytes = full.getArrowBytes(compressionType, currentDictionaries);
+                    if (bytes != null && bytes.length > 0) {
+                        enqueue(bytes);
+                        stripe.lastSent = clock.instant();
+                    }
+                } else {
+                    for (BatchSplitter.Part part : full.getArrowParts(compressionType, currentSplitter, currentDictionaries)) {
+                        enqueue(part.data, part.partitionValues, currentSplitter.isSorting());
+                        stripe.lastSent = clock.instant();
+                    }
+                }
+            } finally {
+                synchronized (stripe) {
+                    stripe.flushing--;
+                    if (stripe.spare == null && !stripe.closed) {
+                        stripe.spare = full;
+                    } else {
+                        full.close();
+                    }
+                    stripe.notifyAll();
                 }
             }
         }
 
+        /**
+         * Waits for the buckets being serialized by writer threads to be enqueued.
+         */
+        private void awaitFlushes() {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    while (stripe.flushing > 0) {
+                        try {
+                            stripe.wait(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+            }
+        }
 
-        private synchronized void enqueueOrScheduleCurrentBucket(Duration maxDataSendInterval){
+        private void enqueueOrScheduleCurrentBucket(Duration maxDataSendInterval){
 
             var now = clock.instant();
             logger.debug("Checking bucket send at {}", now);
-            var toBeSent = lastSent.plus(maxDataSendInterval);
             var timeRemaining = maxDataSendInterval;
             try {
-                if (toBeSent.isBefore(now) || toBeSent.equals(now)) {
-                    enqueueCurrentBucket();
-                } else {
-                    timeRemaining = Duration.between(now, toBeSent);
+                for (Stripe stripe : stripes) {
+                    var toBeSent = stripe.lastSent.plus(maxDataSendInterval);
+                    if (toBeSent.isBefore(now) || toBeSent.equals(now)) {
+                        flush(stripe);
+                    } else {
+                        var stripeRemaining = Duration.between(now, toBeSent);
+                        if (stripeRemaining.compareTo(timeRemaining) < 0) {
+                            timeRemaining = stripeRemaining;
+                        }
+                    }
                 }
             } finally {
                 logger.debug("Next bucket send scheduled in {}", timeRemaining);
@@ -377,75 +582,177 @@ public interface ArrowProducer extends Closeable {
                 }
             }
         }
-        @Override
-        public synchronized void addRow(JavaRow row) {
-            if (shutdown) {
+
+        private void checkOpen() {
+            if (shutdown || closing) {
                 throw new IllegalStateException("Sender is shutdown, cannot enqueue");
             }
-            var currentSize = currentBucket.add(row);
-            if (currentSize > minBatchSize) {
-                serializeAndEnqueueBucket();
+        }
+
+        @Override
+        public void addRow(JavaRow row) {
+            var stripe = stripe();
+            Bucket full;
+            synchronized (stripe) {
+                checkOpen();
+                if (stripe.bucket().add(row) <= rateController.batchSize()) {
+                    return;
+                }
+                full = stripe.take();
+            }
+            serializeAndEnqueueBucket(stripe, full);
+        }
+
+        @Override
+        public void appendRow(Consumer<VectorSchemaRootAppender> row) {
+            var stripe = stripe();
+            Bucket full;
+            synchronized (stripe) {
+                checkOpen();
+                if (stripe.bucket().append(row) <= rateController.batchSize()) {
+                    return;
+                }
+                full = stripe.take();
             }
+            serializeAndEnqueueBucket(stripe, full);
         }
 
         @Override
-        public synchronized void enqueue(byte[] input) {
+        public void appendRows(int count, ObjIntConsumer<VectorSchemaRootAppender> rows) {
+            var stripe = stripe();
+            Bucket full;
+            synchronized (stripe) {
+                checkOpen();
+                var bucket = stripe.bucket();
+                for (int i = 0; i < count; i++) {
+                    bucket.append(rows, i);
+                }
+                if (bucket.size() <= rateController.batchSize()) {
+                    return;
+                }
+                full = stripe.take();
+            }
+            serializeAndEnqueueBucket(stripe, full);
+        }
+
+        @Override
+        public void enqueue(byte[] input) {
+            enqueue(input, null, false);
+        }
+
+        private void enqueue(byte[] input, String[] partitionValues, boolean sorted) {
             if (shutdown) {
                 throw new IllegalStateException("Sender is shutdown, cannot enqueue");
             }
 
             StoreStatus storeStatus = getStoreStatus(input.length);
-            switch (storeStatus) {
-                case FULL:
-                    throw new IllegalStateException("queue is full");
-                case IN_MEMORY:
-                    queue.add(new MemoryElement(input, currentBatchId++));
-                    break;
-                case ON_DISK:
-                    queue.add(new FileMappedMemoryElement(input, currentBatchId++));
-                    break;
+            if (storeStatus == StoreStatus.FULL) {
+                throw new IllegalStateException("queue is full");
+            }
+            synchronized (enqueueLock) {
+                AbstractProducerElement element;
+                try {
+                    if (spool != null) {
+                        spool.reserveBatchId(currentBatchId);
+                    }
+                    if (storeStatus == StoreStatus.IN_MEMORY) {
+                        element = new MemoryElement(input, currentBatchId);
+                    } else {
+                        element = spool != null
+                                ? spool.append(currentBatchId, input)
+                                : new FileMappedMemoryElement(input, currentBatchId);
+                    }
+                } catch (RuntimeException e) {
+                    // Give back the space reserved for the batch, its batch id is used by the next one
+                    (storeStatus == StoreStatus.IN_MEMORY ? inMemorySize : onDiskSize).addAndGet(-input.length);
+                    throw e;
+                }
+                currentBatchId++;
+                element.setLayout(partitionValues, sorted);
+                queue.add(element);
             }
         }
 
-        public synchronized StoreStatus getStoreStatus(int size) {
-            if (inMemorySize + size < getMaxInMemorySize()) {
-                inMemorySize += size;
+        public StoreStatus getStoreStatus(int size) {
+            if (reserve(inMemorySize, size, getMaxInMemorySize())) {
                 return StoreStatus.IN_MEMORY;
             }
-
-            if (onDiskSize + size < getMaxOnDiskSize()) {
-                onDiskSize += size;
+            if (reserve(onDiskSize, size, getMaxOnDiskSize())) {
                 return StoreStatus.ON_DISK;
             }
             return StoreStatus.FULL;
         }
 
-        private synchronized void updateState(ProducerElement producerElement) {
+        private static boolean reserve(java.util.concurrent.atomic.AtomicLong used, int size, long max) {
+            long current;
+            while ((current = used.get()) + size < max) {
+                if (used.compareAndSet(current, current + size)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void updateState(ProducerElement producerElement) {
             if (producerElement.isInMemory()) {
-                inMemorySize -= producerElement.length();
+                inMemorySize.addAndGet(-producerElement.length());
             } else {
-                onDiskSize -= producerElement.length();
+                onDiskSize.addAndGet(-producerElement.length());
             }
         }
 
         /**
-         * Processes a batch of elements: sends with retry, updates state, and closes elements.
-         * Elements are always closed in the finally block regardless of success or failure.
+         * Takes the elements queued after {@code first} that can be combined with it into one batch: up to 100
+         * elements and {@code maxBatchSize} bytes, all of the same layout as {@code first}, see {@link #sameLayout}.
+         */
+        private List<ProducerElement> takeBatch(ProducerElement first) {
+            List<ProducerElement> batch = new ArrayList<>();
+            batch.add(first);
+            long batchSize = first.length();
+            ProducerElement additional;
+            while (batch.size() < 100 && (additional = queue.peek()) != null) {
+                long additionalSize = additional.length();
+                if (batchSize + additionalSize > maxBatchSize || !sameLayout(first, additional)) {
+                    // Don't remove the element, just stop batching
+                    break;
+                }
+                // Size is OK, now actually remove it from the queue
+                queue.poll();
+                batch.add(additional);
+                batchSize += additionalSize;
+            }
+            return batch;
+        }
+
+        /**
+         * Processes a batch of elements: sends with retry, updates state, and closes elements,
+         * waiting until the send has finished.
          *
          * @param batch the batch of elements to process
          * @throws InterruptedException if interrupted during send
-         * @throws IOException if an IO error occurs during send
+         * @throws IOException if an IO error occurs while combining the elements
          */
         private void processBatch(List<ProducerElement> batch) throws InterruptedException, IOException {
             try {
-                doSendWithRetry(batch);
-                for (ProducerElement element : batch) {
-                    updateState(element);
-                }
-            } finally {
-                for (ProducerElement element : batch) {
-                    element.close();
-                }
+                startSend(batch).done.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * A batch being sent, possibly waiting on the timer for its next attempt.
+         */
+        private final class SendTask {
+            private final List<ProducerElement> elements;
+            private final ProducerElement elementToSend;
+            private final CompletableFuture<Void> done = new CompletableFuture<>();
+            private int attempt = 0;
+            private long currentBackoffMillis = retryIntervalMillis;
+
+            private SendTask(List<ProducerElement> elements, ProducerElement elementToSend) {
+                this.elements = elements;
+                this.elementToSend = elementToSend;
             }
         }
 
@@ -453,93 +760,175 @@ public interface ArrowProducer extends Closeable {
         private static final double BACKOFF_MULTIPLIER = 2.0;
         private static final long MAX_BACKOFF_MILLIS = 60_000; // 1 minute max
 
-        private void doSendWithRetry(List<ProducerElement> elements) throws InterruptedException, IOException {
-            ProducerElement elementToSend = null;
-            boolean shouldCloseCombinedElement = false;
-
-            // Track retry state
-            int attempt = 0;
-            long currentBackoffMillis = retryIntervalMillis;
-            Exception lastException = null;
-
-            try {
-                // Determine what element to send
-                if (elements.size() == 1) {
-                    // Single element - send it directly without combining
-                    elementToSend = elements.get(0);
-                } else {
-                    // Multiple elements - combine them first
-                    try (org.apache.arrow.memory.BufferAllocator childAllocator =
-                            bufferAllocator.newChildAllocator("combine-batch", 0, Long.MAX_VALUE)) {
-                        elementToSend = createCombinedReader(elements, schema, childAllocator, compressionType);
-                        shouldCloseCombinedElement = true;
+        /**
+         * Starts sending a batch without waiting for the result. The elements are closed once the send
+         * succeeds or is given up.
+         */
+        private SendTask startSend(List<ProducerElement> elements) throws IOException {
+            ProducerElement elementToSend;
+            if (elements.size() == 1) {
+                // Single element - send it directly without combining
+                elementToSend = elements.get(0);
+            } else {
+                // Multiple elements - combine them first
+                try (org.apache.arrow.memory.BufferAllocator childAllocator =
+                        bufferAllocator.newChildAllocator("combine-batch", 0, Long.MAX_VALUE)) {
+                    elementToSend = createCombinedReader(elements, schema, childAllocator, compressionType);
+                    if (elementToSend instanceof AbstractProducerElement) {
+                        // Only elements of the same partition are combined, see sameLayout
+                        var first = elements.get(0);
+                        ((AbstractProducerElement) elementToSend).setLayout(first.getPartitionValues(), first.isSorted());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    for (ProducerElement element : elements) {
+                        updateState(element);
+                        element.close();
                     }
+                    throw e;
                 }
+            }
+            var task = new SendTask(elements, elementToSend);
+            synchronized (inFlightLock) {
+                inFlight.add(task);
+            }
+            paceSend(task);
+            return task;
+        }
 
-                // Retry loop
-                while (attempt <= retryCount) {
-                    try {
-                        doSend(elementToSend);
-                        sentElementCount.incrementAndGet();
-                        if (attempt > 0) {
-                            logger.info("Successfully sent element after {} retries", attempt);
-                        }
-                        return; // Success
-                    } catch (InterruptedException e) {
-                        // Don't retry on interruption, propagate immediately
-                        droppedElementCount.incrementAndGet();
-                        throw e;
-                    } catch (Exception e) {
-                        lastException = e;
-                        boolean isBackPressure = e instanceof BackPressureException;
-
-                        if (isBackPressure) {
-                            backPressureCount.incrementAndGet();
-                        }
+        /**
+         * Sends a batch once the rate the server can take allows it, rather than sending it only to be pushed back.
+         */
+        private void paceSend(SendTask task) {
+            long waitMillis = rateController.reserve(task.elementToSend.length());
+            if (waitMillis <= 0 || forceShutdown) {
+                attemptSend(task);
+                return;
+            }
+            logger.debug("Pacing send of {} bytes by {} ms", task.elementToSend.length(), waitMillis);
+            try {
+                retryScheduler.schedule(() -> attemptSend(task), Math.min(waitMillis, MAX_BACKOFF_MILLIS), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                attemptSend(task);
+            }
+        }
 
-                        // Handle retry with common logic
-                        long waitMillis = handleRetryableException(e, attempt, currentBackoffMillis, isBackPressure);
-                        if (waitMillis < 0) {
-                            // Should not retry (force shutdown or max retries exceeded)
-                            return;
-                        }
+        private void attemptSend(SendTask task) {
+            CompletableFuture<Void> result;
+            try {
+                result = doSendAsync(task.elementToSend);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            result.whenComplete((ignored, error) -> onSendComplete(task, error));
+        }
 
-                        attempt++;
-                        totalRetryCount.incrementAndGet();
+        private void onSendComplete(SendTask task, Throwable error) {
+            if (error == null) {
+                sentElementCount.incrementAndGet();
+                if (task.attempt > 0) {
+                    logger.info("Successfully sent element after {} retries", task.attempt);
+                }
+                finish(task, true);
+                return;
+            }
+            var e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (e instanceof InterruptedException || !(e instanceof Exception)) {
+                // Don't retry on interruption
+                droppedElementCount.incrementAndGet();
+                finish(task, false);
+                return;
+            }
+            boolean isBackPressure = e instanceof BackPressureException;
+            if (isBackPressure) {
+                backPressureCount.incrementAndGet();
+                rateController.onBackPressure();
+            }
+            long waitMillis = handleRetryableException((Exception) e, task.attempt, task.currentBackoffMillis, isBackPressure);
+            if (waitMillis < 0) {
+                // Should not retry (force shutdown or max retries exceeded)
+                finish(task, false);
+                return;
+            }
+            task.attempt++;
+            totalRetryCount.incrementAndGet();
+            // Apply exponential backoff
+            task.currentBackoffMillis = (long) Math.min(task.currentBackoffMillis * BACKOFF_MULTIPLIER, MAX_BACKOFF_MILLIS);
+            try {
+                retryScheduler.schedule(() -> attemptSend(task), waitMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException re) {
+                logger.warn("Producer closed, skipping retry: {}", e.getMessage());
+                droppedElementCount.incrementAndGet();
+                finish(task, false);
+            }
+        }
 
-                        // Apply exponential backoff
-                        currentBackoffMillis = (long) Math.min(
-                                currentBackoffMillis * BACKOFF_MULTIPLIER,
-                                MAX_BACKOFF_MILLIS
-                        );
+        /**
+         * Releases the elements of a batch and its send slot. Runs once per batch.
+         *
+         * @param acknowledge true only when the server took the batch. Spooled elements of a batch that failed or was
+         *                    abandoned on shutdown stay in the spool, to be sent again after a restart.
+         */
+        private void finish(SendTask task, boolean acknowledge) {
+            synchronized (inFlightLock) {
+                if (!inFlight.remove(task)) {
+                    return;
+                }
+            }
+            try {
+                for (ProducerElement element : task.elements) {
+                    updateState(element);
+                    if (acknowledge) {
+                        element.acknowledge();
                     }
+                    element.close();
                 }
-
-                // Exhausted all retries
-                if (lastException != null) {
-                    logger.error("Exhausted all {} retry attempts, element dropped", retryCount + 1, lastException);
-                    droppedElementCount.incrementAndGet();
+                // Only close the combined element if we created one
+                if (task.elements.size() > 1) {
+                    task.elementToSend.close();
+                }
+                synchronized (completedBatchIds) {
+                    completedBatchIds.put(task.elementToSend.getMinBatchId(), task.elementToSend.getMaxBatchId());
+                    Map.Entry<Long, Long> next;
+                    while ((next = completedBatchIds.firstEntry()) != null && next.getKey() <= nextCompletedBatchId) {
+                        completedBatchIds.pollFirstEntry();
+                        nextCompletedBatchId = Math.max(nextCompletedBatchId, next.getValue() + 1);
+                    }
                 }
             } finally {
-                // Only close the combined element if we created one
-                if (shouldCloseCombinedElement && elementToSend != null) {
-                    elementToSend.close();
+                synchronized (inFlightLock) {
+                    inFlightLock.notifyAll();
+                }
+                task.done.complete(null);
+            }
+        }
+
+        private void awaitSendSlot() throws InterruptedException {
+            synchronized (inFlightLock) {
+                // Batch ids of a spooling producer must reach the server in order
+                while (inFlight.size() >= (producerId != null ? 1 : maxInFlightSends) && !forceShutdown) {
+                    inFlightLock.wait(100);
+                }
+            }
+        }
+
+        private void awaitInFlightSends() throws InterruptedException {
+            synchronized (inFlightLock) {
+                while (!inFlight.isEmpty() && !forceShutdown) {
+                    inFlightLock.wait(100);
                 }
             }
         }
 
         /**
-         * Handles a retryable exception by checking shutdown state, logging, and sleeping.
+         * Handles a retryable exception by checking shutdown state and logging.
          *
          * @param e the exception that occurred
          * @param attempt current attempt number (0-based)
          * @param currentBackoffMillis current backoff interval
          * @param isBackPressure true if this is a back pressure exception
          * @return wait time in millis if should retry, -1 if should not retry
-         * @throws InterruptedException if interrupted during sleep
          */
-        private long handleRetryableException(Exception e, int attempt, long currentBackoffMillis, boolean isBackPressure)
-                throws InterruptedException {
+        private long handleRetryableException(Exception e, int attempt, long currentBackoffMillis, boolean isBackPressure) {
 
             // Don't retry if force shutting down
             if (forceShutdown) {
@@ -569,21 +958,38 @@ public interface ArrowProducer extends Closeable {
                 logger.warn("Send failed (attempt {}/{}), waiting {} ms: {}",
                         attempt + 1, retryCount + 1, waitMillis, e.getMessage());
             }
-
-            // Sleep before retry
-            try {
-                Thread.sleep(waitMillis);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                droppedElementCount.incrementAndGet();
-                throw ie;
-            }
-
             return waitMillis;
         }
 
+        /**
+         * Sends an element without blocking the sender thread. The default runs {@link #doSend} on a send pool;
+         * producers with an asynchronous transport override this to avoid holding a thread per send.
+         */
+        protected CompletableFuture<Void> doSendAsync(ProducerElement element) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    doSend(element);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+            }, sendExecutor);
+        }
+
         abstract protected void doSend(ProducerElement element) throws InterruptedException;
 
+        /**
+         * Takes the flow control feedback the server returned with an acknowledgement, see
+         * {@link io.dazzleduck.sql.common.Headers#HEADER_PENDING_WRITE_HEADROOM}. When the headroom runs low, sends
+         * are paced and batches grow, so that the server is not sent batches it would push back.
+         *
+         * @param pendingWriteHeadroom bytes the server can still take, negative when it did not say
+         * @param drainRate bytes per second the server writes, 0 or negative when it did not say
+         */
+        protected void onServerFeedback(long pendingWriteHeadroom, long drainRate) {
+            rateController.onFeedback(pendingWriteHeadroom, drainRate);
+        }
+
         protected int getRetryCount() {
             return retryCount;
         }
@@ -596,6 +1002,75 @@ public interface ArrowProducer extends Closeable {
             return partitionBy;
         }
 
+        /**
+         * Splits batches by the values of the partition columns before they are sent, so that the server can write
+         * each of them straight to its partition directory. Partition columns must be strings, integers or booleans.
+         * Should be set before the first row is added.
+         */
+        public synchronized void setPrePartitioned(boolean prePartitioned) {
+            updateSplitter(prePartitioned, sortOrder);
+        }
+
+        /**
+         * Sorts batches by {@code sortOrder}, given as {@code column [ASC|DESC]}, before they are sent, so that
+         * the server does not sort them again. Should be set before the first row is added.
+         */
+        public synchronized void setSortOrder(List<String> sortOrder) {
+            updateSplitter(prePartitioned, List.copyOf(sortOrder));
+        }
+
+        private void updateSplitter(boolean prePartitioned, List<String> sortOrder) {
+            var newSplitter = prePartitioned || !sortOrder.isEmpty()
+                    ? new BatchSplitter(schema, prePartitioned ? partitionBy : List.of(), sortOrder)
+                    : null;
+            this.prePartitioned = prePartitioned;
+            this.sortOrder = sortOrder;
+            this.splitter = newSplitter;
+        }
+
+        public boolean isPrePartitioned() {
+            return prePartitioned;
+        }
+
+        /**
+         * @return the columns batches are sorted by before they are sent, empty when they are not sorted
+         */
+        public List<String> getSortOrder() {
+            return sortOrder;
+        }
+
+        /**
+         * Sends the string columns {@code columns} dictionary encoded: each batch carries the distinct values of the
+         * columns once, and the rows only refer to them. Suited to columns with few distinct values, such as log
+         * levels or metric names. An empty list turns dictionary encoding off.
+         */
+        public void setDictionaryColumns(List<String> columns) {
+            this.dictionaryColumns = columns.isEmpty() ? null : new DictionaryColumns(schema, columns);
+        }
+
+        /**
+         * @return the columns sent dictionary encoded, empty when there are none
+         */
+        public List<String> getDictionaryColumns() {
+            var current = dictionaryColumns;
+            return current == null ? List.of() : current.getNames();
+        }
+
+        /**
+         * Encodes the partition values of an element for {@link io.dazzleduck.sql.common.Headers#HEADER_PARTITION_VALUES}.
+         */
+        protected static String encodePartitionValues(String[] partitionValues) {
+            var encoded = new java.util.StringJoiner(",");
+            for (String value : partitionValues) {
+                encoded.add(java.net.URLEncoder.encode(value, java.nio.charset.StandardCharsets.UTF_8));
+            }
+            return encoded.toString();
+        }
+
+        private static boolean sameLayout(ProducerElement a, ProducerElement b) {
+            return a.isSorted() == b.isSorted() && Arrays.equals(a.getPartitionValues(), b.getPartitionValues());
+        }
+
         protected CompressionUtil.CodecType getCompressionType() {
             return compressionType;
         }
@@ -608,6 +1083,81 @@ public interface ArrowProducer extends Closeable {
             return maxBatchSize;
         }
 
+        /**
+         * Sets how many batches may be sent at once. With more than one, batches can reach the server out of
+         * order; {@link #getCompletedBatchId()} tells up to which batch everything has been sent or given up.
+         * A producer with a {@link DiskSpool} sends one batch at a time regardless.
+         */
+        public void setMaxInFlightSends(int maxInFlightSends) {
+            if (maxInFlightSends <= 0) {
+                throw new IllegalArgumentException("maxInFlightSends must be positive, got: " + maxInFlightSends);
+            }
+            this.maxInFlightSends = maxInFlightSends;
+            synchronized (inFlightLock) {
+                inFlightLock.notifyAll();
+            }
+        }
+
+        public int getMaxInFlightSends() {
+            return maxInFlightSends;
+        }
+
+        /**
+         * Spools batches that do not fit in memory to {@code spool} rather than to a temporary file each, and
+         * queues the batches left in it by a previous run. Batches are then sent with the producer id of the
+         * spool and their batch id, so that the server can drop the ones it has already ingested.
+         * Must be called before the first batch is enqueued.
+         */
+        public void setSpool(DiskSpool spool) {
+            synchronized (enqueueLock) {
+                setSpoolLocked(spool);
+            }
+        }
+
+        private void setSpoolLocked(DiskSpool spool) {
+            if (currentBatchId != 0 || this.spool != null) {
+                throw new IllegalStateException("The spool must be set before the first batch is enqueued");
+            }
+            this.spool = spool;
+            this.producerId = spool.getProducerId();
+            this.currentBatchId = spool.getNextBatchId();
+            var recovered = spool.getRecovered();
+            synchronized (completedBatchIds) {
+                // Batch ids missing from the spool were sent before the restart
+                nextCompletedBatchId = recovered.isEmpty() ? currentBatchId : recovered.get(0).getMinBatchId();
+                long expected = nextCompletedBatchId;
+                for (DiskSpool.SpoolElement element : recovered) {
+                    if (element.getMinBatchId() > expected) {
+                        completedBatchIds.put(expected, element.getMinBatchId() - 1);
+                    }
+                    expected = element.getMaxBatchId() + 1;
+                }
+                if (currentBatchId > expected) {
+                    completedBatchIds.put(expected, currentBatchId - 1);
+                }
+            }
+            for (DiskSpool.SpoolElement element : recovered) {
+                onDiskSize.addAndGet(element.length());
+                queue.add(element);
+            }
+        }
+
+        /**
+         * @return the producer id sent with every batch, or null when batches are not identified
+         */
+        protected String getProducerId() {
+            return producerId;
+        }
+
+        /**
+         * Returns the highest batch id such that it and every batch before it have finished sending, or -1.
+         */
+        public long getCompletedBatchId() {
+            synchronized (completedBatchIds) {
+                return nextCompletedBatchId - 1;
+            }
+        }
+
         /**
          * Returns the total number of retry attempts made during the lifetime of this producer.
          */
@@ -636,10 +1186,19 @@ public interface ArrowProducer extends Closeable {
             return backPressureCount.get();
         }
 
+        /**
+         * Returns the rate sends are paced at in bytes per second, or 0 while they are not paced.
+         */
+        protected long getSendRate() {
+            return rateController.rate();
+        }
+
         @Override
         public void close()  {
-            // Send final bucket before shutdown
+            // Send the final buckets before shutdown, including those being serialized by writer threads
+            closing = true;
             enqueueCurrentBucket();
+            awaitFlushes();
 
             // Set shutdown flag in minimal synchronized block
             synchronized (this) {
@@ -679,6 +1238,18 @@ public interface ArrowProducer extends Closeable {
                 Thread.currentThread().interrupt();
             }
 
+            // Give up on sends still waiting for a retry
+            retryScheduler.shutdownNow();
+            sendExecutor.shutdownNow();
+            List<SendTask> abandoned;
+            synchronized (inFlightLock) {
+                abandoned = List.copyOf(inFlight);
+            }
+            for (SendTask task : abandoned) {
+                droppedElementCount.incrementAndGet();
+                finish(task, false);
+            }
+
             // Clean up remaining queue items
             cleanupQueue();
 
@@ -686,6 +1257,19 @@ public interface ArrowProducer extends Closeable {
             logCloseStatistics();
 
             // Close allocator AFTER sender thread has stopped to avoid race condition
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.closed = true;
+                    if (stripe.bucket != null) {
+                        stripe.bucket.close();
+                    }
+                    if (stripe.spare != null) {
+                        stripe.spare.close();
+                    }
+                    stripe.bucket = null;
+                    stripe.spare = null;
+                }
+            }
             bufferAllocator.close();
         }
 
@@ -731,6 +1315,28 @@ public interface ArrowProducer extends Closeable {
         long getMaxBatchId();
         boolean isInMemory();
 
+        /**
+         * Called once the element has been sent, before {@link #close()}. Elements that are closed without it,
+         * because sending failed or the producer shut down first, may be sent again after a restart.
+         */
+        default void acknowledge() {
+        }
+
+        /**
+         * @return the values of the partition columns, shared by all rows, or null when the rows were not split by
+         * partition
+         */
+        default String[] getPartitionValues() {
+            return null;
+        }
+
+        /**
+         * @return true when each record batch is sorted by the sort order of the producer
+         */
+        default boolean isSorted() {
+            return false;
+        }
+
         @Override
         void close();
     }
@@ -743,11 +1349,32 @@ public interface ArrowProducer extends Closeable {
             this(batchId, batchId);
         }
 
+        private String[] partitionValues;
+        private boolean sorted;
+
         protected AbstractProducerElement(long minBatchId, long maxBatchId) {
             this.minBatchId = minBatchId;
             this.maxBatchId = maxBatchId;
         }
 
+        /**
+         * Records how the rows were split and sorted by the producer, see {@link #getPartitionValues()}.
+         */
+        void setLayout(String[] partitionValues, boolean sorted) {
+            this.partitionValues = partitionValues;
+            this.sorted = sorted;
+        }
+
+        @Override
+        public String[] getPartitionValues() {
+            return partitionValues;
+        }
+
+        @Override
+        public boolean isSorted() {
+            return sorted;
+        }
+
         @Override
         public long getMinBatchId() {
             return minBatchId;
@@ -853,55 +1480,335 @@ public interface ArrowProducer extends Closeable {
         }
     }
 
-    final class Bucket {
+    /**
+     * Several Arrow streams joined at the IPC message level: the schema message of the first element, followed by
+     * the record batch messages of every element as they were serialized, and a single end-of-stream marker.
+     * Batch bodies are neither decoded nor recompressed, and nothing is copied until the stream is read.
+     * <p>
+     * The stream is read from the underlying elements, which must stay open while it is in use.
+     */
+    final class CoalescedElement extends AbstractProducerElement {
+
+        private static final byte[] END_OF_STREAM = {-1, -1, -1, -1, 0, 0, 0, 0};
+
+        private final List<ProducerElement> elements;
+        private final long[] skip;
+        private final long[] copy;
+        private final long length;
+
+        private CoalescedElement(List<ProducerElement> elements, long[] skip, long[] copy, long minBatchId, long maxBatchId) {
+            super(minBatchId, maxBatchId);
+            this.elements = List.copyOf(elements);
+            this.skip = skip;
+            this.copy = copy;
+            long total = END_OF_STREAM.length;
+            for (long c : copy) {
+                total += c;
+            }
+            this.length = total;
+        }
+
+        /**
+         * @return the coalesced element, or null when the elements do not share the same schema message
+         * @throws IOException if an element cannot be read
+         */
+        public static CoalescedElement of(List<ProducerElement> elements) throws IOException {
+            var skip = new long[elements.size()];
+            var copy = new long[elements.size()];
+            byte[] schemaMessage = null;
+            long minBatchId = Long.MAX_VALUE;
+            long maxBatchId = Long.MIN_VALUE;
+            for (int i = 0; i < elements.size(); i++) {
+                var element = elements.get(i);
+                minBatchId = Math.min(minBatchId, element.getMinBatchId());
+                maxBatchId = Math.max(maxBatchId, element.getMaxBatchId());
+                try (var in = new DataInputStream(new BufferedInputStream(element.read()))) {
+                    var layout = scan(in);
+                    if (layout == null) {
+                        return null;
+                    }
+                    if (schemaMessage == null) {
+                        schemaMessage = layout.schemaMessage;
+                    } else if (!java.util.Arrays.equals(schemaMessage, layout.schemaMessage)) {
+                        return null;
+                    }
+                    // Every element after the first contributes its batches only
+                    skip[i] = i == 0 ? 0 : layout.schemaEnd;
+                    copy[i] = layout.messagesEnd - skip[i];
+                }
+            }
+            return new CoalescedElement(elements, skip, copy, minBatchId, maxBatchId);
+        }
+
+        private static final class Layout {
+            private final byte[] schemaMessage;
+            private final long schemaEnd;
+            private final long messagesEnd;
+
+            private Layout(byte[] schemaMessage, long schemaEnd, long messagesEnd) {
+                this.schemaMessage = schemaMessage;
+                this.schemaEnd = schemaEnd;
+                this.messagesEnd = messagesEnd;
+            }
+        }
+
+        /**
+         * Walks the message headers of a stream, skipping the bodies.
+         *
+         * @return null when the stream does not start with a schema message
+         */
+        private static Layout scan(DataInputStream in) throws IOException {
+            byte[] schemaMessage = null;
+            long schemaEnd = 0;
+            long offset = 0;
+            while (true) {
+                int prefix = 4;
+                int metadataLength;
+                try {
+                    metadataLength = Integer.reverseBytes(in.readInt());
+                } catch (EOFException e) {
+                    break;
+                }
+                if (metadataLength == -1) {
+                    // Continuation marker followed by the metadata length
+                    metadataLength = Integer.reverseBytes(in.readInt());
+                    prefix = 8;
+                }
+                if (metadataLength == 0) {
+                    break;
+                }
+                var metadata = new byte[metadataLength];
+                in.readFully(metadata);
+                var message = org.apache.arrow.flatbuf.Message.getRootAsMessage(java.nio.ByteBuffer.wrap(metadata));
+                var bodyLength = message.bodyLength();
+                skipFully(in, bodyLength);
+                if (schemaMessage == null) {
+                    if (message.headerType() != org.apache.arrow.flatbuf.MessageHeader.Schema) {
+                        return null;
+                    }
+                    schemaMessage = metadata;
+                    schemaEnd = prefix + metadataLength + bodyLength;
+                }
+                offset += prefix + metadataLength + bodyLength;
+            }
+            return schemaMessage == null ? null : new Layout(schemaMessage, schemaEnd, offset);
+        }
+
+        private static void skipFully(InputStream in, long n) throws IOException {
+            while (n > 0) {
+                var skipped = in.skip(n);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("Truncated Arrow message body");
+                    }
+                    skipped = 1;
+                }
+                n -= skipped;
+            }
+        }
+
+        @Override
+        public InputStream read() {
+            var streams = new java.util.Enumeration<InputStream>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return next <= elements.size();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    var i = next++;
+                    if (i == elements.size()) {
+                        return new ByteArrayInputStream(END_OF_STREAM);
+                    }
+                    var in = elements.get(i).read();
+                    try {
+                        skipFully(in, skip[i]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return new BoundedInputStream(in, copy[i]);
+                }
+            };
+            return new SequenceInputStream(streams);
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return elements.stream().allMatch(ProducerElement::isInMemory);
+        }
+
+        @Override
+        public void close() {
+            // No-op: the underlying elements are closed by their owner
+        }
+
+        private static final class BoundedInputStream extends FilterInputStream {
+            private long remaining;
+
+            BoundedInputStream(InputStream in, long limit) {
+                super(in);
+                this.remaining = limit;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                var b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
 
-        private final List<JavaRow> buffer = new ArrayList<>();
-        private long size = 0;
-        private boolean serialized = false;
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                var n = super.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
 
-        public Bucket() {
+            @Override
+            public long skip(long n) throws IOException {
+                var skipped = super.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
 
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Rows added since the last batch was sent, held in Arrow vectors rather than as {@link JavaRow}s.
+     */
+    final class Bucket implements AutoCloseable {
+
+        private final VectorSchemaRootAppender appender;
+        private final BufferAllocator allocator;
+
+        public Bucket(Schema schema, BufferAllocator allocator) {
+            this.appender = new VectorSchemaRootAppender(schema, allocator);
+            this.allocator = allocator;
         }
 
         public long add(JavaRow row) {
-            if(serialized) {
-                throw new IllegalStateException("the bucket is already serialized");
+            appender.appendRow(row);
+            return size();
+        }
+
+        public long append(Consumer<VectorSchemaRootAppender> row) {
+            try {
+                row.accept(appender);
+            } catch (RuntimeException e) {
+                appender.abortRow();
+                throw e;
             }
-            buffer.add(row);
-            size += row.getActualSize();
-            return size;
+            appender.endRow();
+            return size();
         }
 
+        public void append(ObjIntConsumer<VectorSchemaRootAppender> rows, int index) {
+            try {
+                rows.accept(appender, index);
+            } catch (RuntimeException e) {
+                appender.abortRow();
+                throw e;
+            }
+            appender.endRow();
+        }
+
+        /**
+         * @return the size of the Arrow buffers of the rows, 0 when the bucket is empty
+         */
         public long size() {
-            return size;
+            return appender.getSizeInBytes();
         }
 
-        public byte[] getArrowBytes(Schema schema, BufferAllocator allocator) {
-            return getArrowBytes(schema, allocator, CompressionUtil.CodecType.ZSTD);
+        public int rowCount() {
+            return appender.getRowCount();
         }
 
-        public byte[] getArrowBytes(Schema schema, BufferAllocator allocator, CompressionUtil.CodecType compressionType) {
-            if (serialized || buffer.isEmpty()) {
+        /**
+         * Serializes the rows into an Arrow stream and empties the bucket. The vectors are kept for the next rows.
+         *
+         * @return the stream, or null when the bucket is empty
+         */
+        public byte[] getArrowBytes(CompressionUtil.CodecType compressionType) {
+            return getArrowBytes(compressionType, null);
+        }
+
+        /**
+         * Serializes the rows into an Arrow stream with the columns of {@code dictionaries} dictionary encoded and
+         * empties the bucket.
+         *
+         * @param dictionaries the columns to encode, null to write every column as it is
+         * @return the stream, or null when the bucket is empty
+         */
+        byte[] getArrowBytes(CompressionUtil.CodecType compressionType, DictionaryColumns dictionaries) {
+            if (appender.getRowCount() == 0) {
                 return null;
             }
-
-            try (VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
-                 ByteArrayOutputStream out = new ByteArrayOutputStream();
-                 ArrowStreamWriter writer = createArrowStreamWriter(root, out, compressionType)) {
-                JavaRow[] rows = buffer.toArray(JavaRow[]::new);
-                VectorSchemaRootWriter.of(schema).writeToVector(rows, root);
-                root.setRowCount(rows.length);
+            if (dictionaries != null) {
+                var bytes = dictionaries.write(appender.finish(), allocator, compressionType);
+                appender.reset();
+                return bytes;
+            }
+            try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+                 ArrowStreamWriter writer = createArrowStreamWriter(appender.finish(), out, compressionType)) {
                 writer.start();
                 writer.writeBatch();
                 writer.end();
-                // Only mark as serialized AFTER successful serialization
-                // This prevents leaving the bucket in an unusable state if serialization fails
-                serialized = true;
+                // Only empty the bucket AFTER successful serialization
+                // This keeps the rows if serialization fails
+                appender.reset();
                 return out.toByteArray();
-
             } catch (Exception e) {
                 throw new RuntimeException("Arrow serialization failed", e);
             }
         }
+
+        /**
+         * Serializes the rows into one Arrow stream per part of {@code splitter} and empties the bucket.
+         *
+         * @param dictionaries the columns to dictionary encode, null for none
+         * @return the parts, empty when the bucket is empty
+         */
+        List<BatchSplitter.Part> getArrowParts(CompressionUtil.CodecType compressionType, BatchSplitter splitter,
+                                               DictionaryColumns dictionaries) {
+            if (appender.getRowCount() == 0) {
+                return List.of();
+            }
+            var parts = splitter.write(appender.finish(), allocator, compressionType, dictionaries);
+            appender.reset();
+            return parts;
+        }
+
+        @Override
+        public void close() {
+            appender.close();
+        }
     }
 }
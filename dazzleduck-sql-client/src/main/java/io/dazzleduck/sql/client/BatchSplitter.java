@@ -0,0 +1,200 @@
+package io.dazzleduck.sql.client;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.Text;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits the rows of a batch by the values of the partition columns and sorts each part by the sort order, so that
+ * the server can write every part straight to its partition directory without sorting it again.
+ * <p>
+ * Partition columns must be strings, integers or booleans, whose text form is also the name of the partition
+ * directory. Rows with a null partition value are kept in a part of their own without partition values. Sort
+ * columns are given as {@code name}, {@code name ASC} or {@code name DESC} and sort nulls last, like DuckDB.
+ */
+final class BatchSplitter {
+
+    /**
+     * The serialized rows of one partition.
+     */
+    static final class Part {
+        // Null when the rows are not split by partition or a partition value is null
+        final String[] partitionValues;
+        final byte[] data;
+
+        Part(String[] partitionValues, byte[] data) {
+            this.partitionValues = partitionValues;
+            this.data = data;
+        }
+    }
+
+    private final Schema schema;
+    private final int[] partitionColumns;
+    private final int[] sortColumns;
+    private final boolean[] descending;
+
+    BatchSplitter(Schema schema, List<String> partitionBy, List<String> sortOrder) {
+        this.schema = schema;
+        this.partitionColumns = new int[partitionBy.size()];
+        for (int i = 0; i < partitionColumns.length; i++) {
+            partitionColumns[i] = indexOf(schema, partitionBy.get(i));
+            var type = schema.getFields().get(partitionColumns[i]).getType();
+            if (!(type instanceof ArrowType.Utf8 || type instanceof ArrowType.Int || type instanceof ArrowType.Bool)) {
+                throw new IllegalArgumentException("Cannot partition by column " + partitionBy.get(i) + " of type "
+                        + type + ", only string, integer and boolean columns are supported");
+            }
+        }
+        this.sortColumns = new int[sortOrder.size()];
+        this.descending = new boolean[sortOrder.size()];
+        for (int i = 0; i < sortColumns.length; i++) {
+            var parts = sortOrder.get(i).trim().split("\\s+");
+            if (parts.length > 2 || (parts.length == 2 && !parts[1].equalsIgnoreCase("ASC") && !parts[1].equalsIgnoreCase("DESC"))) {
+                throw new IllegalArgumentException("Invalid sort column: " + sortOrder.get(i));
+            }
+            sortColumns[i] = indexOf(schema, parts[0]);
+            descending[i] = parts.length == 2 && parts[1].toUpperCase(Locale.ROOT).equals("DESC");
+        }
+    }
+
+    boolean isSorting() {
+        return sortColumns.length > 0;
+    }
+
+    boolean isPartitioning() {
+        return partitionColumns.length > 0;
+    }
+
+    /**
+     * Serializes the rows of {@code root} into one Arrow stream per partition, each sorted by the sort order.
+     *
+     * @param dictionaries the columns to dictionary encode, null for none
+     */
+    List<Part> write(VectorSchemaRoot root, BufferAllocator allocator, CompressionUtil.CodecType compressionType,
+                     DictionaryColumns dictionaries) {
+        var rowCount = root.getRowCount();
+        var groups = new LinkedHashMap<List<String>, List<Integer>>();
+        for (int row = 0; row < rowCount; row++) {
+            groups.computeIfAbsent(partitionKey(root, row), k -> new ArrayList<>()).add(row);
+        }
+        var comparator = isSorting() ? rowComparator(root) : null;
+        var result = new ArrayList<Part>(groups.size());
+        for (Map.Entry<List<String>, List<Integer>> group : groups.entrySet()) {
+            var rows = group.getValue();
+            if (comparator != null) {
+                rows.sort(comparator);
+            }
+            var key = group.getKey();
+            var values = !isPartitioning() || key.contains(null) ? null : key.toArray(new String[0]);
+            result.add(new Part(values, serialize(root, rows, allocator, compressionType, dictionaries)));
+        }
+        return result;
+    }
+
+    private List<String> partitionKey(VectorSchemaRoot root, int row) {
+        if (partitionColumns.length == 0) {
+            return List.of();
+        }
+        var key = new ArrayList<String>(partitionColumns.length);
+        for (int column : partitionColumns) {
+            var value = root.getVector(column).getObject(row);
+            key.add(value == null ? null : value.toString());
+        }
+        return key;
+    }
+
+    private Comparator<Integer> rowComparator(VectorSchemaRoot root) {
+        var keys = new Object[sortColumns.length][];
+        for (int i = 0; i < sortColumns.length; i++) {
+            FieldVector vector = root.getVector(sortColumns[i]);
+            var values = new Object[root.getRowCount()];
+            for (int row = 0; row < values.length; row++) {
+                var value = vector.getObject(row);
+                // Strings are compared as UTF-8 bytes, as DuckDB does
+                values[row] = value instanceof Text ? ((Text) value).copyBytes() : value;
+            }
+            keys[i] = values;
+        }
+        return (a, b) -> {
+            for (int i = 0; i < keys.length; i++) {
+                var left = keys[i][a];
+                var right = keys[i][b];
+                if (left == null || right == null) {
+                    if (left != right) {
+                        return left == null ? 1 : -1;
+                    }
+                    continue;
+                }
+                var compared = compareValues(left, right);
+                if (compared != 0) {
+                    return descending[i] ? -compared : compared;
+                }
+            }
+            return 0;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object left, Object right) {
+        if (left instanceof byte[] && right instanceof byte[]) {
+            return Arrays.compareUnsigned((byte[]) left, (byte[]) right);
+        }
+        if (left instanceof Comparable) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    private byte[] serialize(VectorSchemaRoot source, List<Integer> rows, BufferAllocator allocator,
+                             CompressionUtil.CodecType compressionType, DictionaryColumns dictionaries) {
+        try (var target = VectorSchemaRoot.create(schema, allocator);
+             var out = new ByteArrayOutputStream()) {
+            target.allocateNew();
+            var columns = source.getFieldVectors().size();
+            for (int column = 0; column < columns; column++) {
+                var from = source.getVector(column);
+                var to = target.getVector(column);
+                for (int i = 0; i < rows.size(); i++) {
+                    to.copyFromSafe(rows.get(i), i, from);
+                }
+                to.setValueCount(rows.size());
+            }
+            target.setRowCount(rows.size());
+            if (dictionaries != null) {
+                return dictionaries.write(target, allocator, compressionType);
+            }
+            try (var writer = ArrowProducer.createArrowStreamWriter(target, out, compressionType)) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+            }
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException("Arrow serialization failed", e);
+        }
+    }
+
+    private static int indexOf(Schema schema, String name) {
+        var fields = schema.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.getName().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Column " + name + " is not in the schema " + schema);
+    }
+}
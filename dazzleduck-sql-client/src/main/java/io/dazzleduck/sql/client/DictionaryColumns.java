@@ -0,0 +1,127 @@
+package io.dazzleduck.sql.client;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes low-cardinality string columns dictionary encoded: every batch carries a dictionary of the distinct values
+ * of each column and the column itself is sent as 32-bit indices into it.
+ * <p>
+ * The dictionary ids only depend on the configured columns, so the schema message of every batch of a producer is
+ * the same and batches can still be coalesced. Each batch replaces the dictionaries of the previous one.
+ */
+final class DictionaryColumns {
+
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+
+    private final List<String> names;
+    private final int[] columns;
+    private final DictionaryEncoding[] encodings;
+    private final List<Field> encodedFields;
+
+    DictionaryColumns(Schema schema, List<String> names) {
+        this.names = List.copyOf(names);
+        this.columns = new int[names.size()];
+        this.encodings = new DictionaryEncoding[names.size()];
+        var fields = new ArrayList<>(schema.getFields());
+        for (int i = 0; i < columns.length; i++) {
+            var name = names.get(i);
+            columns[i] = -1;
+            for (int j = 0; j < fields.size(); j++) {
+                if (fields.get(j).getName().equals(name)) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Column " + name + " is not in the schema " + schema);
+            }
+            var field = fields.get(columns[i]);
+            if (!(field.getType() instanceof ArrowType.Utf8)) {
+                throw new IllegalArgumentException("Cannot dictionary encode column " + name + " of type "
+                        + field.getType() + ", only string columns are supported");
+            }
+            encodings[i] = new DictionaryEncoding(i, false, INDEX_TYPE);
+            fields.set(columns[i], new Field(name,
+                    new FieldType(field.isNullable(), INDEX_TYPE, encodings[i], field.getMetadata()), null));
+        }
+        this.encodedFields = List.copyOf(fields);
+    }
+
+    List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Serializes {@code root} into an Arrow stream with the configured columns dictionary encoded.
+     */
+    byte[] write(VectorSchemaRoot root, BufferAllocator allocator, CompressionUtil.CodecType compressionType) {
+        var rowCount = root.getRowCount();
+        var vectors = new ArrayList<>(root.getFieldVectors());
+        var provider = new DictionaryProvider.MapDictionaryProvider();
+        var owned = new ArrayList<FieldVector>();
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                var values = (VarCharVector) root.getVector(columns[i]);
+                var dictionary = new VarCharVector(names.get(i), allocator);
+                owned.add(dictionary);
+                var indices = new IntVector(encodedFields.get(columns[i]), allocator);
+                owned.add(indices);
+                encode(values, rowCount, dictionary, indices);
+                provider.put(new Dictionary(dictionary, encodings[i]));
+                vectors.set(columns[i], indices);
+            }
+            // Shares the vectors of root, so it is not closed
+            var encoded = new VectorSchemaRoot(encodedFields, vectors, rowCount);
+            try (var out = new ByteArrayOutputStream();
+                 var writer = ArrowProducer.createArrowStreamWriter(encoded, provider, out, compressionType)) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+                return out.toByteArray();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Arrow serialization failed", e);
+        } finally {
+            owned.forEach(FieldVector::close);
+        }
+    }
+
+    private static void encode(VarCharVector values, int rowCount, VarCharVector dictionary, IntVector indices) {
+        var ids = new HashMap<ByteBuffer, Integer>();
+        indices.allocateNew(rowCount);
+        dictionary.allocateNew();
+        for (int row = 0; row < rowCount; row++) {
+            if (values.isNull(row)) {
+                indices.setNull(row);
+                continue;
+            }
+            var bytes = values.get(row);
+            var id = ids.get(ByteBuffer.wrap(bytes));
+            if (id == null) {
+                id = ids.size();
+                ids.put(ByteBuffer.wrap(bytes), id);
+                dictionary.setSafe(id, bytes);
+            }
+            indices.set(row, id);
+        }
+        indices.setValueCount(rowCount);
+        dictionary.setValueCount(ids.size());
+    }
+}
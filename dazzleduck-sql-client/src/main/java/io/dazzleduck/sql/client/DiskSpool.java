@@ -0,0 +1,431 @@
+package io.dazzleduck.sql.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe overflow storage for a producer: batches that do not fit in memory are appended to memory-mapped
+ * segment files instead of a temporary file per batch.
+ * <p>
+ * Each record is {@code [int length][long batchId][int crc32][data]} and is followed by a zero length, which is
+ * written before the record header so that a torn write is never read back. A segment is recycled once every record
+ * in it has been acknowledged. On open, the records of all segments are recovered in batch id order so that the
+ * producer can send them again under their original batch ids, which lets the server drop the ones it already has.
+ * Delivery is at least once: records of a partially acknowledged segment are replayed too.
+ * <p>
+ * The spool directory also holds the producer id, so that a restarted producer keeps its identity, and a mark above
+ * every batch id handed out, so that it never reuses a batch id the server has already accepted. The mark is written
+ * ahead in blocks of {@value #BATCH_ID_BLOCK} ids, so a restart skips the rest of the current block.
+ */
+public final class DiskSpool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSpool.class);
+
+    private static final int HEADER_SIZE = 16;
+    private static final int TERMINATOR_SIZE = 4;
+    private static final String PRODUCER_ID_FILE = "producer-id";
+    private static final String BATCH_ID_FILE = "batch-id";
+    static final long BATCH_ID_BLOCK = 1024;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.spool");
+    private static final int MAX_FREE_SEGMENTS = 2;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final String producerId;
+    private final List<SpoolElement> recovered = new ArrayList<>();
+    private final Deque<Segment> free = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextSegmentId;
+    private long nextBatchId;
+    private long reservedBatchIds;
+    private Segment active;
+    private boolean closed;
+
+    public DiskSpool(Path directory, long segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE + TERMINATOR_SIZE) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.producerId = readOrCreateProducerId(directory.resolve(PRODUCER_ID_FILE));
+        this.reservedBatchIds = readBatchIdMark(directory.resolve(BATCH_ID_FILE));
+        recover();
+        nextBatchId = Math.max(nextBatchId, reservedBatchIds);
+    }
+
+    /**
+     * @return the producer id persisted in the spool directory
+     */
+    public String getProducerId() {
+        return producerId;
+    }
+
+    /**
+     * @return the batch id following every one handed out before, 0 for a new spool
+     */
+    public synchronized long getNextBatchId() {
+        return nextBatchId;
+    }
+
+    /**
+     * @return the records that were not acknowledged before the spool was last closed, in batch id order
+     */
+    public synchronized List<SpoolElement> getRecovered() {
+        return List.copyOf(recovered);
+    }
+
+    /**
+     * Records that a batch id is handed out, including to batches that are not spooled, before it is sent.
+     */
+    public synchronized void reserveBatchId(long batchId) {
+        if (batchId < reservedBatchIds) {
+            return;
+        }
+        var mark = batchId + BATCH_ID_BLOCK;
+        try {
+            writeDurably(directory.resolve(BATCH_ID_FILE), Long.toString(mark));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist the batch id in " + directory, e);
+        }
+        reservedBatchIds = mark;
+    }
+
+    /**
+     * Appends a batch. The returned element reads it back from the mapped segment and acknowledges it once sent.
+     */
+    public synchronized SpoolElement append(long batchId, byte[] data) {
+        if (closed) {
+            throw new IllegalStateException("The spool is closed");
+        }
+        reserveBatchId(batchId);
+        var recordSize = HEADER_SIZE + (long) data.length;
+        try {
+            if (active == null || active.position + recordSize + TERMINATOR_SIZE > active.capacity) {
+                active = newSegment(recordSize + TERMINATOR_SIZE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create spool segment in " + directory, e);
+        }
+        var offset = (int) active.position;
+        var buffer = active.buffer.duplicate();
+        var crc = new CRC32();
+        crc.update(data);
+        // The terminator goes first and the length last, so a crash leaves either nothing or the whole record
+        buffer.putInt(offset + HEADER_SIZE + data.length, 0);
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(data);
+        buffer.putLong(offset + 4, batchId);
+        buffer.putInt(offset + 12, (int) crc.getValue());
+        buffer.putInt(offset, data.length);
+        active.position += recordSize;
+        active.pending++;
+        nextBatchId = Math.max(nextBatchId, batchId + 1);
+        return new SpoolElement(this, active, offset, data.length, batchId);
+    }
+
+    /**
+     * @return the number of segment files, including free ones
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size() + free.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        // Mappings are released by the garbage collector, the files stay for the next open
+        segments.clear();
+        free.clear();
+        active = null;
+    }
+
+    private synchronized void acknowledge(Segment segment) {
+        segment.pending--;
+        if (segment.pending > 0 || closed) {
+            return;
+        }
+        if (segment == active) {
+            if (segment.capacity == segmentSize) {
+                // Nothing is left to read, so appends can start over at the beginning
+                segment.reset();
+                return;
+            }
+            active = null;
+        }
+        segments.remove(segment);
+        if (free.size() < MAX_FREE_SEGMENTS && segment.capacity == segmentSize) {
+            segment.reset();
+            free.add(segment);
+        } else {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete spool segment {}", segment.path, e);
+            }
+        }
+    }
+
+    private Segment newSegment(long minCapacity) throws IOException {
+        if (active != null && active.pending == 0) {
+            // Nothing is waiting on the previous segment
+            var previous = active;
+            active = null;
+            previous.pending++;
+            acknowledge(previous);
+        }
+        if (minCapacity <= segmentSize && !free.isEmpty()) {
+            var segment = free.poll();
+            segments.add(segment);
+            return segment;
+        }
+        var path = directory.resolve(String.format("segment-%020d.spool", nextSegmentId++));
+        var segment = Segment.map(path, Math.max(segmentSize, minCapacity));
+        segment.reset();
+        segments.add(segment);
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (var path : files) {
+            var matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+            if (matcher.matches()) {
+                nextSegmentId = Math.max(nextSegmentId, Long.parseLong(matcher.group(1)) + 1);
+            }
+            var segment = Segment.map(path, Files.size(path));
+            var before = recovered.size();
+            scan(segment);
+            if (recovered.size() == before) {
+                segment.pending = 1;
+                acknowledge(segment);
+            } else {
+                segments.add(segment);
+            }
+        }
+        recovered.sort(Comparator.comparingLong(SpoolElement::getMinBatchId));
+        if (!recovered.isEmpty()) {
+            logger.info("Recovered {} unsent batches from {}", recovered.size(), directory);
+        }
+    }
+
+    private void scan(Segment segment) {
+        var buffer = segment.buffer.duplicate();
+        long offset = 0;
+        while (offset + HEADER_SIZE <= segment.capacity) {
+            var length = buffer.getInt((int) offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segment.capacity) {
+                break;
+            }
+            var batchId = buffer.getLong((int) offset + 4);
+            var expected = buffer.getInt((int) offset + 12);
+            var data = buffer.duplicate();
+            data.position((int) offset + HEADER_SIZE);
+            data.limit((int) offset + HEADER_SIZE + length);
+            var crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != expected) {
+                logger.warn("Ignoring torn record at offset {} of {}", offset, segment.path);
+                break;
+            }
+            recovered.add(new SpoolElement(this, segment, (int) offset, length, batchId));
+            segment.pending++;
+            nextBatchId = Math.max(nextBatchId, batchId + 1);
+            offset += HEADER_SIZE + length;
+        }
+        segment.position = offset;
+    }
+
+    private static String readOrCreateProducerId(Path file) throws IOException {
+        if (Files.exists(file)) {
+            var id = Files.readString(file, StandardCharsets.UTF_8).trim();
+            if (!id.isEmpty()) {
+                return id;
+            }
+        }
+        var id = UUID.randomUUID().toString();
+        writeDurably(file, id);
+        return id;
+    }
+
+    private static long readBatchIdMark(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        var mark = Files.readString(file, StandardCharsets.UTF_8).trim();
+        try {
+            return mark.isEmpty() ? 0 : Long.parseLong(mark);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid batch id mark in " + file + ": " + mark, e);
+        }
+    }
+
+    /**
+     * Replaces the file through a synced temporary file, so that it holds either the old or the new content after
+     * a crash.
+     */
+    private static void writeDurably(Path file, String content) throws IOException {
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (var directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not every platform can sync a directory
+            logger.debug("Failed to sync directory {}", file.getParent(), e);
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final long capacity;
+        private long position;
+        private int pending;
+
+        private Segment(Path path, MappedByteBuffer buffer, long capacity) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        static Segment map(Path path, long capacity) throws IOException {
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Spool segments are limited to 2GB, got " + capacity);
+            }
+            try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+            }
+        }
+
+        void reset() {
+            buffer.duplicate().putInt(0, 0);
+            position = 0;
+            pending = 0;
+        }
+    }
+
+    /**
+     * A batch stored in a spool segment. {@link #acknowledge()} releases its space; {@link #close()} does not, so
+     * that a batch abandoned on shutdown is sent again after a restart.
+     */
+    public static final class SpoolElement extends ArrowProducer.AbstractProducerElement {
+        private final DiskSpool spool;
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private boolean acknowledged;
+
+        private SpoolElement(DiskSpool spool, Segment segment, int offset, int length, long batchId) {
+            super(batchId);
+            this.spool = spool;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public InputStream read() {
+            var data = segment.buffer.duplicate();
+            data.position(offset + HEADER_SIZE);
+            data.limit(offset + HEADER_SIZE + length);
+            return new ByteBufferInputStream(data.slice());
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public boolean isInMemory() {
+            return false;
+        }
+
+        @Override
+        public void acknowledge() {
+            synchronized (spool) {
+                if (acknowledged) {
+                    return;
+                }
+                acknowledged = true;
+                spool.acknowledge(segment);
+            }
+        }
+
+        @Override
+        public void close() {
+            // The record stays in the spool until it is acknowledged
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            var n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            var skipped = (int) Math.min(Math.max(n, 0), buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -21,6 +21,9 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -336,94 +339,122 @@ public final class HttpArrowProducer extends ArrowProducer.AbstractArrowProducer
         if (Thread.currentThread().isInterrupted()) {
             throw new InterruptedException("Thread interrupted before send");
         }
+        try {
+            doSendAsync(element).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-        HttpResponse<String> resp = null;
-        int authRetries = 0;
+    /**
+     * Posts the element with {@link HttpClient#sendAsync}, so that several batches can be on the wire at once
+     * over the same HTTP/2 connection. The body is streamed from the element rather than copied into an array.
+     */
+    @Override
+    protected CompletableFuture<Void> doSendAsync(ProducerElement element) {
+        return postAsync(element, 0);
+    }
 
-        // Read the element bytes for HTTP sending
-        final byte[] payload;
-        try (java.io.InputStream in = element.read();
-             java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream()) {
-            in.transferTo(out);
-            payload = out.toByteArray();
+    private CompletableFuture<Void> postAsync(ProducerElement element, int authRetries) {
+        HttpRequest req;
+        try {
+            req = buildRequest(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
         } catch (IOException e) {
-            logger.error("Failed to read element data", e);
-            throw new RuntimeException("Failed to read element data", e);
+            return CompletableFuture.failedFuture(mapSendException(e));
+        } catch (SecurityException e) {
+            logger.error("Authentication failed for {}", buildIngestUrl(), e);
+            return CompletableFuture.failedFuture(new RuntimeException("Authentication failed for " + buildIngestUrl(), e));
         }
-
-        // Issue #7: Specific exception handling
-        try {
-            while (authRetries <= MAX_AUTH_RETRIES) {
-                resp = post(payload);
-
-                if (resp.statusCode() == 401 || resp.statusCode() == 403) {
-                    if (staticJwt) {
-                        logger.error("Preconfigured JWT was rejected with status {} for {}", resp.statusCode(), buildIngestUrl());
-                        break;
+        return getClient().sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                .handle((resp, error) -> {
+                    if (error != null) {
+                        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        return CompletableFuture.<Void>failedFuture(cause instanceof IOException
+                                ? mapSendException((IOException) cause) : cause);
                     }
-                    if (authRetries >= MAX_AUTH_RETRIES) {
-                        logger.error("Max auth retries ({}) exceeded for {}", MAX_AUTH_RETRIES, buildIngestUrl());
-                        break;
+                    if (resp.statusCode() == 401 || resp.statusCode() == 403) {
+                        if (staticJwt) {
+                            logger.error("Preconfigured JWT was rejected with status {} for {}", resp.statusCode(), buildIngestUrl());
+                        } else if (authRetries >= MAX_AUTH_RETRIES) {
+                            logger.error("Max auth retries ({}) exceeded for {}", MAX_AUTH_RETRIES, buildIngestUrl());
+                        } else {
+                            logger.warn("Received auth failure ({}) on attempt {}, invalidating JWT and retrying",
+                                    resp.statusCode(), authRetries + 1);
+                            invalidateJwt();
+                            return postAsync(element, authRetries + 1);
+                        }
                     }
-                    logger.warn("Received auth failure ({}) on attempt {}, invalidating JWT and retrying",
-                            resp.statusCode(), authRetries + 1);
-                    synchronized (this) {
-                        jwt = null;
-                        jwtExpiry = Instant.EPOCH;
+                    try {
+                        checkResponse(resp, element.length());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    } catch (RuntimeException e) {
+                        return CompletableFuture.<Void>failedFuture(e);
                     }
-                    authRetries++;
-                } else {
-                    // Non-auth response, break the retry loop
-                    break;
-                }
-            }
+                })
+                .thenCompose(f -> f);
+    }
 
-            if (resp.statusCode() == 429) {
-                // Server is under back pressure - parse Retry-After header if present
-                long waitMillis = resp.headers()
-                        .firstValue("Retry-After")
-                        .map(value -> {
-                            try {
-                                return Long.parseLong(value) * 1000; // Convert seconds to millis
-                            } catch (NumberFormatException e) {
-                                return 5000L; // Default if header is not a number
-                            }
-                        })
-                        .orElse(5000L); // Default 5 second wait
-
-                logger.warn("Server returned 429 Too Many Requests to {}, suggested wait: {} ms",
-                        buildIngestUrl(), waitMillis);
-                throw new BackPressureException(
-                        "Server returned 429 Too Many Requests: " + resp.body(),
-                        waitMillis
-                );
-            }
+    private void checkResponse(HttpResponse<String> resp, long payloadLength) {
+        if (resp.statusCode() == 409 && getProducerId() != null) {
+            // The server already has this batch id, typically a batch replayed from the spool
+            logger.debug("Server already ingested batch, skipping: {}", resp.body());
+            return;
+        }
 
-            if (resp.statusCode() != 200) {
-                logger.error("Ingestion failed with status {} to {}", resp.statusCode(), buildIngestUrl());
-                throw new RuntimeException("Ingestion failed with status " + resp.statusCode() + ": " + resp.body());
-            }
+        if (resp.statusCode() == 429) {
+            // Server is under back pressure - parse Retry-After header if present
+            long waitMillis = resp.headers()
+                    .firstValue("Retry-After")
+                    .map(value -> {
+                        try {
+                            return Long.parseLong(value) * 1000; // Convert seconds to millis
+                        } catch (NumberFormatException e) {
+                            return 5000L; // Default if header is not a number
+                        }
+                    })
+                    .orElse(5000L); // Default 5 second wait
+
+            logger.warn("Server returned 429 Too Many Requests to {}, suggested wait: {} ms",
+                    buildIngestUrl(), waitMillis);
+            throw new BackPressureException(
+                    "Server returned 429 Too Many Requests: " + resp.body(),
+                    waitMillis
+            );
+        }
 
-            logger.debug("Successfully sent {} bytes to {}", payload.length, buildIngestUrl());
+        if (resp.statusCode() != 200) {
+            logger.error("Ingestion failed with status {} to {}", resp.statusCode(), buildIngestUrl());
+            throw new RuntimeException("Ingestion failed with status " + resp.statusCode() + ": " + resp.body());
+        }
 
-        } catch (HttpTimeoutException e) {
+        logger.debug("Successfully sent {} bytes to {}", payloadLength, buildIngestUrl());
+        onServerFeedback(longHeader(resp, io.dazzleduck.sql.common.Headers.HEADER_PENDING_WRITE_HEADROOM),
+                longHeader(resp, io.dazzleduck.sql.common.Headers.HEADER_DRAIN_RATE));
+    }
+
+    private static long longHeader(HttpResponse<?> resp, String name) {
+        try {
+            return resp.headers().firstValueAsLong(name).orElse(-1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private RuntimeException mapSendException(IOException e) {
+        // Invalidate JWT on timeout or network error - server may have restarted
+        invalidateJwt();
+        if (e instanceof HttpTimeoutException) {
             logger.error("HTTP request timed out after {} to {}", httpClientTimeout, buildIngestUrl(), e);
-            // Invalidate JWT on timeout - server may have restarted
-            invalidateJwt();
-            throw new RuntimeException("HTTP request timed out to " + buildIngestUrl(), e);
-        } catch (IOException e) {
-            // Check if interrupted during IO
-            if (Thread.currentThread().isInterrupted()) {
-                throw new InterruptedException("Thread interrupted during HTTP send");
-            }
-            logger.error("Network error sending data to {}", buildIngestUrl(), e);
-            // Invalidate JWT on network error - server may have restarted
-            invalidateJwt();
-            throw new RuntimeException("Network error sending data to " + buildIngestUrl(), e);
-        } catch (SecurityException e) {
-            logger.error("Authentication failed for {}", buildIngestUrl(), e);
-            throw new RuntimeException("Authentication failed for " + buildIngestUrl(), e);
+            return new RuntimeException("HTTP request timed out to " + buildIngestUrl(), e);
         }
+        logger.error("Network error sending data to {}", buildIngestUrl(), e);
+        return new RuntimeException("Network error sending data to " + buildIngestUrl(), e);
     }
 
     /**
@@ -452,12 +483,13 @@ public final class HttpArrowProducer extends ArrowProducer.AbstractArrowProducer
         return baseUrl + "/v1/ingest?ingestion_queue=" + ingestionQueue;
     }
 
-    private HttpResponse<String> post(byte[] payload) throws IOException, InterruptedException {
+    private HttpRequest buildRequest(ProducerElement element) throws IOException, InterruptedException {
         String fullUrl = buildIngestUrl();
         HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                 .uri(URI.create(fullUrl))
                 .timeout(httpClientTimeout)
-                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(element::read), element.length()))
                 .header("Authorization", getJwt())
                 .header("Content-Type", "application/vnd.apache.arrow.stream");
 
@@ -467,8 +499,24 @@ public final class HttpArrowProducer extends ArrowProducer.AbstractArrowProducer
                 java.net.URLEncoder.encode(partitionByValue, java.nio.charset.StandardCharsets.UTF_8));
         }
 
-        HttpRequest req = requestBuilder.build();
-        return getClient().send(req, HttpResponse.BodyHandlers.ofString());
+        if (element.getPartitionValues() != null) {
+            requestBuilder.header(io.dazzleduck.sql.common.Headers.HEADER_PARTITION_VALUES,
+                    encodePartitionValues(element.getPartitionValues()));
+        }
+
+        if (element.isSorted()) {
+            requestBuilder.header(io.dazzleduck.sql.common.Headers.HEADER_SORT_ORDER,
+                    java.net.URLEncoder.encode(String.join(",", getSortOrder()), java.nio.charset.StandardCharsets.UTF_8));
+            requestBuilder.header(io.dazzleduck.sql.common.Headers.HEADER_PRESORTED, "true");
+        }
+
+        if (getProducerId() != null) {
+            requestBuilder.header(io.dazzleduck.sql.common.Headers.HEADER_PRODUCER_ID, getProducerId());
+            requestBuilder.header(io.dazzleduck.sql.common.Headers.HEADER_PRODUCER_BATCH_ID,
+                    String.valueOf(element.getMaxBatchId()));
+        }
+
+        return requestBuilder.build();
     }
 
     // Issue #1: Override close() to cleanup HttpClient resources
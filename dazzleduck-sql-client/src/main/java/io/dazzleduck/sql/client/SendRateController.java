@@ -0,0 +1,124 @@
+package io.dazzleduck.sql.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Paces sends by the flow control feedback the server returns with every acknowledgement: how many more bytes its
+ * ingestion queue can take before it pushes back, and how fast it writes them.
+ * <p>
+ * Sends are not paced while the headroom stays above {@link #LOW_HEADROOM_SENDS} sends of the size last sent. Once
+ * it falls below, or the server pushes back, sends are paced by a token bucket whose rate starts at the drain rate
+ * of the server and then follows additive increase, multiplicative decrease: every acknowledgement with enough
+ * headroom adds a maximum sized batch per second, and every one without, or every push back, halves it. Pacing
+ * stops once the rate is well above the drain rate again.
+ * <p>
+ * While sends are paced the batch size doubles with every decrease, up to the maximum batch size, so that the rows
+ * waiting for their turn are sent in fewer, larger requests. It goes back to the minimum when pacing stops.
+ */
+final class SendRateController {
+
+    // Headroom for fewer sends than this slows sends down
+    static final int LOW_HEADROOM_SENDS = 2;
+
+    // Pacing stops once the rate is this many times the drain rate of the server
+    private static final int UNPACED_DRAIN_RATE_FACTOR = 4;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long minBatchSize;
+    private final long maxBatchSize;
+    private final LongSupplier nanoTime;
+
+    // Bytes per second, 0 while sends are not paced
+    private double rate;
+    private long drainRate;
+    // Bytes that can be sent right away, negative while sends let through ahead of the rate are paid back
+    private double tokens;
+    private long lastRefill;
+    private long lastSendBytes;
+    private volatile long batchSize;
+
+    SendRateController(long minBatchSize, long maxBatchSize, LongSupplier nanoTime) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.nanoTime = nanoTime;
+        this.batchSize = minBatchSize;
+    }
+
+    /**
+     * Takes the feedback of an acknowledgement.
+     *
+     * @param headroom  bytes the server can still take, negative when it did not say
+     * @param drainRate bytes per second the server writes, 0 or negative when it did not say
+     */
+    synchronized void onFeedback(long headroom, long drainRate) {
+        if (drainRate > 0) {
+            this.drainRate = drainRate;
+        }
+        if (headroom < 0) {
+            return;
+        }
+        if (headroom < LOW_HEADROOM_SENDS * Math.max(lastSendBytes, minBatchSize)) {
+            decrease();
+        } else if (rate > 0) {
+            rate += maxBatchSize;
+            if (this.drainRate > 0 && rate >= (double) UNPACED_DRAIN_RATE_FACTOR * this.drainRate) {
+                rate = 0;
+                tokens = 0;
+                batchSize = minBatchSize;
+            }
+        }
+    }
+
+    /**
+     * Slows sends down after the server pushed back.
+     */
+    synchronized void onBackPressure() {
+        decrease();
+    }
+
+    // The rate never drops below one minimum sized batch per second
+    private void decrease() {
+        if (rate == 0) {
+            // The server falls behind at the current pace, so start at the pace it writes at
+            rate = Math.max(minBatchSize, drainRate);
+            tokens = 0;
+            lastRefill = nanoTime.getAsLong();
+        } else {
+            rate = Math.max(minBatchSize, rate * DECREASE_FACTOR);
+        }
+        batchSize = Math.min(maxBatchSize, batchSize * 2);
+    }
+
+    /**
+     * Takes the tokens for a send of {@code bytes}.
+     *
+     * @return milliseconds to wait before the send, 0 to send it right away
+     */
+    synchronized long reserve(long bytes) {
+        lastSendBytes = bytes;
+        if (rate == 0) {
+            return 0;
+        }
+        var now = nanoTime.getAsLong();
+        // Up to a second of unused rate is kept for bursts
+        tokens = Math.min(rate, tokens + rate * (now - lastRefill) / NANOS_PER_SECOND);
+        lastRefill = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000 / rate);
+    }
+
+    /**
+     * @return the rows a bucket collects before it is sent, in bytes
+     */
+    long batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the paced rate in bytes per second, 0 while sends are not paced
+     */
+    synchronized long rate() {
+        return (long) rate;
+    }
+}
@@ -0,0 +1,109 @@
+package io.dazzleduck.sql.client;
+
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how fast 1 to 256 threads can add rows to one producer, with a single writer stripe (one lock for all
+ * threads) and with the default number of stripes. Sends are discarded, so only the write path is measured.
+ *
+ * Run with: ./mvnw test -pl dazzleduck-sql-client -Dtest=ArrowProducerContentionBenchmark
+ */
+public class ArrowProducerContentionBenchmark {
+
+    private static final Schema SCHEMA = new Schema(List.of(
+            new Field("ts", FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("level", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("message", FieldType.nullable(new ArrowType.Utf8()), null)));
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    private static final long RUN_MILLIS = Long.getLong("benchmark.millis", 2000);
+
+    @Test
+    void benchmark() throws Exception {
+        // Warm up the write path before measuring
+        run(8, 0, RUN_MILLIS);
+        System.out.printf("%8s %20s %20s%n", "threads", "1 stripe rows/s", "default rows/s");
+        for (int threads : THREADS) {
+            var single = run(threads, 1, RUN_MILLIS);
+            var striped = run(threads, 0, RUN_MILLIS);
+            System.out.printf("%8d %20d %20d%n", threads, single, striped);
+        }
+    }
+
+    /**
+     * @param stripes writer stripes, 0 for the default
+     * @return rows added per second
+     */
+    private static long run(int threads, int stripes, long millis) throws Exception {
+        var rows = new LongAdder();
+        var stop = new AtomicBoolean();
+        var start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (var producer = new DiscardingProducer()) {
+            if (stripes > 0) {
+                producer.setWriterStripes(stripes);
+            }
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    long count = 0;
+                    while (!stop.get()) {
+                        var ts = System.nanoTime();
+                        producer.appendRow(row -> row.setLong(0, ts).setString(1, "INFO").setString(2, "request handled"));
+                        count++;
+                    }
+                    rows.add(count);
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            Thread.sleep(millis);
+            stop.set(true);
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - begin;
+            return rows.sum() * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+    }
+
+    private static final class DiscardingProducer extends ArrowProducer.AbstractArrowProducer {
+
+        DiscardingProducer() {
+            super(1024 * 1024, 16 * 1024 * 1024, Duration.ofSeconds(1), SCHEMA, Clock.systemUTC(), 0, 0, List.of());
+        }
+
+        @Override
+        public long getMaxInMemorySize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long getMaxOnDiskSize() {
+            return 0;
+        }
+
+        @Override
+        protected void doSend(ProducerElement element) {
+            // Discarded, only the write path is measured
+        }
+    }
+}
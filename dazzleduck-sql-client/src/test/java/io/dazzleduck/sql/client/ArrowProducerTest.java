@@ -321,6 +321,51 @@ class ArrowProducerTest {
         }
     }
 
+    @Test
+    void testCreateCombinedReaderCoalescesCompressedBatches() throws Exception {
+        Schema schema = new Schema(List.of(new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        Schema other = new Schema(List.of(new Field("other", FieldType.nullable(new ArrowType.Utf8()), null)));
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+             ArrowProducer.Bucket bucket = new ArrowProducer.Bucket(schema, allocator);
+             ArrowProducer.Bucket otherBucket = new ArrowProducer.Bucket(other, allocator)) {
+            List<ArrowProducer.ProducerElement> elements = new ArrayList<>();
+            for (int batch = 0; batch < 3; batch++) {
+                for (int i = 0; i < 2; i++) {
+                    String value = "row-" + batch + "-" + i;
+                    bucket.append(row -> row.setString(0, value));
+                }
+                elements.add(new ArrowProducer.MemoryElement(bucket.getArrowBytes(CompressionUtil.CodecType.ZSTD), batch));
+            }
+
+            ArrowProducer.ProducerElement combined = ArrowProducer.createCombinedReader(elements, schema, allocator, CompressionUtil.CodecType.ZSTD);
+            assertInstanceOf(ArrowProducer.CoalescedElement.class, combined);
+            assertEquals(0, combined.getMinBatchId());
+            assertEquals(2, combined.getMaxBatchId());
+            byte[] bytes;
+            try (java.io.InputStream in = combined.read()) {
+                bytes = in.readAllBytes();
+            }
+            assertEquals(combined.length(), bytes.length);
+
+            List<String> values = new ArrayList<>();
+            try (ArrowStreamReader reader = new ArrowStreamReader(new java.io.ByteArrayInputStream(bytes), allocator,
+                    org.apache.arrow.compression.CommonsCompressionFactory.INSTANCE)) {
+                while (reader.loadNextBatch()) {
+                    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                    for (int i = 0; i < root.getRowCount(); i++) {
+                        values.add(root.getVector(0).getObject(i).toString());
+                    }
+                }
+            }
+            assertEquals(List.of("row-0-0", "row-0-1", "row-1-0", "row-1-1", "row-2-0", "row-2-1"), values);
+
+            // Streams with different schemas cannot be concatenated
+            otherBucket.append(row -> row.setString(0, "x"));
+            elements.add(new ArrowProducer.MemoryElement(otherBucket.getArrowBytes(CompressionUtil.CodecType.ZSTD), 3));
+            assertNull(ArrowProducer.CoalescedElement.of(elements));
+        }
+    }
+
     /**
      * Helper method to create a SendElement with Arrow data
      */
@@ -404,6 +449,281 @@ class ArrowProducerTest {
     }
 
 
+    @Test
+    void testSendsArePipelined() throws Exception {
+        java.util.concurrent.Semaphore started = new java.util.concurrent.Semaphore(0);
+        CountDownLatch release = new CountDownLatch(1);
+        Schema schema = new Schema(List.of(new Field("ts", FieldType.nullable(new ArrowType.Utf8()), null)));
+        var producer = new OnDemandProducer(10 * MB, 10 * MB, Clock.systemUTC(), release, null) {
+            @Override
+            protected void doSend(ProducerElement element) throws InterruptedException {
+                started.release();
+                super.doSend(element);
+            }
+        };
+        sender = producer;
+        producer.setMaxInFlightSends(3);
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            for (int i = 0; i < 3; i++) {
+                ArrowProducer.ProducerElement element = createSendElement(schema, allocator, new int[]{}, new String[]{"a" + i});
+                producer.enqueue(((ArrowProducer.MemoryElement) element).data);
+                // Each send starts while the earlier ones are still blocked
+                assertTrue(started.tryAcquire(2, TimeUnit.SECONDS));
+            }
+            assertEquals(-1, producer.getCompletedBatchId());
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (producer.getCompletedBatchId() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, producer.getCompletedBatchId());
+            assertEquals(3, producer.getSentElementCount());
+        }
+        assertThrows(IllegalArgumentException.class, () -> producer.setMaxInFlightSends(0));
+    }
+
+    @Test
+    void testConcurrentWritersAcrossStripes() throws Exception {
+        AtomicInteger rowsSent = new AtomicInteger();
+        var producer = new OnDemandProducer(10 * MB, 10 * MB, Clock.systemUTC(), new CountDownLatch(0), null) {
+            @Override
+            protected void doSend(ProducerElement element) {
+                try (BufferAllocator childAllocator = bufferAllocator.newChildAllocator("test-send", 0, Long.MAX_VALUE);
+                     java.io.InputStream in = element.read();
+                     ArrowStreamReader reader = new ArrowStreamReader(in, childAllocator,
+                             org.apache.arrow.compression.CommonsCompressionFactory.INSTANCE)) {
+                    while (reader.loadNextBatch()) {
+                        rowsSent.addAndGet(reader.getVectorSchemaRoot().getRowCount());
+                    }
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+        };
+        producer.setWriterStripes(3);
+        assertEquals(4, producer.getWriterStripes());
+        int threads = 16;
+        int rowsPerThread = 1000;
+        var pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        try {
+            var futures = new ArrayList<java.util.concurrent.Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < rowsPerThread; i++) {
+                        if (i % 2 == 0) {
+                            producer.addRow(new io.dazzleduck.sql.common.types.JavaRow(new Object[]{thread + "-" + i}));
+                        } else {
+                            producer.appendRow(row -> row.setString(0, "row"));
+                        }
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThrows(IllegalStateException.class, () -> producer.setWriterStripes(8));
+        producer.close();
+        assertEquals(threads * rowsPerThread, rowsSent.get());
+        assertThrows(IllegalStateException.class, () -> producer.addRow(new io.dazzleduck.sql.common.types.JavaRow(new Object[]{"late"})));
+    }
+
+    @Test
+    void testBucketSplitsByPartitionAndSorts() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("category", FieldType.nullable(new ArrowType.Utf8()), null)));
+        var splitter = new BatchSplitter(schema, List.of("category"), List.of("id DESC"));
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+             ArrowProducer.Bucket bucket = new ArrowProducer.Bucket(schema, allocator)) {
+            assertEquals(List.of(), bucket.getArrowParts(CompressionUtil.CodecType.ZSTD, splitter, null));
+            bucket.append(row -> row.setInt(0, 1).setString(1, "a"));
+            bucket.append(row -> row.setInt(0, 2).setString(1, "b"));
+            bucket.append(row -> row.setInt(0, 3).setString(1, "a"));
+            bucket.append(row -> row.setInt(0, 4));
+            bucket.append(row -> row.setString(1, "a"));
+
+            var parts = bucket.getArrowParts(CompressionUtil.CodecType.ZSTD, splitter, null);
+            assertEquals(0, bucket.rowCount());
+            assertEquals(3, parts.size());
+            assertArrayEquals(new String[]{"a"}, parts.get(0).partitionValues);
+            assertArrayEquals(new String[]{"b"}, parts.get(1).partitionValues);
+            // Rows with a null partition value are not tagged
+            assertNull(parts.get(2).partitionValues);
+            try (ArrowStreamReader reader = new ArrowStreamReader(new java.io.ByteArrayInputStream(parts.get(0).data),
+                    allocator, org.apache.arrow.compression.CommonsCompressionFactory.INSTANCE)) {
+                assertTrue(reader.loadNextBatch());
+                IntVector ids = (IntVector) reader.getVectorSchemaRoot().getVector(0);
+                assertEquals(3, ids.getValueCount());
+                // Descending, nulls last
+                assertEquals(3, ids.get(0));
+                assertEquals(1, ids.get(1));
+                assertTrue(ids.isNull(2));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BatchSplitter(schema, List.of("missing"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new BatchSplitter(schema, List.of(), List.of("id SIDEWAYS")));
+    }
+
+    @Test
+    void testPrePartitionedElementsAreNotCombinedAcrossPartitions() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("category", FieldType.nullable(new ArrowType.Utf8()), null)));
+        var sent = new java.util.concurrent.CopyOnWriteArrayList<ArrowProducer.ProducerElement>();
+        var producer = new ArrowProducer.AbstractArrowProducer(MB, 10 * MB, Duration.ofHours(1), schema,
+                Clock.systemUTC(), 0, 0, List.of("category")) {
+            @Override
+            public long getMaxInMemorySize() {
+                return 10 * MB;
+            }
+
+            @Override
+            public long getMaxOnDiskSize() {
+                return 10 * MB;
+            }
+
+            @Override
+            protected void doSend(ProducerElement element) {
+                sent.add(element);
+            }
+        };
+        producer.setPrePartitioned(true);
+        producer.setSortOrder(List.of("id"));
+        assertEquals(List.of("id"), producer.getSortOrder());
+        for (int i = 0; i < 10; i++) {
+            int id = i;
+            producer.appendRow(row -> row.setInt(0, id).setString(1, id % 2 == 0 ? "even" : "odd"));
+        }
+        producer.close();
+        var partitions = sent.stream().map(e -> String.join(",", e.getPartitionValues())).sorted().collect(java.util.stream.Collectors.toList());
+        assertEquals(List.of("even", "odd"), partitions);
+        assertTrue(sent.stream().allMatch(ArrowProducer.ProducerElement::isSorted));
+        assertThrows(IllegalArgumentException.class, () -> producer.setSortOrder(List.of("missing")));
+    }
+
+    @Test
+    void testAppendRowsKeepsRowsBeforeFailure() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        var sent = new java.util.concurrent.CopyOnWriteArrayList<ArrowProducer.ProducerElement>();
+        var producer = new ArrowProducer.AbstractArrowProducer(MB, 10 * MB, Duration.ofHours(1), schema,
+                Clock.systemUTC(), 0, 0, List.of()) {
+            @Override
+            public long getMaxInMemorySize() {
+                return 10 * MB;
+            }
+
+            @Override
+            public long getMaxOnDiskSize() {
+                return 10 * MB;
+            }
+
+            @Override
+            protected void doSend(ProducerElement element) {
+                sent.add(element);
+            }
+        };
+        producer.appendRows(3, (row, i) -> row.setInt(0, i).setString(1, "row-" + i));
+        assertThrows(IllegalArgumentException.class, () -> producer.appendRows(3, (row, i) -> {
+            row.setInt(0, 10 + i);
+            if (i == 1) {
+                row.setString(0, "not an int");
+            }
+        }));
+        producer.close();
+
+        var ids = new ArrayList<Integer>();
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            for (var element : sent) {
+                try (ArrowStreamReader reader = new ArrowStreamReader(element.read(), allocator,
+                        org.apache.arrow.compression.CommonsCompressionFactory.INSTANCE)) {
+                    while (reader.loadNextBatch()) {
+                        IntVector vector = (IntVector) reader.getVectorSchemaRoot().getVector(0);
+                        for (int i = 0; i < vector.getValueCount(); i++) {
+                            ids.add(vector.get(i));
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(List.of(0, 1, 2, 10), ids);
+    }
+
+    @Test
+    void testDictionaryColumnsAreEncoded() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("level", FieldType.nullable(new ArrowType.Utf8()), null)));
+        var dictionaries = new DictionaryColumns(schema, List.of("level"));
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+             ArrowProducer.Bucket bucket = new ArrowProducer.Bucket(schema, allocator)) {
+            bucket.append(row -> row.setInt(0, 1).setString(1, "INFO"));
+            bucket.append(row -> row.setInt(0, 2).setString(1, "WARN"));
+            bucket.append(row -> row.setInt(0, 3).setString(1, "INFO"));
+            bucket.append(row -> row.setInt(0, 4));
+            var first = bucket.getArrowBytes(CompressionUtil.CodecType.ZSTD, dictionaries);
+            bucket.append(row -> row.setInt(0, 5).setString(1, "ERROR"));
+            var second = bucket.getArrowBytes(CompressionUtil.CodecType.ZSTD, dictionaries);
+
+            // Batches of the same producer share the schema message, each carries its own dictionary
+            var combined = ArrowProducer.createCombinedReader(
+                    List.of(new ArrowProducer.MemoryElement(first, 0), new ArrowProducer.MemoryElement(second, 1)),
+                    schema, allocator, CompressionUtil.CodecType.ZSTD);
+            assertInstanceOf(ArrowProducer.CoalescedElement.class, combined);
+            var levels = new ArrayList<String>();
+            try (ArrowStreamReader reader = new ArrowStreamReader(combined.read(), allocator,
+                    org.apache.arrow.compression.CommonsCompressionFactory.INSTANCE)) {
+                var field = reader.getVectorSchemaRoot().getSchema().findField("level");
+                assertNotNull(field.getDictionary());
+                while (reader.loadNextBatch()) {
+                    var indices = reader.getVectorSchemaRoot().getVector("level");
+                    var dictionary = reader.lookup(field.getDictionary().getId());
+                    try (var values = org.apache.arrow.vector.dictionary.DictionaryEncoder.decode(indices, dictionary)) {
+                        for (int i = 0; i < values.getValueCount(); i++) {
+                            levels.add(values.isNull(i) ? null : values.getObject(i).toString());
+                        }
+                    }
+                }
+            }
+            assertEquals(java.util.Arrays.asList("INFO", "WARN", "INFO", null, "ERROR"), levels);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new DictionaryColumns(schema, List.of("id")));
+        assertThrows(IllegalArgumentException.class, () -> new DictionaryColumns(schema, List.of("missing")));
+    }
+
+    @Test
+    void testBucketWritesRowsIntoVectors() throws Exception {
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+             ArrowProducer.Bucket bucket = new ArrowProducer.Bucket(schema, allocator)) {
+            assertNull(bucket.getArrowBytes(CompressionUtil.CodecType.NO_COMPRESSION));
+            bucket.add(new io.dazzleduck.sql.common.types.JavaRow(new Object[]{1, "a"}));
+            long size = bucket.append(row -> row.setInt(0, 2).setString(1, "b"));
+            assertTrue(size > 0);
+            assertEquals(size, bucket.size());
+            assertThrows(IllegalArgumentException.class, () -> bucket.append(row -> row.setLong(1, 3)));
+            assertEquals(2, bucket.rowCount());
+
+            byte[] bytes = bucket.getArrowBytes(CompressionUtil.CodecType.ZSTD);
+            assertEquals(0, bucket.size());
+            assertNull(bucket.getArrowBytes(CompressionUtil.CodecType.ZSTD));
+            try (ArrowStreamReader reader = new ArrowStreamReader(new java.io.ByteArrayInputStream(bytes), allocator)) {
+                assertTrue(reader.loadNextBatch());
+                VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                assertEquals(2, root.getRowCount());
+                assertEquals(2, ((IntVector) root.getVector(0)).get(1));
+                assertEquals("b", root.getVector(1).getObject(1).toString());
+            }
+        }
+    }
+
     static class OnDemandProducer extends ArrowProducer.AbstractArrowProducer {
 
     private final long maxOnDiskSize;
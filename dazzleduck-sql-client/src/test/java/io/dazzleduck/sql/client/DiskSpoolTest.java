@@ -0,0 +1,217 @@
+package io.dazzleduck.sql.client;
+
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecoverUnacknowledged() throws Exception {
+        String producerId;
+        try (var spool = new DiskSpool(directory, 1024)) {
+            producerId = spool.getProducerId();
+            spool.append(0, bytes("zero"));
+            var one = spool.append(1, bytes("one"));
+            spool.append(2, bytes("two"));
+            assertEquals("one", text(one));
+            one.acknowledge();
+            // Closing without acknowledging keeps the record
+            one.close();
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            assertEquals(producerId, spool.getProducerId());
+            // The segment still holds unacknowledged records, so all of them are replayed
+            var recovered = spool.getRecovered();
+            assertEquals(List.of(0L, 1L, 2L), recovered.stream().map(DiskSpool.SpoolElement::getMinBatchId).collect(Collectors.toList()));
+            assertEquals("two", text(recovered.get(2)));
+            // Batch ids of the reserved block may have been sent
+            assertEquals(DiskSpool.BATCH_ID_BLOCK, spool.getNextBatchId());
+        }
+    }
+
+    @Test
+    void testAcknowledgedSegmentsAreRecycled() throws Exception {
+        try (var spool = new DiskSpool(directory, 64)) {
+            // Each record fills most of a segment
+            var first = spool.append(0, new byte[40]);
+            var second = spool.append(1, new byte[40]);
+            var third = spool.append(2, new byte[40]);
+            assertEquals(3, spool.getSegmentCount());
+            first.acknowledge();
+            second.acknowledge();
+            // The two drained segments are kept for reuse
+            assertEquals(3, spool.getSegmentCount());
+            spool.append(3, new byte[40]).acknowledge();
+            assertEquals(3, spool.getSegmentCount());
+            third.acknowledge();
+        }
+        try (var spool = new DiskSpool(directory, 64)) {
+            assertEquals(List.of(), spool.getRecovered());
+        }
+    }
+
+    @Test
+    void testLargeRecordGetsOwnSegment() throws Exception {
+        try (var spool = new DiskSpool(directory, 64)) {
+            var large = spool.append(0, new byte[1000]);
+            assertEquals(1000, large.read().readAllBytes().length);
+            large.acknowledge();
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of("batch-id", "producer-id"), files.sorted().map(p -> p.getFileName().toString()).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testTornRecordIsIgnored() throws Exception {
+        try (var spool = new DiskSpool(directory, 1024)) {
+            spool.append(0, bytes("kept"));
+            spool.append(1, bytes("torn"));
+        }
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.filter(p -> p.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+        try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // Corrupt the data of the second record
+            file.seek(16 + 4 + 16);
+            file.write('X');
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            var recovered = spool.getRecovered();
+            assertEquals(1, recovered.size());
+            assertEquals("kept", text(recovered.get(0)));
+        }
+    }
+
+    @Test
+    void testProducerReplaysSpool() throws Exception {
+        try (var spool = new DiskSpool(directory, 1024)) {
+            // Shorter than an Arrow message length, which the test sender would otherwise read as a huge allocation
+            spool.append(5, bytes("old"));
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            var sendDone = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var producer = new ArrowProducerTest.OnDemandProducer(0, 1024, Clock.systemUTC(), release, sendDone);
+            try {
+                producer.setSpool(spool);
+                assertEquals(spool.getProducerId(), producer.getProducerId());
+                assertEquals(4, producer.getCompletedBatchId());
+                release.countDown();
+                assertTrue(sendDone.await(2, java.util.concurrent.TimeUnit.SECONDS));
+                // The next batch continues after the recovered one
+                producer.enqueue(bytes("new"));
+                assertThrows(IllegalStateException.class, () -> producer.setSpool(spool));
+            } finally {
+                producer.close();
+            }
+            assertEquals(5 + DiskSpool.BATCH_ID_BLOCK, producer.getCompletedBatchId());
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            assertEquals(List.of(), spool.getRecovered());
+            assertEquals(5 + 2 * DiskSpool.BATCH_ID_BLOCK, spool.getNextBatchId());
+        }
+    }
+
+    @Test
+    void testFailedSendKeepsSpooledRecord() throws Exception {
+        try (var spool = new DiskSpool(directory, 1024)) {
+            spool.append(5, bytes("left over"));
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            var producer = new ArrowProducer.AbstractArrowProducer(1024 * 1024, 2048 * 1024, Duration.ofHours(1),
+                    new Schema(List.of(new Field("ts", FieldType.nullable(new ArrowType.Utf8()), null))),
+                    Clock.systemUTC(), 0, 0, List.of()) {
+                @Override
+                public long getMaxInMemorySize() {
+                    return 0;
+                }
+
+                @Override
+                public long getMaxOnDiskSize() {
+                    return 1024;
+                }
+
+                @Override
+                protected void doSend(ProducerElement element) {
+                    throw new IllegalStateException("Server unavailable");
+                }
+            };
+            try {
+                producer.setSpool(spool);
+                var deadline = System.currentTimeMillis() + 2000;
+                while (producer.getDroppedElementCount() == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, producer.getDroppedElementCount());
+            } finally {
+                producer.close();
+            }
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            // The batch the producer gave up on is replayed by the next one
+            assertEquals(List.of(5L), spool.getRecovered().stream().map(DiskSpool.SpoolElement::getMinBatchId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testBatchIdsOutliveAcknowledgedRecords() throws Exception {
+        try (var spool = new DiskSpool(directory, 1024)) {
+            spool.append(0, bytes("zero")).acknowledge();
+            // Batches kept in memory reserve their id too
+            spool.reserveBatchId(DiskSpool.BATCH_ID_BLOCK + 10);
+        }
+        try (var spool = new DiskSpool(directory, 1024)) {
+            assertEquals(List.of(), spool.getRecovered());
+            assertEquals(2 * DiskSpool.BATCH_ID_BLOCK + 10, spool.getNextBatchId());
+        }
+    }
+
+    @Test
+    void testFailedAppendReleasesSpace() throws Exception {
+        var spool = new DiskSpool(directory, 1024);
+        var producer = new ArrowProducerTest.OnDemandProducer(0, 1024, Clock.systemUTC(), new CountDownLatch(0), new CountDownLatch(1));
+        try {
+            producer.setSpool(spool);
+            spool.close();
+            for (int i = 0; i < 3; i++) {
+                // A leaked reservation would make the second attempt fail with a full queue
+                var e = assertThrows(IllegalStateException.class, () -> producer.enqueue(new byte[600]));
+                assertEquals("The spool is closed", e.getMessage());
+            }
+        } finally {
+            producer.close();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(ArrowProducer.ProducerElement element) throws Exception {
+        try (InputStream in = element.read()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
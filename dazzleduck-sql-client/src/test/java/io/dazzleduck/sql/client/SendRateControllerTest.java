@@ -0,0 +1,77 @@
+package io.dazzleduck.sql.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendRateControllerTest {
+
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final SendRateController controller = new SendRateController(KB, 8 * KB, nanos::get);
+
+    @Test
+    void testNotPacedWithEnoughHeadroom() {
+        controller.onFeedback(MB, 10 * KB);
+        assertEquals(0, controller.rate());
+        assertEquals(0, controller.reserve(MB));
+        assertEquals(KB, controller.batchSize());
+    }
+
+    @Test
+    void testLowHeadroomPacesAtDrainRate() {
+        controller.reserve(2 * KB);
+        controller.onFeedback(3 * KB, 10 * KB);
+        assertEquals(10 * KB, controller.rate());
+        assertEquals(2 * KB, controller.batchSize());
+
+        // 5 KB at 10 KB/s waits half a second
+        assertEquals(500, controller.reserve(5 * KB));
+        nanos.addAndGet(SECOND / 2);
+        // The tokens of the first send are paid back, the second waits for its own
+        assertEquals(200, controller.reserve(2 * KB));
+    }
+
+    @Test
+    void testAdditiveIncreaseMultiplicativeDecrease() {
+        controller.onBackPressure();
+        assertEquals(KB, controller.rate());
+        controller.onFeedback(MB, 100 * KB);
+        assertEquals(9 * KB, controller.rate());
+        controller.onFeedback(MB, 100 * KB);
+        assertEquals(17 * KB, controller.rate());
+
+        controller.onBackPressure();
+        assertEquals(8 * KB + KB / 2, controller.rate());
+        assertEquals(4 * KB, controller.batchSize());
+    }
+
+    @Test
+    void testPacingStopsWellAboveDrainRate() {
+        controller.onFeedback(0, 8 * KB);
+        assertEquals(8 * KB, controller.rate());
+        controller.onBackPressure();
+        assertEquals(4 * KB, controller.rate());
+        assertEquals(4 * KB, controller.batchSize());
+
+        for (int i = 0; i < 3; i++) {
+            controller.onFeedback(MB, 8 * KB);
+            assertTrue(controller.rate() > 0);
+        }
+        controller.onFeedback(MB, 8 * KB);
+        assertEquals(0, controller.rate());
+        assertEquals(KB, controller.batchSize());
+        assertEquals(0, controller.reserve(MB));
+    }
+
+    @Test
+    void testUnknownHeadroomIsIgnored() {
+        controller.onFeedback(-1, 8 * KB);
+        assertEquals(0, controller.rate());
+    }
+}
@@ -31,6 +31,33 @@ public class ConfigConstants {
     public static final String FLIGHT_SQL_PORT_KEY = "flight_sql.port";
     public static final String FLIGHT_SQL_DATA_PROCESSOR_LOCATIONS_KEY = "flight_sql.data_processor_locations";
     public static final String FLIGHT_SQL_SERVICE_NAME_KEY = "flight_sql.service_name";
+    public static final String FLIGHT_SQL_SPLIT_SCHEDULER_KEY = "flight_sql.split_scheduler";
+    public static final String FLIGHT_SQL_MEMORY_KEY = "flight_sql.memory";
+    public static final String FLIGHT_SQL_PREPARED_STATEMENT_CACHE_KEY = "flight_sql.prepared_statement_cache";
+
+    // Split scheduler keys (for flight_sql.split_scheduler sub-config)
+    public static final String MAX_CONCURRENT_SPLITS_PER_PROCESSOR_KEY = "max_concurrent_splits_per_processor";
+    public static final String ASSIGNMENT_TTL_MS_KEY = "assignment_ttl_ms";
+    public static final String FAILURE_BACKOFF_MS_KEY = "failure_backoff_ms";
+    public static final String AUTHORIZED_REPORTERS_KEY = "authorized_reporters";
+    public static final String REPORT_LOAD_TO_KEY = "report_load_to";
+    public static final String ADVERTISED_LOCATION_KEY = "advertised_location";
+    public static final String REPORT_INTERVAL_MS_KEY = "report_interval_ms";
+
+    // Memory governor keys (for flight_sql.memory sub-config)
+    public static final String TOTAL_MEMORY_BYTES_KEY = "total_memory_bytes";
+    public static final String DUCKDB_MEMORY_FRACTION_KEY = "duckdb_memory_fraction";
+    public static final String DUCKDB_TEMP_DIRECTORY_KEY = "duckdb_temp_directory";
+    public static final String MAX_QUERY_MEMORY_BYTES_KEY = "max_query_memory_bytes";
+    public static final String MAX_IDENTITY_MEMORY_BYTES_KEY = "max_identity_memory_bytes";
+    public static final String THROTTLE_THRESHOLD_KEY = "throttle_threshold";
+    public static final String CANCEL_THRESHOLD_KEY = "cancel_threshold";
+    public static final String MAX_THROTTLE_MS_KEY = "max_throttle_ms";
+
+    // Prepared statement cache keys (for flight_sql.prepared_statement_cache sub-config)
+    public static final String MAX_ENTRIES_KEY = "max_entries";
+    public static final String MAX_IDLE_PER_ENTRY_KEY = "max_idle_per_entry";
+    public static final String IDLE_TTL_MS_KEY = "idle_ttl_ms";
 
     // Server configuration keys
     public static final String KEYSTORE_KEY = "keystore";
@@ -115,6 +142,7 @@ public class ConfigConstants {
 
     // Metrics specific
     public static final String STEP_INTERVAL_MS_KEY = "step_interval_ms";
+    public static final String TEMPORALITY_KEY = "temporality";
     public static final String INGESTION_CONFIG_PREFIX = "ingestion_task_factory_provider";
 
     public static String getWarehousePath(Config config) {
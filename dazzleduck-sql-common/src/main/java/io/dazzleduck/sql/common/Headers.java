@@ -29,11 +29,23 @@ public class Headers {
     public static final String HEADER_ACCESS = "access";
     public static final String HEADER_ACCESS_TYPE = "access-type";
     public static final String HEADER_SPLIT_SIZE = "x-dd-split-size";
+    // "true" when the client merges split results itself: it loads the rows of every endpoint as the partials table
+    // and runs the merge query carried in the flight info app metadata. Without it a GROUP BY or an ORDER BY ... LIMIT
+    // is planned as a single endpoint even when a split size is set.
+    public static final String HEADER_MERGE_PARTIALS = "x-dd-merge-partials";
     public static final String HEADER_DATA_PARTITION = "x-dd-partition";
     public static final String HEADER_DATA_FORMAT = "x-dd-format";
     public static final String HEADER_PRODUCER_ID = "x-dd-producer-id";
     public static final String HEADER_PRODUCER_BATCH_ID = "x-dd-producer-batch-id";
     public static final String HEADER_SORT_ORDER = "x-dd-sort-order";
+    // URL-encoded values of the partition columns, comma separated, when the producer split the batch by partition
+    public static final String HEADER_PARTITION_VALUES = "x-dd-partition-values";
+    // "true" when the producer already sorted the batch by HEADER_SORT_ORDER
+    public static final String HEADER_PRESORTED = "x-dd-presorted";
+    // Sent back with every ingest acknowledgement: bytes the ingestion queue can still accept before it pushes back,
+    // and the rate at which it writes pending bytes in bytes per second, absent until it has written any
+    public static final String HEADER_PENDING_WRITE_HEADROOM = "x-dd-pending-write-headroom";
+    public static final String HEADER_DRAIN_RATE = "x-dd-drain-rate";
 
     public static final String HEADER_DATA_LIMIT = "x-dd-limit";
     public static final String HEADER_DATA_OFFSET = "x-dd-offset";
@@ -52,9 +64,9 @@ public class Headers {
     // so that RedirectAuthorizer can forward it to the resolve endpoint
     public static final String HEADER_BEARER_TOKEN = "x-dd-bearer-token";
 
-    public static final Set<String> SUPPORTED_HEADERS = Set.of(HEADER_FETCH_SIZE, HEADER_DATABASE, HEADER_SCHEMA, HEADER_SPLIT_SIZE,
+    public static final Set<String> SUPPORTED_HEADERS = Set.of(HEADER_FETCH_SIZE, HEADER_DATABASE, HEADER_SCHEMA, HEADER_SPLIT_SIZE, HEADER_MERGE_PARTIALS,
             HEADER_DATA_PARTITION, HEADER_DATA_FORMAT, HEADER_PRODUCER_ID, HEADER_PRODUCER_BATCH_ID, HEADER_SORT_ORDER,
-            HEADER_APP_DATA_TRANSFORMATION, HEADER_PATH, HEADER_TABLE, HEADER_FUNCTION, HEADER_FILTER, HEADER_ACCESS,
+            HEADER_PARTITION_VALUES, HEADER_PRESORTED, HEADER_APP_DATA_TRANSFORMATION, HEADER_PATH, HEADER_TABLE, HEADER_FUNCTION, HEADER_FILTER, HEADER_ACCESS,
             HEADER_ACCESS_TYPE, HEADER_ARROW_COMPRESSION, QUERY_PARAMETER_INGESTION_QUEUE,
             HEADER_QUERY_TIMEOUT, HEADER_DATA_LIMIT, HEADER_DATA_OFFSET);
 
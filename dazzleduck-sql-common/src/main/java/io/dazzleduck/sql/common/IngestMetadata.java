@@ -0,0 +1,99 @@
+package io.dazzleduck.sql.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Application metadata of a streaming Flight ingest, encoded like a URL query string.
+ * <p>
+ * The producer attaches the options of a batch, keyed by their {@link Headers} names, to the last Arrow record batch
+ * of the batch. The server acknowledges each batch with its {@link Headers#HEADER_PRODUCER_BATCH_ID} and, when it
+ * was not ingested, the {@link #STATUS} code and {@link #MESSAGE} of the error.
+ * <p>
+ * Over HTTP, a streaming ingest body of type {@link #CONTENT_TYPE} is a sequence of frames, each the options of a
+ * batch written by {@link #writeFrame} followed by the Arrow stream of the batch. The server answers with one
+ * encoded acknowledgement per line.
+ */
+public final class IngestMetadata {
+
+    public static final String STATUS = "status";
+    public static final String MESSAGE = "message";
+    public static final String CONTENT_TYPE = "application/vnd.dazzleduck.ingest-stream";
+
+    // Bounds the options of a frame, so that a corrupt length does not allocate an arbitrary array
+    private static final int MAX_FRAME_OPTIONS_LENGTH = 1 << 20;
+
+    private IngestMetadata() {
+    }
+
+    public static byte[] encode(Map<String, String> values) {
+        var joiner = new StringJoiner("&");
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            joiner.add(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "="
+                    + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        return joiner.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static Map<String, String> decode(byte[] metadata) {
+        var values = new LinkedHashMap<String, String>();
+        var text = new String(metadata, StandardCharsets.UTF_8);
+        if (text.isEmpty()) {
+            return values;
+        }
+        for (String pair : text.split("&")) {
+            var separator = pair.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid ingest metadata: " + text);
+            }
+            values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    /**
+     * Writes the header of a frame: the length of the encoded options as a 4 byte big-endian int, then the options.
+     */
+    public static void writeFrame(Map<String, String> options, OutputStream out) throws IOException {
+        var bytes = encode(options);
+        var data = new DataOutputStream(out);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+        data.flush();
+    }
+
+    /**
+     * Reads the header of the next frame.
+     *
+     * @return the options of the frame, null at the end of the stream
+     */
+    public static Map<String, String> readFrame(InputStream in) throws IOException {
+        var first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        var data = new DataInputStream(in);
+        var length = (first << 24) | (data.readUnsignedByte() << 16) | data.readUnsignedShort();
+        if (length < 0 || length > MAX_FRAME_OPTIONS_LENGTH) {
+            throw new IOException("Invalid ingest frame length: " + length);
+        }
+        var bytes = new byte[length];
+        try {
+            data.readFully(bytes);
+        } catch (EOFException e) {
+            throw new IOException("Ingest stream ended inside a frame", e);
+        }
+        return decode(bytes);
+    }
+}
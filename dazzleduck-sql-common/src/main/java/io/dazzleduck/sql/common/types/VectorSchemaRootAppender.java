@@ -0,0 +1,304 @@
+package io.dazzleduck.sql.common.types;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseValueVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Appends rows straight into the vectors of a {@link VectorSchemaRoot}, so that rows do not have to be boxed into
+ * {@link JavaRow}s and buffered before they are written.
+ * <p>
+ * Columns of the current row are set with the typed setters and the row is completed with {@link #endRow()}.
+ * Columns not set by then are null. Vectors grow as needed and keep their capacity across {@link #reset()}, so an
+ * appender that is reused stops allocating once it has reached its working size. Capacity grown for a burst is given
+ * back once {@value #SHRINK_AFTER_RESETS} batches in a row used less than a {@value #SHRINK_RATIO}th of it.
+ */
+public class VectorSchemaRootAppender implements AutoCloseable {
+
+    static final int SHRINK_RATIO = 4;
+    static final int SHRINK_AFTER_RESETS = 8;
+
+    private final Schema schema;
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final FieldVector[] vectors;
+    private final boolean[] written;
+    private VectorSchemaRootWriter writer;
+    private byte[] scratch = new byte[256];
+    private int rowCount;
+    private final long initialBytes;
+    private int oversizedResets;
+
+    public VectorSchemaRootAppender(Schema schema, BufferAllocator allocator) {
+        this.schema = schema;
+        this.allocator = allocator.newChildAllocator("appender", 0, allocator.getLimit());
+        this.root = VectorSchemaRoot.create(schema, this.allocator);
+        this.root.allocateNew();
+        this.vectors = root.getFieldVectors().toArray(new FieldVector[0]);
+        this.written = new boolean[vectors.length];
+        this.initialBytes = this.allocator.getAllocatedMemory();
+    }
+
+    public VectorSchemaRootAppender setNull(int column) {
+        vectors[column].setNull(rowCount);
+        written[column] = true;
+        return this;
+    }
+
+    public VectorSchemaRootAppender setInt(int column, int value) {
+        var vector = vectors[column];
+        if (vector instanceof IntVector) {
+            ((IntVector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof DateDayVector) {
+            ((DateDayVector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof BigIntVector) {
+            ((BigIntVector) vector).setSafe(rowCount, value);
+        } else {
+            throw mismatch(column, "int");
+        }
+        written[column] = true;
+        return this;
+    }
+
+    /**
+     * Sets a 64-bit integer, a timestamp in the unit of the column or a date in milliseconds.
+     */
+    public VectorSchemaRootAppender setLong(int column, long value) {
+        var vector = vectors[column];
+        if (vector instanceof BigIntVector) {
+            ((BigIntVector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof TimeStampVector) {
+            ((TimeStampVector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof DateMilliVector) {
+            ((DateMilliVector) vector).setSafe(rowCount, value);
+        } else {
+            throw mismatch(column, "long");
+        }
+        written[column] = true;
+        return this;
+    }
+
+    public VectorSchemaRootAppender setDouble(int column, double value) {
+        var vector = vectors[column];
+        if (vector instanceof Float8Vector) {
+            ((Float8Vector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof Float4Vector) {
+            ((Float4Vector) vector).setSafe(rowCount, (float) value);
+        } else {
+            throw mismatch(column, "double");
+        }
+        written[column] = true;
+        return this;
+    }
+
+    public VectorSchemaRootAppender setBoolean(int column, boolean value) {
+        var vector = vectors[column];
+        if (!(vector instanceof BitVector)) {
+            throw mismatch(column, "boolean");
+        }
+        ((BitVector) vector).setSafe(rowCount, value ? 1 : 0);
+        written[column] = true;
+        return this;
+    }
+
+    /**
+     * Sets a string as UTF-8. ASCII strings are encoded into a reused buffer instead of a new array per value.
+     */
+    public VectorSchemaRootAppender setString(int column, String value) {
+        if (value == null) {
+            return setNull(column);
+        }
+        var vector = vectors[column];
+        if (!(vector instanceof VarCharVector)) {
+            throw mismatch(column, "string");
+        }
+        var length = encodeAscii(value);
+        if (length >= 0) {
+            ((VarCharVector) vector).setSafe(rowCount, scratch, 0, length);
+        } else {
+            ((VarCharVector) vector).setSafe(rowCount, value.getBytes(StandardCharsets.UTF_8));
+        }
+        written[column] = true;
+        return this;
+    }
+
+    public VectorSchemaRootAppender setBytes(int column, byte[] value) {
+        if (value == null) {
+            return setNull(column);
+        }
+        var vector = vectors[column];
+        if (vector instanceof VarBinaryVector) {
+            ((VarBinaryVector) vector).setSafe(rowCount, value);
+        } else if (vector instanceof VarCharVector) {
+            ((VarCharVector) vector).setSafe(rowCount, value);
+        } else {
+            throw mismatch(column, "bytes");
+        }
+        written[column] = true;
+        return this;
+    }
+
+    /**
+     * Sets a list of doubles, writing the elements straight into the child vector instead of boxing them.
+     */
+    public VectorSchemaRootAppender setDoubles(int column, double[] values) {
+        if (values == null) {
+            return setNull(column);
+        }
+        var vector = vectors[column];
+        if (!(vector instanceof ListVector) || !(((ListVector) vector).getDataVector() instanceof Float8Vector)) {
+            throw mismatch(column, "double list");
+        }
+        var list = (ListVector) vector;
+        var elements = (Float8Vector) list.getDataVector();
+        int offset = list.startNewValue(rowCount);
+        for (int i = 0; i < values.length; i++) {
+            elements.setSafe(offset + i, values[i]);
+        }
+        list.endValue(rowCount, values.length);
+        written[column] = true;
+        return this;
+    }
+
+    /**
+     * Sets a value the way {@link VectorSchemaRootWriter} writes it, for lists, maps and the other types without a
+     * typed setter.
+     */
+    public VectorSchemaRootAppender setObject(int column, Object value) {
+        writer().write(root, column, rowCount, value);
+        written[column] = true;
+        return this;
+    }
+
+    /**
+     * Completes the current row, setting the columns that were not set to null.
+     */
+    public void endRow() {
+        for (int i = 0; i < vectors.length; i++) {
+            if (!written[i]) {
+                vectors[i].setNull(rowCount);
+            }
+        }
+        Arrays.fill(written, false);
+        rowCount++;
+    }
+
+    /**
+     * Drops the values set on the current row. They are overwritten or nulled by the next row.
+     */
+    public void abortRow() {
+        Arrays.fill(written, false);
+    }
+
+    /**
+     * Appends a complete row.
+     */
+    public void appendRow(JavaRow row) {
+        writer().writeRow(root, rowCount, row);
+        Arrays.fill(written, false);
+        rowCount++;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the bytes of the Arrow buffers holding the rows appended so far, which is what they take in an IPC
+     * batch before compression
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (var vector : vectors) {
+            size += vector.getBufferSizeFor(rowCount);
+        }
+        return size;
+    }
+
+    /**
+     * Sets the row count of the root so that it can be unloaded or written. Call {@link #reset()} before appending
+     * again.
+     */
+    public VectorSchemaRoot finish() {
+        root.setRowCount(rowCount);
+        return root;
+    }
+
+    /**
+     * Removes all rows, keeping the allocated buffers unless they have been oversized for the last batches.
+     */
+    public void reset() {
+        var used = getSizeInBytes();
+        var allocated = allocator.getAllocatedMemory();
+        if (allocated > Math.max(initialBytes, SHRINK_RATIO * used)) {
+            oversizedResets++;
+        } else {
+            oversizedResets = 0;
+        }
+        if (oversizedResets >= SHRINK_AFTER_RESETS) {
+            oversizedResets = 0;
+            root.clear();
+            // Vectors otherwise allocate the capacity they last grew to
+            for (var vector : vectors) {
+                vector.setInitialCapacity(BaseValueVector.INITIAL_VALUE_ALLOCATION);
+            }
+            root.allocateNew();
+        } else {
+            for (var vector : vectors) {
+                vector.reset();
+            }
+        }
+        root.setRowCount(0);
+        Arrays.fill(written, false);
+        rowCount = 0;
+    }
+
+    @Override
+    public void close() {
+        root.close();
+        allocator.close();
+    }
+
+    private VectorSchemaRootWriter writer() {
+        if (writer == null) {
+            writer = VectorSchemaRootWriter.of(schema);
+        }
+        return writer;
+    }
+
+    private int encodeAscii(String value) {
+        var length = value.length();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c >= 0x80) {
+                return -1;
+            }
+            scratch[i] = (byte) c;
+        }
+        return length;
+    }
+
+    private IllegalArgumentException mismatch(int column, String type) {
+        return new IllegalArgumentException("Cannot set " + type + " on column " + column + " of type "
+                + schema.getFields().get(column).getType());
+    }
+}
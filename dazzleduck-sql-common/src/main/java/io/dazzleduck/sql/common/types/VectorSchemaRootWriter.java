@@ -26,17 +26,32 @@ public class VectorSchemaRootWriter {
     public VectorSchemaRoot writeToVector(JavaRow[] rows, VectorSchemaRoot root) {
         root.allocateNew();
         for (int i = 0; i < rows.length; i++) {
-            for (int j = 0; j < functions.length; j++) {
-                VectorWriter function = functions[j];
-                org.apache.arrow.vector.FieldVector vector = root.getVector(j);
-                //noinspection unchecked
-                function.write(vector, i, rows[i].get(j));
-            }
+            writeRow(root, i, rows[i]);
         }
         root.setRowCount(rows.length);
         return root;
     }
 
+    /**
+     * Writes every column of a row at {@code index}, growing the vectors when needed. The row count of the root
+     * is left to the caller.
+     */
+    public void writeRow(VectorSchemaRoot root, int index, JavaRow row) {
+        for (int j = 0; j < functions.length; j++) {
+            write(root, j, index, row.get(j));
+        }
+    }
+
+    /**
+     * Writes a single value of column {@code column} at {@code index}, growing the vector when needed.
+     */
+    public void write(VectorSchemaRoot root, int column, int index, Object value) {
+        VectorWriter function = functions[column];
+        org.apache.arrow.vector.FieldVector vector = root.getVector(column);
+        //noinspection unchecked
+        function.write(vector, index, value);
+    }
+
     public static VectorSchemaRootWriter of(Schema schema) {
         List<VectorWriter<?>> listOfFunctions = new ArrayList<>();
         for (Field field : schema.getFields()) {
@@ -0,0 +1,161 @@
+package io.dazzleduck.sql.common.types;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorSchemaRootAppenderTest {
+
+    private static final Schema SCHEMA = new Schema(List.of(
+            new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("name", FieldType.nullable(new ArrowType.Utf8()), null),
+            new Field("value", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("ts", FieldType.nullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)), null),
+            new Field("flag", FieldType.nullable(new ArrowType.Bool()), null),
+            new Field("tags", FieldType.nullable(new ArrowType.List()),
+                    List.of(new Field("item", FieldType.nullable(new ArrowType.Utf8()), null)))));
+
+    @Test
+    public void testTypedAppend() {
+        try (var allocator = new RootAllocator();
+             var appender = new VectorSchemaRootAppender(SCHEMA, allocator)) {
+            appender.setLong(0, 1).setString(1, "one").setDouble(2, 1.5).setLong(3, 1000)
+                    .setBoolean(4, true).setObject(5, List.of("a", "b"));
+            appender.endRow();
+            // Unset columns are null
+            appender.setLong(0, 2).setString(1, "zwei ü");
+            appender.endRow();
+            appender.appendRow(new JavaRow(new Object[]{3L, null, 3.0, null, false, null}));
+
+            var root = appender.finish();
+            assertEquals(3, root.getRowCount());
+            var ids = (BigIntVector) root.getVector(0);
+            var names = (VarCharVector) root.getVector(1);
+            assertEquals(List.of(1L, 2L, 3L), List.of(ids.get(0), ids.get(1), ids.get(2)));
+            assertEquals("one", names.getObject(0).toString());
+            assertEquals("zwei ü", names.getObject(1).toString());
+            assertTrue(names.isNull(2));
+            assertEquals(1.5, ((Float8Vector) root.getVector(2)).get(0));
+            assertEquals(1000, ((TimeStampMilliVector) root.getVector(3)).get(0));
+            assertTrue(root.getVector(3).isNull(1));
+            assertEquals(1, ((BitVector) root.getVector(4)).get(0));
+            assertEquals(List.of("a", "b"), ((ListVector) root.getVector(5)).getObject(0).stream()
+                    .map(Object::toString).collect(Collectors.toList()));
+            assertTrue(root.getVector(5).isNull(1));
+        }
+    }
+
+    @Test
+    public void testDoubleLists() {
+        var schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("values", FieldType.nullable(new ArrowType.List()), List.of(new Field("item",
+                        FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null)))));
+        try (var allocator = new RootAllocator();
+             var appender = new VectorSchemaRootAppender(schema, allocator)) {
+            appender.setLong(0, 1).setDoubles(1, new double[]{0.5, 1.5});
+            appender.endRow();
+            appender.setLong(0, 2);
+            appender.endRow();
+            appender.setDoubles(1, new double[0]);
+            appender.endRow();
+            appender.setDoubles(1, new double[]{2.5});
+            appender.endRow();
+            assertThrows(IllegalArgumentException.class, () -> appender.setDoubles(0, new double[]{1}));
+
+            var values = (ListVector) appender.finish().getVector(1);
+            assertEquals(List.of(0.5, 1.5), values.getObject(0));
+            assertTrue(values.isNull(1));
+            assertEquals(List.of(), values.getObject(2));
+            assertEquals(List.of(2.5), values.getObject(3));
+        }
+    }
+
+    @Test
+    public void testSizeAndReset() {
+        var schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        try (var allocator = new RootAllocator();
+             var appender = new VectorSchemaRootAppender(schema, allocator)) {
+            assertEquals(0, appender.getSizeInBytes());
+            for (int i = 0; i < 16; i++) {
+                appender.setLong(0, i).setString(1, "abcd");
+                appender.endRow();
+            }
+            // 16 longs, 17 offsets, 16 * 4 characters and one validity byte per 8 rows of each column
+            assertEquals(16 * 8 + 17 * 4 + 16 * 4 + 2 + 2, appender.getSizeInBytes());
+            var allocated = allocator.getAllocatedMemory();
+            appender.reset();
+            assertEquals(0, appender.getRowCount());
+            assertEquals(0, appender.getSizeInBytes());
+            assertEquals(allocated, allocator.getAllocatedMemory());
+        }
+    }
+
+    @Test
+    public void testShrinksAfterBurst() {
+        var schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        try (var allocator = new RootAllocator();
+             var appender = new VectorSchemaRootAppender(schema, allocator)) {
+            var initial = allocator.getAllocatedMemory();
+            for (int i = 0; i < 100_000; i++) {
+                appender.setLong(0, i).setString(1, "abcdefgh");
+                appender.endRow();
+            }
+            appender.reset();
+            var peak = allocator.getAllocatedMemory();
+            assertTrue(peak > initial * VectorSchemaRootAppender.SHRINK_RATIO);
+            for (int i = 0; i < VectorSchemaRootAppender.SHRINK_AFTER_RESETS - 1; i++) {
+                appender.setLong(0, i);
+                appender.endRow();
+                appender.reset();
+            }
+            assertEquals(peak, allocator.getAllocatedMemory());
+            appender.setLong(0, 1).setString(1, "a");
+            appender.endRow();
+            appender.reset();
+            assertTrue(allocator.getAllocatedMemory() < peak / VectorSchemaRootAppender.SHRINK_RATIO);
+            appender.setLong(0, 1).setString(1, "after");
+            appender.endRow();
+            assertEquals("after", appender.finish().getVector(1).getObject(0).toString());
+        }
+    }
+
+    @Test
+    public void testAbortedRowIsNotVisible() {
+        var schema = new Schema(List.of(
+                new Field("id", FieldType.nullable(new ArrowType.Int(64, true)), null),
+                new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+        try (var allocator = new RootAllocator();
+             var appender = new VectorSchemaRootAppender(schema, allocator)) {
+            appender.setLong(0, 1).setString(1, "dropped");
+            assertThrows(IllegalArgumentException.class, () -> appender.setString(0, "not a long"));
+            appender.abortRow();
+            appender.setString(1, "kept");
+            appender.endRow();
+            var root = appender.finish();
+            assertEquals(1, root.getRowCount());
+            assertTrue(root.getVector(0).isNull(0));
+            assertEquals("kept", root.getVector(1).getObject(0).toString());
+        }
+    }
+}
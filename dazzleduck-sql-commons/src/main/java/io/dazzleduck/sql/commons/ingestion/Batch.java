@@ -11,5 +11,12 @@ public record Batch<T>(String[] sortOrder,
                        long producerBatchId,
                        long totalSize,
                        String format,
-                       Instant receivedTime) {
+                       Instant receivedTime,
+                       String[] partitionValues,
+                       boolean presorted) {
+
+    public Batch(String[] sortOrder, String[] partitionBy, T record, String producerId, long producerBatchId,
+                 long totalSize, String format, Instant receivedTime) {
+        this(sortOrder, partitionBy, record, producerId, producerBatchId, totalSize, format, receivedTime, null, false);
+    }
 }
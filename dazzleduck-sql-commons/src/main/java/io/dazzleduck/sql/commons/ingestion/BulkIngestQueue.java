@@ -1,7 +1,16 @@
 package io.dazzleduck.sql.commons.ingestion;
 
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
 import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -25,8 +34,13 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
     public static Path writeAndValidateTempArrowFile(Path tempDir, ArrowReader reader) throws IOException {
         String uniqueFileName = "ingestion_" + UUID.randomUUID() + ".arrow";
         Path tempFilePath = tempDir.resolve(uniqueFileName);
+        var root = reader.getVectorSchemaRoot();
+        if (root.getSchema().getFields().stream().anyMatch(f -> f.getDictionary() != null)) {
+            writeDecoded(tempFilePath, reader);
+            return tempFilePath;
+        }
         try (FileOutputStream fos = new FileOutputStream(String.valueOf(tempFilePath));
-             ArrowStreamWriter writer = new ArrowStreamWriter(reader.getVectorSchemaRoot(), null, Channels.newChannel(fos))) {
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(fos))) {
             while (reader.loadNextBatch()){
                 writer.writeBatch();
             }
@@ -35,6 +49,56 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
         return tempFilePath;
     }
 
+    /**
+     * Writes the batches of {@code reader} with its dictionary encoded columns decoded to their values, so that the
+     * file is read like any other. Parquet applies its own dictionary encoding to the values when they are written.
+     */
+    private static void writeDecoded(Path path, ArrowReader reader) throws IOException {
+        var source = reader.getVectorSchemaRoot();
+        var allocator = source.getFieldVectors().get(0).getAllocator();
+        var fields = new ArrayList<Field>();
+        for (Field field : source.getSchema().getFields()) {
+            var encoding = field.getDictionary();
+            if (encoding == null) {
+                fields.add(field);
+            } else {
+                var values = reader.lookup(encoding.getId()).getVector().getField();
+                fields.add(new Field(field.getName(),
+                        new FieldType(field.isNullable(), values.getType(), null, field.getMetadata()), values.getChildren()));
+            }
+        }
+        var schema = new Schema(fields);
+        try (FileOutputStream fos = new FileOutputStream(String.valueOf(path));
+             VectorSchemaRoot target = VectorSchemaRoot.create(schema, allocator);
+             ArrowStreamWriter writer = new ArrowStreamWriter(target, null, Channels.newChannel(fos))) {
+            writer.start();
+            while (reader.loadNextBatch()) {
+                var vectors = new ArrayList<FieldVector>();
+                var decoded = new ArrayList<FieldVector>();
+                try {
+                    for (FieldVector vector : source.getFieldVectors()) {
+                        var encoding = vector.getField().getDictionary();
+                        if (encoding == null) {
+                            vectors.add(vector);
+                        } else {
+                            var values = (FieldVector) DictionaryEncoder.decode(vector, reader.lookup(encoding.getId()));
+                            decoded.add(values);
+                            vectors.add(values);
+                        }
+                    }
+                    var batch = new VectorSchemaRoot(schema.getFields(), vectors, source.getRowCount());
+                    try (ArrowRecordBatch recordBatch = new VectorUnloader(batch).getRecordBatch()) {
+                        new VectorLoader(target).load(recordBatch);
+                        writer.writeBatch();
+                    }
+                } finally {
+                    decoded.forEach(FieldVector::close);
+                }
+            }
+            writer.end();
+        }
+    }
+
     /**
      * Creates a new combined bucket from multiple buckets.
      * The combined bucket contains all batches and futures from the source buckets.
@@ -227,6 +291,24 @@ public abstract class BulkIngestQueue<T, R> implements BulkIngestQueueInterface<
         return acceptedBytes.get() - totalWrite.get();
     }
 
+    /**
+     * @return bytes which can still be accepted before {@link #add} fails with {@link PendingWriteExceededException}
+     */
+    public long pendingWriteHeadroom() {
+        return Math.max(0, maxPendingWrite - pendingWrite());
+    }
+
+    /**
+     * @return the rate at which pending bytes have been written, in bytes per second, or 0 before any were written
+     */
+    public long drainRate() {
+        long writingTimeMs = timeSpentWriting.get();
+        if (writingTimeMs == 0) {
+            return 0;
+        }
+        return (long) ((double) totalWrite.get() / writingTimeMs * 1000);
+    }
+
     /**
      * Calculates an estimated retry time based on the current ingestion rate.
      * Returns the time in seconds it would take to drain the current pending bytes.
@@ -1,6 +1,7 @@
 package io.dazzleduck.sql.commons.ingestion;
 
 import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.util.HeaderUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +13,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResult> {
@@ -30,6 +32,12 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
     private final IngestionHandler postIngestionHandler;
     private final String applicationId;
     private final String inputFormat;
+    private final boolean keepInputOnFailure;
+
+    /**
+     * Partition column names and values that can be used as a directory name as they are.
+     */
+    private static final Pattern SAFE_PATH_SEGMENT = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]*");
 
     /**
      * @param applicationId    producer identifier
@@ -58,29 +66,55 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                                  IngestionHandler postIngestionHandler,
                                  ScheduledExecutorService executorService,
                                  Clock clock) {
+        this(applicationId, inputFormat, outputPath, ingestionQueue, minBucketSize, maxBucketSize, maxBatches,
+                maxPendingWrite, maxDelay, postIngestionHandler, executorService, clock, false);
+    }
+
+    /**
+     * @param keepInputOnFailure keep the input files of a failed write, for a caller that queues them again, rather
+     *                           than delete them whatever the outcome
+     */
+    public ParquetIngestionQueue(String applicationId,
+                                 String inputFormat,
+                                 String outputPath,
+                                 String ingestionQueue,
+                                 long minBucketSize,
+                                 long maxBucketSize,
+                                 int maxBatches,
+                                 long maxPendingWrite,
+                                 Duration maxDelay,
+                                 IngestionHandler postIngestionHandler,
+                                 ScheduledExecutorService executorService,
+                                 Clock clock,
+                                 boolean keepInputOnFailure) {
         super(ingestionQueue, minBucketSize, maxBucketSize, maxBatches, maxPendingWrite, maxDelay, executorService, clock);
         this.outputPath = outputPath;
         this.queueId = ingestionQueue;
         this.postIngestionHandler = postIngestionHandler;
         this.applicationId = applicationId;
         this.inputFormat = inputFormat;
+        this.keepInputOnFailure = keepInputOnFailure;
     }
 
     @Override
     public void write(WriteTask<String, IngestionResult> writeTask) {
         logger.debug("Ingestion queue '{}' received batch with {} files, outputPath={}",
                 queueId, writeTask.bucket().batches().size(), outputPath);
+        String sql = null;
         try {
-            IngestionResult ingestionResult = tryWrite(writeTask);
+            var plan = planWrite(writeTask);
+            sql = plan.sql();
+            IngestionResult ingestionResult = tryWrite(writeTask, plan);
             var postIngestionTask = postIngestionHandler.createPostIngestionTask(ingestionResult);
             postIngestionTask.execute();
             writeTask.bucket().futures().forEach(action -> action.complete(ingestionResult));
+            cleanupInputFiles(writeTask);
         } catch (Exception e) {
-            var sql = constructWriteQuery(writeTask);
             logger.atError().setCause(e).log("Failed to write to queue {} sql {}", queueId, sql);
+            if (!keepInputOnFailure) {
+                cleanupInputFiles(writeTask);
+            }
             writeTask.bucket().futures().forEach(action -> action.completeExceptionally(e));
-        } finally {
-            cleanupInputFiles(writeTask);
         }
     }
 
@@ -111,8 +145,128 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         }
     }
 
-    private String constructWriteQuery(WriteTask<String, IngestionResult> writeTask) {
+    /**
+     * Statements writing a bucket, and the partition directories they write files into directly.
+     */
+    private record WritePlan(List<String> statements, List<String> directories) {
+        String sql() {
+            return String.join("\n", statements);
+        }
+    }
+
+    /**
+     * Plans the writes of a bucket. Batches that a producer already split by partition are written straight into
+     * their partition directory, without {@code PARTITION_BY}, and without sorting when the producer sorted them
+     * too. Their files then hold one sorted run per batch. All other batches are written by a single COPY that
+     * partitions and sorts them, and so are the batches whose rows do not all hold the partition values the
+     * producer declared.
+     */
+    private WritePlan planWrite(WriteTask<String, IngestionResult> writeTask) {
         var batches = writeTask.bucket().batches();
+        // Fetch transformation fresh from the handler on every write so view-based
+        // and handler-refreshed transformations are always current without caching.
+        String transformation = postIngestionHandler.getTransformation(queueId);
+        boolean transformed = transformation != null && !transformation.isBlank();
+        var byDirectory = new LinkedHashMap<String, List<Batch<String>>>();
+        var remaining = new ArrayList<Batch<String>>();
+        for (var batch : batches) {
+            // A transformation may change the partition columns, so their values are only known without one
+            var directory = transformed ? null : partitionDirectory(batch);
+            if (directory == null) {
+                remaining.add(batch);
+            } else {
+                byDirectory.computeIfAbsent(directory, k -> new ArrayList<>()).add(batch);
+            }
+        }
+        for (var it = byDirectory.entrySet().iterator(); it.hasNext(); ) {
+            var partitionBatches = it.next().getValue();
+            if (!matchesPartitionValues(partitionBatches)) {
+                remaining.addAll(partitionBatches);
+                it.remove();
+            }
+        }
+        var statements = new ArrayList<String>();
+        byDirectory.forEach((directory, partitionBatches) ->
+                statements.add(constructPartitionWriteQuery(directory, partitionBatches)));
+        if (!remaining.isEmpty()) {
+            statements.add(constructWriteQuery(remaining, transformation));
+        }
+        return new WritePlan(statements, List.copyOf(byDirectory.keySet()));
+    }
+
+    /**
+     * @return the hive partition directory of a batch split by partition by its producer, or null when the batch
+     * was not split or a value cannot be used as a directory name as it is
+     */
+    private static String partitionDirectory(Batch<String> batch) {
+        var names = batch.partitionBy();
+        var values = batch.partitionValues();
+        if (names == null || values == null || names.length == 0 || names.length != values.length) {
+            return null;
+        }
+        var directory = new StringJoiner("/");
+        for (int i = 0; i < names.length; i++) {
+            var name = names[i] == null ? null : names[i].trim();
+            if (name == null || !SAFE_PATH_SEGMENT.matcher(name).matches()
+                    || values[i] == null || !SAFE_PATH_SEGMENT.matcher(values[i]).matches()) {
+                return null;
+            }
+            directory.add(name + "=" + values[i]);
+        }
+        return directory.toString();
+    }
+
+    /**
+     * Checks the partition values a producer declared against the rows, since they decide the directory the rows
+     * end up in and the partition columns are not written to the files.
+     *
+     * @return true when every row holds the declared values, false when one does not or the check fails
+     */
+    private boolean matchesPartitionValues(List<Batch<String>> batches) {
+        var files = batches.stream().map(Batch::record).map("'%s'"::formatted).collect(Collectors.joining(","));
+        var names = batches.get(0).partitionBy();
+        var values = batches.get(0).partitionValues();
+        var condition = new StringJoiner(" AND ");
+        for (int i = 0; i < names.length; i++) {
+            condition.add("CAST(%s AS VARCHAR) = '%s'".formatted(HeaderUtils.quoteIdentifier(names[i].trim()),
+                    values[i].replace("'", "''")));
+        }
+        var sql = "SELECT count(*) FROM read_%s([%s]) WHERE (%s) IS NOT TRUE".formatted(inputFormat, files, condition);
+        try {
+            var mismatched = ConnectionPool.collectFirst(sql, Long.class);
+            if (mismatched != 0) {
+                logger.warn("Queue {}: {} rows do not match the declared partition {}, partitioning them on write",
+                        queueId, mismatched, Arrays.toString(values));
+            }
+            return mismatched == 0;
+        } catch (Exception e) {
+            logger.atWarn().setCause(e).log("Queue {}: failed to check the declared partition {}", queueId,
+                    Arrays.toString(values));
+            return false;
+        }
+    }
+
+    private static boolean allPresorted(List<Batch<String>> batches) {
+        return batches.stream().allMatch(Batch::presorted);
+    }
+
+    private String constructPartitionWriteQuery(String directory, List<Batch<String>> batches) {
+        var arrowFiles = batches.stream().map(Batch::record).map("'%s'"::formatted).collect(Collectors.joining(","));
+        // Like PARTITION_BY, the partition columns are only in the directory names
+        var excluded = Arrays.stream(batches.get(0).partitionBy()).map(String::trim)
+                .map(HeaderUtils::quoteIdentifier).collect(Collectors.joining(","));
+        String sortOrderClause = allPresorted(batches) ? "" : getClause(batches.get(0).sortOrder(), "ORDER BY %s ");
+        var outputFormat = batches.get(batches.size() - 1).format();
+        var fullFilePath = this.outputPath + "/" + directory + "/dd_" + UUID.randomUUID() + "." + outputFormat;
+        return """
+                COPY
+                    (SELECT * EXCLUDE (%s) FROM read_%s([%s]) %s)
+                    TO '%s'
+                    (FORMAT %s, RETURN_FILES);
+                """.formatted(excluded, this.inputFormat, arrowFiles, sortOrderClause, fullFilePath, outputFormat);
+    }
+
+    private String constructWriteQuery(List<Batch<String>> batches, String transformation) {
         // All Arrow files
         var arrowFiles = batches.stream().map(Batch::record).map("'%s'"::formatted).collect(Collectors.joining(","));
         String[] batchPartitionBy = batches.get(0).partitionBy();
@@ -120,7 +274,8 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                 ? batchPartitionBy
                 : postIngestionHandler.getPartitionBy(queueId);
         String partitionByClause = getClause(effectivePartitionBy, ", PARTITION_BY(%s)");
-        String sortOrderClause = getClause(batches.get(0).sortOrder(), "ORDER BY %s ");
+        // Batches sorted by their producer are not sorted again
+        String sortOrderClause = allPresorted(batches) ? "" : getClause(batches.get(0).sortOrder(), "ORDER BY %s ");
         // Last format
         var outputFormat = batches.isEmpty() ? "" : batches.get(batches.size() - 1).format();
         String fullFilePath;
@@ -134,9 +289,6 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         // Inner SQL reads from the temp Arrow files
         var innerSql = "SELECT * FROM read_%s([%s]) %s".formatted(this.inputFormat, arrowFiles, sortOrderClause);
 
-        // Fetch transformation fresh from the handler on every write so view-based
-        // and handler-refreshed transformations are always current without caching.
-        String transformation = postIngestionHandler.getTransformation(queueId);
         var querySql = (transformation != null && !transformation.isBlank())
                 ? "WITH __this AS (%s) %s".formatted(innerSql, transformation)
                 : innerSql;
@@ -152,9 +304,15 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
         return sql;
     }
 
-    private IngestionResult tryWrite(WriteTask<String, IngestionResult> writeTask) throws Exception {
-        var sql = constructWriteQuery(writeTask);
+    private IngestionResult tryWrite(WriteTask<String, IngestionResult> writeTask, WritePlan plan) throws Exception {
+        var sql = plan.sql();
         logger.debug("Executing COPY SQL: {}", sql);
+        if (!outputPath.contains("://")) {
+            // COPY to a single file does not create its directory
+            for (var directory : plan.directories()) {
+                Files.createDirectories(Path.of(outputPath, directory));
+            }
+        }
         List<String> files = new ArrayList<>();
         long count = 0;
         try (var conn = ConnectionPool.getConnection();
@@ -174,16 +332,18 @@ public class ParquetIngestionQueue extends BulkIngestQueue<String, IngestionResu
                 throw new IllegalStateException("Write task was cancelled");
             }
 
-            // Execute the query using our statement so the cancel hook works
-            stmt.execute(sql);
-            try (var rs = stmt.getResultSet()) {
-                while (rs.next()) {
-                    var rowCount = rs.getLong("count");
-                    var rowFilesArray = rs.getArray("files");
-                    count += rowCount;
-                    if (rowFilesArray != null) {
-                        var rowFiles = (Object[]) rowFilesArray.getArray();
-                        files.addAll(Arrays.stream(rowFiles).map(Object::toString).toList());
+            // Execute the queries using our statement so the cancel hook works
+            for (var statement : plan.statements()) {
+                stmt.execute(statement);
+                try (var rs = stmt.getResultSet()) {
+                    while (rs.next()) {
+                        var rowCount = rs.getLong("count");
+                        var rowFilesArray = rs.getArray("files");
+                        count += rowCount;
+                        if (rowFilesArray != null) {
+                            var rowFiles = (Object[]) rowFilesArray.getArray();
+                            files.addAll(Arrays.stream(rowFiles).map(Object::toString).toList());
+                        }
                     }
                 }
             }
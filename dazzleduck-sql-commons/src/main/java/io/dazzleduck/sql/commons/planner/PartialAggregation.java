@@ -0,0 +1,283 @@
+package io.dazzleduck.sql.commons.planner;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.ExpressionFactory;
+import io.dazzleduck.sql.commons.Transformations;
+import org.apache.arrow.c.ArrowArrayStream;
+import org.apache.arrow.c.Data;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.util.AutoCloseables;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.duckdb.DuckDBConnection;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static io.dazzleduck.sql.commons.ExpressionConstants.*;
+
+/**
+ * Rewrite of a GROUP BY query into a partial aggregation that runs on every split and a merge query that
+ * combines the partial results once they are loaded with {@link #loadPartials}.
+ * <p>
+ * Only a single SELECT over one table or path is rewritten, where every select item is either one of the group
+ * expressions or a top level, non DISTINCT, unfiltered {@code count}, {@code sum}, {@code min}, {@code max} or
+ * {@code avg}. ORDER BY and LIMIT move to the merge query. Anything else, including HAVING, QUALIFY, GROUPING SETS,
+ * SELECT DISTINCT and {@code approx_count_distinct}, whose HyperLogLog state DuckDB does not expose, is not
+ * decomposable and {@link #of(JsonNode)} returns null so that the query is planned as before.
+ * <p>
+ * The partial query keeps the original FROM and WHERE and projects the group expressions as {@code _g<n>} and the
+ * aggregate states as {@code _a<n>}. {@code avg} is carried as a sum and a count.
+ *
+ * @param partialTree tree of the partial query, to be split with {@link SplitPlanner#getSplitTreeAndSize}
+ * @param mergeSql    query over {@link #PARTIALS_TABLE} producing the result of the original query
+ */
+public record PartialAggregation(JsonNode partialTree, String mergeSql) {
+
+    public static final String PARTIALS_TABLE = "__partials";
+
+    private static final String COUNT_STAR = "count_star";
+
+    private static final Set<String> DECOMPOSABLE =
+            Set.of(COUNT_STAR, "count", "sum", "min", "max", "avg");
+
+    private static final Predicate<JsonNode> IS_POSITION = node ->
+            Transformations.IS_CONSTANT.apply(node)
+                    && node.get(FIELD_VALUE).get(FIELD_TYPE).get(FIELD_ID).asText().matches("INTEGER|BIGINT");
+
+    /**
+     * @return the rewrite, or null when the query is not a decomposable aggregation
+     */
+    public static PartialAggregation of(JsonNode tree) throws SQLException, JsonProcessingException {
+        var statements = tree.get(FIELD_STATEMENTS);
+        if (statements == null || statements.size() != 1) {
+            return null;
+        }
+        var select = Transformations.getFirstStatementNode(tree);
+        if (!SELECT_NODE_TYPE.equals(select.path(FIELD_TYPE).asText())
+                || !"STANDARD_HANDLING".equals(select.path("aggregate_handling").asText())
+                || !isNull(select.get("having"))
+                || !isNull(select.get("qualify"))
+                || !isNull(select.get("sample"))
+                || select.path("group_sets").size() > 1
+                || !select.path("cte_map").path("map").isEmpty()) {
+            return null;
+        }
+        var selectList = select.get("select_list");
+        var groups = new ArrayList<JsonNode>();
+        var groupKeys = new ArrayList<JsonNode>();
+        for (var group : select.get("group_expressions")) {
+            if (IS_POSITION.test(group)) {
+                var position = group.get(FIELD_VALUE).get(FIELD_VALUE).asInt();
+                if (position < 1 || position > selectList.size()) {
+                    return null;
+                }
+                group = selectList.get(position - 1);
+            }
+            groups.add(group);
+            groupKeys.add(comparable(group));
+        }
+
+        var partialSelect = new ArrayNode(JsonNodeFactory.instance);
+        for (int i = 0; i < groups.size(); i++) {
+            partialSelect.add(withAlias(groups.get(i), "_g" + i));
+        }
+        var mergeItems = new ArrayList<String>();
+        var outputNames = new ArrayList<String>();
+        var hasAggregate = false;
+        for (int i = 0; i < selectList.size(); i++) {
+            var item = selectList.get(i);
+            var name = quote(outputName(item));
+            outputNames.add(name);
+            var groupIndex = groupKeys.indexOf(comparable(item));
+            if (groupIndex >= 0) {
+                mergeItems.add(quote("_g" + groupIndex) + " AS " + name);
+                continue;
+            }
+            if (!isDecomposable(item)) {
+                return null;
+            }
+            hasAggregate = true;
+            var state = "_a" + i;
+            var function = item.get(FIELD_FUNCTION_NAME).asText();
+            var children = (ArrayNode) item.get(FIELD_CHILDREN);
+            switch (function) {
+                case COUNT_STAR, "count" -> {
+                    partialSelect.add(withAlias(item, state));
+                    mergeItems.add("coalesce(CAST(sum(%s) AS BIGINT), 0) AS %s".formatted(quote(state), name));
+                }
+                case "sum", "min", "max" -> {
+                    partialSelect.add(withAlias(item, state));
+                    mergeItems.add("%s(%s) AS %s".formatted(function, quote(state), name));
+                }
+                case "avg" -> {
+                    partialSelect.add(withAlias(aggregate("sum", children), state + "_sum"));
+                    partialSelect.add(withAlias(aggregate("count", children), state + "_count"));
+                    mergeItems.add("CAST(sum(%s) AS DOUBLE) / sum(%s) AS %s"
+                            .formatted(quote(state + "_sum"), quote(state + "_count"), name));
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        if (!hasAggregate && groups.isEmpty()) {
+            return null;
+        }
+
+        var modifiers = (ArrayNode) select.get(FIELD_MODIFIERS);
+        for (var modifier : modifiers) {
+            var type = modifier.get(FIELD_TYPE).asText();
+            if (type.equals(TYPE_ORDER_MODIFIER)) {
+                for (var order : modifier.get(FIELD_ORDERS)) {
+                    var expression = order.get("expression");
+                    if (!IS_POSITION.test(expression) && !(Transformations.IS_REFERENCE.apply(expression)
+                            && expression.get(FIELD_COLUMN_NAMES).size() == 1
+                            && outputNames.contains(quote(expression.get(FIELD_COLUMN_NAMES).get(0).asText())))) {
+                        return null;
+                    }
+                }
+            } else if (!type.equals(LIMIT_MODIFIER_TYPE)) {
+                return null;
+            }
+        }
+
+        var partialTree = tree.deepCopy();
+        var partial = (ObjectNode) Transformations.getFirstStatementNode(partialTree);
+        partial.set("select_list", partialSelect);
+        var partialGroups = new ArrayNode(JsonNodeFactory.instance);
+        groups.forEach(g -> partialGroups.add(withAlias(g, "")));
+        partial.set("group_expressions", partialGroups);
+        partial.putArray(FIELD_MODIFIERS);
+
+        var inner = "SELECT %s FROM %s".formatted(String.join(", ", mergeItems), PARTIALS_TABLE);
+        if (!groups.isEmpty()) {
+            var groupBy = new ArrayList<String>();
+            for (int i = 0; i < groups.size(); i++) {
+                groupBy.add(quote("_g" + i));
+            }
+            inner += " GROUP BY " + String.join(", ", groupBy);
+        }
+        var mergeSql = "SELECT * FROM (%s)".formatted(inner);
+        if (!modifiers.isEmpty()) {
+            var mergeTree = Transformations.parseToTree(mergeSql);
+            ((ObjectNode) Transformations.getFirstStatementNode(mergeTree)).set(FIELD_MODIFIERS, modifiers.deepCopy());
+            mergeSql = Transformations.parseToSql(mergeTree);
+        }
+        return new PartialAggregation(partialTree, mergeSql);
+    }
+
+    /**
+     * Materializes the partial results of every split as the temporary table {@link #PARTIALS_TABLE} of the
+     * connection, after which {@link #mergeSql()} can be executed on it. The readers are fully consumed.
+     */
+    public static void loadPartials(DuckDBConnection connection, BufferAllocator allocator,
+                                    List<? extends ArrowReader> partials) throws SQLException {
+        loadPartials(connection, allocator, partials, false);
+    }
+
+    /**
+     * Same as {@link #loadPartials(DuckDBConnection, BufferAllocator, List)}, but with {@code append} the rows are
+     * added to the table created by a previous call.
+     */
+    public static void loadPartials(DuckDBConnection connection, BufferAllocator allocator,
+                                    List<? extends ArrowReader> partials, boolean append) throws SQLException {
+        if (partials.isEmpty()) {
+            throw new SQLException("no partial results to merge");
+        }
+        var streams = new ArrayList<ArrowArrayStream>(partials.size());
+        try {
+            var sources = new ArrayList<String>(partials.size());
+            for (var partial : partials) {
+                var stream = ArrowArrayStream.allocateNew(allocator);
+                streams.add(stream);
+                Data.exportArrayStream(allocator, partial, stream);
+                var name = "%s_%s_%d".formatted(PARTIALS_TABLE, UUID.randomUUID().toString().replace("-", ""), sources.size());
+                connection.registerArrowStream(name, stream);
+                sources.add("FROM " + name);
+            }
+            var sql = append ? "INSERT INTO %s BY NAME %s" : "CREATE OR REPLACE TEMP TABLE %s AS %s";
+            ConnectionPool.execute(connection, sql.formatted(PARTIALS_TABLE, String.join(" UNION ALL BY NAME ", sources)));
+        } finally {
+            try {
+                AutoCloseables.close(streams);
+            } catch (Exception e) {
+                throw new SQLException("failed to release partial results", e);
+            }
+        }
+    }
+
+    private static boolean isDecomposable(JsonNode item) {
+        if (!FUNCTION_CLASS.equals(item.path(FIELD_CLASS).asText())
+                || !DECOMPOSABLE.contains(item.path(FIELD_FUNCTION_NAME).asText())
+                || item.path(FIELD_DISTINCT).asBoolean()
+                || item.path(FIELD_IS_OPERATOR).asBoolean()
+                || !isNull(item.get(FIELD_FILTER))
+                || !item.path(FIELD_ORDER_BYS).path(FIELD_ORDERS).isEmpty()
+                || item.path(FIELD_EXPORT_STATE).asBoolean()) {
+            return false;
+        }
+        var arity = item.get(FIELD_CHILDREN).size();
+        return item.get(FIELD_FUNCTION_NAME).asText().equals(COUNT_STAR) ? arity == 0 : arity == 1;
+    }
+
+    private static JsonNode aggregate(String name, ArrayNode children) {
+        var result = (ObjectNode) ExpressionFactory.createFunction(name, "", "", children.deepCopy());
+        result.put(FIELD_DISTINCT, false);
+        return result;
+    }
+
+    /**
+     * Column name DuckDB gives to a select item: the alias, the column of a reference or the expression text.
+     */
+    private static String outputName(JsonNode item) throws SQLException, JsonProcessingException {
+        var alias = item.path(FIELD_ALIAS).asText();
+        if (!alias.isEmpty()) {
+            return alias;
+        }
+        if (Transformations.IS_REFERENCE.apply(item)) {
+            var names = item.get(FIELD_COLUMN_NAMES);
+            return names.get(names.size() - 1).asText();
+        }
+        var tree = Transformations.parseToTree("SELECT 1");
+        var selectList = ((ObjectNode) Transformations.getFirstStatementNode(tree)).putArray("select_list");
+        selectList.add(item);
+        return Transformations.parseToSql(tree).substring("SELECT ".length());
+    }
+
+    private static JsonNode comparable(JsonNode node) {
+        var copy = (ObjectNode) node.deepCopy();
+        copy.put(FIELD_ALIAS, "");
+        stripLocations(copy);
+        return copy;
+    }
+
+    private static JsonNode withAlias(JsonNode node, String alias) {
+        var copy = (ObjectNode) node.deepCopy();
+        copy.put(FIELD_ALIAS, alias);
+        return copy;
+    }
+
+    private static void stripLocations(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            objectNode.remove("query_location");
+        }
+        node.forEach(PartialAggregation::stripLocations);
+    }
+
+    static boolean isNull(JsonNode node) {
+        return node == null || node.isNull();
+    }
+
+    static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
@@ -133,7 +133,13 @@ public interface SplitPlanner {
 
     static List<TreeAndSize> getSplitTreeAndSize(JsonNode tree,
                                                  long maxSplitSize) throws SQLException, IOException {
-        var splits = getSplitStatus(tree, maxSplitSize);
+        return getSplitTreeAndSize(tree, getSplitStatus(tree, maxSplitSize));
+    }
+
+    /**
+     * @param splits files of every split as returned by {@link #getSplitStatus(JsonNode, long)}
+     */
+    static List<TreeAndSize> getSplitTreeAndSize(JsonNode tree, List<List<FileStatus>> splits) {
         return splits.stream().map(split -> {
             var copy = tree.deepCopy();
             SplitPlanner.replacePathInFromClause(copy, split.stream().map(FileStatus::fileName).toArray(String[]::new));
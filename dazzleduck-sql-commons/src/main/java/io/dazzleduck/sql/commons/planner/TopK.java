@@ -0,0 +1,251 @@
+package io.dazzleduck.sql.commons.planner;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.ExpressionFactory;
+import io.dazzleduck.sql.commons.FileStatus;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.TreeAndSize;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.dazzleduck.sql.commons.ExpressionConstants.*;
+import static io.dazzleduck.sql.commons.planner.PartialAggregation.PARTIALS_TABLE;
+import static io.dazzleduck.sql.commons.planner.PartialAggregation.isNull;
+import static io.dazzleduck.sql.commons.planner.PartialAggregation.quote;
+
+/**
+ * Rewrite of {@code SELECT ... ORDER BY c LIMIT n} over a split plan into a top-K query that runs on every split and
+ * a merge query over {@link PartialAggregation#PARTIALS_TABLE} that applies the original ORDER BY, LIMIT and OFFSET.
+ * <p>
+ * Each split only returns its own first {@code limit + offset} rows. With the parquet statistics of the first ORDER BY
+ * column, {@link #plan(long)} orders the splits by their best value, most promising first, so that a client merging
+ * the results as they arrive can stop early. It leaves out every split whose best value is beaten by at least
+ * {@link #limit()} non-null rows of other splits, counted from their worst values. Statistics count every row of a
+ * file, so no split is left out when the query has a WHERE clause. Only statistics that are exact bounds are used:
+ * those of numeric and temporal columns, and string statistics the writer marked as not truncated.
+ * <p>
+ * Only plain projections of columns or {@code *} are rewritten, with a constant LIMIT and an ORDER BY on output
+ * columns. {@link #of(JsonNode)} returns null for anything else.
+ *
+ * @param splitTree  tree of the query every split runs, with LIMIT {@code limit + offset} and no OFFSET
+ * @param mergeSql   query over {@link PartialAggregation#PARTIALS_TABLE} producing the result of the original query
+ * @param source     column of the table the first ORDER BY column reads, used to look up statistics
+ * @param descending whether the first ORDER BY column sorts descending
+ * @param skippable  false when NULLs sort first, since NULL values are not covered by min/max statistics, or when the
+ *                   query filters rows, since the statistics also count the rows the filter drops
+ * @param limit      number of rows needed from every split
+ */
+public record TopK(JsonNode splitTree, String mergeSql, String source, boolean descending,
+                   boolean skippable, long limit) {
+
+    /**
+     * Splits with statistics, best first, and whether other splits cover the limit: per split the best and worst
+     * value of the column and its non-null rows, for the splits where every row group has statistics that can be
+     * trusted.
+     */
+    private static final String SKIPPED_SPLITS_QUERY = """
+            WITH stats AS (
+                SELECT s.split,
+                       %1$s(TRY_CAST(m.%2$s AS %5$s)) AS best,
+                       %3$s(TRY_CAST(m.%4$s AS %5$s)) AS worst,
+                       sum(m.num_values - m.stats_null_count) AS non_null
+                FROM parquet_metadata([%6$s]) m JOIN (VALUES %7$s) s(file, split) ON m.file_name = s.file
+                WHERE m.path_in_schema = '%8$s'
+                GROUP BY s.split
+                HAVING count(*) = count(TRY_CAST(m.stats_min_value AS %5$s))
+                   AND count(*) = count(TRY_CAST(m.stats_max_value AS %5$s))
+                   AND count(*) = count(m.stats_null_count)
+                   AND %9$s
+            )
+            SELECT a.split,
+                   (SELECT coalesce(sum(b.non_null), 0) FROM stats b WHERE b.split <> a.split AND b.worst %10$s a.best) >= %11$d
+            FROM stats a
+            ORDER BY a.best %12$s, a.split""";
+
+    private static final Set<String> EXACT_STATISTICS_TYPES = Set.of("TINYINT", "SMALLINT", "INTEGER", "BIGINT",
+            "HUGEINT", "UTINYINT", "USMALLINT", "UINTEGER", "UBIGINT", "UHUGEINT", "FLOAT", "DOUBLE", "DATE", "TIME",
+            "TIMESTAMP", "TIMESTAMP_S", "TIMESTAMP_MS", "TIMESTAMP_NS", "TIMESTAMP WITH TIME ZONE");
+
+    private static final Set<String> STRING_TYPES = Set.of("VARCHAR", "BLOB");
+
+    /**
+     * @return the rewrite, or null when the query is not a top-K query
+     */
+    public static TopK of(JsonNode tree) throws SQLException, JsonProcessingException {
+        var statements = tree.get(FIELD_STATEMENTS);
+        if (statements == null || statements.size() != 1) {
+            return null;
+        }
+        var select = Transformations.getFirstStatementNode(tree);
+        if (!SELECT_NODE_TYPE.equals(select.path(FIELD_TYPE).asText())
+                || !"STANDARD_HANDLING".equals(select.path("aggregate_handling").asText())
+                || !select.path("group_expressions").isEmpty()
+                || !isNull(select.get("having"))
+                || !isNull(select.get("qualify"))
+                || !isNull(select.get("sample"))
+                || !select.path("cte_map").path("map").isEmpty()) {
+            return null;
+        }
+
+        // Output name -> source column, a null key stands for *
+        var outputs = new LinkedHashMap<String, String>();
+        for (var item : select.get("select_list")) {
+            if (Transformations.IS_REFERENCE.apply(item)) {
+                var names = item.get(FIELD_COLUMN_NAMES);
+                var name = names.get(names.size() - 1).asText();
+                var alias = item.path(FIELD_ALIAS).asText();
+                outputs.put(alias.isEmpty() ? name : alias, name);
+            } else if (isPlainStar(item)) {
+                outputs.put(null, null);
+            } else {
+                return null;
+            }
+        }
+
+        var modifiers = (ArrayNode) select.get(FIELD_MODIFIERS);
+        if (modifiers.size() != 2
+                || !TYPE_ORDER_MODIFIER.equals(modifiers.get(0).get(FIELD_TYPE).asText())
+                || !LIMIT_MODIFIER_TYPE.equals(modifiers.get(1).get(FIELD_TYPE).asText())) {
+            return null;
+        }
+        var orders = modifiers.get(0).get(FIELD_ORDERS);
+        for (var order : orders) {
+            var expression = order.get("expression");
+            if (!Transformations.IS_REFERENCE.apply(expression) || expression.get(FIELD_COLUMN_NAMES).size() != 1) {
+                return null;
+            }
+            var name = expression.get(FIELD_COLUMN_NAMES).get(0).asText();
+            if (!outputs.containsKey(name) && !outputs.containsKey(null)) {
+                return null;
+            }
+        }
+        var limitModifier = modifiers.get(1);
+        var limit = constantLong(limitModifier.get(FIELD_LIMIT));
+        Long offset = isNull(limitModifier.get(FIELD_OFFSET)) ? Long.valueOf(0) : constantLong(limitModifier.get(FIELD_OFFSET));
+        if (limit == null || offset == null || limit <= 0) {
+            return null;
+        }
+
+        var first = orders.get(0);
+        var column = first.get("expression").get(FIELD_COLUMN_NAMES).get(0).asText();
+        var source = outputs.getOrDefault(column, column);
+        var descending = "DESCENDING".equals(first.get(FIELD_TYPE).asText());
+        var skippable = !"NULLS FIRST".equals(first.get("null_order").asText()) && isNull(select.get("where_clause"));
+
+        var splitTree = tree.deepCopy();
+        var splitSelect = (ObjectNode) Transformations.getFirstStatementNode(splitTree);
+        var splitModifiers = splitSelect.putArray(FIELD_MODIFIERS);
+        splitModifiers.add(modifiers.get(0).deepCopy());
+        splitModifiers.add(ExpressionFactory.limitModifier(limit + offset, -1));
+
+        var mergeTree = Transformations.parseToTree("SELECT * FROM " + PARTIALS_TABLE);
+        ((ObjectNode) Transformations.getFirstStatementNode(mergeTree)).set(FIELD_MODIFIERS, modifiers.deepCopy());
+        var mergeSql = Transformations.parseToSql(mergeTree);
+        return new TopK(splitTree, mergeSql, source, descending, skippable, limit + offset);
+    }
+
+    /**
+     * Splits the query, most promising split first, and leaves out the splits that cannot contribute to the result.
+     * Splits without usable statistics follow in planning order.
+     */
+    public List<TreeAndSize> plan(long maxSplitSize) throws SQLException, IOException {
+        var files = SplitPlanner.getSplitStatus(splitTree, maxSplitSize);
+        var trees = SplitPlanner.getSplitTreeAndSize(splitTree, files);
+        var ranked = rankSplits(files);
+        var order = new LinkedHashSet<Integer>();
+        ranked.forEach((split, covered) -> {
+            if (!(skippable && covered)) {
+                order.add(split);
+            }
+        });
+        var result = new ArrayList<TreeAndSize>(trees.size());
+        order.forEach(i -> result.add(trees.get(i)));
+        for (int i = 0; i < trees.size(); i++) {
+            if (!ranked.containsKey(i)) {
+                result.add(trees.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index of every split with usable statistics, best value first, mapped to whether at least {@link #limit()} rows
+     * of other splits beat all of its rows. Statistics are best effort: a file that is not parquet or a column without
+     * usable statistics leaves the splits in planning order.
+     */
+    private Map<Integer, Boolean> rankSplits(List<List<FileStatus>> splits) {
+        var result = new LinkedHashMap<Integer, Boolean>();
+        if (splits.size() < 2) {
+            return result;
+        }
+        var fileList = new ArrayList<String>();
+        var mapping = new ArrayList<String>();
+        for (int i = 0; i < splits.size(); i++) {
+            for (var file : splits.get(i)) {
+                var literal = "'" + file.fileName().replace("'", "''") + "'";
+                fileList.add(literal);
+                mapping.add("(%s, %d)".formatted(literal, i));
+            }
+        }
+        if (fileList.isEmpty()) {
+            return result;
+        }
+        try (var connection = ConnectionPool.getConnection()) {
+            var type = ConnectionPool.collectFirst(connection,
+                    "SELECT column_type FROM (DESCRIBE SELECT %s FROM read_parquet(%s))".formatted(quote(source), fileList.get(0)),
+                    String.class);
+            String exact;
+            if (EXACT_STATISTICS_TYPES.contains(type)) {
+                exact = "true";
+            } else if (STRING_TYPES.contains(type)) {
+                // Writers may truncate string statistics, which then no longer bound the values
+                exact = "bool_and(coalesce(m.min_is_exact AND m.max_is_exact, false))";
+            } else {
+                return result;
+            }
+            var sql = SKIPPED_SPLITS_QUERY.formatted(
+                    descending ? "max" : "min", descending ? "stats_max_value" : "stats_min_value",
+                    descending ? "min" : "max", descending ? "stats_min_value" : "stats_max_value", type,
+                    String.join(", ", fileList), String.join(", ", mapping), source.replace("'", "''"), exact,
+                    descending ? ">" : "<", limit, descending ? "DESC" : "ASC");
+            ConnectionPool.collectAll(connection, sql, rs -> Map.entry(rs.getInt(1), rs.getBoolean(2)))
+                    .forEach(e -> result.put(e.getKey(), e.getValue()));
+        } catch (Exception e) {
+            result.clear();
+        }
+        return result;
+    }
+
+    private static boolean isPlainStar(JsonNode item) {
+        return "STAR".equals(item.path(FIELD_CLASS).asText())
+                && item.path("relation_name").asText().isEmpty()
+                && item.path("exclude_list").isEmpty()
+                && item.path("replace_list").isEmpty()
+                && item.path("rename_list").isEmpty()
+                && item.path("qualified_exclude_list").isEmpty()
+                && !item.path("columns").asBoolean()
+                && isNull(item.get("expr"));
+    }
+
+    private static Long constantLong(JsonNode node) {
+        if (isNull(node) || !Transformations.IS_CONSTANT.apply(node)) {
+            return null;
+        }
+        var value = node.get(FIELD_VALUE);
+        if (value.path("is_null").asBoolean() || !value.get(FIELD_VALUE).canConvertToLong()) {
+            return null;
+        }
+        return value.get(FIELD_VALUE).asLong();
+    }
+}
@@ -6,6 +6,8 @@ import de.siegmar.fastcsv.reader.CsvRecord;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -67,6 +69,23 @@ public class HeaderUtils {
         return result.toArray(new String[0]);
     }
 
+    /**
+     * Parses the URL-encoded, comma separated values of the partition values header.
+     *
+     * @return the decoded values, or null when the header is absent
+     */
+    public static String[] parsePartitionValues(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String[] parts = value.split(",", -1);
+        String[] result = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = URLDecoder.decode(parts[i], StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
     /**
      * Parses CSV value as column references for partition headers.
      * Returns the column names wrapped in double quotes for safe SQL usage.
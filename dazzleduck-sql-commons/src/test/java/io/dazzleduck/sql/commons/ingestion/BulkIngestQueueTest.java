@@ -2,9 +2,27 @@ package io.dazzleduck.sql.commons.ingestion;
 
 
 import io.dazzleduck.sql.commons.util.MutableClock;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
@@ -254,4 +272,46 @@ public class BulkIngestQueueTest {
         assertEquals(8, combined.batchCount()); // 5 + 3
         assertEquals(8, combined.futures().size());
     }
+
+    @Test
+    public void testTempArrowFileDecodesDictionaryColumns(@TempDir Path tempDir) throws Exception {
+        var valuesField = new Field("level", FieldType.nullable(new ArrowType.Utf8()), null);
+        var encoding = new DictionaryEncoding(0, false, new ArrowType.Int(32, true));
+        var indexField = new Field("level", new FieldType(true, new ArrowType.Int(32, true), encoding), null);
+        var stream = new ByteArrayOutputStream();
+        try (var allocator = new RootAllocator();
+             var dictionaryVector = new VarCharVector(valuesField, allocator);
+             var indices = new IntVector(indexField, allocator)) {
+            dictionaryVector.setSafe(0, "INFO".getBytes(StandardCharsets.UTF_8));
+            dictionaryVector.setSafe(1, "WARN".getBytes(StandardCharsets.UTF_8));
+            dictionaryVector.setValueCount(2);
+            indices.setSafe(0, 1);
+            indices.setNull(1);
+            indices.setSafe(2, 0);
+            indices.setValueCount(3);
+            var provider = new DictionaryProvider.MapDictionaryProvider();
+            provider.put(new Dictionary(dictionaryVector, encoding));
+            var root = new VectorSchemaRoot(List.of(indexField), List.of(indices), 3);
+            try (var writer = new ArrowStreamWriter(root, provider, stream)) {
+                writer.start();
+                writer.writeBatch();
+                writer.end();
+            }
+
+            Path file;
+            try (var reader = new ArrowStreamReader(new ByteArrayInputStream(stream.toByteArray()), allocator)) {
+                file = BulkIngestQueue.writeAndValidateTempArrowFile(tempDir, reader);
+            }
+            try (var reader = new ArrowStreamReader(Files.newInputStream(file), allocator)) {
+                var level = reader.getVectorSchemaRoot().getSchema().findField("level");
+                assertNull(level.getDictionary());
+                assertEquals(new ArrowType.Utf8(), level.getType());
+                assertTrue(reader.loadNextBatch());
+                var values = reader.getVectorSchemaRoot().getVector("level");
+                assertEquals("WARN", values.getObject(0).toString());
+                assertTrue(values.isNull(1));
+                assertEquals("INFO", values.getObject(2).toString());
+            }
+        }
+    }
 }
@@ -245,6 +245,34 @@ public class BulkIngestQueueV2Test {
         });
     }
 
+    @Test
+    public void testPendingWriteHeadroomAndDrainRate() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var maxPendingWrite = 4 * DEFAULT_MIN_BATCH_SIZE;
+        var queue = new MockBulkIngestQueue("test", DEFAULT_MIN_BATCH_SIZE, Long.MAX_VALUE, Integer.MAX_VALUE,
+                maxPendingWrite, DEFAULT_MAX_DELAY, service, clock);
+        try {
+            assertEquals(maxPendingWrite, queue.pendingWriteHeadroom());
+            assertEquals(0, queue.drainRate());
+
+            queue.add(mockBatch("producer1", 0, DEFAULT_SMALL_BATCH_SIZE));
+            assertEquals(maxPendingWrite - DEFAULT_SMALL_BATCH_SIZE, queue.pendingWriteHeadroom());
+
+            // Fills the bucket so that it is written
+            var written = queue.add(mockBatch("producer1", 1, DEFAULT_MIN_BATCH_SIZE));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            written.get(5, TimeUnit.SECONDS);
+            Thread.sleep(100);
+            assertEquals(maxPendingWrite, queue.pendingWriteHeadroom());
+            if (queue.getTimeSpentWriting() > 0) {
+                assertEquals(queue.getTotalWriteBytes() * 1000 / queue.getTimeSpentWriting(), queue.drainRate(), 1);
+            }
+        } finally {
+            queue.close();
+        }
+    }
+
     @Test
     public void testExceptionDoesNotCompleteAlreadyCompletedFutures() throws Exception {
         var service = new DeterministicScheduler();
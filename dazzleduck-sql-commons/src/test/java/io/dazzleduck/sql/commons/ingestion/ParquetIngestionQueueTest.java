@@ -32,12 +32,15 @@ public class ParquetIngestionQueueTest {
     @TempDir
     Path tempDir;
 
+    // The queue deletes the input files of a write on another thread, which would race the removal of tempDir
+    private Path inputDir;
     private Path sourceFile1;
     private Path sourceFile2;
     private Path targetPath;
 
     @BeforeEach
     public void setup() throws Exception {
+        inputDir = Files.createTempDirectory("ingestion-input");
         // Create test arrow/parquet files
         sourceFile1 = createTestParquetFile("source1.parquet", 100);
         sourceFile2 = createTestParquetFile("source2.parquet", 50);
@@ -46,8 +49,14 @@ public class ParquetIngestionQueueTest {
     }
 
     @AfterEach
-    public void cleanup() {
-        // Cleanup is handled by @TempDir
+    public void cleanup() throws Exception {
+        // Output is cleaned up by @TempDir, input files may be deleted by the queue meanwhile
+        try (var files = Files.list(inputDir)) {
+            for (var file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(inputDir);
     }
 
     @Test
@@ -168,6 +177,98 @@ public class ParquetIngestionQueueTest {
         }
     }
 
+    @Test
+    public void testPrePartitionedBatchesAreWrittenToTheirDirectory() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var category1 = inputDir.resolve("category1.parquet");
+        ConnectionPool.execute(String.format(
+                "COPY (SELECT i as id, 'category1' as category FROM range(0, 30) t(i)) TO '%s' (FORMAT PARQUET)", category1));
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID,
+                INPUT_FORMAT,
+                targetPath.toString(),
+                "test-queue",
+                DEFAULT_MIN_BATCH_SIZE,
+                Long.MAX_VALUE,  // maxBucketSize
+                Integer.MAX_VALUE,
+                Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY,
+                createPostTaskFactory(new AtomicBoolean(), false),
+                service,
+                clock)) {
+
+            var prePartitioned = new Batch<>(new String[]{"id"}, new String[]{"category"}, category1.toString(),
+                    "producer1", 0L, DEFAULT_MIN_BATCH_SIZE / 2, "parquet", Instant.now(),
+                    new String[]{"category1"}, true);
+            // Not usable as a directory name, so it is partitioned by the COPY
+            var unsafe = new Batch<>(null, new String[]{"category"}, sourceFile2.toString(),
+                    "producer2", 0L, DEFAULT_MIN_BATCH_SIZE / 2 + 1, "parquet", Instant.now(),
+                    new String[]{"../x"}, false);
+            queue.add(prePartitioned);
+            var future = queue.add(unsafe);
+
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+            assertEquals(80, result.rowCount());
+            assertFalse(result.query().contains("ORDER BY"));
+            assertTrue(result.query().contains("EXCLUDE"));
+            assertTrue(result.query().contains("PARTITION_BY"));
+            var direct = result.filesCreated().stream()
+                    .filter(f -> f.contains("category=category1/dd_"))
+                    .toList();
+            assertEquals(1, direct.size());
+            var count = ConnectionPool.collectFirst(
+                    "SELECT count(*) FROM read_parquet('%s/category=category1/*.parquet', hive_partitioning = true) WHERE category = 'category1'"
+                            .formatted(targetPath), Long.class);
+            // 30 written directly and 17 of the other batch partitioned by the COPY
+            assertEquals(47, count);
+        }
+    }
+
+    @Test
+    public void testMismatchedPartitionValuesArePartitionedOnWrite() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+        var mixed = inputDir.resolve("mixed.parquet");
+        ConnectionPool.execute(String.format(
+                "COPY (SELECT i as id, 'category' || (i %% 2) as category FROM range(0, 30) t(i)) TO '%s' (FORMAT PARQUET)", mixed));
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID,
+                INPUT_FORMAT,
+                targetPath.toString(),
+                "test-queue",
+                DEFAULT_MIN_BATCH_SIZE,
+                Long.MAX_VALUE,  // maxBucketSize
+                Integer.MAX_VALUE,
+                Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY,
+                createPostTaskFactory(new AtomicBoolean(), false),
+                service,
+                clock)) {
+
+            // Declares a single partition, but half of its rows belong to another one
+            var mislabeled = new Batch<>(null, new String[]{"category"}, mixed.toString(),
+                    "producer1", 0L, DEFAULT_MIN_BATCH_SIZE + 1, "parquet", Instant.now(),
+                    new String[]{"category1"}, false);
+            var future = queue.add(mislabeled);
+
+            service.tick(1, TimeUnit.MILLISECONDS);
+            var result = future.get(2, SECONDS);
+            assertEquals(30, result.rowCount());
+            assertFalse(result.query().contains("EXCLUDE"));
+            assertTrue(result.query().contains("PARTITION_BY"));
+            for (var category : new String[]{"category0", "category1"}) {
+                var count = ConnectionPool.collectFirst(
+                        "SELECT count(*) FROM read_parquet('%s/category=%s/*.parquet', hive_partitioning = true) WHERE category = '%s'"
+                                .formatted(targetPath, category, category), Long.class);
+                assertEquals(15, count);
+            }
+        }
+    }
+
     @Test
     public void testMultipleBatches() throws Exception {
         var service = new DeterministicScheduler();
@@ -251,6 +352,35 @@ public class ParquetIngestionQueueTest {
         }
     }
 
+    @Test
+    public void testFailedWriteKeepsInputWhenAsked() throws Exception {
+        var service = new DeterministicScheduler();
+        var clock = new MutableClock(Instant.now(), ZoneId.systemDefault());
+
+        try (var queue = new ParquetIngestionQueue(
+                TEST_APP_ID,
+                INPUT_FORMAT,
+                targetPath.toString(),
+                "test-queue",
+                DEFAULT_MIN_BATCH_SIZE,
+                Long.MAX_VALUE,
+                Integer.MAX_VALUE,
+                Long.MAX_VALUE,
+                DEFAULT_MAX_DELAY,
+                createPostTaskFactory(new AtomicBoolean(), true),
+                service,
+                clock,
+                true)) {
+
+            var future = queue.add(createBatch(sourceFile1.toString(), "producer1", 0, DEFAULT_MIN_BATCH_SIZE + 1));
+            service.tick(1, TimeUnit.MILLISECONDS);
+            assertThrows(Exception.class, () -> future.get(2, SECONDS));
+            // Deletion is asynchronous, give it the time it would take
+            Thread.sleep(200);
+            assertTrue(Files.exists(sourceFile1));
+        }
+    }
+
     @Test
     @org.junit.jupiter.api.Disabled("Cancellation timing is hard to test with DeterministicScheduler")
     public void testCancellationDuringWrite() throws Exception {
@@ -526,7 +656,7 @@ public class ParquetIngestionQueueTest {
     // Helper methods
 
     private Path createTestParquetFile(String filename, int rowCount) throws Exception {
-        Path file = tempDir.resolve(filename);
+        Path file = inputDir.resolve(filename);
 
         // Create a simple parquet file using DuckDB
         String sql = String.format(
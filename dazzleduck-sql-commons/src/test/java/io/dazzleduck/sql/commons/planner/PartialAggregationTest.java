@@ -0,0 +1,84 @@
+package io.dazzleduck.sql.commons.planner;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.util.TestUtils;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+
+import static io.dazzleduck.sql.commons.util.TestConstants.SUPPORTED_HIVE_PATH_QUERY;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialAggregationTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT count(*) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT key, count(*) AS c, count(value), min(value), max(dt) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT p, dt, avg(length(value)) AS a, sum(length(key)) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY 1, 2",
+            "SELECT min(key) AS k, count(*) " + SUPPORTED_HIVE_PATH_QUERY,
+            "SELECT key, count(*) AS c " + SUPPORTED_HIVE_PATH_QUERY + " WHERE dt > '2024-06-01' GROUP BY key ORDER BY c DESC, key LIMIT 2",
+            "SELECT key " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key"
+    })
+    public void testMergeMatchesOriginal(String sql) throws Exception {
+        var aggregation = PartialAggregation.of(Transformations.parseToTree(sql));
+        assertNotNull(aggregation);
+        var splits = SplitPlanner.getSplitTreeAndSize(aggregation.partialTree(), 1);
+        assertTrue(splits.size() > 1);
+        try (var allocator = new RootAllocator();
+             var connection = ConnectionPool.getConnection()) {
+            var readers = new ArrayList<ArrowReader>();
+            var resources = new ArrayList<AutoCloseable>();
+            try {
+                for (var split : splits) {
+                    var partialConnection = ConnectionPool.getConnection();
+                    resources.add(partialConnection);
+                    var partialSql = Transformations.parseToSql(split.tree());
+                    readers.add(ConnectionPool.getReader(partialConnection, allocator, partialSql, 1000));
+                }
+                PartialAggregation.loadPartials(connection, allocator, readers);
+                TestUtils.isEqual(connection, allocator, sql, aggregation.mergeSql());
+            } finally {
+                for (var reader : readers) {
+                    reader.close();
+                }
+                for (var resource : resources) {
+                    resource.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOrderAndLimitMoveToMerge() throws Exception {
+        var sql = "SELECT key, count(*) AS c " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key ORDER BY c DESC LIMIT 2";
+        var aggregation = PartialAggregation.of(Transformations.parseToTree(sql));
+        assertNotNull(aggregation);
+        assertTrue(aggregation.mergeSql().contains("LIMIT 2"));
+        var partialSql = Transformations.parseToSql(aggregation.partialTree());
+        assertFalse(partialSql.contains("LIMIT"));
+        assertFalse(partialSql.contains("ORDER BY"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT * " + SUPPORTED_HIVE_PATH_QUERY,
+            "SELECT key, value " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY key LIMIT 1",
+            "SELECT key, count(DISTINCT value) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT key, count(*) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key HAVING count(*) > 1",
+            "SELECT key, count(*) + 1 " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT key, median(length(value)) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT approx_count_distinct(key) AS d, count(*) " + SUPPORTED_HIVE_PATH_QUERY,
+            "SELECT key, p, count(*) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY ROLLUP (key, p)",
+            "SELECT key, count(*) FILTER (WHERE p = 'x') " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+            "SELECT key, count(*) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key ORDER BY count(*)"
+    })
+    public void testNotDecomposable(String sql) throws Exception {
+        assertNull(PartialAggregation.of(Transformations.parseToTree(sql)));
+    }
+}
@@ -0,0 +1,117 @@
+package io.dazzleduck.sql.commons.planner;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.TreeAndSize;
+import io.dazzleduck.sql.commons.util.TestUtils;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static io.dazzleduck.sql.commons.util.TestConstants.SUPPORTED_HIVE_PATH_QUERY;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKTest {
+
+    @Test
+    public void testSplitsPrunedByStatistics() throws Exception {
+        TestUtils.withTempDir(dir -> {
+            writeFiles(dir, "range");
+            var sql = "SELECT * FROM read_parquet('%s/*/*.parquet', hive_partitioning = true, hive_types = {'part': INTEGER}) ORDER BY ts DESC LIMIT 5".formatted(dir);
+            assertEquals(List.of(3), parts(TopK.of(Transformations.parseToTree(sql)).plan(1)));
+            assertEquals(List.of(0), parts(TopK.of(Transformations.parseToTree(sql.replace("DESC", "ASC"))).plan(1)));
+            // 100 rows of the last split do not beat the third one
+            assertEquals(List.of(3, 2), parts(TopK.of(Transformations.parseToTree(sql.replace("LIMIT 5", "LIMIT 150"))).plan(1)));
+            // NULLs are not covered by the statistics, the splits are still ordered by them
+            assertEquals(List.of(3, 2, 1, 0), parts(TopK.of(Transformations.parseToTree(sql.replace("DESC", "DESC NULLS FIRST"))).plan(1)));
+        });
+    }
+
+    @Test
+    public void testFilteredQueryKeepsEverySplit() throws Exception {
+        TestUtils.withTempDir(dir -> {
+            writeFiles(dir, "range");
+            // The statistics count the rows the filter drops, only the first split has rows with id < 50
+            var sql = "SELECT id, ts FROM read_parquet('%s/*/*.parquet', hive_partitioning = true, hive_types = {'part': INTEGER}) WHERE id < 50 ORDER BY ts DESC LIMIT 5".formatted(dir);
+            var topK = TopK.of(Transformations.parseToTree(sql));
+            var splits = topK.plan(1);
+            assertEquals(List.of(3, 2, 1, 0), parts(splits));
+            try (var allocator = new RootAllocator();
+                 var connection = ConnectionPool.getConnection()) {
+                for (int i = 0; i < splits.size(); i++) {
+                    try (var splitConnection = ConnectionPool.getConnection();
+                         var reader = ConnectionPool.getReader(splitConnection, allocator,
+                                 Transformations.parseToSql(splits.get(i).tree()), 1000)) {
+                        PartialAggregation.loadPartials(connection, allocator, List.of(reader), i > 0);
+                    }
+                }
+                TestUtils.isEqual(connection, allocator, sql, topK.mergeSql());
+            }
+        });
+    }
+
+    @Test
+    public void testStringStatistics() throws Exception {
+        TestUtils.withTempDir(dir -> {
+            writeFiles(dir, "printf('%05d', range)");
+            var sql = "SELECT * FROM read_parquet('%s/*/*.parquet', hive_partitioning = true, hive_types = {'part': INTEGER}) ORDER BY ts DESC LIMIT 5".formatted(dir);
+            assertEquals(List.of(3), parts(TopK.of(Transformations.parseToTree(sql)).plan(1)));
+        });
+    }
+
+    @Test
+    public void testMergeMatchesOriginal() throws Exception {
+        TestUtils.withTempDir(dir -> {
+            writeFiles(dir, "range");
+            var sql = "SELECT id, ts FROM read_parquet('%s/*/*.parquet', hive_partitioning = true, hive_types = {'part': INTEGER}) ORDER BY ts DESC LIMIT 5 OFFSET 2".formatted(dir);
+            var topK = TopK.of(Transformations.parseToTree(sql));
+            assertNotNull(topK);
+            assertEquals(7, topK.limit());
+            var splits = topK.plan(1);
+            try (var allocator = new RootAllocator();
+                 var connection = ConnectionPool.getConnection()) {
+                for (int i = 0; i < splits.size(); i++) {
+                    try (var splitConnection = ConnectionPool.getConnection();
+                         var reader = ConnectionPool.getReader(splitConnection, allocator,
+                                 Transformations.parseToSql(splits.get(i).tree()), 1000)) {
+                        PartialAggregation.loadPartials(connection, allocator, List.of(reader), i > 0);
+                    }
+                }
+                TestUtils.isEqual(connection, allocator, sql, topK.mergeSql());
+            }
+        });
+    }
+
+    @Test
+    public void testNotTopK() throws Exception {
+        assertNull(TopK.of(Transformations.parseToTree("SELECT * " + SUPPORTED_HIVE_PATH_QUERY + " LIMIT 5")));
+        assertNull(TopK.of(Transformations.parseToTree("SELECT * " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY key")));
+        assertNull(TopK.of(Transformations.parseToTree("SELECT key, count(*) " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key ORDER BY key LIMIT 1")));
+        assertNull(TopK.of(Transformations.parseToTree("SELECT upper(key) AS k " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY k LIMIT 1")));
+        assertNull(TopK.of(Transformations.parseToTree("SELECT key " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY value LIMIT 1")));
+        assertNotNull(TopK.of(Transformations.parseToTree("SELECT * " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY dt DESC, key LIMIT 1")));
+    }
+
+    private static void writeFiles(String dir, String ts) throws Exception {
+        for (int i = 0; i < 4; i++) {
+            Files.createDirectories(Path.of(dir, "part=" + i));
+            ConnectionPool.execute("COPY (SELECT range AS id, %s AS ts FROM range(%d, %d)) TO '%s/part=%d/data.parquet' (FORMAT parquet)"
+                    .formatted(ts, i * 100, i * 100 + 100, dir, i));
+        }
+    }
+
+    private static List<Integer> parts(List<TreeAndSize> splits) throws Exception {
+        var result = new ArrayList<Integer>();
+        for (var split : splits) {
+            var matcher = Pattern.compile("part=(\\d)").matcher(Transformations.parseToSql(split.tree()));
+            assertTrue(matcher.find());
+            result.add(Integer.parseInt(matcher.group(1)));
+        }
+        return result;
+    }
+}
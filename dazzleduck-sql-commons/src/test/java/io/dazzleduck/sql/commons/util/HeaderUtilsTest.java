@@ -24,6 +24,12 @@ class HeaderUtilsTest {
         assertArrayEquals(new String[]{"a", "b", "c"}, HeaderUtils.parseCsv("a,b,c"));
     }
 
+    @Test
+    void parsePartitionValues_decodesEachValue() {
+        assertNull(HeaderUtils.parsePartitionValues(null));
+        assertArrayEquals(new String[]{"a,b", "", "c d"}, HeaderUtils.parsePartitionValues("a%2Cb,,c+d"));
+    }
+
     @Test
     void parseCsv_quotedValues_handlesQuotesCorrectly() {
         assertArrayEquals(new String[]{"a,b", "c"}, HeaderUtils.parseCsv("\"a,b\",c"));
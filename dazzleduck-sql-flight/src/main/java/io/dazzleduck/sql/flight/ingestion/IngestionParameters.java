@@ -5,12 +5,18 @@ import io.dazzleduck.sql.commons.ingestion.Batch;
 import io.dazzleduck.sql.commons.util.HeaderUtils;
 import org.apache.arrow.flight.sql.impl.FlightSql;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public record IngestionParameters(String ingestionQueue,
                                   String format, String[] partitionBy,
                                   String[] sortOrder, String producerId, Long producerBatchId,
+                                  String[] partitionValues, boolean presorted,
                                   Map<String, String> parameters) {
     public Batch<String> constructBatch(long size, String tempFile) {
         return new Batch<>(
@@ -21,7 +27,9 @@ public record IngestionParameters(String ingestionQueue,
                 producerBatchId,
                 size,
                 format,
-                Instant.now()
+                Instant.now(),
+                partitionValues,
+                presorted
         );
     }
 
@@ -44,15 +52,41 @@ public record IngestionParameters(String ingestionQueue,
         // Optional comma-separated lists
         String[] partitionBy = HeaderUtils.parseCsv(optionMap.get(Headers.HEADER_DATA_PARTITION));
         String[] sortOrder = HeaderUtils.parseCsv(optionMap.get(Headers.HEADER_SORT_ORDER));
-        return new IngestionParameters(ingestionQueue, format, partitionBy, sortOrder, producerId, 0L, Map.of());
+        String producerBatchId = optionMap.get(Headers.HEADER_PRODUCER_BATCH_ID);
+        String[] partitionValues = HeaderUtils.parsePartitionValues(optionMap.get(Headers.HEADER_PARTITION_VALUES));
+        boolean presorted = Boolean.parseBoolean(optionMap.get(Headers.HEADER_PRESORTED));
+        return new IngestionParameters(ingestionQueue, format, partitionBy, sortOrder, producerId,
+                producerBatchId == null ? 0L : Long.parseLong(producerBatchId), partitionValues, presorted, Map.of());
+    }
+
+    /**
+     * Applies the options a producer attached to one batch of a streaming ingest: its batch id, partition values
+     * and whether it is sorted.
+     */
+    public IngestionParameters withBatchOptions(Map<String, String> options) {
+        String batchId = options.get(Headers.HEADER_PRODUCER_BATCH_ID);
+        String values = options.get(Headers.HEADER_PARTITION_VALUES);
+        return new IngestionParameters(ingestionQueue, format, partitionBy, sortOrder, producerId,
+                batchId == null ? producerBatchId : Long.parseLong(batchId),
+                values == null ? partitionValues : HeaderUtils.parsePartitionValues(values),
+                Boolean.parseBoolean(options.getOrDefault(Headers.HEADER_PRESORTED, String.valueOf(presorted))),
+                parameters);
     }
 
     public FlightSql.CommandStatementIngest createCommand() {
-        var options = Map.of(
+        var options = new HashMap<>(Map.of(
                 Headers.QUERY_PARAMETER_INGESTION_QUEUE, ingestionQueue(),
                 Headers.HEADER_DATA_PARTITION, String.join(",", partitionBy()),
                 Headers.HEADER_DATA_FORMAT, format(),
-                Headers.HEADER_SORT_ORDER, String.join(",", sortOrder()));
+                Headers.HEADER_SORT_ORDER, String.join(",", sortOrder())));
+        if (partitionValues() != null) {
+            options.put(Headers.HEADER_PARTITION_VALUES, Arrays.stream(partitionValues())
+                    .map(v -> URLEncoder.encode(v, StandardCharsets.UTF_8))
+                    .collect(Collectors.joining(",")));
+        }
+        if (presorted()) {
+            options.put(Headers.HEADER_PRESORTED, "true");
+        }
         return FlightSql.CommandStatementIngest.newBuilder().putAllOptions(options).build();
     }
 }
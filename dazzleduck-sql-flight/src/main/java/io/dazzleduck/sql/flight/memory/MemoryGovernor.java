@@ -0,0 +1,294 @@
+package io.dazzleduck.sql.flight.memory;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.util.AutoCloseables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accounts the memory of running queries and acts when it runs short.
+ * <p>
+ * Every query streams through its own allocator, a child of an allocator per identity, which is a child of the
+ * allocator holding the Arrow share of the budget. A query or identity going over its limit fails its next
+ * allocation. Pressure on the shared budget is handled by {@link #awaitCapacity(Reservation)}: above the throttle
+ * threshold queries pause between batches so that clients can drain what is already buffered, above the cancel
+ * threshold the query holding the most memory is cancelled through the {@link Canceller}. No other query is cancelled
+ * until that one has given its memory back.
+ * <p>
+ * DuckDB memory is not allocated through Arrow. Its share of the budget is applied as the database
+ * {@code memory_limit}, together with the {@code temp_directory} DuckDB spills to once it reaches that limit,
+ * see {@link #applyDuckDBSettings()}. Both are global settings of the DuckDB instance the whole process shares.
+ */
+public class MemoryGovernor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryGovernor.class);
+    private static final long THROTTLE_INTERVAL_MS = 20;
+
+    public enum Pressure {NONE, THROTTLE, CANCEL}
+
+    /**
+     * Cancels a running query, e.g. {@code DuckDBFlightSqlProducer#tryCancel}.
+     */
+    @FunctionalInterface
+    public interface Canceller {
+        boolean cancel(String identity, long queryId) throws Exception;
+    }
+
+    /**
+     * @param allocated memory the query holds now
+     * @param peak      most memory the query held at once
+     */
+    public record QueryMemory(String identity, long queryId, long allocated, long peak) {
+    }
+
+    /**
+     * Memory of one stream of a query. A query can be streamed more than once at the same time, e.g. a ticket that
+     * is fetched again, so every stream gets its own reservation.
+     */
+    public static final class Reservation {
+        private final String identity;
+        private final long queryId;
+        private final BufferAllocator allocator;
+        private volatile boolean cancelled;
+
+        private Reservation(String identity, long queryId, BufferAllocator allocator) {
+            this.identity = identity;
+            this.queryId = queryId;
+            this.allocator = allocator;
+        }
+
+        public String identity() {
+            return identity;
+        }
+
+        public long queryId() {
+            return queryId;
+        }
+
+        public BufferAllocator allocator() {
+            return allocator;
+        }
+    }
+
+    /**
+     * Allocator of an identity with the number of its streams, closed with the last one.
+     */
+    private static final class IdentityMemory {
+        private final BufferAllocator allocator;
+        private int streams;
+
+        private IdentityMemory(BufferAllocator allocator) {
+            this.allocator = allocator;
+        }
+    }
+
+    private final MemoryGovernorConfig config;
+    private final BufferAllocator queryMemory;
+    private final Map<String, IdentityMemory> identities = new ConcurrentHashMap<>();
+    private final Set<Reservation> running = ConcurrentHashMap.newKeySet();
+    // Cancelled stream that still holds its memory, cleared when it is released
+    private final AtomicReference<Reservation> pendingCancel = new AtomicReference<>();
+    private volatile Canceller canceller = (identity, queryId) -> false;
+
+    public MemoryGovernor(BufferAllocator root, MemoryGovernorConfig config) {
+        this.config = config;
+        var limit = config.arrowMemoryBytes() > 0 ? Math.min(config.arrowMemoryBytes(), root.getLimit()) : root.getLimit();
+        this.queryMemory = root.newChildAllocator("query-memory", 0, limit);
+    }
+
+    public MemoryGovernorConfig getConfig() {
+        return config;
+    }
+
+    public void setCanceller(Canceller canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Applies the DuckDB share of the budget and the spill directory to the database. Settings that are not
+     * configured are left alone.
+     * <p>
+     * DuckDB only has these settings per database instance, and every connection of the {@link ConnectionPool} uses
+     * the same instance, so they are set globally and bound all of its connections, not only those of queries this
+     * governor accounts. With several governors in one process the last one applied wins.
+     */
+    public void applyDuckDBSettings() {
+        var sql = new ArrayList<String>();
+        if (config.duckdbMemoryBytes() > 0) {
+            sql.add("SET GLOBAL memory_limit = '%dB'".formatted(config.duckdbMemoryBytes()));
+        }
+        if (config.duckdbTempDirectory() != null) {
+            sql.add("SET GLOBAL temp_directory = '%s'".formatted(config.duckdbTempDirectory().replace("'", "''")));
+        }
+        if (!sql.isEmpty()) {
+            ConnectionPool.executeOnSingleton(String.join(";\n", sql));
+        }
+    }
+
+    /**
+     * @return the allocator of a new stream of a query, to be given back with {@link #release(Reservation)}
+     */
+    public Reservation newQueryAllocator(String identity, long queryId) {
+        var parent = identities.compute(identity, (i, current) -> {
+            var result = current != null ? current : new IdentityMemory(queryMemory.newChildAllocator("identity-" + i,
+                    0, limit(config.maxIdentityMemoryBytes(), queryMemory.getLimit())));
+            result.streams++;
+            return result;
+        }).allocator;
+        try {
+            var allocator = parent.newChildAllocator("statement-allocator-" + queryId, 0,
+                    limit(config.maxQueryMemoryBytes(), parent.getLimit()));
+            var reservation = new Reservation(identity, queryId, allocator);
+            running.add(reservation);
+            return reservation;
+        } catch (RuntimeException e) {
+            releaseIdentity(identity);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the allocator of a stream, and the allocator of its identity when it was the last stream of it.
+     *
+     * @return the most memory the stream held at once, 0 when it was already released
+     */
+    public long release(Reservation reservation) {
+        if (!running.remove(reservation)) {
+            return 0;
+        }
+        var peak = reservation.allocator.getPeakMemoryAllocation();
+        try {
+            reservation.allocator.close();
+        } finally {
+            pendingCancel.compareAndSet(reservation, null);
+            releaseIdentity(reservation.identity);
+        }
+        return peak;
+    }
+
+    public Pressure pressure() {
+        var used = (double) queryMemory.getAllocatedMemory() / queryMemory.getLimit();
+        if (used >= config.cancelThreshold()) {
+            return Pressure.CANCEL;
+        }
+        return used >= config.throttleThreshold() ? Pressure.THROTTLE : Pressure.NONE;
+    }
+
+    /**
+     * Cancels the query holding the most memory when over the cancel threshold, unless a query cancelled before
+     * still holds its memory. Every stream calls this between batches, so without waiting for the memory of the
+     * last victim every stream would cancel another query.
+     *
+     * @return the pressure before acting
+     */
+    public Pressure enforce() {
+        var pressure = pressure();
+        if (pressure != Pressure.CANCEL) {
+            return pressure;
+        }
+        var pending = pendingCancel.get();
+        if (pending != null && running.contains(pending)) {
+            return pressure;
+        }
+        running.stream()
+                .filter(r -> !r.cancelled)
+                .max(Comparator.comparingLong(r -> r.allocator.getAllocatedMemory()))
+                // Another stream may have picked a victim meanwhile
+                .filter(r -> pendingCancel.compareAndSet(pending, r))
+                .ifPresent(r -> {
+                    r.cancelled = true;
+                    logger.atWarn().log("Cancelling query {} of {} holding {} bytes, memory above {} of the budget",
+                            r.queryId, r.identity, r.allocator.getAllocatedMemory(), config.cancelThreshold());
+                    var cancelled = false;
+                    try {
+                        cancelled = canceller.cancel(r.identity, r.queryId);
+                    } catch (Exception ex) {
+                        logger.atError().setCause(ex).log("Error cancelling query {}", r.queryId);
+                    }
+                    if (!cancelled) {
+                        // The query keeps its memory, let the next call pick another one
+                        pendingCancel.compareAndSet(r, null);
+                    }
+                });
+        return pressure;
+    }
+
+    /**
+     * Called by a query between batches. Enforces the policy and waits, up to the configured maximum, while the
+     * budget is over the throttle threshold. A query that was cancelled meanwhile returns right away.
+     */
+    public void awaitCapacity(Reservation reservation) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + config.maxThrottleMs();
+        while (enforce() != Pressure.NONE && System.currentTimeMillis() < deadline) {
+            if (reservation.cancelled || !running.contains(reservation)) {
+                return;
+            }
+            Thread.sleep(THROTTLE_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * @return the most memory a running stream of the query held at once so far, 0 when it is not running
+     */
+    public long getPeakMemory(String identity, long queryId) {
+        long peak = 0;
+        for (var reservation : running) {
+            if (reservation.queryId == queryId && reservation.identity.equals(identity)) {
+                peak = Math.max(peak, reservation.allocator.getPeakMemoryAllocation());
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * @return the memory of every running stream
+     */
+    public List<QueryMemory> getQueries() {
+        var result = new ArrayList<QueryMemory>(running.size());
+        running.forEach(r -> result.add(new QueryMemory(r.identity, r.queryId,
+                r.allocator.getAllocatedMemory(), r.allocator.getPeakMemoryAllocation())));
+        return result;
+    }
+
+    public long getAllocatedMemory() {
+        return queryMemory.getAllocatedMemory();
+    }
+
+    public long getLimit() {
+        return queryMemory.getLimit();
+    }
+
+    @Override
+    public void close() throws Exception {
+        var allocators = new ArrayList<AutoCloseable>();
+        running.forEach(r -> allocators.add(r.allocator));
+        running.clear();
+        identities.values().forEach(i -> allocators.add(i.allocator));
+        identities.clear();
+        allocators.add(queryMemory);
+        AutoCloseables.close(allocators);
+    }
+
+    private void releaseIdentity(String identity) {
+        identities.computeIfPresent(identity, (i, current) -> {
+            if (--current.streams > 0) {
+                return current;
+            }
+            current.allocator.close();
+            return null;
+        });
+    }
+
+    private static long limit(long configured, long parent) {
+        return configured > 0 ? Math.min(configured, parent) : parent;
+    }
+}
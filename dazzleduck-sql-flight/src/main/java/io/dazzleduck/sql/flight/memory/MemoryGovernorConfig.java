@@ -0,0 +1,80 @@
+package io.dazzleduck.sql.flight.memory;
+
+import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.ConfigConstants;
+
+/**
+ * Settings for the memory held by running queries. Byte limits of 0 mean unlimited.
+ *
+ * @param totalMemoryBytes       budget shared by Arrow result buffers and DuckDB, 0 keeps the allocator limit and
+ *                               leaves the DuckDB settings alone
+ * @param duckdbMemoryFraction   share of {@code totalMemoryBytes} given to DuckDB as {@code memory_limit}
+ * @param duckdbTempDirectory    directory DuckDB spills to once it reaches {@code memory_limit}, null for the default
+ * @param maxQueryMemoryBytes    Arrow memory a single query may hold
+ * @param maxIdentityMemoryBytes Arrow memory all queries of one identity may hold together
+ * @param throttleThreshold      share of the Arrow budget above which queries pause between batches
+ * @param cancelThreshold        share of the Arrow budget above which the query holding the most memory is cancelled
+ * @param maxThrottleMs          longest a query pauses for memory before it continues anyway
+ */
+public record MemoryGovernorConfig(
+        long totalMemoryBytes,
+        double duckdbMemoryFraction,
+        String duckdbTempDirectory,
+        long maxQueryMemoryBytes,
+        long maxIdentityMemoryBytes,
+        double throttleThreshold,
+        double cancelThreshold,
+        long maxThrottleMs
+) {
+
+    public static final MemoryGovernorConfig DEFAULT = new MemoryGovernorConfig(0, 0.5, null, 0, 0, 0.8, 0.95, 5000);
+
+    public MemoryGovernorConfig {
+        if (duckdbMemoryFraction < 0 || duckdbMemoryFraction >= 1) {
+            throw new IllegalArgumentException("duckdb_memory_fraction must be in [0, 1): " + duckdbMemoryFraction);
+        }
+        if (throttleThreshold <= 0 || cancelThreshold <= 0 || throttleThreshold > cancelThreshold) {
+            throw new IllegalArgumentException("Expected 0 < throttle_threshold <= cancel_threshold, got %s and %s"
+                    .formatted(throttleThreshold, cancelThreshold));
+        }
+    }
+
+    /**
+     * @return the DuckDB {@code memory_limit} in bytes, 0 when DuckDB is not managed
+     */
+    public long duckdbMemoryBytes() {
+        return (long) (totalMemoryBytes * duckdbMemoryFraction);
+    }
+
+    /**
+     * @return the memory Arrow buffers of all queries may hold, 0 when only the allocator limit applies
+     */
+    public long arrowMemoryBytes() {
+        return totalMemoryBytes - duckdbMemoryBytes();
+    }
+
+    public static MemoryGovernorConfig fromConfig(Config config) {
+        if (!config.hasPath(ConfigConstants.FLIGHT_SQL_MEMORY_KEY)) {
+            return DEFAULT;
+        }
+        var c = config.getConfig(ConfigConstants.FLIGHT_SQL_MEMORY_KEY);
+        var tempDirectory = c.hasPath(ConfigConstants.DUCKDB_TEMP_DIRECTORY_KEY)
+                ? c.getString(ConfigConstants.DUCKDB_TEMP_DIRECTORY_KEY) : null;
+        return new MemoryGovernorConfig(
+                c.hasPath(ConfigConstants.TOTAL_MEMORY_BYTES_KEY)
+                        ? c.getBytes(ConfigConstants.TOTAL_MEMORY_BYTES_KEY) : DEFAULT.totalMemoryBytes(),
+                c.hasPath(ConfigConstants.DUCKDB_MEMORY_FRACTION_KEY)
+                        ? c.getDouble(ConfigConstants.DUCKDB_MEMORY_FRACTION_KEY) : DEFAULT.duckdbMemoryFraction(),
+                tempDirectory == null || tempDirectory.isBlank() ? null : tempDirectory,
+                c.hasPath(ConfigConstants.MAX_QUERY_MEMORY_BYTES_KEY)
+                        ? c.getBytes(ConfigConstants.MAX_QUERY_MEMORY_BYTES_KEY) : DEFAULT.maxQueryMemoryBytes(),
+                c.hasPath(ConfigConstants.MAX_IDENTITY_MEMORY_BYTES_KEY)
+                        ? c.getBytes(ConfigConstants.MAX_IDENTITY_MEMORY_BYTES_KEY) : DEFAULT.maxIdentityMemoryBytes(),
+                c.hasPath(ConfigConstants.THROTTLE_THRESHOLD_KEY)
+                        ? c.getDouble(ConfigConstants.THROTTLE_THRESHOLD_KEY) : DEFAULT.throttleThreshold(),
+                c.hasPath(ConfigConstants.CANCEL_THRESHOLD_KEY)
+                        ? c.getDouble(ConfigConstants.CANCEL_THRESHOLD_KEY) : DEFAULT.cancelThreshold(),
+                c.hasPath(ConfigConstants.MAX_THROTTLE_MS_KEY)
+                        ? c.getLong(ConfigConstants.MAX_THROTTLE_MS_KEY) : DEFAULT.maxThrottleMs());
+    }
+}
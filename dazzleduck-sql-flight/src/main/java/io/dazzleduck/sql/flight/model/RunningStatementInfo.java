@@ -3,7 +3,7 @@ package io.dazzleduck.sql.flight.model;
 import java.time.Instant;
 
 public record RunningStatementInfo(String user, String statementId, Instant startInstant, String query, String action,
-                                   Instant endInstant) {
+                                   Instant endInstant, long peakMemory) {
 
     /**
      * Convenience constructor:
@@ -11,8 +11,10 @@ public record RunningStatementInfo(String user, String statementId, Instant star
      * start == null   → "OPEN"
      * else            → "COMPLETED"
      */
-    public RunningStatementInfo(String user, String statementId, Instant startInstant, String query, boolean running, Object endInstant) {
+    public RunningStatementInfo(String user, String statementId, Instant startInstant, String query, boolean running, Object endInstant,
+                                long peakMemory) {
 
-        this(user, statementId, startInstant, query, running ? "RUNNING" : (startInstant == null ? "OPEN" : "COMPLETED"), (endInstant instanceof Instant ei) ? ei : null);
+        this(user, statementId, startInstant, query, running ? "RUNNING" : (startInstant == null ? "OPEN" : "COMPLETED"), (endInstant instanceof Instant ei) ? ei : null,
+                peakMemory);
     }
 }
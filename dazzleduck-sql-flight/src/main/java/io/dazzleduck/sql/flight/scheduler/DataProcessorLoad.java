@@ -0,0 +1,11 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+/**
+ * Load reported by a data processor node to the coordinator.
+ *
+ * @param location        URI of the processor as advertised in the flight endpoints, e.g. {@code grpc+tls://host:port}
+ * @param queueDepth      number of statements currently running or queued on the processor
+ * @param availableMemory bytes the processor can still allocate for result streaming
+ */
+public record DataProcessorLoad(String location, int queueDepth, long availableMemory) {
+}
@@ -0,0 +1,101 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dazzleduck.sql.flight.server.DuckDBFlightSqlProducer;
+import io.dazzleduck.sql.flight.server.auth2.AuthUtils;
+import org.apache.arrow.flight.Action;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.memory.BufferAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends the load of a data processor to the coordinator every {@link LoadReportConfig#intervalMs()} with the
+ * {@link DuckDBFlightSqlProducer#REPORT_DATA_PROCESSOR_LOAD} action.
+ * <p>
+ * A failed report is logged and the connection is reopened for the next one, so a coordinator that restarts picks
+ * up the load again without restarting the processor.
+ */
+public class DataProcessorLoadReporter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataProcessorLoadReporter.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LoadReportConfig config;
+    private final BufferAllocator allocator;
+    private final Supplier<DataProcessorLoad> load;
+    private FlightClient client;
+    private ScheduledFuture<?> future;
+
+    public DataProcessorLoadReporter(LoadReportConfig config, BufferAllocator allocator, Supplier<DataProcessorLoad> load) {
+        this.config = config;
+        this.allocator = allocator;
+        this.load = load;
+    }
+
+    public synchronized void start(ScheduledExecutorService executorService) {
+        if (future == null) {
+            future = executorService.scheduleWithFixedDelay(this::report, config.intervalMs(), config.intervalMs(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the current load once.
+     *
+     * @return false when the report could not be delivered
+     */
+    public synchronized boolean report() {
+        var current = load.get();
+        if (config.advertisedLocation() != null) {
+            current = new DataProcessorLoad(config.advertisedLocation(), current.queueDepth(), current.availableMemory());
+        }
+        try {
+            var body = MAPPER.writeValueAsBytes(current);
+            var results = client().doAction(new Action(DuckDBFlightSqlProducer.REPORT_DATA_PROCESSOR_LOAD.getType(), body));
+            while (results.hasNext()) {
+                results.next();
+            }
+            return true;
+        } catch (Exception e) {
+            logger.atWarn().setCause(e).log("Failed to report load to coordinator {}", config.coordinator().getUri());
+            closeClient();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (future != null) {
+            future.cancel(false);
+        }
+        closeClient();
+    }
+
+    private FlightClient client() {
+        if (client == null) {
+            client = FlightClient.builder(allocator, config.coordinator())
+                    .intercept(AuthUtils.createClientMiddlewareFactory(config.username(), config.password(), Map.of()))
+                    .build();
+        }
+        return client;
+    }
+
+    private void closeClient() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (Exception e) {
+            logger.atWarn().setCause(e).log("Error closing connection to coordinator");
+        }
+        client = null;
+    }
+}
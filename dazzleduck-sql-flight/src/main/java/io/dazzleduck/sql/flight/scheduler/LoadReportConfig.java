@@ -0,0 +1,49 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.ConfigConstants;
+import org.apache.arrow.flight.Location;
+
+/**
+ * Where and how often a data processor reports its {@link DataProcessorLoad} to the coordinator.
+ *
+ * @param coordinator        location of the coordinator
+ * @param advertisedLocation location of this processor as listed in the {@code data_processor_locations} of the
+ *                           coordinator, null for the location the processor listens on
+ * @param username           user the processor logs in to the coordinator as; it has to be one of the
+ *                           {@link SplitSchedulerConfig#authorizedReporters()} of the coordinator
+ * @param password           password of that user
+ * @param intervalMs         time between two reports
+ */
+public record LoadReportConfig(
+        Location coordinator,
+        String advertisedLocation,
+        String username,
+        String password,
+        long intervalMs
+) {
+
+    public static final long DEFAULT_INTERVAL_MS = 5_000;
+
+    /**
+     * @param splitSchedulerConfig the {@code split_scheduler} sub-config
+     * @return null when the processor does not report its load
+     */
+    static LoadReportConfig fromConfig(Config splitSchedulerConfig) {
+        if (!splitSchedulerConfig.hasPath(ConfigConstants.REPORT_LOAD_TO_KEY)) {
+            return null;
+        }
+        var c = splitSchedulerConfig.getConfig(ConfigConstants.REPORT_LOAD_TO_KEY);
+        var host = c.getString(ConfigConstants.HOST_KEY);
+        var port = c.getInt(ConfigConstants.PORT_KEY);
+        var coordinator = c.hasPath(ConfigConstants.USE_ENCRYPTION_KEY) && c.getBoolean(ConfigConstants.USE_ENCRYPTION_KEY)
+                ? Location.forGrpcTls(host, port)
+                : Location.forGrpcInsecure(host, port);
+        return new LoadReportConfig(coordinator,
+                c.hasPath(ConfigConstants.ADVERTISED_LOCATION_KEY) ? c.getString(ConfigConstants.ADVERTISED_LOCATION_KEY) : null,
+                c.getString(ConfigConstants.USERNAME_KEY),
+                c.getString(ConfigConstants.PASSWORD_KEY),
+                c.hasPath(ConfigConstants.REPORT_INTERVAL_MS_KEY)
+                        ? c.getLong(ConfigConstants.REPORT_INTERVAL_MS_KEY) : DEFAULT_INTERVAL_MS);
+    }
+}
@@ -0,0 +1,190 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+import org.apache.arrow.flight.Location;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Assigns split tickets to data processor nodes based on the load they report.
+ * <p>
+ * Every node keeps the last reported queue depth and available memory plus the splits assigned to it
+ * since that report. A split goes to the node with the lowest {@code queueDepth + assigned} that is below
+ * {@link SplitSchedulerConfig#maxConcurrentSplitsPerProcessor()}, ties broken by the most available memory.
+ * When every node is at its cap the least loaded node is used anyway so that planning never fails.
+ * <p>
+ * The chosen node is returned first followed by the remaining healthy nodes, so a client that cannot reach the
+ * primary location of an endpoint fails over to the next one. Nodes reported as failed are skipped for
+ * {@link SplitSchedulerConfig#failureBackoffMs()} or until they report their load again.
+ * <p>
+ * A node that never reports is scheduled with a queue depth of zero, which keeps statically configured
+ * {@code data_processor_locations} working exactly as round-robin.
+ */
+public class SplitScheduler {
+
+    private final SplitSchedulerConfig config;
+    private final Clock clock;
+    private final Map<Location, ProcessorState> processors = new LinkedHashMap<>();
+
+    public SplitScheduler(SplitSchedulerConfig config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public SplitSchedulerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Replaces the set of known processors. Load already reported by a retained node is kept.
+     */
+    public synchronized void setLocations(Collection<Location> locations) {
+        var newProcessors = new LinkedHashMap<Location, ProcessorState>();
+        for (var location : locations) {
+            newProcessors.put(location, processors.getOrDefault(location, new ProcessorState()));
+        }
+        processors.clear();
+        processors.putAll(newProcessors);
+    }
+
+    public synchronized Set<Location> getLocations() {
+        return Set.copyOf(processors.keySet());
+    }
+
+    /**
+     * Records the load of a processor. Reporting also clears a previous failure and the assignments made since the
+     * last report, since the new queue depth already accounts for them.
+     *
+     * @return false when the location is not one of the known processors
+     */
+    public synchronized boolean reportLoad(Location location, int queueDepth, long availableMemory) {
+        var state = processors.get(location);
+        if (state == null) {
+            return false;
+        }
+        state.queueDepth = Math.max(0, queueDepth);
+        state.availableMemory = availableMemory;
+        state.lastReport = clock.instant();
+        state.failedAt = null;
+        state.assignments.clear();
+        return true;
+    }
+
+    /**
+     * Marks a processor as unavailable so that no new split is assigned to it during the failure backoff.
+     *
+     * @return false when the location is not one of the known processors
+     */
+    public synchronized boolean reportFailure(Location location) {
+        var state = processors.get(location);
+        if (state == null) {
+            return false;
+        }
+        state.failedAt = clock.instant();
+        state.assignments.clear();
+        return true;
+    }
+
+    /**
+     * Assigns each split to a processor.
+     *
+     * @param splitSizes size of every split in planning order
+     * @return for every split the ordered list of locations; the first entry is the assigned processor and the
+     * remaining ones are fallbacks. Lists are empty when no processor is known.
+     */
+    public synchronized List<List<Location>> assign(List<Long> splitSizes) {
+        var now = clock.instant();
+        var candidates = new ArrayList<Map.Entry<Location, ProcessorState>>();
+        for (var entry : processors.entrySet()) {
+            entry.getValue().expireAssignments(now, config.assignmentTtlMs());
+            if (!entry.getValue().isFailed(now, config.failureBackoffMs())) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // Every node failed recently. Hand out all of them rather than nothing, the client will retry.
+            candidates.addAll(processors.entrySet());
+        }
+        var result = new ArrayList<List<Location>>(splitSizes.size());
+        if (candidates.isEmpty()) {
+            splitSizes.forEach(s -> result.add(List.of()));
+            return result;
+        }
+
+        // Place the largest splits first so the small ones fill the gaps, but answer in planning order.
+        var order = new Integer[splitSizes.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> splitSizes.get(i)).reversed());
+        var assigned = new Location[splitSizes.size()];
+        for (var index : order) {
+            var chosen = choose(candidates);
+            chosen.getValue().assignments.add(now);
+            assigned[index] = chosen.getKey();
+        }
+        for (var location : assigned) {
+            var locations = new ArrayList<Location>(candidates.size());
+            locations.add(location);
+            candidates.stream()
+                    .sorted(Comparator.comparingInt(e -> e.getValue().load()))
+                    .map(Map.Entry::getKey)
+                    .filter(l -> !l.equals(location))
+                    .forEach(locations::add);
+            result.add(locations);
+        }
+        return result;
+    }
+
+    public synchronized List<DataProcessorStatus> getStatus() {
+        var now = clock.instant();
+        var result = new ArrayList<DataProcessorStatus>();
+        processors.forEach((location, state) -> {
+            state.expireAssignments(now, config.assignmentTtlMs());
+            result.add(new DataProcessorStatus(location.getUri().toString(), state.queueDepth,
+                    state.assignments.size(), state.availableMemory, state.lastReport,
+                    !state.isFailed(now, config.failureBackoffMs())));
+        });
+        return result;
+    }
+
+    private Map.Entry<Location, ProcessorState> choose(List<Map.Entry<Location, ProcessorState>> candidates) {
+        Comparator<Map.Entry<Location, ProcessorState>> comparator =
+                Comparator.<Map.Entry<Location, ProcessorState>>comparingInt(e -> e.getValue().load())
+                        .thenComparing(e -> e.getValue().availableMemory, Comparator.reverseOrder());
+        return candidates.stream()
+                .filter(e -> e.getValue().load() < config.maxConcurrentSplitsPerProcessor())
+                .min(comparator)
+                .orElseGet(() -> candidates.stream().min(comparator).orElseThrow());
+    }
+
+    /**
+     * Snapshot of a processor as seen by the scheduler.
+     */
+    public record DataProcessorStatus(String location, int queueDepth, int pendingAssignments,
+                                      long availableMemory, Instant lastReport, boolean available) {
+    }
+
+    private static final class ProcessorState {
+        private int queueDepth;
+        private long availableMemory = Long.MAX_VALUE;
+        private Instant lastReport;
+        private Instant failedAt;
+        private final Deque<Instant> assignments = new ArrayDeque<>();
+
+        private int load() {
+            return queueDepth + assignments.size();
+        }
+
+        private boolean isFailed(Instant now, long backoffMs) {
+            return failedAt != null && failedAt.plusMillis(backoffMs).isAfter(now);
+        }
+
+        private void expireAssignments(Instant now, long ttlMs) {
+            while (!assignments.isEmpty() && !assignments.peekFirst().plusMillis(ttlMs).isAfter(now)) {
+                assignments.pollFirst();
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.ConfigConstants;
+
+import java.util.List;
+
+/**
+ * Settings for assigning split tickets to data processor nodes.
+ *
+ * @param maxConcurrentSplitsPerProcessor cap on running plus recently assigned splits per node
+ * @param assignmentTtlMs                 how long an assignment counts against a node that does not report its load
+ * @param failureBackoffMs                how long a failed node is skipped unless it reports again
+ * @param authorizedReporters             users allowed to report the load or the failure of a data processor
+ * @param loadReport                      where this node reports its own load, null when it does not
+ */
+public record SplitSchedulerConfig(
+        int maxConcurrentSplitsPerProcessor,
+        long assignmentTtlMs,
+        long failureBackoffMs,
+        List<String> authorizedReporters,
+        LoadReportConfig loadReport
+) {
+
+    public static final SplitSchedulerConfig DEFAULT = new SplitSchedulerConfig(8, 60_000, 30_000);
+
+    public SplitSchedulerConfig(int maxConcurrentSplitsPerProcessor, long assignmentTtlMs, long failureBackoffMs) {
+        this(maxConcurrentSplitsPerProcessor, assignmentTtlMs, failureBackoffMs, List.of(), null);
+    }
+
+    public SplitSchedulerConfig {
+        authorizedReporters = List.copyOf(authorizedReporters);
+    }
+
+    public boolean isAuthorizedReporter(String peerIdentity) {
+        return authorizedReporters.contains(peerIdentity);
+    }
+
+    public static SplitSchedulerConfig fromConfig(Config config) {
+        if (!config.hasPath(ConfigConstants.FLIGHT_SQL_SPLIT_SCHEDULER_KEY)) {
+            return DEFAULT;
+        }
+        var c = config.getConfig(ConfigConstants.FLIGHT_SQL_SPLIT_SCHEDULER_KEY);
+        return new SplitSchedulerConfig(
+                c.hasPath(ConfigConstants.MAX_CONCURRENT_SPLITS_PER_PROCESSOR_KEY)
+                        ? c.getInt(ConfigConstants.MAX_CONCURRENT_SPLITS_PER_PROCESSOR_KEY) : DEFAULT.maxConcurrentSplitsPerProcessor(),
+                c.hasPath(ConfigConstants.ASSIGNMENT_TTL_MS_KEY)
+                        ? c.getLong(ConfigConstants.ASSIGNMENT_TTL_MS_KEY) : DEFAULT.assignmentTtlMs(),
+                c.hasPath(ConfigConstants.FAILURE_BACKOFF_MS_KEY)
+                        ? c.getLong(ConfigConstants.FAILURE_BACKOFF_MS_KEY) : DEFAULT.failureBackoffMs(),
+                c.hasPath(ConfigConstants.AUTHORIZED_REPORTERS_KEY)
+                        ? c.getStringList(ConfigConstants.AUTHORIZED_REPORTERS_KEY) : DEFAULT.authorizedReporters(),
+                LoadReportConfig.fromConfig(c));
+    }
+}
@@ -2,12 +2,14 @@ package io.dazzleduck.sql.flight.server;
 
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.protobuf.*;
 import io.dazzleduck.sql.common.Headers;
+import io.dazzleduck.sql.common.IngestMetadata;
 import io.dazzleduck.sql.common.ConfigConstants;
 import io.dazzleduck.sql.commons.ConnectionPool;
 import io.dazzleduck.sql.commons.authorization.AccessMode;
@@ -18,9 +20,17 @@ import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.MicroMeterFlightRecorder;
 import io.dazzleduck.sql.flight.SimpleFlightRecorder;
 import io.dazzleduck.sql.flight.ingestion.IngestionParameters;
+import io.dazzleduck.sql.flight.memory.MemoryGovernor;
+import io.dazzleduck.sql.flight.memory.MemoryGovernorConfig;
 import io.dazzleduck.sql.flight.model.RunningStatementInfo;
+import io.dazzleduck.sql.flight.scheduler.DataProcessorLoad;
+import io.dazzleduck.sql.flight.scheduler.DataProcessorLoadReporter;
+import io.dazzleduck.sql.flight.scheduler.SplitScheduler;
+import io.dazzleduck.sql.flight.scheduler.SplitSchedulerConfig;
 import io.dazzleduck.sql.flight.server.auth2.AdvanceServerCallHeaderAuthMiddleware;
-import io.dazzleduck.sql.flight.stream.FlightStreamReader;
+import io.dazzleduck.sql.flight.stream.FramedIngestReader;
+import io.dazzleduck.sql.flight.stream.IngestBatchReader;
+import io.dazzleduck.sql.flight.stream.ProducerBatchReader;
 import io.micrometer.core.instrument.logging.LoggingMeterRegistry;
 import org.apache.arrow.adapter.jdbc.JdbcParameterBinder;
 import org.apache.arrow.adapter.jdbc.JdbcToArrowUtils;
@@ -34,6 +44,7 @@ import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
 import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.IpcOption;
 import org.apache.arrow.vector.ipc.message.MessageSerializer;
 import org.apache.arrow.vector.types.pojo.Schema;
 import org.duckdb.DuckDBConnection;
@@ -47,6 +58,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
@@ -56,6 +68,8 @@ import java.time.Instant;
 import java.time.temporal.TemporalAmount;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.protobuf.Any.pack;
 import static com.google.protobuf.ByteString.copyFrom;
@@ -73,6 +87,17 @@ import static org.duckdb.DuckDBConnection.DEFAULT_SCHEMA;
 public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProducerMBean {
 
     public static final String TEMP_WRITE_FORMAT = "arrow";
+    /**
+     * Action sent by a data processor to report its {@link DataProcessorLoad} as JSON.
+     */
+    public static final ActionType REPORT_DATA_PROCESSOR_LOAD = new ActionType("report_data_processor_load",
+            "Report queue depth and available memory of a data processor. Body is a JSON DataProcessorLoad");
+    /**
+     * Action sent by a client which could not reach a data processor. Body is the location URI.
+     */
+    public static final ActionType REPORT_DATA_PROCESSOR_FAILURE = new ActionType("report_data_processor_failure",
+            "Report a data processor as unreachable. Body is the location URI");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     public static final IngestionConfig DEFAULT_INGESTION_CONFIG = new IngestionConfig(1024 * 1024,
             1024 * 1024 * 1024L,
             2048,
@@ -145,7 +170,8 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                                 ctx.startTime(),                           // startInstant
                                 ctx.getQuery(),                                // query
                                 ctx.running(),                                 // action
-                                ctx.endTime()                                       // endInstant
+                                ctx.endTime(),                                      // endInstant
+                                peakMemory(key, ctx)                                // peakMemory
                         )
                 );
         });
@@ -165,13 +191,18 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                             ctx.startTime(),
                             ctx.getQuery(),
                             ctx.running(),
-                            ctx.endTime()
+                            ctx.endTime(),
+                            peakMemory(key, ctx)
                     )
             );
         });
         return result;
     }
 
+    private long peakMemory(CacheKey key, StatementContext<?> ctx) {
+        return Math.max(ctx.peakMemory(), getMemoryGovernor().getPeakMemory(key.peerIdentity(), key.id()));
+    }
+
     @Override
     public List<RunningStatementInfo> getRunningBulkIngestDetails() {
         return List.of();
@@ -202,6 +233,39 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return startTime;
     }
 
+    @Override
+    public List<SplitScheduler.DataProcessorStatus> getDataProcessorStatus() {
+        return getSplitScheduler().getStatus();
+    }
+
+    @Override
+    public PreparedStatementRegistry.Stats getPreparedStatementRegistryStats() {
+        return getPreparedStatementRegistry().getStats();
+    }
+
+    /**
+     * @return the load of this producer in the form a data processor reports it to the coordinator. The queue depth
+     * is the number of statement streams that are waiting for an executor thread or running.
+     */
+    public DataProcessorLoad getDataProcessorLoad() {
+        var availableMemory = allocator.getLimit() - allocator.getAllocatedMemory();
+        return new DataProcessorLoad(serverLocation.getUri().toString(), inFlightStreams.get(), availableMemory);
+    }
+
+    /**
+     * Counts a statement stream as in flight until the returned block, which runs {@code finalBlock}, is run.
+     */
+    protected Runnable trackInFlight(Runnable finalBlock) {
+        inFlightStreams.incrementAndGet();
+        var done = new AtomicBoolean();
+        return () -> {
+            if (done.compareAndSet(false, true)) {
+                inFlightStreams.decrementAndGet();
+            }
+            finalBlock.run();
+        };
+    }
+
     public static FlightRecorder buildRecorder(String producerId) {
         return buildRecorder(producerId, "dazzleduck-sql-server");
     }
@@ -237,6 +301,12 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
     protected final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     private final static Logger logger = LoggerFactory.getLogger(DuckDBFlightSqlProducer.class);
     private Set<Location> dataProcessorLocations = new LinkedHashSet<>();
+    private SplitScheduler splitScheduler;
+    private DataProcessorLoadReporter loadReporter;
+    private final AtomicInteger inFlightStreams = new AtomicInteger();
+    private MemoryGovernor memoryGovernor;
+    private PreparedStatementRegistry preparedStatementRegistry =
+            new PreparedStatementRegistry(PreparedStatementCacheConfig.DEFAULT);
     private final Location serverLocation;
     private final String producerId;
     protected final String secretKey;
@@ -359,8 +429,11 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         this.startTime = clock.instant();
         this.serverLocation = serverLocation;
         this.dataProcessorLocations.addAll(dataProcessorLocations);
+        this.splitScheduler = new SplitScheduler(SplitSchedulerConfig.DEFAULT, clock);
+        this.splitScheduler.setLocations(this.dataProcessorLocations);
         this.producerId = producerId;
         this.allocator = allocator;
+        this.memoryGovernor = newMemoryGovernor(MemoryGovernorConfig.DEFAULT);
         this.secretKey = secretKey;
         this.accessMode = accessMode;
         this.tempDir = tempDir;
@@ -470,7 +543,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
     @Override
     public void createPreparedStatement(FlightSql.ActionCreatePreparedStatementRequest request, final CallContext context, StreamListener<Result> listener) {
         // Running on another thread
-        final Connection connection;
+        final DuckDBConnection connection;
         try {
             connection = getConnection(context, accessMode);
         } catch (Throwable t ) {
@@ -488,38 +561,35 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         StatementHandle handle = newStatementHandle(authorizedSql);
         var cacheKey = new CacheKey(context.peerIdentity(), handle.queryId());
 
+        var databaseSchema = getDatabaseSchema(context, accessMode);
+        var registryKey = new PreparedStatementRegistry.Key(databaseSchema.database(), databaseSchema.schema(),
+                PreparedStatementRegistry.normalize(authorizedSql));
+
         Runnable runnable = () -> {
             try {
                 final ByteString serializedHandle =
                         copyFrom(handle.serialize());
-                // Ownership of the connection will be passed to the context. Do NOT close!
-
-                final PreparedStatement preparedStatement =
-                        connection.prepareStatement(
-                                authorizedSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // Ownership of the connection passes to the lease when it prepares on it
+                final PreparedStatementRegistry.Lease lease;
+                try {
+                    lease = getPreparedStatementRegistry().borrow(registryKey, authorizedSql, () -> connection);
+                } catch (Throwable t) {
+                    connection.close();
+                    throw t;
+                }
+                if (lease.reused()) {
+                    connection.close();
+                }
                 final StatementContext<PreparedStatement> preparedStatementContext =
-                        new StatementContext<>(connection, preparedStatement, authorizedSql);
+                        new StatementContext<>(lease.connection(), lease.statement(), authorizedSql, lease);
                 preparedStatementLoadingCache.put(
                         cacheKey, preparedStatementContext);
 
-                final Schema parameterSchema =
-                        JdbcToArrowUtils.jdbcToArrowSchema(preparedStatement.getParameterMetaData(), DEFAULT_CALENDAR);
-
-                final DuckDBResultSetMetaData metaData = (DuckDBResultSetMetaData) preparedStatement.getMetaData();
                 var builder =
                         FlightSql.ActionCreatePreparedStatementResult.newBuilder()
-                                .setParameterSchema(copyFrom(serializeMetadata(parameterSchema)))
-                                .setPreparedStatementHandle(serializedHandle);
-                ByteString bytes;
-                if (isNull(metaData) || metaData.getReturnType() == StatementReturnType.NOTHING) {
-                    bytes = ByteString.copyFrom(
-                            serializeMetadata(new Schema(List.of())));
-                } else {
-                    var x = JdbcToArrowUtils.jdbcToArrowSchema(metaData, DEFAULT_CALENDAR);
-                    bytes = ByteString.copyFrom(
-                            serializeMetadata(x));
-                }
-                builder.setDatasetSchema(bytes);
+                                .setParameterSchema(copyFrom(serializeMetadata(lease.parameterSchema())))
+                                .setPreparedStatementHandle(serializedHandle)
+                                .setDatasetSchema(ByteString.copyFrom(serializeMetadata(lease.datasetSchema())));
                 final FlightSql.ActionCreatePreparedStatementResult result = builder.build();
                 listener.onNext(new Result(pack(result).toByteArray()));
             } catch (Throwable e ) {
@@ -649,9 +719,10 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             ErrorHandling.handleThrowable(listener, e);
             return;
         }
-        ResultSetStreamUtil.streamResultSet(executorService, statementContext, key, OptionalResultSetSupplier.of(statementContext.getStatement()),
-            allocator, getBatchSize(context),
-            listener, () -> {}, recorder);
+        var supplier = OptionalResultSetSupplier.of(statementContext.getStatement());
+        ResultSetStreamUtil.streamResultSet(executorService, statementContext, key, supplier,
+            getMemoryGovernor(), getBatchSize(context),
+            listener, trackInFlight(() -> invalidatePreparedStatements(statementContext.getStatement(), supplier.hasResultSet())), recorder);
     }
 
 
@@ -695,14 +766,18 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             var key = new CacheKey(context.peerIdentity(), statementHandle.queryId());
             statementLoadingCache.put(key, statementContext);
             connection = null; // ownership transferred to StatementContext — do not close here
+            var supplier = createResultSetSupplier(statement, query);
             ResultSetStreamUtil.streamResultSet(executorService,
                     statementContext,
                     key,
-                    createResultSetSupplier(statement, query),
-                    allocator,
+                    supplier,
+                    getMemoryGovernor(),
                     getBatchSize(context),
                     listener,
-                    () -> statementLoadingCache.invalidate(key), recorder);
+                    trackInFlight(() -> {
+                        invalidatePreparedStatements(statement, supplier.hasResultSet());
+                        statementLoadingCache.invalidate(key);
+                    }), recorder);
         } catch (Throwable e) {
             ErrorHandling.handleThrowable(listener, e);
         } finally {
@@ -806,7 +881,8 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return () -> {
             try (final Connection connection = getConnection(context, accessMode);
                  final Statement statement = connection.createStatement()) {
-                statement.execute(query);
+                var hasResultSet = statement.execute(query);
+                invalidatePreparedStatements(statement, hasResultSet);
                 var result =  statement.getUpdateCount();
                 final FlightSql.DoPutUpdateResult build =
                         FlightSql.DoPutUpdateResult.newBuilder().setRecordCount(result).build();
@@ -849,7 +925,12 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                     final int recordCount;
 
                     if (rowCount == 0) {
-                        recordCount = Math.max(0, preparedStatement.executeUpdate());
+                        var updateCount = preparedStatement.executeUpdate();
+                        if (updateCount < 0) {
+                            // DDL or a setting, see invalidatePreparedStatements
+                            getPreparedStatementRegistry().invalidateAll();
+                        }
+                        recordCount = Math.max(0, updateCount);
                     } else {
                         final JdbcParameterBinder binder =
                                 JdbcParameterBinder.builder(preparedStatement, root).bindAll().build();
@@ -943,7 +1024,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
             return () -> ErrorHandling.handleThrowable(ackStream,
                     new IllegalArgumentException("Ingestion queue '" + ingestionParameters.ingestionQueue() + "' not found. No target path is configured for this queue."));
         }
-        return ingestFromReader(FlightStreamReader.of(flightStream, allocator), ingestionQueue, ingestionParameters, ackStream);
+        return ingestFromStream(IngestBatchReader.of(flightStream, allocator), ingestionQueue, ingestionParameters, ackStream);
     }
 
     @Override
@@ -960,6 +1041,20 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return ingestFromReader(new ArrowStreamReader(inputStream, allocator), ingestionQueue, ingestionParameters, ackStream);
     }
 
+    @Override
+    public Runnable acceptPutStatementBulkIngestStream(
+            CallContext context,
+            IngestionParameters ingestionParameters,
+            InputStream inputStream,
+            StreamListener<PutResult> ackStream) {
+        var ingestionQueue = getOrCreateIngestionQueue(ingestionParameters.ingestionQueue());
+        if( ingestionQueue == null) {
+            return () -> ErrorHandling.handleThrowable(ackStream,
+                    new IllegalArgumentException("Ingestion queue '" + ingestionParameters.ingestionQueue() + "' not found. No target path is configured for this queue."));
+        }
+        return ingestFromStream(FramedIngestReader.of(inputStream, allocator), ingestionQueue, ingestionParameters, ackStream);
+    }
+
     private Runnable ingestFromReader(
             ArrowReader reader,
             BulkIngestQueue<String, IngestionResult> ingestionQueue,
@@ -973,6 +1068,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
                 var batch = ingestionParameters.constructBatch(fileSize, tempFile.toAbsolutePath().toString());
                 var result = ingestionQueue.add(batch);
                 result.get();
+                // Plain Flight SQL clients expect an empty result, the flow control only goes with batch metadata
                 ackStream.onNext(PutResult.empty());
                 ackStream.onCompleted();
             } catch (Throwable throwable) {
@@ -982,6 +1078,115 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         };
     }
 
+    /**
+     * Ingests a stream that may carry many producer batches, each acknowledged with its batch id as soon as it is
+     * written, while the stream stays open for the next ones. A stream without batch metadata is ingested as one
+     * batch and acknowledged with an empty result, like {@link #ingestFromReader}, so that plain Flight SQL clients
+     * can read it.
+     */
+    private Runnable ingestFromStream(
+            ProducerBatchReader reader,
+            BulkIngestQueue<String, IngestionResult> ingestionQueue,
+            IngestionParameters ingestionParameters,
+            StreamListener<PutResult> ackStream) {
+        return () -> {
+            var pending = new ArrayList<CompletableFuture<?>>();
+            try (reader) {
+                while (reader.nextProducerBatch()) {
+                    Path tempFile = BulkIngestQueue.writeAndValidateTempArrowFile(tempDir, reader.getBatchReader());
+                    long fileSize = Files.size(tempFile);
+                    recorder.recordIngestReceived(fileSize);
+                    var options = reader.getBatchOptions();
+                    if (options == null) {
+                        var batch = ingestionParameters.constructBatch(fileSize, tempFile.toAbsolutePath().toString());
+                        ingestionQueue.add(batch).get();
+                        synchronized (ackStream) {
+                            ackStream.onNext(PutResult.empty());
+                        }
+                        continue;
+                    }
+                    var batch = ingestionParameters.withBatchOptions(options)
+                            .constructBatch(fileSize, tempFile.toAbsolutePath().toString());
+                    CompletableFuture<IngestionResult> result;
+                    try {
+                        result = ingestionQueue.add(batch);
+                    } catch (Exception e) {
+                        result = CompletableFuture.failedFuture(e);
+                    }
+                    pending.removeIf(CompletableFuture::isDone);
+                    pending.add(result.whenComplete((r, t) -> acknowledge(ackStream, ingestionQueue, options, t)));
+                }
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).exceptionally(t -> null).join();
+                synchronized (ackStream) {
+                    ackStream.onCompleted();
+                }
+            } catch (Throwable throwable) {
+                recorder.recordIngestError();
+                synchronized (ackStream) {
+                    ErrorHandling.handleThrowable(ackStream, throwable);
+                }
+            }
+        };
+    }
+
+    /**
+     * Acknowledges one batch of a streaming ingest with its batch id, and with the status of the error that
+     * {@link ErrorHandling} would have ended the call with when it failed.
+     */
+    private void acknowledge(StreamListener<PutResult> ackStream, BulkIngestQueue<String, IngestionResult> ingestionQueue,
+                             Map<String, String> options, Throwable failure) {
+        var ack = new LinkedHashMap<String, String>();
+        ack.put(Headers.HEADER_PRODUCER_BATCH_ID, options.getOrDefault(Headers.HEADER_PRODUCER_BATCH_ID, ""));
+        if (failure != null) {
+            recorder.recordIngestError();
+            var status = new FlightRuntimeException[1];
+            ErrorHandling.handleThrowable(new StreamListener<PutResult>() {
+                @Override
+                public void onNext(PutResult val) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    status[0] = t instanceof FlightRuntimeException f ? f : CallStatus.INTERNAL.withCause(t).toRuntimeException();
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            }, failure);
+            var error = status[0] != null ? status[0] : CallStatus.INTERNAL.withCause(failure).toRuntimeException();
+            ack.put(IngestMetadata.STATUS, error.status().code().name());
+            ack.put(IngestMetadata.MESSAGE, Objects.requireNonNullElse(error.status().description(), ""));
+        }
+        sendAck(ackStream, flowControl(ingestionQueue, ack));
+    }
+
+    /**
+     * Adds how much more {@code ingestionQueue} can take and how fast it writes to an acknowledgement, so that
+     * producers can slow down before the queue rejects their batches.
+     */
+    private static Map<String, String> flowControl(BulkIngestQueue<String, IngestionResult> ingestionQueue,
+                                                   Map<String, String> ack) {
+        ack.put(Headers.HEADER_PENDING_WRITE_HEADROOM, String.valueOf(ingestionQueue.pendingWriteHeadroom()));
+        var drainRate = ingestionQueue.drainRate();
+        if (drainRate > 0) {
+            ack.put(Headers.HEADER_DRAIN_RATE, String.valueOf(drainRate));
+        }
+        return ack;
+    }
+
+    private void sendAck(StreamListener<PutResult> ackStream, Map<String, String> ack) {
+        var bytes = IngestMetadata.encode(ack);
+        synchronized (ackStream) {
+            try (ArrowBuf buffer = allocator.buffer(bytes.length)) {
+                buffer.writeBytes(bytes);
+                ackStream.onNext(PutResult.metadata(buffer));
+            } catch (RuntimeException e) {
+                logger.warn("Failed to acknowledge ingested batch {}", ack, e);
+            }
+        }
+    }
+
     @Override
     public void cancelFlightInfo(
             CancelFlightInfoRequest request, CallContext context, StreamListener<CancelStatus> listener) {
@@ -1006,7 +1211,10 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
 
     @Override
     public boolean tryCancel(Long queryId, CallContext context) throws SQLException {
-        var key = new CacheKey(context.peerIdentity(), queryId);
+        return tryCancel(new CacheKey(context.peerIdentity(), queryId));
+    }
+
+    private boolean tryCancel(CacheKey key) throws SQLException {
         StatementContext<?> statementContext = getStatementContext(key);
 
         if (statementContext == null) {
@@ -1192,6 +1400,7 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
 
     @Override
     public void close() {
+        closeLoadReporter();
         executorService.shutdown();
         scheduledExecutorService.shutdown();
         try {
@@ -1212,6 +1421,8 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
 
         ingestionHandler.closeQueues();
 
+        getPreparedStatementRegistry().close();
+        closeMemoryGovernor(getMemoryGovernor());
         allocator.close();
     }
 
@@ -1242,6 +1453,139 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         var newLocations = new LinkedHashSet<Location>();
         newLocations.addAll(dataProcessorLocations);
         this.dataProcessorLocations = newLocations;
+        this.splitScheduler.setLocations(newLocations);
+    }
+
+    public synchronized SplitScheduler getSplitScheduler() {
+        return splitScheduler;
+    }
+
+    /**
+     * Replaces the split scheduler, e.g. to apply a non default {@link SplitSchedulerConfig}.
+     * The current data processor locations are carried over. When the configuration has a
+     * {@link SplitSchedulerConfig#loadReport()}, this producer starts reporting its load to the coordinator.
+     */
+    public synchronized void setSplitScheduler(SplitScheduler splitScheduler) {
+        splitScheduler.setLocations(dataProcessorLocations);
+        this.splitScheduler = splitScheduler;
+        if (loadReporter != null) {
+            loadReporter.close();
+            loadReporter = null;
+        }
+        var loadReport = splitScheduler.getConfig().loadReport();
+        if (loadReport != null) {
+            loadReporter = new DataProcessorLoadReporter(loadReport, allocator, this::getDataProcessorLoad);
+            loadReporter.start(scheduledExecutorService);
+        }
+    }
+
+    private synchronized void closeLoadReporter() {
+        if (loadReporter != null) {
+            loadReporter.close();
+            loadReporter = null;
+        }
+    }
+
+    /**
+     * Drops the pooled prepared statements after a statement that returned neither rows nor an update count, such as
+     * DDL or a SET, since a pooled statement still describes the schema it was prepared with.
+     */
+    private void invalidatePreparedStatements(Statement statement, boolean hasResultSet) {
+        try {
+            if (!hasResultSet && statement.getUpdateCount() < 0) {
+                getPreparedStatementRegistry().invalidateAll();
+            }
+        } catch (SQLException e) {
+            getPreparedStatementRegistry().invalidateAll();
+        }
+    }
+
+    public synchronized PreparedStatementRegistry getPreparedStatementRegistry() {
+        return preparedStatementRegistry;
+    }
+
+    /**
+     * Replaces the registry of shared prepared statements, e.g. to apply a non default
+     * {@link PreparedStatementCacheConfig}. Statements borrowed from the previous registry are closed when released.
+     */
+    public synchronized void setPreparedStatementRegistry(PreparedStatementRegistry preparedStatementRegistry) {
+        var previous = this.preparedStatementRegistry;
+        this.preparedStatementRegistry = preparedStatementRegistry;
+        previous.close();
+    }
+
+    public synchronized MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    /**
+     * Replaces the memory governor with one for the given configuration and applies its DuckDB settings.
+     * Meant to be called before the producer serves queries.
+     */
+    public synchronized void setMemoryGovernorConfig(MemoryGovernorConfig config) {
+        var previous = memoryGovernor;
+        memoryGovernor = newMemoryGovernor(config);
+        memoryGovernor.applyDuckDBSettings();
+        closeMemoryGovernor(previous);
+    }
+
+    private static void closeMemoryGovernor(MemoryGovernor governor) {
+        try {
+            governor.close();
+        } catch (Exception e) {
+            logger.atError().setCause(e).log("Error closing memory governor");
+        }
+    }
+
+    private MemoryGovernor newMemoryGovernor(MemoryGovernorConfig config) {
+        var governor = new MemoryGovernor(allocator, config);
+        governor.setCanceller((identity, queryId) -> tryCancel(new CacheKey(identity, queryId)));
+        return governor;
+    }
+
+    @Override
+    public void listActions(CallContext context, StreamListener<ActionType> listener) {
+        FlightSqlUtils.FLIGHT_SQL_ACTIONS.forEach(listener::onNext);
+        listener.onNext(REPORT_DATA_PROCESSOR_LOAD);
+        listener.onNext(REPORT_DATA_PROCESSOR_FAILURE);
+        listener.onCompleted();
+    }
+
+    @Override
+    public void doAction(CallContext context, Action action, StreamListener<Result> listener) {
+        var type = action.getType();
+        if ((REPORT_DATA_PROCESSOR_LOAD.getType().equals(type) || REPORT_DATA_PROCESSOR_FAILURE.getType().equals(type))
+                && !getSplitScheduler().getConfig().isAuthorizedReporter(context.peerIdentity())) {
+            ErrorHandling.handleUnauthorized(listener,
+                    new UnauthorizedException(context.peerIdentity() + " is not allowed to report data processors"));
+            return;
+        }
+        if (REPORT_DATA_PROCESSOR_LOAD.getType().equals(type)) {
+            try {
+                var load = MAPPER.readValue(action.getBody(), DataProcessorLoad.class);
+                var location = new Location(load.location());
+                if (!getSplitScheduler().reportLoad(location, load.queueDepth(), load.availableMemory())) {
+                    ErrorHandling.handleThrowable(listener,
+                            new IllegalArgumentException("Unknown data processor location: " + load.location()));
+                    return;
+                }
+            } catch (Throwable t) {
+                ErrorHandling.handleThrowable(listener, t);
+                return;
+            }
+            listener.onCompleted();
+        } else if (REPORT_DATA_PROCESSOR_FAILURE.getType().equals(type)) {
+            try {
+                var location = new Location(new String(action.getBody(), StandardCharsets.UTF_8));
+                getSplitScheduler().reportFailure(location);
+            } catch (Throwable t) {
+                ErrorHandling.handleThrowable(listener, t);
+                return;
+            }
+            listener.onCompleted();
+        } else {
+            FlightSqlHttpProducer.super.doAction(context, action, listener);
+        }
     }
 
 
@@ -1450,6 +1794,31 @@ public class DuckDBFlightSqlProducer implements FlightSqlHttpProducer, SqlProduc
         return new FlightInfo(schema, descriptor, endpoints, -1, -1);
     }
 
+    /**
+     * Same as {@link #getFlightInfoForSchema(List, FlightDescriptor, Schema, Collection)} but with its own ordered
+     * locations for every request, as produced by {@link SplitScheduler#assign(List)}.
+     */
+    <T extends Message> FlightInfo getFlightInfoForSchema(
+            final List<T> requests, final List<List<Location>> locations,
+            final FlightDescriptor descriptor, final Schema schema) {
+        return getFlightInfoForSchema(requests, locations, descriptor, schema, null);
+    }
+
+    /**
+     * Same as {@link #getFlightInfoForSchema(List, List, FlightDescriptor, Schema)} with app metadata telling the
+     * client how to combine the results of the endpoints.
+     */
+    <T extends Message> FlightInfo getFlightInfoForSchema(
+            final List<T> requests, final List<List<Location>> locations,
+            final FlightDescriptor descriptor, final Schema schema, final byte[] appMetadata) {
+        var endpoints = new ArrayList<FlightEndpoint>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            var ticket = new Ticket(pack(requests.get(i)).toByteArray());
+            endpoints.add(new FlightEndpoint(ticket, locations.get(i).toArray(new Location[0])));
+        }
+        return new FlightInfo(schema, descriptor, endpoints, -1, -1, false, IpcOption.DEFAULT, appMetadata);
+    }
+
 
 
 
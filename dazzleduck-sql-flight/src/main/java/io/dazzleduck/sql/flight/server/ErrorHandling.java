@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.dazzleduck.sql.commons.authorization.UnauthorizedException;
+import io.dazzleduck.sql.commons.ingestion.OutOfSequenceBatch;
 import io.dazzleduck.sql.commons.ingestion.PendingWriteExceededException;
 import org.apache.arrow.flight.*;
 import org.slf4j.Logger;
@@ -43,6 +44,20 @@ public class ErrorHandling {
         return null;
     }
 
+    /**
+     * Checks if the throwable or any of its causes is an OutOfSequenceBatch.
+     */
+    private static OutOfSequenceBatch findOutOfSequenceBatch(Throwable t) {
+        Throwable current = t;
+        while (current != null) {
+            if (current instanceof OutOfSequenceBatch e) {
+                return e;
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+
     public static void handleThrowable(Throwable t) {
         // Unwrap ExecutionException to get the real cause
         t = unwrapExecutionException(t);
@@ -129,11 +144,18 @@ public class ErrorHandling {
         t = unwrapExecutionException(t);
         // Check for PendingWriteExceededException in cause chain
         var pendingWriteEx = findPendingWriteException(t);
+        var outOfSequence = findOutOfSequenceBatch(t);
         if (pendingWriteEx != null) {
             listener.onError(CallStatus.RESOURCE_EXHAUSTED
                     .withDescription(pendingWriteEx.getMessage())
                     .toRuntimeException());
             return;
+        } else if (outOfSequence != null) {
+            // The producer already sent this batch
+            listener.onError(CallStatus.ALREADY_EXISTS
+                    .withDescription(outOfSequence.getMessage())
+                    .toRuntimeException());
+            return;
         } else if (t instanceof UnauthorizedException e) {
             handleUnauthorized(listener, e);
             return;
@@ -8,8 +8,11 @@ import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.IngestionTaskFactoryProvider;
 import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.SimpleFlightRecorder;
+import io.dazzleduck.sql.flight.memory.MemoryGovernorConfig;
 import io.dazzleduck.sql.flight.optimizer.QueryOptimizer;
 import io.dazzleduck.sql.flight.optimizer.QueryOptimizerProvider;
+import io.dazzleduck.sql.flight.scheduler.SplitScheduler;
+import io.dazzleduck.sql.flight.scheduler.SplitSchedulerConfig;
 import org.apache.arrow.flight.Location;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
@@ -115,6 +118,9 @@ public final class FlightSqlProducerFactory {
         private Clock clock;
         private IngestionConfig ingestionConfig;
         private CursorConfig cursorConfig;
+        private SplitSchedulerConfig splitSchedulerConfig;
+        private MemoryGovernorConfig memoryGovernorConfig;
+        private PreparedStatementCacheConfig preparedStatementCacheConfig;
         private FlightRecorder flightRecorder;
 
         private ProducerBuilder(Config config) {
@@ -165,6 +171,15 @@ public final class FlightSqlProducerFactory {
             // Cursor protection config
             this.cursorConfig = CursorConfig.fromConfig(config);
 
+            // Split scheduling across data processors
+            this.splitSchedulerConfig = SplitSchedulerConfig.fromConfig(config);
+
+            // Memory limits of running queries
+            this.memoryGovernorConfig = MemoryGovernorConfig.fromConfig(config);
+
+            // Prepared statements shared across sessions
+            this.preparedStatementCacheConfig = PreparedStatementCacheConfig.fromConfig(config);
+
             // Load providers (query optimizer, post-ingestion factory)
             try {
                 this.queryOptimizer = loadQueryOptimizer(config);
@@ -420,6 +435,39 @@ public final class FlightSqlProducerFactory {
             return this;
         }
 
+        /**
+         * Sets a custom configuration for assigning splits to data processors.
+         *
+         * @param splitSchedulerConfig the split scheduler configuration
+         * @return this builder
+         */
+        public ProducerBuilder withSplitSchedulerConfig(SplitSchedulerConfig splitSchedulerConfig) {
+            this.splitSchedulerConfig = splitSchedulerConfig;
+            return this;
+        }
+
+        /**
+         * Sets custom memory limits and pressure policy for running queries.
+         *
+         * @param memoryGovernorConfig the memory governor configuration
+         * @return this builder
+         */
+        public ProducerBuilder withMemoryGovernorConfig(MemoryGovernorConfig memoryGovernorConfig) {
+            this.memoryGovernorConfig = memoryGovernorConfig;
+            return this;
+        }
+
+        /**
+         * Sets a custom configuration for sharing prepared statements across sessions.
+         *
+         * @param preparedStatementCacheConfig the prepared statement cache configuration
+         * @return this builder
+         */
+        public ProducerBuilder withPreparedStatementCacheConfig(PreparedStatementCacheConfig preparedStatementCacheConfig) {
+            this.preparedStatementCacheConfig = preparedStatementCacheConfig;
+            return this;
+        }
+
         /**
          * Builds the DuckDBFlightSqlProducer instance.
          *
@@ -429,6 +477,14 @@ public final class FlightSqlProducerFactory {
          * @return a fully configured DuckDBFlightSqlProducer
          */
         public DuckDBFlightSqlProducer build() {
+            var producer = buildProducer();
+            producer.setSplitScheduler(new SplitScheduler(splitSchedulerConfig, clock));
+            producer.setMemoryGovernorConfig(memoryGovernorConfig);
+            producer.setPreparedStatementRegistry(new PreparedStatementRegistry(preparedStatementCacheConfig));
+            return producer;
+        }
+
+        private DuckDBFlightSqlProducer buildProducer() {
             // Use provided allocator or create default
             BufferAllocator finalAllocator = allocator != null
                 ? allocator
@@ -40,6 +40,23 @@ public interface HttpFlightAdaptor {
             InputStream inputStream,
             FlightProducer.StreamListener<PutResult> ackStream);
 
+    /**
+     * Accepts a streaming bulk ingestion via HTTP: the input stream carries many producer batches, each framed with
+     * its options as described by {@link io.dazzleduck.sql.common.IngestMetadata}, and each batch is acknowledged
+     * with its batch id as soon as it is written.
+     *
+     * @param context the call context containing peer identity and credentials
+     * @param ingestionParameters parameters specifying the ingestion target and options
+     * @param inputStream the input stream containing the framed batches
+     * @param ackStream listener receiving one acknowledgment per batch as {@link PutResult} metadata
+     * @return a Runnable that performs the ingestion when executed
+     */
+    Runnable acceptPutStatementBulkIngestStream(
+            FlightProducer.CallContext context,
+            IngestionParameters ingestionParameters,
+            InputStream inputStream,
+            FlightProducer.StreamListener<PutResult> ackStream);
+
     /**
      * Returns the unique identifier for this producer instance.
      *
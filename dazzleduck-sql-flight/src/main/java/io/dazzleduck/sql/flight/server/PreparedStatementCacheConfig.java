@@ -0,0 +1,34 @@
+package io.dazzleduck.sql.flight.server;
+
+import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.ConfigConstants;
+
+/**
+ * Settings for sharing prepared statements across client sessions, see {@link PreparedStatementRegistry}.
+ *
+ * @param maxEntries      number of distinct (database, schema, SQL) entries kept
+ * @param maxIdlePerEntry prepared statements kept ready per entry, 0 disables reuse
+ * @param idleTtlMs       entries not borrowed for this long are closed
+ */
+public record PreparedStatementCacheConfig(
+        int maxEntries,
+        int maxIdlePerEntry,
+        long idleTtlMs
+) {
+
+    public static final PreparedStatementCacheConfig DEFAULT = new PreparedStatementCacheConfig(1000, 4, 600_000);
+
+    public static PreparedStatementCacheConfig fromConfig(Config config) {
+        if (!config.hasPath(ConfigConstants.FLIGHT_SQL_PREPARED_STATEMENT_CACHE_KEY)) {
+            return DEFAULT;
+        }
+        var c = config.getConfig(ConfigConstants.FLIGHT_SQL_PREPARED_STATEMENT_CACHE_KEY);
+        return new PreparedStatementCacheConfig(
+                c.hasPath(ConfigConstants.MAX_ENTRIES_KEY)
+                        ? c.getInt(ConfigConstants.MAX_ENTRIES_KEY) : DEFAULT.maxEntries(),
+                c.hasPath(ConfigConstants.MAX_IDLE_PER_ENTRY_KEY)
+                        ? c.getInt(ConfigConstants.MAX_IDLE_PER_ENTRY_KEY) : DEFAULT.maxIdlePerEntry(),
+                c.hasPath(ConfigConstants.IDLE_TTL_MS_KEY)
+                        ? c.getLong(ConfigConstants.IDLE_TTL_MS_KEY) : DEFAULT.idleTtlMs());
+    }
+}
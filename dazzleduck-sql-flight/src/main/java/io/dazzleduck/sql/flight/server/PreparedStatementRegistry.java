@@ -0,0 +1,359 @@
+package io.dazzleduck.sql.flight.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowUtils;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.duckdb.DuckDBConnection;
+import org.duckdb.DuckDBResultSetMetaData;
+import org.duckdb.StatementReturnType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Prepared statements shared by all sessions that prepare the same SQL on the same database and schema.
+ * <p>
+ * A client handle borrows a {@link Lease} for its lifetime. Closing the lease puts the statement, with its
+ * connection and schemas, back into a small pool of its entry, so that the next session preparing the same
+ * statement skips the prepare. Only statements returning a result are pooled: anything else may change the state
+ * of its connection and is closed with the lease.
+ * <p>
+ * A pooled statement keeps the schemas of its first prepare, DuckDB only binds it again when it runs. After DDL the
+ * producer calls {@link #invalidateAll()}, so that the next lease prepares the statement again.
+ */
+public class PreparedStatementRegistry implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+
+    /**
+     * @param sql SQL as returned by {@link #normalize(String)}, only used to tell statements apart
+     */
+    public record Key(String database, String schema, String sql) {
+    }
+
+    /**
+     * @param entries distinct statements in the registry
+     * @param idle    prepared statements ready to be borrowed
+     */
+    public record Stats(long hits, long misses, long entries, long idle) {
+        public double hitRate() {
+            var total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private record Prepared(DuckDBConnection connection, PreparedStatement statement, Schema parameterSchema,
+                            Schema datasetSchema, boolean poolable) {
+
+        void close() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.atWarn().setCause(e).log("Failed to close prepared statement");
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.atWarn().setCause(e).log("Failed to close prepared statement connection");
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Deque<Prepared> idle = new ArrayDeque<>();
+        private boolean removed;
+    }
+
+    /**
+     * A prepared statement borrowed from the registry. Closing it gives the statement back.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Key key;
+        private final Entry entry;
+        private final Prepared prepared;
+        private final boolean reused;
+        private boolean closed;
+
+        private Lease(Key key, Entry entry, Prepared prepared, boolean reused) {
+            this.key = key;
+            this.entry = entry;
+            this.prepared = prepared;
+            this.reused = reused;
+        }
+
+        public Key key() {
+            return key;
+        }
+
+        public DuckDBConnection connection() {
+            return prepared.connection();
+        }
+
+        public PreparedStatement statement() {
+            return prepared.statement();
+        }
+
+        public Schema parameterSchema() {
+            return prepared.parameterSchema();
+        }
+
+        public Schema datasetSchema() {
+            return prepared.datasetSchema();
+        }
+
+        /**
+         * @return true when the statement was prepared by an earlier session
+         */
+        public boolean reused() {
+            return reused;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(this);
+        }
+    }
+
+    private final int maxIdlePerEntry;
+    private final Cache<Key, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PreparedStatementRegistry(PreparedStatementCacheConfig config) {
+        this.maxIdlePerEntry = config.maxIdlePerEntry();
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(config.maxEntries())
+                .expireAfterAccess(config.idleTtlMs(), TimeUnit.MILLISECONDS)
+                .removalListener(PreparedStatementRegistry::onRemoval)
+                .build();
+    }
+
+    /**
+     * Borrows a prepared statement for the key, preparing {@code sql} as it was sent on a connection from
+     * {@code connectionSupplier} when none is ready. The caller owns the supplied connection when the lease does not
+     * use it.
+     */
+    public Lease borrow(Key key, String sql, Callable<DuckDBConnection> connectionSupplier) throws SQLException {
+        Entry entry;
+        try {
+            entry = entries.get(key, Entry::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        synchronized (entry) {
+            var prepared = entry.idle.pollFirst();
+            if (prepared != null) {
+                hits.increment();
+                return new Lease(key, entry, prepared, true);
+            }
+        }
+        misses.increment();
+        DuckDBConnection connection;
+        try {
+            connection = connectionSupplier.call();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+        return new Lease(key, entry, prepare(connection, sql), false);
+    }
+
+    public Stats getStats() {
+        long idle = 0;
+        for (var entry : entries.asMap().values()) {
+            synchronized (entry) {
+                idle += entry.idle.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), entries.size(), idle);
+    }
+
+    /**
+     * Closes every idle statement and those borrowed once they are released, e.g. after the catalog changed.
+     */
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+        entries.cleanUp();
+    }
+
+    /**
+     * Collapses whitespace outside of string literals, quoted identifiers and comments and drops a trailing
+     * semicolon, so that statements differing only in layout share an entry. String literals include escape strings
+     * ({@code E'...'}) and dollar-quoted strings ({@code $$...$$} and {@code $tag$...$tag$}).
+     */
+    public static String normalize(String sql) {
+        var result = new StringBuilder(sql.length());
+        var length = sql.length();
+        var i = 0;
+        var pendingSpace = false;
+        while (i < length) {
+            var c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            // A line comment already ends with a newline
+            if (pendingSpace && !result.isEmpty() && result.charAt(result.length() - 1) != '\n') {
+                result.append(' ');
+            }
+            pendingSpace = false;
+            int end;
+            String tag;
+            if ((c == 'E' || c == 'e') && i + 1 < length && sql.charAt(i + 1) == '\''
+                    && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+                end = escapeStringEnd(sql, i + 2);
+            } else if (c == '\'' || c == '"') {
+                end = sql.indexOf(c, i + 1);
+                // A doubled quote escapes the quote
+                while (end >= 0 && end + 1 < length && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                end = end < 0 ? length : end + 1;
+            } else if (sql.startsWith("--", i)) {
+                end = sql.indexOf('\n', i);
+                end = end < 0 ? length : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+            } else if (c == '$' && (tag = dollarTag(sql, i)) != null) {
+                end = sql.indexOf(tag, i + tag.length());
+                end = end < 0 ? length : end + tag.length();
+            } else {
+                end = i + 1;
+            }
+            result.append(sql, i, end);
+            i = end;
+        }
+        while (!result.isEmpty() && result.charAt(result.length() - 1) == ';') {
+            result.setLength(result.length() - 1);
+            while (!result.isEmpty() && Character.isWhitespace(result.charAt(result.length() - 1))) {
+                result.setLength(result.length() - 1);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the end of an escape string starting at {@code start}, where a backslash escapes the next character
+     */
+    private static int escapeStringEnd(String sql, int start) {
+        var i = start;
+        while (i < sql.length()) {
+            var c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+
+    /**
+     * @return the {@code $tag$} opening a dollar-quoted string at {@code start}, null for anything else such as a
+     * {@code $1} parameter
+     */
+    private static String dollarTag(String sql, int start) {
+        var i = start + 1;
+        while (i < sql.length() && sql.charAt(i) != '$') {
+            var c = sql.charAt(i);
+            if (!(i == start + 1 ? Character.isLetter(c) || c == '_' : isIdentifierPart(c))) {
+                return null;
+            }
+            i++;
+        }
+        return i < sql.length() ? sql.substring(start, i + 1) : null;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private void release(Lease lease) {
+        var prepared = lease.prepared;
+        if (maxIdlePerEntry > 0 && prepared.poolable() && isReusable(prepared)) {
+            synchronized (lease.entry) {
+                if (!lease.entry.removed && lease.entry.idle.size() < maxIdlePerEntry) {
+                    lease.entry.idle.addFirst(prepared);
+                    return;
+                }
+            }
+        }
+        prepared.close();
+    }
+
+    private static boolean isReusable(Prepared prepared) {
+        try {
+            if (prepared.statement().isClosed() || prepared.connection().isClosed()) {
+                return false;
+            }
+            prepared.statement().clearParameters();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static Prepared prepare(DuckDBConnection connection, String sql) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            var parameterSchema = JdbcToArrowUtils.jdbcToArrowSchema(statement.getParameterMetaData(),
+                    DuckDBFlightSqlProducer.DEFAULT_CALENDAR);
+            var metaData = (DuckDBResultSetMetaData) statement.getMetaData();
+            var returnsResult = !isNull(metaData) && metaData.getReturnType() == StatementReturnType.QUERY_RESULT;
+            var datasetSchema = isNull(metaData) || metaData.getReturnType() == StatementReturnType.NOTHING
+                    ? new Schema(List.of())
+                    : JdbcToArrowUtils.jdbcToArrowSchema(metaData, DuckDBFlightSqlProducer.DEFAULT_CALENDAR);
+            return new Prepared(connection, statement, parameterSchema, datasetSchema, returnsResult);
+        } catch (SQLException | RuntimeException e) {
+            if (statement != null) {
+                statement.close();
+            }
+            throw e;
+        }
+    }
+
+    private static void onRemoval(RemovalNotification<Key, Entry> notification) {
+        var entry = notification.getValue();
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.removed = true;
+            entry.idle.forEach(Prepared::close);
+            entry.idle.clear();
+        }
+    }
+}
@@ -5,11 +5,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.protobuf.ByteString;
 import io.dazzleduck.sql.common.Headers;
 import io.dazzleduck.sql.commons.Transformations;
+import io.dazzleduck.sql.commons.TreeAndSize;
 import io.dazzleduck.sql.commons.authorization.AccessMode;
 import io.dazzleduck.sql.commons.authorization.UnauthorizedException;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.flight.ingestion.IngestionParameters;
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
 import io.dazzleduck.sql.commons.planner.SplitPlanner;
+import io.dazzleduck.sql.commons.planner.TopK;
 import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.optimizer.QueryOptimizer;
 import org.apache.arrow.flight.*;
@@ -18,12 +21,14 @@ import org.apache.arrow.memory.BufferAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -535,7 +540,23 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
                                                         final FlightDescriptor descriptor) {
         try {
             var splitSize = getSplitSize(context);
+            var mergePartials = ContextUtils.getValue(context, Headers.HEADER_MERGE_PARTIALS, false, Boolean.class);
+            var aggregation = PartialAggregation.of(tree);
+            if (aggregation != null) {
+                var partials = SplitPlanner.getSplitTreeAndSize(aggregation.partialTree(), splitSize);
+                if (partials.size() > 1) {
+                    return mergePartials
+                            ? getFlightInfoMerged(partials, aggregation.mergeSql(), descriptor)
+                            : getFlightInfoUnsplit(tree, context, descriptor);
+                }
+            }
             var splits = SplitPlanner.getSplitTreeAndSize(tree, splitSize);
+            var topK = aggregation == null && splits.size() > 1 ? TopK.of(tree) : null;
+            if (topK != null) {
+                return mergePartials
+                        ? getFlightInfoMerged(topK.plan(splitSize), topK.mergeSql(), descriptor)
+                        : getFlightInfoUnsplit(tree, context, descriptor);
+            }
             var list = splits.stream().map(split -> {
                 try {
                     var sql = Transformations.parseToSql(split.tree());
@@ -547,13 +568,44 @@ public class RestrictedFlightSqlProducer extends DuckDBFlightSqlProducer {
                     throw new RuntimeException(e);
                 }
             }).toList();
-            return getFlightInfoForSchema(list, descriptor, null, getDataProcessorLocations());
+            var locations = getSplitScheduler().assign(splits.stream().map(TreeAndSize::size).toList());
+            return getFlightInfoForSchema(list, locations, descriptor, null);
         } catch (Throwable throwable) {
             ErrorHandling.handleThrowable(throwable);
             return null;
         }
     }
 
+    /**
+     * Answers a GROUP BY or an ORDER BY ... LIMIT over several splits with one endpoint per split, assigned to the
+     * data processors like the splits of a scan. An endpoint returns the partial aggregates or the first rows of its
+     * split. The app metadata of the flight info holds the merge query, to be run once the rows of every endpoint are
+     * loaded as {@link PartialAggregation#PARTIALS_TABLE}. Only used when the client asked for it with
+     * {@link Headers#HEADER_MERGE_PARTIALS}, since other clients would read the unmerged rows as the result.
+     */
+    private FlightInfo getFlightInfoMerged(List<TreeAndSize> splits,
+                                           String mergeSql,
+                                           FlightDescriptor descriptor) throws SQLException {
+        var tickets = new ArrayList<FlightSql.TicketStatementQuery>(splits.size());
+        for (var split : splits) {
+            var handle = newStatementHandle(Transformations.parseToSql(split.tree()), split.size());
+            tickets.add(FlightSql.TicketStatementQuery.newBuilder()
+                    .setStatementHandle(copyFrom(handle.serialize()))
+                    .build());
+        }
+        var locations = getSplitScheduler().assign(splits.stream().map(TreeAndSize::size).toList());
+        return getFlightInfoForSchema(tickets, locations, descriptor, null, mergeSql.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers a query whose split results need merging as a single endpoint, for clients that do not merge them.
+     */
+    private FlightInfo getFlightInfoUnsplit(JsonNode tree,
+                                            CallContext context,
+                                            FlightDescriptor descriptor) throws SQLException {
+        return super.getFlightInfoStatement(Transformations.parseToSql(tree), context, descriptor);
+    }
+
     @Override
     protected String transformQuery(CallContext context, Connection connection, String query)
             throws UnauthorizedException, JsonProcessingException, SQLException {
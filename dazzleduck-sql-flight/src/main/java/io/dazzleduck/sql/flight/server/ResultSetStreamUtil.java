@@ -2,6 +2,7 @@ package io.dazzleduck.sql.flight.server;
 
 import io.dazzleduck.sql.commons.authorization.AccessMode;
 import io.dazzleduck.sql.flight.FlightRecorder;
+import io.dazzleduck.sql.flight.memory.MemoryGovernor;
 import org.apache.arrow.flight.FlightProducer;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
@@ -66,16 +67,17 @@ public class ResultSetStreamUtil {
                                                       StatementContext<T> statementContext,
                                                       DuckDBFlightSqlProducer.CacheKey key,
                                                       OptionalResultSetSupplier supplier,
-                                                      BufferAllocator allocator,
+                                                      MemoryGovernor memoryGovernor,
                                                       final int batchSize,
                                                       final FlightProducer.ServerStreamListener listener,
                                                       Runnable finalBlock, FlightRecorder recorder) {
 
         executorService.submit(() -> {
-            BufferAllocator childAllocator = null;
+            MemoryGovernor.Reservation reservation = null;
             var error = false;
             try {
-                childAllocator = allocator.newChildAllocator("statement-allocator", 0, allocator.getLimit());
+                reservation = memoryGovernor.newQueryAllocator(key.peerIdentity(), key.id());
+                var childAllocator = reservation.allocator();
                 statementContext.start();
                 recorder.startStream(statementContext.isPreparedStatementContext());
                 recorder.recordStatementStreamStart(key, statementContext);
@@ -90,6 +92,7 @@ public class ResultSetStreamUtil {
                             statementContext.bytesOut(size);
                             recorder.recordGetStream(statementContext.isPreparedStatementContext(),
                                     size);
+                            memoryGovernor.awaitCapacity(reservation);
                         }
                     }
                 } else {
@@ -109,8 +112,8 @@ public class ResultSetStreamUtil {
                     recorder.endStream(statementContext.isPreparedStatementContext());
                     recorder.recordStatementStreamEnd(key, statementContext);
                     finalBlock.run();
-                    if (childAllocator != null) {
-                        childAllocator.close();
+                    if (reservation != null) {
+                        statementContext.peakMemory(memoryGovernor.release(reservation));
                     }
                 } catch (Exception e){
                     logger.atError().setCause(e).log("Error running finally block");
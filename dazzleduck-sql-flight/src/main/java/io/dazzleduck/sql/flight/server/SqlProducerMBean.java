@@ -2,6 +2,7 @@ package io.dazzleduck.sql.flight.server;
 
 import io.dazzleduck.sql.commons.ingestion.Stats;
 import io.dazzleduck.sql.flight.model.RunningStatementInfo;
+import io.dazzleduck.sql.flight.scheduler.SplitScheduler;
 
 import java.time.Instant;
 import java.util.List;
@@ -23,4 +24,6 @@ public interface SqlProducerMBean {
     List<RunningStatementInfo> getOpenPreparedStatementDetails();
     List<RunningStatementInfo> getRunningBulkIngestDetails();
     List<Stats> getIngestionDetails();
+    List<SplitScheduler.DataProcessorStatus> getDataProcessorStatus();
+    PreparedStatementRegistry.Stats getPreparedStatementRegistryStats();
 }
@@ -43,15 +43,28 @@ public final class StatementContext<T extends Statement> implements AutoCloseabl
 
     private long bytesOut;
 
+    private long peakMemory;
+
     private final boolean isPreparedStatementContext;
 
     private final Connection connection;
 
+    private final AutoCloseable owner;
+
 
     public StatementContext(final Connection connection, final T statement, final String query) {
+        this(connection, statement, query, null);
+    }
+
+    /**
+     * @param owner closed instead of the statement and connection when the context is closed, e.g. a
+     *              {@link PreparedStatementRegistry.Lease} giving the statement back for reuse
+     */
+    public StatementContext(final Connection connection, final T statement, final String query, final AutoCloseable owner) {
         this.statement = Objects.requireNonNull(statement, "statement cannot be null.");
         this.query = query;
         this.connection = connection;
+        this.owner = owner;
         this.isPreparedStatementContext = statement instanceof PreparedStatement;
     }
 
@@ -79,6 +92,10 @@ public final class StatementContext<T extends Statement> implements AutoCloseabl
     @Override
     public void close()  {
         try {
+            if (owner != null) {
+                owner.close();
+                return;
+            }
             if ( !statement.isClosed())
                 statement.close();
             if ( !connection.isClosed()){
@@ -143,6 +160,17 @@ public final class StatementContext<T extends Statement> implements AutoCloseabl
         return this.bytesOut;
     }
 
+    /**
+     * Records the most memory one run of the statement held at once.
+     */
+    public synchronized void peakMemory(long peak) {
+        this.peakMemory = Math.max(this.peakMemory, peak);
+    }
+
+    public synchronized long peakMemory() {
+        return this.peakMemory;
+    }
+
     public synchronized long useCount() {
         return useCount;
     }
@@ -3,13 +3,15 @@ package io.dazzleduck.sql.flight.stream;
 import org.apache.arrow.flight.FlightStream;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
 import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.types.pojo.Schema;
 
 import java.io.IOException;
+import java.util.Set;
 
 public class FlightStreamReader extends ArrowReader {
-    private final FlightStream flightStream;
+    protected final FlightStream flightStream;
 
     public static FlightStreamReader of(FlightStream flightStream, BufferAllocator bufferAllocator) {
         return new FlightStreamReader(flightStream, bufferAllocator);
@@ -60,4 +62,17 @@ public class FlightStreamReader extends ArrowReader {
     public  VectorSchemaRoot getVectorSchemaRoot(){
         return flightStream.getRoot();
     }
+
+    /**
+     * Dictionaries are loaded by the FlightStream along with the batches, not by this reader.
+     */
+    @Override
+    public Dictionary lookup(long id) {
+        return flightStream.getDictionaryProvider().lookup(id);
+    }
+
+    @Override
+    public Set<Long> getDictionaryIds() {
+        return flightStream.getDictionaryProvider().getDictionaryIds();
+    }
 }
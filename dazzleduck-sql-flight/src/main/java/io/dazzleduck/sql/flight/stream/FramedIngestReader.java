@@ -0,0 +1,107 @@
+package io.dazzleduck.sql.flight.stream;
+
+import io.dazzleduck.sql.common.IngestMetadata;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Reads a streaming ingest sent over HTTP: a sequence of frames, each the {@link IngestMetadata} options of a
+ * producer batch followed by the Arrow stream of the batch.
+ */
+public class FramedIngestReader implements ProducerBatchReader {
+
+    private final InputStream source;
+    private final BufferAllocator allocator;
+    private BatchReader batchReader;
+    private Map<String, String> batchOptions;
+
+    public static FramedIngestReader of(InputStream inputStream, BufferAllocator allocator) {
+        return new FramedIngestReader(inputStream, allocator);
+    }
+
+    protected FramedIngestReader(InputStream inputStream, BufferAllocator allocator) {
+        this.source = new BufferedInputStream(inputStream);
+        this.allocator = allocator;
+    }
+
+    @Override
+    public boolean nextProducerBatch() throws IOException {
+        closeBatch();
+        batchOptions = IngestMetadata.readFrame(source);
+        if (batchOptions == null) {
+            return false;
+        }
+        batchReader = new BatchReader(source, allocator);
+        return true;
+    }
+
+    @Override
+    public ArrowReader getBatchReader() {
+        if (batchReader == null) {
+            throw new IllegalStateException("No current producer batch");
+        }
+        return batchReader;
+    }
+
+    @Override
+    public Map<String, String> getBatchOptions() {
+        return batchOptions;
+    }
+
+    private void closeBatch() throws IOException {
+        if (batchReader == null) {
+            return;
+        }
+        try (var reader = batchReader) {
+            batchReader = null;
+            while (reader.loadNextBatch()) {
+                // Drains the current batch
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (batchReader != null) {
+                batchReader.close();
+                batchReader = null;
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Reads the Arrow stream of one batch, which ends at its end-of-stream marker with the next frame right after it.
+     * The source is left open and nothing is read past the marker.
+     */
+    private static final class BatchReader extends ArrowStreamReader {
+
+        private boolean ended;
+
+        BatchReader(InputStream source, BufferAllocator allocator) {
+            super(new FilterInputStream(source) {
+                @Override
+                public void close() {
+                }
+            }, allocator);
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            if (ended) {
+                return false;
+            }
+            ended = !super.loadNextBatch();
+            return !ended;
+        }
+    }
+}
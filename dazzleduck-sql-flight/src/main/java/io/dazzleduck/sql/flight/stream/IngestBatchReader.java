@@ -0,0 +1,95 @@
+package io.dazzleduck.sql.flight.stream;
+
+import io.dazzleduck.sql.common.IngestMetadata;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads a streaming ingest one producer batch at a time. The producer marks the last Arrow record batch of each of
+ * its batches with {@link IngestMetadata}, so that many batches can be sent on one long-lived stream.
+ * A stream without metadata is read as a single batch.
+ * <p>
+ * {@link #nextProducerBatch()} moves to the next producer batch, whose record batches are then read with
+ * {@link #loadNextBatch()} until it returns false.
+ */
+public class IngestBatchReader extends FlightStreamReader implements ProducerBatchReader {
+
+    private boolean inBatch;
+    private boolean loaded;
+    private boolean lastOfBatch;
+    private boolean endOfStream;
+    private Map<String, String> batchOptions;
+
+    public static IngestBatchReader of(FlightStream flightStream, BufferAllocator bufferAllocator) {
+        return new IngestBatchReader(flightStream, bufferAllocator);
+    }
+
+    protected IngestBatchReader(FlightStream flightStream, BufferAllocator bufferAllocator) {
+        super(flightStream, bufferAllocator);
+    }
+
+    @Override
+    public boolean nextProducerBatch() throws IOException {
+        while (loadNextBatch()) {
+            // Drains the current batch
+        }
+        if (!next()) {
+            inBatch = false;
+            return false;
+        }
+        inBatch = true;
+        loaded = true;
+        return true;
+    }
+
+    /**
+     * The record batches of the current producer batch are read from this reader itself.
+     */
+    @Override
+    public ArrowReader getBatchReader() {
+        return this;
+    }
+
+    @Override
+    public Map<String, String> getBatchOptions() {
+        return batchOptions;
+    }
+
+    @Override
+    public boolean loadNextBatch() throws IOException {
+        if (!inBatch) {
+            return false;
+        }
+        if (loaded) {
+            loaded = false;
+            return true;
+        }
+        return !lastOfBatch && next();
+    }
+
+    private boolean next() {
+        if (endOfStream || !flightStream.next()) {
+            endOfStream = true;
+            return false;
+        }
+        readMetadata();
+        return true;
+    }
+
+    private void readMetadata() {
+        var metadata = flightStream.getLatestMetadata();
+        if (metadata == null) {
+            lastOfBatch = false;
+            batchOptions = null;
+            return;
+        }
+        var bytes = new byte[(int) metadata.readableBytes()];
+        metadata.getBytes(metadata.readerIndex(), bytes);
+        lastOfBatch = true;
+        batchOptions = IngestMetadata.decode(bytes);
+    }
+}
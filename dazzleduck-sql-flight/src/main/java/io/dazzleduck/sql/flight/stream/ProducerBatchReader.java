@@ -0,0 +1,31 @@
+package io.dazzleduck.sql.flight.stream;
+
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A streaming ingest carrying many producer batches, read one batch at a time.
+ */
+public interface ProducerBatchReader extends Closeable {
+
+    /**
+     * Moves to the next producer batch, skipping what is left of the current one.
+     *
+     * @return false at the end of the stream
+     */
+    boolean nextProducerBatch() throws IOException;
+
+    /**
+     * @return the reader of the current batch, whose record batches end with the batch
+     */
+    ArrowReader getBatchReader();
+
+    /**
+     * @return the options the producer attached to the current batch once it was read, null when the stream
+     * carries none
+     */
+    Map<String, String> getBatchOptions();
+}
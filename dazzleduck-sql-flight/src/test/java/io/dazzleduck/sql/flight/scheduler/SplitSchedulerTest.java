@@ -0,0 +1,137 @@
+package io.dazzleduck.sql.flight.scheduler;
+
+import com.typesafe.config.ConfigFactory;
+import io.dazzleduck.sql.commons.util.MutableClock;
+import org.apache.arrow.flight.Location;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplitSchedulerTest {
+
+    private static final Location NODE_1 = Location.forGrpcInsecure("node1", 1000);
+    private static final Location NODE_2 = Location.forGrpcInsecure("node2", 1000);
+    private static final Location NODE_3 = Location.forGrpcInsecure("node3", 1000);
+
+    private MutableClock clock;
+    private SplitScheduler scheduler;
+
+    @BeforeEach
+    void setup() {
+        clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"), ZoneId.of("UTC"));
+        scheduler = new SplitScheduler(new SplitSchedulerConfig(2, 60_000, 30_000), clock);
+        scheduler.setLocations(List.of(NODE_1, NODE_2, NODE_3));
+    }
+
+    @Test
+    void testNoProcessors() {
+        var empty = new SplitScheduler(SplitSchedulerConfig.DEFAULT, clock);
+        assertEquals(List.of(List.of(), List.of()), empty.assign(List.of(10L, 20L)));
+    }
+
+    @Test
+    void testSpreadAcrossIdleProcessors() {
+        var result = scheduler.assign(List.of(10L, 10L, 10L));
+        var primaries = result.stream().map(l -> l.get(0)).distinct().count();
+        assertEquals(3, primaries);
+        result.forEach(l -> assertEquals(3, l.size()));
+    }
+
+    @Test
+    void testPreferLeastLoaded() {
+        scheduler.reportLoad(NODE_1, 2, 1024);
+        scheduler.reportLoad(NODE_2, 0, 1024);
+        scheduler.reportLoad(NODE_3, 1, 1024);
+        var result = scheduler.assign(List.of(10L));
+        assertEquals(NODE_2, result.get(0).get(0));
+        assertEquals(List.of(NODE_2, NODE_3, NODE_1), result.get(0));
+    }
+
+    @Test
+    void testMemoryBreaksTie() {
+        scheduler.reportLoad(NODE_1, 1, 1024);
+        scheduler.reportLoad(NODE_2, 1, 4096);
+        scheduler.reportLoad(NODE_3, 1, 2048);
+        assertEquals(NODE_2, scheduler.assign(List.of(10L)).get(0).get(0));
+    }
+
+    @Test
+    void testConcurrencyCap() {
+        var result = scheduler.assign(Collections.nCopies(6, 10L));
+        for (var node : List.of(NODE_1, NODE_2, NODE_3)) {
+            assertEquals(2, result.stream().filter(l -> l.get(0).equals(node)).count());
+        }
+        // Everything is at cap, planning still succeeds
+        assertEquals(1, scheduler.assign(List.of(10L)).size());
+    }
+
+    @Test
+    void testAssignmentsExpire() {
+        scheduler.assign(Collections.nCopies(6, 10L));
+        scheduler.getStatus().forEach(s -> assertEquals(2, s.pendingAssignments()));
+        clock.advanceBy(Duration.ofMinutes(2));
+        scheduler.getStatus().forEach(s -> assertEquals(0, s.pendingAssignments()));
+    }
+
+    @Test
+    void testFailedProcessorIsSkipped() {
+        scheduler.reportFailure(NODE_1);
+        var result = scheduler.assign(Collections.nCopies(4, 10L));
+        result.forEach(l -> {
+            assertNotEquals(NODE_1, l.get(0));
+            assertFalse(l.contains(NODE_1));
+        });
+
+        clock.advanceBy(Duration.ofSeconds(31));
+        var afterBackoff = scheduler.assign(List.of(10L));
+        assertEquals(NODE_1, afterBackoff.get(0).get(0));
+    }
+
+    @Test
+    void testReportClearsFailure() {
+        scheduler.reportFailure(NODE_2);
+        scheduler.reportLoad(NODE_2, 0, 1024);
+        assertTrue(scheduler.getStatus().stream().allMatch(SplitScheduler.DataProcessorStatus::available));
+    }
+
+    @Test
+    void testUnknownLocation() {
+        assertFalse(scheduler.reportLoad(Location.forGrpcInsecure("unknown", 1), 0, 0));
+        assertFalse(scheduler.reportFailure(Location.forGrpcInsecure("unknown", 1)));
+    }
+
+    @Test
+    void testSetLocationsKeepsReportedLoad() {
+        scheduler.reportLoad(NODE_1, 5, 1024);
+        scheduler.setLocations(List.of(NODE_1, NODE_2));
+        var status = scheduler.getStatus();
+        assertEquals(2, status.size());
+        assertEquals(5, status.get(0).queueDepth());
+    }
+
+    @Test
+    void testReadConfig() {
+        var config = SplitSchedulerConfig.fromConfig(ConfigFactory.parseString("""
+                flight_sql.split_scheduler {
+                    authorized_reporters = ["processor"]
+                    report_load_to = { host = "coordinator", port = 59307, username = "processor", password = "secret" }
+                }
+                """));
+        assertEquals(SplitSchedulerConfig.DEFAULT.maxConcurrentSplitsPerProcessor(), config.maxConcurrentSplitsPerProcessor());
+        assertTrue(config.isAuthorizedReporter("processor"));
+        assertFalse(config.isAuthorizedReporter("admin"));
+        assertEquals(Location.forGrpcInsecure("coordinator", 59307), config.loadReport().coordinator());
+        assertNull(config.loadReport().advertisedLocation());
+        assertEquals(LoadReportConfig.DEFAULT_INTERVAL_MS, config.loadReport().intervalMs());
+
+        assertFalse(SplitSchedulerConfig.DEFAULT.isAuthorizedReporter("processor"));
+        assertNull(SplitSchedulerConfig.DEFAULT.loadReport());
+    }
+}
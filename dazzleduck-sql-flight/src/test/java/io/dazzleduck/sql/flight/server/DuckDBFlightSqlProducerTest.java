@@ -5,6 +5,7 @@ import io.dazzleduck.sql.common.Headers;
 import io.dazzleduck.sql.commons.authorization.AccessMode;
 import io.dazzleduck.sql.commons.ConnectionPool;
 import io.dazzleduck.sql.commons.ingestion.NOOPIngestionTaskFactoryProvider;
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
 import io.dazzleduck.sql.commons.util.TestUtils;
 import io.dazzleduck.sql.flight.FlightRecorder;
 import io.dazzleduck.sql.flight.MicroMeterFlightRecorder;
@@ -17,6 +18,7 @@ import org.apache.arrow.flight.sql.FlightSqlClient;
 import org.apache.arrow.flight.sql.impl.FlightSql;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
 import org.duckdb.DuckDBConnection;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.io.TempDir;
@@ -27,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import io.dazzleduck.sql.flight.SimpleFlightRecorder;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
@@ -281,6 +284,104 @@ public class DuckDBFlightSqlProducerTest {
         }
     }
 
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void testStatementSplittableAggregation() throws Exception {
+        final Location serverLocation = FlightTestUtils.findNextLocation();
+        try (var serverClient = createRestrictedServerClient(serverLocation, "admin")) {
+            try (var splittableClient = splittableAdminClientForPath(serverLocation, serverClient.clientAllocator(), "example/data/hive_table")) {
+                var flightCallHeaders = new FlightCallHeaders();
+                flightCallHeaders.insert(Headers.HEADER_SPLIT_SIZE, "1");
+                flightCallHeaders.insert(Headers.HEADER_MERGE_PARTIALS, "true");
+                var flightInfo = splittableClient.execute("SELECT key, count(*) AS c " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+                        new HeaderCallOption(flightCallHeaders));
+                assertTrue(flightInfo.getEndpoints().size() > 1);
+                var mergeQuery = new String(flightInfo.getAppMetadata(), StandardCharsets.UTF_8);
+                var total = 0L;
+                try (var connection = ConnectionPool.getConnection()) {
+                    var endpoints = flightInfo.getEndpoints();
+                    for (int i = 0; i < endpoints.size(); i++) {
+                        try (final FlightStream stream = splittableClient.getStream(endpoints.get(i).getTicket(),
+                                new HeaderCallOption(flightCallHeaders));
+                             var reader = FlightStreamReader.of(stream, serverClient.clientAllocator())) {
+                            PartialAggregation.loadPartials(connection, serverClient.clientAllocator(), List.of(reader), i > 0);
+                        }
+                    }
+                    try (var reader = ConnectionPool.getReader(connection, serverClient.clientAllocator(), mergeQuery, 1000)) {
+                        while (reader.loadNextBatch()) {
+                            var counts = (BigIntVector) reader.getVectorSchemaRoot().getVector("c");
+                            for (int i = 0; i < reader.getVectorSchemaRoot().getRowCount(); i++) {
+                                total += counts.get(i);
+                            }
+                        }
+                    }
+                }
+                assertEquals(6, total);
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void testStatementSplittableAggregationWithoutMerge() throws Exception {
+        final Location serverLocation = FlightTestUtils.findNextLocation();
+        try (var serverClient = createRestrictedServerClient(serverLocation, "admin")) {
+            try (var splittableClient = splittableAdminClientForPath(serverLocation, serverClient.clientAllocator(), "example/data/hive_table")) {
+                var flightCallHeaders = new FlightCallHeaders();
+                flightCallHeaders.insert(Headers.HEADER_SPLIT_SIZE, "1");
+                var flightInfo = splittableClient.execute("SELECT key, count(*) AS c " + SUPPORTED_HIVE_PATH_QUERY + " GROUP BY key",
+                        new HeaderCallOption(flightCallHeaders));
+                // Without the merge header the aggregation is not split
+                assertEquals(1, flightInfo.getEndpoints().size());
+                var total = 0L;
+                try (final FlightStream stream = splittableClient.getStream(flightInfo.getEndpoints().get(0).getTicket(),
+                        new HeaderCallOption(flightCallHeaders))) {
+                    while (stream.next()) {
+                        var counts = (BigIntVector) stream.getRoot().getVector("c");
+                        for (int i = 0; i < stream.getRoot().getRowCount(); i++) {
+                            total += counts.get(i);
+                        }
+                    }
+                }
+                assertEquals(6, total);
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    public void testStatementSplittableTopK() throws Exception {
+        final Location serverLocation = FlightTestUtils.findNextLocation();
+        try (var serverClient = createRestrictedServerClient(serverLocation, "admin")) {
+            try (var splittableClient = splittableAdminClientForPath(serverLocation, serverClient.clientAllocator(), "example/data/hive_table")) {
+                var flightCallHeaders = new FlightCallHeaders();
+                flightCallHeaders.insert(Headers.HEADER_SPLIT_SIZE, "1");
+                flightCallHeaders.insert(Headers.HEADER_MERGE_PARTIALS, "true");
+                var flightInfo = splittableClient.execute("SELECT * " + SUPPORTED_HIVE_PATH_QUERY + " ORDER BY dt DESC, key LIMIT 3",
+                        new HeaderCallOption(flightCallHeaders));
+                assertTrue(flightInfo.getEndpoints().size() > 1);
+                var mergeQuery = new String(flightInfo.getAppMetadata(), StandardCharsets.UTF_8);
+                var size = 0;
+                try (var connection = ConnectionPool.getConnection()) {
+                    var endpoints = flightInfo.getEndpoints();
+                    for (int i = 0; i < endpoints.size(); i++) {
+                        try (final FlightStream stream = splittableClient.getStream(endpoints.get(i).getTicket(),
+                                new HeaderCallOption(flightCallHeaders));
+                             var reader = FlightStreamReader.of(stream, serverClient.clientAllocator())) {
+                            PartialAggregation.loadPartials(connection, serverClient.clientAllocator(), List.of(reader), i > 0);
+                        }
+                    }
+                    try (var reader = ConnectionPool.getReader(connection, serverClient.clientAllocator(), mergeQuery, 1000)) {
+                        while (reader.loadNextBatch()) {
+                            size += reader.getVectorSchemaRoot().getRowCount();
+                        }
+                    }
+                }
+                assertEquals(3, size);
+            }
+        }
+    }
+
     @Test
     @Timeout(value = 30, unit = TimeUnit.SECONDS)
     public void testStatementSplittableDelta() throws Exception {
@@ -0,0 +1,201 @@
+package io.dazzleduck.sql.flight.server;
+
+import com.typesafe.config.ConfigFactory;
+import io.dazzleduck.sql.flight.memory.MemoryGovernor;
+import io.dazzleduck.sql.flight.memory.MemoryGovernorConfig;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryGovernorTest {
+
+    private RootAllocator root;
+
+    @BeforeEach
+    void setup() {
+        root = new RootAllocator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        root.close();
+    }
+
+    @Test
+    void testQueryLimit() throws Exception {
+        try (var governor = new MemoryGovernor(root, config(0, 4096, 0))) {
+            var reservation = governor.newQueryAllocator("user", 1);
+            var allocator = reservation.allocator();
+            try (var ignored = allocator.buffer(2048)) {
+                assertThrows(OutOfMemoryException.class, () -> allocator.buffer(4096));
+            }
+            assertEquals(2048, governor.release(reservation));
+        }
+    }
+
+    @Test
+    void testIdentityLimit() throws Exception {
+        try (var governor = new MemoryGovernor(root, config(0, 0, 4096))) {
+            var first = governor.newQueryAllocator("user", 1);
+            var second = governor.newQueryAllocator("user", 2);
+            var other = governor.newQueryAllocator("other", 3);
+            try (var ignored = first.allocator().buffer(4096)) {
+                assertThrows(OutOfMemoryException.class, () -> second.allocator().buffer(1024));
+                other.allocator().buffer(4096).close();
+            }
+            governor.release(first);
+            governor.release(second);
+            governor.release(other);
+        }
+    }
+
+    @Test
+    void testPeakMemory() throws Exception {
+        try (var governor = new MemoryGovernor(root, MemoryGovernorConfig.DEFAULT)) {
+            var reservation = governor.newQueryAllocator("user", 1);
+            reservation.allocator().buffer(8192).close();
+            reservation.allocator().buffer(1024).close();
+            assertEquals(8192, governor.getPeakMemory("user", 1));
+            assertEquals(List.of(new MemoryGovernor.QueryMemory("user", 1, 0, 8192)), governor.getQueries());
+            assertEquals(8192, governor.release(reservation));
+            assertEquals(0, governor.getPeakMemory("user", 1));
+            assertEquals(0, governor.release(reservation));
+        }
+    }
+
+    @Test
+    void testConcurrentStreamsOfQuery() throws Exception {
+        try (var governor = new MemoryGovernor(root, MemoryGovernorConfig.DEFAULT)) {
+            var first = governor.newQueryAllocator("user", 1);
+            var second = governor.newQueryAllocator("user", 1);
+            first.allocator().buffer(1024).close();
+            second.allocator().buffer(4096).close();
+            assertEquals(2, governor.getQueries().size());
+            assertEquals(4096, governor.getPeakMemory("user", 1));
+            assertEquals(1024, governor.release(first));
+            assertEquals(4096, governor.getPeakMemory("user", 1));
+            assertEquals(4096, governor.release(second));
+            // The allocator of the identity goes away with its last stream
+            var queryMemory = root.getChildAllocators().iterator().next();
+            assertTrue(queryMemory.getChildAllocators().isEmpty());
+        }
+    }
+
+    @Test
+    void testCancelLargestUnderPressure() throws Exception {
+        var cancelled = new ArrayList<Long>();
+        try (var governor = new MemoryGovernor(root, config(2 * 10_000, 0, 0))) {
+            governor.setCanceller((identity, queryId) -> cancelled.add(queryId));
+            var small = governor.newQueryAllocator("user", 1);
+            var large = governor.newQueryAllocator("user", 2);
+            try (var a = small.allocator().buffer(1024)) {
+                assertEquals(MemoryGovernor.Pressure.NONE, governor.enforce());
+                try (var b = large.allocator().buffer(8192)) {
+                    assertEquals(MemoryGovernor.Pressure.THROTTLE, governor.pressure());
+                    try (var c = large.allocator().buffer(4096)) {
+                        assertEquals(MemoryGovernor.Pressure.CANCEL, governor.enforce());
+                        assertEquals(List.of(2L), cancelled);
+                        // A cancelled query does not wait for memory
+                        governor.awaitCapacity(large);
+                    }
+                }
+            }
+            governor.release(small);
+            governor.release(large);
+        }
+    }
+
+    @Test
+    void testCancelWaitsForPendingVictim() throws Exception {
+        var cancelled = new ArrayList<Long>();
+        try (var governor = new MemoryGovernor(root, config(2 * 10_000, 0, 0))) {
+            governor.setCanceller((identity, queryId) -> cancelled.add(queryId));
+            var first = governor.newQueryAllocator("user", 1);
+            var second = governor.newQueryAllocator("user", 2);
+            var third = governor.newQueryAllocator("user", 3);
+            try (var a = first.allocator().buffer(4096);
+                 var b = second.allocator().buffer(2048)) {
+                var c = third.allocator().buffer(8192);
+                // Every stream enforces between batches, only the largest is cancelled until it gives its memory back
+                assertEquals(MemoryGovernor.Pressure.CANCEL, governor.enforce());
+                assertEquals(MemoryGovernor.Pressure.CANCEL, governor.enforce());
+                assertEquals(MemoryGovernor.Pressure.CANCEL, governor.enforce());
+                assertEquals(List.of(3L), cancelled);
+                c.close();
+                governor.release(third);
+                try (var d = second.allocator().buffer(8192)) {
+                    assertEquals(MemoryGovernor.Pressure.CANCEL, governor.enforce());
+                    assertEquals(List.of(3L, 2L), cancelled);
+                }
+            }
+            governor.release(first);
+            governor.release(second);
+        }
+    }
+
+    @Test
+    void testFailedCancelPicksAnotherVictim() throws Exception {
+        var attempts = new ArrayList<Long>();
+        try (var governor = new MemoryGovernor(root, config(2 * 10_000, 0, 0))) {
+            governor.setCanceller((identity, queryId) -> {
+                attempts.add(queryId);
+                return false;
+            });
+            var small = governor.newQueryAllocator("user", 1);
+            var large = governor.newQueryAllocator("user", 2);
+            try (var a = small.allocator().buffer(4096);
+                 var b = large.allocator().buffer(8192)) {
+                governor.enforce();
+                governor.enforce();
+                assertEquals(List.of(2L, 1L), attempts);
+            }
+            governor.release(small);
+            governor.release(large);
+        }
+    }
+
+    @Test
+    void testThrottleIsBounded() throws Exception {
+        try (var governor = new MemoryGovernor(root,
+                new MemoryGovernorConfig(10_000, 0.5, null, 0, 0, 0.5, 0.99, 100))) {
+            var reservation = governor.newQueryAllocator("user", 1);
+            try (var ignored = reservation.allocator().buffer(4096)) {
+                var start = System.currentTimeMillis();
+                governor.awaitCapacity(reservation);
+                assertTrue(System.currentTimeMillis() - start >= 100);
+            }
+            governor.release(reservation);
+        }
+    }
+
+    @Test
+    void testFromConfig() {
+        var config = MemoryGovernorConfig.fromConfig(ConfigFactory.parseString("""
+                flight_sql.memory {
+                    total_memory_bytes = 1GiB
+                    duckdb_memory_fraction = 0.25
+                    duckdb_temp_directory = ""
+                    max_query_memory_bytes = 64MiB
+                }
+                """));
+        assertEquals(1L << 30, config.totalMemoryBytes());
+        assertEquals(1L << 28, config.duckdbMemoryBytes());
+        assertEquals(3L << 28, config.arrowMemoryBytes());
+        assertNull(config.duckdbTempDirectory());
+        assertEquals(64L << 20, config.maxQueryMemoryBytes());
+        assertEquals(MemoryGovernorConfig.DEFAULT.cancelThreshold(), config.cancelThreshold());
+        assertEquals(MemoryGovernorConfig.DEFAULT, MemoryGovernorConfig.fromConfig(ConfigFactory.empty()));
+    }
+
+    private static MemoryGovernorConfig config(long arrowBytes, long maxQuery, long maxIdentity) {
+        // With a DuckDB fraction of 0.5 the Arrow share is half of the total
+        return new MemoryGovernorConfig(arrowBytes * 2, 0.5, null, maxQuery, maxIdentity, 0.4, 0.6, 0);
+    }
+}
@@ -0,0 +1,167 @@
+package io.dazzleduck.sql.flight.server;
+
+import io.dazzleduck.sql.commons.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreparedStatementRegistryTest {
+
+    private static final String SQL = "SELECT * FROM generate_series(1, 10) t(x) WHERE x > ?";
+
+    private PreparedStatementRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        registry = new PreparedStatementRegistry(new PreparedStatementCacheConfig(10, 2, 60_000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("SELECT a FROM t WHERE b = 'x  y'",
+                PreparedStatementRegistry.normalize("  SELECT a\n  FROM t\tWHERE b = 'x  y' ; "));
+        assertEquals("SELECT 'it''s  a' AS \"a  b\"",
+                PreparedStatementRegistry.normalize("SELECT   'it''s  a'   AS   \"a  b\""));
+        assertEquals("SELECT 1 -- one\n, 2",
+                PreparedStatementRegistry.normalize("SELECT 1 -- one\n   , 2"));
+        assertEquals("SELECT /* a  b */ 1",
+                PreparedStatementRegistry.normalize("SELECT  /* a  b */\n1;"));
+        assertEquals("SELECT E'it\\'s  a', 1",
+                PreparedStatementRegistry.normalize("SELECT  E'it\\'s  a',   1"));
+        assertEquals("SELECT $q$ a  $$  b $q$, $1",
+                PreparedStatementRegistry.normalize("SELECT   $q$ a  $$  b $q$,  $1"));
+        assertNotEquals(PreparedStatementRegistry.normalize("SELECT E'\\' ,  '"),
+                PreparedStatementRegistry.normalize("SELECT E'\\' , '"));
+    }
+
+    @Test
+    void testPreparesOriginalSql() throws Exception {
+        // The key only tells statements apart, the statement is prepared from the SQL as sent
+        try (var lease = registry.borrow(key("not sql"), SQL, ConnectionPool::getConnection)) {
+            assertFalse(lease.reused());
+            assertEquals(1, lease.datasetSchema().getFields().size());
+        }
+    }
+
+    @Test
+    void testReuseAcrossSessions() throws Exception {
+        var key = key(SQL);
+        var first = registry.borrow(key, SQL, ConnectionPool::getConnection);
+        assertFalse(first.reused());
+        first.statement().setInt(1, 5);
+        try (var rs = first.statement().executeQuery()) {
+            var count = 0;
+            while (rs.next()) {
+                count++;
+            }
+            assertEquals(5, count);
+        }
+        var statement = first.statement();
+        first.close();
+        first.close();
+
+        var layout = "SELECT *  FROM generate_series(1, 10) t(x)\nWHERE x > ?";
+        try (var second = registry.borrow(key(PreparedStatementRegistry.normalize(layout)), layout,
+                () -> fail("Expected a pooled statement"))) {
+            assertTrue(second.reused());
+            assertSame(statement, second.statement());
+            assertEquals(1, second.parameterSchema().getFields().size());
+            assertEquals(1, second.datasetSchema().getFields().size());
+        }
+        var stats = registry.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRate());
+        assertEquals(1, stats.idle());
+    }
+
+    @Test
+    void testConcurrentBorrowsPrepareSeparately() throws Exception {
+        var key = key(SQL);
+        try (var first = registry.borrow(key, SQL, ConnectionPool::getConnection);
+             var second = registry.borrow(key, SQL, ConnectionPool::getConnection)) {
+            assertNotSame(first.statement(), second.statement());
+        }
+        var third = registry.borrow(key, SQL, ConnectionPool::getConnection);
+        var fourth = registry.borrow(key, SQL, ConnectionPool::getConnection);
+        var fifth = registry.borrow(key, SQL, ConnectionPool::getConnection);
+        assertTrue(third.reused());
+        assertTrue(fourth.reused());
+        assertFalse(fifth.reused());
+        third.close();
+        fourth.close();
+        fifth.close();
+        // Only two are kept
+        assertEquals(2, registry.getStats().idle());
+        assertTrue(fifth.statement().isClosed());
+    }
+
+    @Test
+    void testKeysAreSeparate() throws Exception {
+        registry.borrow(key(SQL), SQL, ConnectionPool::getConnection).close();
+        try (var other = registry.borrow(new PreparedStatementRegistry.Key("memory", "other", SQL), SQL, ConnectionPool::getConnection)) {
+            assertFalse(other.reused());
+        }
+        assertEquals(2, registry.getStats().entries());
+    }
+
+    @Test
+    void testStatementsWithoutResultAreNotPooled() throws Exception {
+        var lease = registry.borrow(key("SET threads = 4"), "SET threads = 4", ConnectionPool::getConnection);
+        lease.close();
+        assertTrue(lease.statement().isClosed());
+        assertEquals(0, registry.getStats().idle());
+    }
+
+    @Test
+    void testReuseDisabled() throws Exception {
+        try (var disabled = new PreparedStatementRegistry(new PreparedStatementCacheConfig(10, 0, 60_000))) {
+            var lease = disabled.borrow(key(SQL), SQL, ConnectionPool::getConnection);
+            lease.close();
+            assertTrue(lease.statement().isClosed());
+            assertFalse(disabled.borrow(key(SQL), SQL, ConnectionPool::getConnection).reused());
+        }
+    }
+
+    @Test
+    void testInvalidateAfterDdl() throws Exception {
+        ConnectionPool.execute("CREATE OR REPLACE TABLE registry_ddl (a INT)");
+        try {
+            var sql = "SELECT * FROM registry_ddl";
+            registry.borrow(key(sql), sql, ConnectionPool::getConnection).close();
+            var borrowed = registry.borrow(key("SELECT 1"), "SELECT 1", ConnectionPool::getConnection);
+            ConnectionPool.execute("ALTER TABLE registry_ddl ADD COLUMN b VARCHAR");
+            registry.invalidateAll();
+            try (var lease = registry.borrow(key(sql), sql, ConnectionPool::getConnection)) {
+                // The pooled statement still describes the table as it was prepared
+                assertFalse(lease.reused());
+                assertEquals(2, lease.datasetSchema().getFields().size());
+            }
+            // A statement borrowed before is not pooled again
+            borrowed.close();
+            assertTrue(borrowed.statement().isClosed());
+        } finally {
+            ConnectionPool.execute("DROP TABLE registry_ddl");
+        }
+    }
+
+    @Test
+    void testCloseClosesIdleStatements() throws Exception {
+        var lease = registry.borrow(key(SQL), SQL, ConnectionPool::getConnection);
+        lease.close();
+        registry.close();
+        assertTrue(lease.statement().isClosed());
+        assertEquals(0, registry.getStats().entries());
+    }
+
+    private static PreparedStatementRegistry.Key key(String sql) {
+        return new PreparedStatementRegistry.Key("memory", "main", sql);
+    }
+}
@@ -0,0 +1,96 @@
+package io.dazzleduck.sql.flight.stream;
+
+import io.dazzleduck.sql.common.Headers;
+import io.dazzleduck.sql.common.IngestMetadata;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramedIngestReaderTest {
+
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setup() {
+        allocator = new RootAllocator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void testReadsEachBatchWithItsOptions() throws IOException {
+        var body = new ByteArrayOutputStream();
+        writeBatch(body, 1, 3, 2);
+        writeBatch(body, 2, 5, 1);
+        writeBatch(body, 3, 2, 3);
+
+        try (var reader = FramedIngestReader.of(new ByteArrayInputStream(body.toByteArray()), allocator)) {
+            assertTrue(reader.nextProducerBatch());
+            assertEquals("1", reader.getBatchOptions().get(Headers.HEADER_PRODUCER_BATCH_ID));
+            assertEquals(6, countRows(reader));
+
+            // The second batch is skipped without being read
+            assertTrue(reader.nextProducerBatch());
+            assertEquals("2", reader.getBatchOptions().get(Headers.HEADER_PRODUCER_BATCH_ID));
+
+            assertTrue(reader.nextProducerBatch());
+            assertEquals("3", reader.getBatchOptions().get(Headers.HEADER_PRODUCER_BATCH_ID));
+            assertEquals(6, countRows(reader));
+            assertFalse(reader.getBatchReader().loadNextBatch());
+
+            assertFalse(reader.nextProducerBatch());
+        }
+    }
+
+    @Test
+    void testTruncatedFrame() throws IOException {
+        var body = new ByteArrayOutputStream();
+        writeBatch(body, 1, 3, 1);
+        var bytes = body.toByteArray();
+        try (var reader = FramedIngestReader.of(new ByteArrayInputStream(bytes, 0, 6), allocator)) {
+            assertThrows(IOException.class, reader::nextProducerBatch);
+        }
+    }
+
+    private static int countRows(ProducerBatchReader reader) throws IOException {
+        var batchReader = reader.getBatchReader();
+        var rows = 0;
+        while (batchReader.loadNextBatch()) {
+            rows += batchReader.getVectorSchemaRoot().getRowCount();
+        }
+        return rows;
+    }
+
+    private void writeBatch(ByteArrayOutputStream out, long batchId, int rows, int recordBatches) throws IOException {
+        IngestMetadata.writeFrame(Map.of(Headers.HEADER_PRODUCER_BATCH_ID, String.valueOf(batchId)), out);
+        try (var vector = new BigIntVector("id", allocator);
+             var root = VectorSchemaRoot.of(vector);
+             var writer = new ArrowStreamWriter(root, null, out)) {
+            writer.start();
+            for (int b = 0; b < recordBatches; b++) {
+                vector.allocateNew(rows);
+                for (int i = 0; i < rows; i++) {
+                    vector.set(i, batchId * 100 + i);
+                }
+                root.setRowCount(rows);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+    }
+}
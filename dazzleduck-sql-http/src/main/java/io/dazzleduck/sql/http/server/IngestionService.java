@@ -1,6 +1,9 @@
 package io.dazzleduck.sql.http.server;
 
+import io.dazzleduck.sql.common.IngestMetadata;
+import io.dazzleduck.sql.commons.ingestion.OutOfSequenceBatch;
 import io.dazzleduck.sql.commons.ingestion.PendingWriteExceededException;
+import io.dazzleduck.sql.commons.util.HeaderUtils;
 import io.dazzleduck.sql.flight.ingestion.IngestionParameters;
 import io.dazzleduck.sql.flight.server.HttpFlightAdaptor;
 import io.dazzleduck.sql.http.server.model.ContentTypes;
@@ -16,7 +19,10 @@ import org.apache.arrow.flight.FlightRuntimeException;
 import org.apache.arrow.flight.FlightStatusCode;
 import org.apache.arrow.flight.PutResult;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
@@ -36,6 +42,7 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
     @Override
     public void routing(HttpRules rules) {
         rules.post("/", this::handlePost);
+        rules.post("/stream", this::handleStream);
     }
 
     protected boolean handleMismatchContentType(ServerRequest serverRequest, ServerResponse serverResponse){
@@ -68,8 +75,11 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
         var producerBatchId = ParameterUtils.getParameterValue(HEADER_PRODUCER_BATCH_ID, serverRequest, -1L, Long.class);
         var sortOrderString = urlDecode(
                 ParameterUtils.getParameterValue(HEADER_SORT_ORDER, serverRequest, null, String.class));
+        var partitionValues = HeaderUtils.parsePartitionValues(
+                ParameterUtils.getParameterValue(HEADER_PARTITION_VALUES, serverRequest, null, String.class));
+        var presorted = ParameterUtils.getParameterValue(HEADER_PRESORTED, serverRequest, false, Boolean.class);
         return new IngestionParameters(path, format, getArray(partitionString),
-                getArray(sortOrderString), producerId, producerBatchId, Map.of());
+                getArray(sortOrderString), producerId, producerBatchId, partitionValues, presorted, Map.of());
     }
 
     private String[] getArray(String stringValue) {
@@ -106,9 +116,22 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
 
                         }
 
+                        /**
+                         * Passes the flow control feedback of the acknowledgement on as response headers.
+                         */
                         @Override
-                        public void onNext(PutResult val) {
-
+                        synchronized public void onNext(PutResult val) {
+                            var metadata = val.getApplicationMetadata();
+                            if (responseSent[0] || metadata == null) {
+                                return;
+                            }
+                            var bytes = new byte[(int) metadata.readableBytes()];
+                            metadata.getBytes(metadata.readerIndex(), bytes);
+                            IngestMetadata.decode(bytes).forEach((name, value) -> {
+                                if (name.equals(HEADER_PENDING_WRITE_HEADROOM) || name.equals(HEADER_DRAIN_RATE)) {
+                                    serverResponse.header(HeaderNames.create(name), value);
+                                }
+                            });
                         }
 
                         @Override
@@ -152,6 +175,124 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
         }
     }
 
+    /**
+     * Streaming ingest: the request body stays open while the client writes batches framed with their options, and
+     * the response carries one {@link IngestMetadata} encoded acknowledgement per line as each batch is written.
+     * Errors before the first acknowledgement are answered like {@link #handlePost}; a later error that ends the
+     * stream is sent as a last line with its status and message but no batch id.
+     */
+    private void handleStream(ServerRequest serverRequest, ServerResponse serverResponse) {
+        var contentType = serverRequest.headers().value(HeaderNames.CONTENT_TYPE);
+        if (contentType.isEmpty() || !contentType.get().equals(IngestMetadata.CONTENT_TYPE)) {
+            serverResponse.status(Status.UNSUPPORTED_MEDIA_TYPE_415);
+            serverResponse.send();
+            return;
+        }
+
+        try {
+            var context = ControllerService.createContext(serverRequest);
+            var ingestionParameters = parseIngestionParameters(serverRequest);
+            InputStream inputStream = serverRequest.content().inputStream();
+
+            var runnable = httpFlightAdaptor.acceptPutStatementBulkIngestStream(context, ingestionParameters,
+                    inputStream, new FlightClient.PutListener() {
+
+                        private OutputStream acks;
+                        private boolean ended;
+
+                        @Override
+                        public void getResult() {
+
+                        }
+
+                        @Override
+                        synchronized public void onNext(PutResult val) {
+                            var metadata = val.getApplicationMetadata();
+                            if (ended || metadata == null) {
+                                return;
+                            }
+                            var bytes = new byte[(int) metadata.readableBytes()];
+                            metadata.getBytes(metadata.readerIndex(), bytes);
+                            writeAck(bytes);
+                        }
+
+                        @Override
+                        synchronized public void onError(Throwable t) {
+                            if (ended) {
+                                return;
+                            }
+                            String errorMsg = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+                            if (acks == null) {
+                                ended = true;
+                                PendingWriteExceededException pendingWriteEx = findPendingWriteException(t);
+                                if (pendingWriteEx != null) {
+                                    serverResponse.header(HeaderNames.create("Retry-After"),
+                                            String.valueOf(pendingWriteEx.getRetryAfterSeconds()));
+                                }
+                                serverResponse.status(getErrorStatus(t));
+                                serverResponse.send(errorMsg.getBytes());
+                                return;
+                            }
+                            var code = t instanceof FlightRuntimeException flightEx
+                                    ? flightEx.status().code() : FlightStatusCode.INTERNAL;
+                            writeAck(IngestMetadata.encode(Map.of(
+                                    IngestMetadata.STATUS, code.name(),
+                                    IngestMetadata.MESSAGE, errorMsg)));
+                            end();
+                        }
+
+                        @Override
+                        synchronized public void onCompleted() {
+                            if (ended) {
+                                return;
+                            }
+                            if (acks == null) {
+                                ended = true;
+                                serverResponse.status(Status.OK_200);
+                                serverResponse.send();
+                                return;
+                            }
+                            end();
+                        }
+
+                        private void writeAck(byte[] ack) {
+                            try {
+                                if (acks == null) {
+                                    serverResponse.status(Status.OK_200);
+                                    serverResponse.header(HeaderNames.CONTENT_TYPE, ContentTypes.TEXT_PLAIN_UTF8);
+                                    acks = serverResponse.outputStream();
+                                }
+                                acks.write(ack);
+                                acks.write('\n');
+                                acks.flush();
+                            } catch (IOException | UncheckedIOException e) {
+                                // The client is gone, the remaining batches fail when the body cannot be read
+                                ended = true;
+                            }
+                        }
+
+                        private void end() {
+                            ended = true;
+                            try {
+                                acks.close();
+                            } catch (IOException | UncheckedIOException e) {
+                                // The client is gone
+                            }
+                        }
+                    });
+            runnable.run();
+
+        } catch (IllegalArgumentException e) {
+            String errorMsg = e.getMessage() != null ? e.getMessage() : "Invalid request parameters";
+            serverResponse.status(Status.BAD_REQUEST_400);
+            serverResponse.send(errorMsg);
+        } catch (Exception e) {
+            String errorMsg = e.getMessage() != null ? e.getMessage() : "Internal server error";
+            serverResponse.status(Status.INTERNAL_SERVER_ERROR_500);
+            serverResponse.send(errorMsg);
+        }
+    }
+
     /**
      * Determines the appropriate HTTP status code based on the exception type.
      * Checks the exception and its cause chain for known exception types.
@@ -163,10 +304,16 @@ public class IngestionService implements HttpService, ParameterUtils, Controller
             if (current instanceof PendingWriteExceededException) {
                 return TOO_MANY_REQUESTS_429;
             }
+            if (current instanceof OutOfSequenceBatch) {
+                return Status.CONFLICT_409;
+            }
             if (current instanceof FlightRuntimeException flightEx) {
                 if (flightEx.status().code() == FlightStatusCode.RESOURCE_EXHAUSTED) {
                     return TOO_MANY_REQUESTS_429;
                 }
+                if (flightEx.status().code() == FlightStatusCode.ALREADY_EXISTS) {
+                    return Status.CONFLICT_409;
+                }
             }
             current = current.getCause();
         }
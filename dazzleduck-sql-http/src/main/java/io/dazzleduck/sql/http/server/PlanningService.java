@@ -15,6 +15,7 @@ import org.apache.arrow.flight.sql.impl.FlightSql;
 import org.apache.arrow.memory.BufferAllocator;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 public class PlanningService extends AbstractQueryBasedService implements ParameterUtils {
@@ -38,6 +39,7 @@ public class PlanningService extends AbstractQueryBasedService implements Parame
             var flightDescriptor = FlightDescriptor.command(Any.pack(command).toByteArray());
             var info = httpFlightAdaptor.getFlightInfoStatement(command, context, flightDescriptor);
 
+            var mergeQuery = info.getAppMetadata() == null ? null : new String(info.getAppMetadata(), StandardCharsets.UTF_8);
             var result = new ArrayList<PlanResponse>();
             for (var endpoint : info.getEndpoints()) {
                 var any = FlightSqlUtils.parseOrThrow(endpoint.getTicket().getBytes());
@@ -47,7 +49,7 @@ public class PlanningService extends AbstractQueryBasedService implements Parame
                         .map(loc -> endpointMapper.getHttpEndpoint(loc.getUri().toString()))
                         .toList();
                 var descriptor = new Descriptor(statementHandle);
-                result.add(new PlanResponse(locations, descriptor));
+                result.add(new PlanResponse(locations, descriptor, mergeQuery));
             }
 
             // Proper resource management with try-with-resources
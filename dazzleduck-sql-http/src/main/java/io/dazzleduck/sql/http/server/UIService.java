@@ -221,7 +221,7 @@ public class UIService implements HttpService {
     private String buildRunningStatementsTable() {
         List<RunningStatementInfo> statements = producerMBean.getRunningStatementDetails();
         String rows = statements.isEmpty()
-                ? "<tr><td colspan=\"6\" style=\"text-align: center;\">No running statements</td></tr>"
+                ? "<tr><td colspan=\"7\" style=\"text-align: center;\">No running statements</td></tr>"
                 : statements.stream()
                 .map(info -> buildStatementRow(info, true))
                 .collect(Collectors.joining());
@@ -232,7 +232,7 @@ public class UIService implements HttpService {
     private String buildOpenPreparedStatementsTable() {
         List<RunningStatementInfo> statements = producerMBean.getOpenPreparedStatementDetails();
         String rows = statements.isEmpty()
-                ? "<tr><td colspan=\"6\" style=\"text-align: center;\">No open prepared statements</td></tr>"
+                ? "<tr><td colspan=\"7\" style=\"text-align: center;\">No open prepared statements</td></tr>"
                 : statements.stream()
                 .map(info -> buildStatementRow(info, true))
                 .collect(Collectors.joining());
@@ -307,6 +307,7 @@ public class UIService implements HttpService {
                     <td>%s</td>
                     <td>%s</td>
                     <td>%s</td>
+                    <td>%s</td>
                 </tr>
                 """.formatted(
                 escapeHtml(info.user()),
@@ -314,6 +315,7 @@ public class UIService implements HttpService {
                 escapeHtml(info.query()),
                 startTime,
                 duration,
+                formatBytes(info.peakMemory()),
                 action);
     }
 
@@ -328,6 +330,7 @@ public class UIService implements HttpService {
                             <th>Query</th>
                             <th>Start Time</th>
                             <th>Duration</th>
+                            <th>Peak Memory</th>
                             <th>Action</th>
                         </tr>
                     </thead>
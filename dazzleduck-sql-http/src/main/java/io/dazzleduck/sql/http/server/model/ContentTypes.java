@@ -4,5 +4,6 @@ public class ContentTypes {
     public static final String APPLICATION_JSON = "application/json";
     public static final String APPLICATION_ARROW = "application/vnd.apache.arrow.stream";
     public static final String TEXT_TSV = "text/tab-separated-values";
+    public static final String TEXT_PLAIN_UTF8 = "text/plain; charset=utf-8";
     public static final String TEXT_TSV_UTF8 = "text/tab-separated-values; charset=utf-8";
 }
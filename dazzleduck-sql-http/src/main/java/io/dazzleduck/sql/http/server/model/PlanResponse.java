@@ -2,5 +2,9 @@ package io.dazzleduck.sql.http.server.model;
 
 import java.util.List;
 
-public record PlanResponse(List<String> endpoints,  Descriptor descriptor) {
+/**
+ * @param mergeQuery query combining the results of all planned endpoints once they are loaded as the
+ *                   {@code __partials} table, null when the results are simply concatenated
+ */
+public record PlanResponse(List<String> endpoints,  Descriptor descriptor, String mergeQuery) {
 }
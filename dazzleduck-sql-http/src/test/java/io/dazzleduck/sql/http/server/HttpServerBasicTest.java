@@ -1,6 +1,7 @@
 package io.dazzleduck.sql.http.server;
 
 import com.typesafe.config.Config;
+import io.dazzleduck.sql.common.IngestMetadata;
 import io.dazzleduck.sql.commons.ConnectionPool;
 import io.dazzleduck.sql.commons.util.TestUtils;
 import io.dazzleduck.sql.http.server.model.ContentTypes;
@@ -186,6 +187,43 @@ public class HttpServerBasicTest extends HttpServerTestBase {
         }
     }
 
+    @Test
+    public void testIngestionStream() throws IOException, InterruptedException, SQLException {
+        String query = "select generate_series, generate_series a from generate_series(10)";
+        var body = new ByteArrayOutputStream();
+        try (BufferAllocator allocator = new RootAllocator();
+             DuckDBConnection connection = ConnectionPool.getConnection()) {
+            for (long batchId = 1; batchId <= 3; batchId++) {
+                IngestMetadata.writeFrame(Map.of(HEADER_PRODUCER_BATCH_ID, String.valueOf(batchId)), body);
+                try (var reader = ConnectionPool.getReader(connection, allocator, query, 1000);
+                     var streamWrite = new ArrowStreamWriter(reader.getVectorSchemaRoot(), null, body)) {
+                    streamWrite.start();
+                    while (reader.loadNextBatch()) {
+                        streamWrite.writeBatch();
+                    }
+                    streamWrite.end();
+                }
+            }
+        }
+        var path = "stream";
+        Files.createDirectories(Path.of(ingestionPath, path));
+        var request = authenticatedRequestBuilder(URI.create(baseUrl + "/v1/ingest/stream?ingestion_queue=%s".formatted(path)))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .header("Content-Type", IngestMetadata.CONTENT_TYPE)
+                .build();
+        var res = client.send(request, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, res.statusCode());
+        var acks = res.body().map(line -> IngestMetadata.decode(line.getBytes(StandardCharsets.UTF_8))).toList();
+        assertEquals(3, acks.size(), acks.toString());
+        for (var ack : acks) {
+            assertNull(ack.get(IngestMetadata.STATUS), ack.toString());
+        }
+        assertEquals(Set.of("1", "2", "3"),
+                acks.stream().map(ack -> ack.get(HEADER_PRODUCER_BATCH_ID)).collect(java.util.stream.Collectors.toSet()));
+        var testSql = String.format("select count(*) from read_parquet('%s/%s/*.parquet')", ingestionPath, path);
+        assertEquals(33, ConnectionPool.collectFirst(testSql, Long.class));
+    }
+
     @Test
     public void testIngestionPostFromFile() throws SQLException, IOException, InterruptedException {
         var path = "file1";
@@ -1,6 +1,7 @@
 package io.dazzleduck.sql.http.server;
 
 import io.dazzleduck.sql.commons.ConnectionPool;
+import io.dazzleduck.sql.commons.planner.PartialAggregation;
 import io.dazzleduck.sql.commons.util.TestConstants;
 import io.dazzleduck.sql.common.auth.LoginRequest;
 import io.dazzleduck.sql.http.server.model.PlanResponse;
@@ -100,6 +101,7 @@ public class HttpServerPlanningTest extends HttpServerTestBase {
         var request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/plan"))
                 .POST(HttpRequest.BodyPublishers.ofByteArray(body))
                 .header(HEADER_SPLIT_SIZE, "1")
+                .header(HEADER_MERGE_PARTIALS, "true")
                 .header(HeaderNames.AUTHORIZATION.defaultCase(), auth)
                 .header(HeaderValues.ACCEPT_JSON.name(), HeaderValues.ACCEPT_JSON.values()).build();
         var inputStreamResponse = client.send(request, HttpResponse.BodyHandlers.ofString());
@@ -107,6 +109,46 @@ public class HttpServerPlanningTest extends HttpServerTestBase {
         assertEquals(3, res.length);
     }
 
+    @Test
+    public void testPlanningAggregationWithSmallPartition() throws IOException, InterruptedException {
+        var loginResponse = login(new LoginRequest("admin", "admin",
+                Map.of(HEADER_PATH, TestConstants.SUPPORTED_HIVE_PATH, HEADER_FUNCTION, "read_parquet")));
+        String auth = loginResponse.tokenType() + " " + loginResponse.accessToken();
+        var body = objectMapper.writeValueAsBytes(new QueryRequest(TestConstants.SUPPORTED_AGGREGATED_HIVE_PATH_QUERY));
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/plan"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(HEADER_SPLIT_SIZE, "1")
+                .header(HEADER_MERGE_PARTIALS, "true")
+                .header(HeaderNames.AUTHORIZATION.defaultCase(), auth)
+                .header(HeaderValues.ACCEPT_JSON.name(), HeaderValues.ACCEPT_JSON.values()).build();
+        var inputStreamResponse = client.send(request, HttpResponse.BodyHandlers.ofString());
+        var res = objectMapper.readValue(inputStreamResponse.body(), PlanResponse[].class);
+        // Every split returns its partial aggregates, merged by the client
+        assertEquals(3, res.length);
+        for (var plan : res) {
+            assertEquals(res[0].mergeQuery(), plan.mergeQuery());
+        }
+        assertTrue(res[0].mergeQuery().contains(PartialAggregation.PARTIALS_TABLE));
+    }
+
+    @Test
+    public void testPlanningAggregationWithoutMerge() throws IOException, InterruptedException {
+        var loginResponse = login(new LoginRequest("admin", "admin",
+                Map.of(HEADER_PATH, TestConstants.SUPPORTED_HIVE_PATH, HEADER_FUNCTION, "read_parquet")));
+        String auth = loginResponse.tokenType() + " " + loginResponse.accessToken();
+        var body = objectMapper.writeValueAsBytes(new QueryRequest(TestConstants.SUPPORTED_AGGREGATED_HIVE_PATH_QUERY));
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/plan"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(HEADER_SPLIT_SIZE, "1")
+                .header(HeaderNames.AUTHORIZATION.defaultCase(), auth)
+                .header(HeaderValues.ACCEPT_JSON.name(), HeaderValues.ACCEPT_JSON.values()).build();
+        var inputStreamResponse = client.send(request, HttpResponse.BodyHandlers.ofString());
+        var res = objectMapper.readValue(inputStreamResponse.body(), PlanResponse[].class);
+        // A client that does not merge partials gets the whole aggregation from one endpoint
+        assertEquals(1, res.length);
+        assertNull(res[0].mergeQuery());
+    }
+
     @Test
     public void testPlanningWithFilter() throws IOException, InterruptedException {
         var loginResponse = login(new LoginRequest("admin", "admin",
@@ -0,0 +1,405 @@
+package io.dazzleduck.sql.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.spi.ContextAware;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static io.dazzleduck.sql.logback.LogToArrowConverter.*;
+
+/**
+ * Ring of preallocated event slots between the logging threads and a background thread that encodes the events
+ * into the Arrow columns of a {@link LogForwarder}.
+ *
+ * <p>A logging thread copies what is only valid on it - the formatted message, thread name, MDC and caller data -
+ * into a slot, with no lock and no allocation of its own. Each slot has a sequence number that says whether it is
+ * free for the producer of a position or holds the event of a position for the consumer, after Vyukov's bounded
+ * queue. The background thread copies an event out of its slot, frees the slot and sets the columns of the
+ * event; the throwable, markers, key-value pairs and resource MDC are converted there, off the logging threads. It parks for up to the poll
+ * interval when the ring is empty and is woken by the next event.
+ *
+ * <p>A full ring is handled by the {@link OverflowPolicy}. Dropped events are counted, and reported through the
+ * logback status at most once per poll interval.
+ */
+final class LogEventBuffer implements Consumer<VectorSchemaRootAppender> {
+
+    /**
+     * Where the background thread appends rows: a {@link LogForwarder}, see {@link #of(LogForwarder)}.
+     */
+    interface Sink {
+
+        /**
+         * @return false if the row was dropped
+         */
+        boolean appendRow(Consumer<VectorSchemaRootAppender> row);
+
+        Map<String, String> withResourceMdc(Map<String, String> eventMdc);
+    }
+
+    static Sink of(LogForwarder forwarder) {
+        return new Sink() {
+            @Override
+            public boolean appendRow(Consumer<VectorSchemaRootAppender> row) {
+                return forwarder.appendRow(row);
+            }
+
+            @Override
+            public Map<String, String> withResourceMdc(Map<String, String> eventMdc) {
+                return forwarder.withResourceMdc(eventMdc);
+            }
+        };
+    }
+
+    // How long a logging thread waits for a free slot before checking again
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Sink forwarder;
+    private final ContextAware status;
+    private final OverflowPolicy overflowPolicy;
+    private final int overflowLevel;
+    private final boolean captureCallerData;
+    private final long pollIntervalNanos;
+
+    private final int capacity;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final Level[] levels;
+    private final String[] loggers;
+    private final String[] threads;
+    private final String[] messages;
+    private final IThrowableProxy[] throwables;
+    private final Object[] mdcs;
+    private final Object[] markers;
+    private final Object[] keyValuePairs;
+    private final StackTraceElement[] callers;
+
+    /** Position of the next event to read. */
+    private final AtomicLong head = new AtomicLong();
+    /** Position of the next event to write. */
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+    private volatile boolean consumerParked;
+
+    // Consumer thread only: the event being encoded, copied out of its slot, and the drops reported so far
+    private long sequenceNumber;
+    private long timestamp;
+    private Level level;
+    private String logger;
+    private String thread;
+    private String message;
+    private IThrowableProxy throwable;
+    private Object mdc;
+    private Object markerList;
+    private Object keyValuePairList;
+    private StackTraceElement caller;
+    private long reportedDrops;
+    private long lastReportNanos;
+
+    LogEventBuffer(Sink forwarder, ContextAware status, int maxBufferSize, Duration pollInterval,
+                   OverflowPolicy overflowPolicy, Level overflowLevel, boolean captureCallerData) {
+        this.forwarder = forwarder;
+        this.status = status;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowLevel = overflowLevel.toInt();
+        this.captureCallerData = captureCallerData;
+        this.pollIntervalNanos = Math.max(1, pollInterval.toNanos());
+
+        this.capacity = Math.max(2, maxBufferSize);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.timestamps = new long[capacity];
+        this.levels = new Level[capacity];
+        this.loggers = new String[capacity];
+        this.threads = new String[capacity];
+        this.messages = new String[capacity];
+        this.throwables = new IThrowableProxy[capacity];
+        this.mdcs = new Object[capacity];
+        this.markers = new Object[capacity];
+        this.keyValuePairs = new Object[capacity];
+        this.callers = new StackTraceElement[capacity];
+
+        this.consumer = new Thread(this::run, "dazzleduck-log-forwarder");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Copy an event into the ring.
+     *
+     * @return false if the event was dropped
+     */
+    boolean offer(ILoggingEvent event) {
+        if (!running) {
+            return false;
+        }
+
+        // Only valid on the logging thread: formatting reads the arguments, the thread name and MDC are its own
+        String message = event.getFormattedMessage();
+        String thread = event.getThreadName();
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        StackTraceElement caller = null;
+        if (captureCallerData) {
+            StackTraceElement[] frames = event.getCallerData();
+            if (frames != null && frames.length > 0) {
+                caller = frames[0];
+            }
+        }
+
+        long pos;
+        int index;
+        while (true) {
+            pos = tail.get();
+            index = index(pos);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0 && !makeRoom(event)) {
+                dropped.increment();
+                return false;
+            }
+        }
+        timestamps[index] = event.getTimeStamp();
+        levels[index] = event.getLevel();
+        loggers[index] = event.getLoggerName();
+        threads[index] = thread;
+        messages[index] = message;
+        throwables[index] = event.getThrowableProxy();
+        mdcs[index] = mdc;
+        markers[index] = event.getMarkerList();
+        keyValuePairs[index] = event.getKeyValuePairs();
+        callers[index] = caller;
+        sequences.set(index, pos + 1);
+
+        if (consumerParked) {
+            consumerParked = false;
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Called when the ring is full: frees a slot, waits for one, or decides to drop the event.
+     *
+     * @return false if the event is to be dropped
+     */
+    private boolean makeRoom(ILoggingEvent event) {
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            // Take the oldest as the consumer would, or wait if the consumer is reading it
+            if (poll(false)) {
+                dropped.increment();
+            } else {
+                Thread.onSpinWait();
+            }
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_BELOW_LEVEL && event.getLevel().toInt() < overflowLevel) {
+            return false;
+        }
+        if (!running) {
+            return false;
+        }
+        LockSupport.unpark(consumer);
+        LockSupport.parkNanos(FULL_PARK_NANOS);
+        return true;
+    }
+
+    /**
+     * @return events dropped because the ring was full or the forwarder did not accept them
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop taking events, forward those in the ring and stop the background thread.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            boolean forwarded = false;
+            while (poll(true)) {
+                forwarded = true;
+            }
+            reportDrops();
+            if (!running) {
+                if (!ready()) {
+                    return;
+                }
+            } else if (!forwarded) {
+                consumerParked = true;
+                if (!ready() && running) {
+                    LockSupport.parkNanos(this, pollIntervalNanos);
+                }
+                consumerParked = false;
+            }
+        }
+    }
+
+    /**
+     * @return whether the oldest slot holds an event
+     */
+    private boolean ready() {
+        long pos = head.get();
+        return sequences.get(index(pos)) == pos + 1;
+    }
+
+    /**
+     * Take the oldest event, forwarding it if {@code forward}.
+     *
+     * @return false if the ring is empty, or the oldest slot is still being written
+     */
+    private boolean poll(boolean forward) {
+        while (true) {
+            long pos = head.get();
+            int index = index(pos);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    if (forward) {
+                        sequenceNumber = pos + 1;
+                        timestamp = timestamps[index];
+                        level = levels[index];
+                        logger = loggers[index];
+                        thread = threads[index];
+                        message = messages[index];
+                        throwable = throwables[index];
+                        mdc = mdcs[index];
+                        markerList = markers[index];
+                        keyValuePairList = keyValuePairs[index];
+                        caller = callers[index];
+                    }
+                    levels[index] = null;
+                    loggers[index] = null;
+                    threads[index] = null;
+                    messages[index] = null;
+                    throwables[index] = null;
+                    mdcs[index] = null;
+                    markers[index] = null;
+                    keyValuePairs[index] = null;
+                    callers[index] = null;
+                    // Free the slot before forwarding, so that a slow append does not hold up the logging threads
+                    sequences.set(index, pos + capacity);
+                    if (forward) {
+                        try {
+                            if (!forwarder.appendRow(this)) {
+                                dropped.increment();
+                            }
+                        } finally {
+                            level = null;
+                            logger = null;
+                            thread = null;
+                            message = null;
+                            throwable = null;
+                            mdc = null;
+                            markerList = null;
+                            keyValuePairList = null;
+                            caller = null;
+                        }
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sets the columns of the event taken last.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void accept(VectorSchemaRootAppender row) {
+        row.setLong(COL_SEQUENCE_NUMBER, sequenceNumber)
+                .setLong(COL_TIMESTAMP, timestamp)
+                .setString(COL_LEVEL, level != null ? level.toString() : null)
+                .setString(COL_LOGGER, logger)
+                .setString(COL_THREAD, thread)
+                .setString(COL_MESSAGE, message);
+
+        Map<String, String> eventMdc = (Map<String, String>) mdc;
+        Map<String, String> mergedMdc = forwarder.withResourceMdc(eventMdc != null ? eventMdc : Collections.emptyMap());
+        if (!mergedMdc.isEmpty()) {
+            row.setObject(COL_MDC, mergedMdc);
+        }
+
+        if (throwable != null) {
+            row.setString(COL_THROWABLE, ThrowableProxyUtil.asString(throwable));
+        }
+
+        List<Marker> eventMarkers = (List<Marker>) markerList;
+        if (eventMarkers != null && !eventMarkers.isEmpty()) {
+            List<String> names = new ArrayList<>(eventMarkers.size());
+            for (Marker marker : eventMarkers) {
+                names.add(marker.getName());
+            }
+            row.setObject(COL_MARKER, names);
+        }
+
+        List<KeyValuePair> kvPairs = (List<KeyValuePair>) keyValuePairList;
+        if (kvPairs != null && !kvPairs.isEmpty()) {
+            Map<String, String> kvp = new LinkedHashMap<>();
+            for (KeyValuePair kv : kvPairs) {
+                kvp.put(kv.key, kv.value != null ? String.valueOf(kv.value) : null);
+            }
+            row.setObject(COL_KEY_VALUE_PAIRS, kvp);
+        }
+
+        if (caller != null) {
+            row.setString(COL_CALLER_CLASS, caller.getClassName())
+                    .setString(COL_CALLER_METHOD, caller.getMethodName())
+                    .setString(COL_CALLER_FILE, caller.getFileName())
+                    .setInt(COL_CALLER_LINE, caller.getLineNumber());
+        }
+    }
+
+    private void reportDrops() {
+        long drops = dropped.sum();
+        if (drops == reportedDrops) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (reportedDrops == 0 || now - lastReportNanos >= pollIntervalNanos || !running) {
+            status.addWarn("Log forwarder dropped " + (drops - reportedDrops) + " entries, " + drops + " in total");
+            reportedDrops = drops;
+            lastReportNanos = now;
+        }
+    }
+
+    private int index(long pos) {
+        return (int) (pos % capacity);
+    }
+}
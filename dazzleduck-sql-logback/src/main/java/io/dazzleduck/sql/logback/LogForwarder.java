@@ -2,14 +2,19 @@ package io.dazzleduck.sql.logback;
 
 import io.dazzleduck.sql.client.HttpArrowProducer;
 import io.dazzleduck.sql.common.types.JavaRow;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.time.Clock;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static io.dazzleduck.sql.logback.LogToArrowConverter.*;
 
 /**
  * Forwards log entries to a remote server via HTTP using Arrow format.
@@ -20,6 +25,9 @@ public final class LogForwarder implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(LogForwarder.class);
 
+    // Columns with few distinct values, sent once per batch rather than once per row
+    private static final List<String> DICTIONARY_COLUMNS = List.of("level", "logger", "thread");
+
     private final LogToArrowConverter converter;
     private final HttpArrowProducer httpProducer;
     private final Map<String, String> resourceMdc;
@@ -68,6 +76,7 @@ public final class LogForwarder implements Closeable {
                         config.maxInMemorySize(),
                         config.maxOnDiskSize(),
                         Clock.systemUTC());
+        this.httpProducer.setDictionaryColumns(DICTIONARY_COLUMNS);
 
         logger.info("LogForwarder started with baseUrl={}, ingestionQueue={}",
                 config.baseUrl(), config.ingestionQueue());
@@ -99,6 +108,34 @@ public final class LogForwarder implements Closeable {
         }
     }
 
+    /**
+     * Append a row by setting its columns directly on the Arrow vectors of the current batch, see
+     * {@link io.dazzleduck.sql.client.ArrowProducer#appendRow(Consumer)}. Column indices are those of
+     * {@link LogToArrowConverter}.
+     *
+     * @return true if the row was accepted, false if dropped (queue full or not running)
+     */
+    boolean appendRow(Consumer<VectorSchemaRootAppender> row) {
+        if (!running.get() || closed.get()) {
+            return false;
+        }
+
+        try {
+            httpProducer.appendRow(row);
+            return true;
+        } catch (Exception e) {
+            logger.debug("Failed to append log row: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the MDC of an event merged with the resource MDC from config
+     */
+    Map<String, String> withResourceMdc(Map<String, String> eventMdc) {
+        return mergeMdc(eventMdc, resourceMdc);
+    }
+
     /**
      * Convert a LogEntry to a JavaRow for the HttpArrowProducer.
      * Field order must match the schema from LogToArrowConverter:
@@ -107,25 +144,25 @@ public final class LogForwarder implements Closeable {
      */
     private JavaRow convertToJavaRow(LogEntry entry) {
         Object[] fields = new Object[14];
-        fields[0] = entry.sequenceNumber();
-        fields[1] = entry.timestamp() != null ? entry.timestamp().toEpochMilli() : null;
-        fields[2] = entry.level();
-        fields[3] = entry.logger();
-        fields[4] = entry.thread();
-        fields[5] = entry.message();
+        fields[COL_SEQUENCE_NUMBER] = entry.sequenceNumber();
+        fields[COL_TIMESTAMP] = entry.timestamp() != null ? entry.timestamp().toEpochMilli() : null;
+        fields[COL_LEVEL] = entry.level();
+        fields[COL_LOGGER] = entry.logger();
+        fields[COL_THREAD] = entry.thread();
+        fields[COL_MESSAGE] = entry.message();
 
         // Merge event MDC with resource MDC from config
         Map<String, String> mergedMdc = mergeMdc(entry.mdc(), resourceMdc);
-        fields[6] = mergedMdc.isEmpty() ? null : mergedMdc;
+        fields[COL_MDC] = mergedMdc.isEmpty() ? null : mergedMdc;
 
-        fields[7] = entry.throwable();
-        fields[8] = entry.markers().isEmpty() ? null : entry.markers();
-        fields[9] = entry.keyValuePairs().isEmpty() ? null : entry.keyValuePairs();
+        fields[COL_THROWABLE] = entry.throwable();
+        fields[COL_MARKER] = entry.markers().isEmpty() ? null : entry.markers();
+        fields[COL_KEY_VALUE_PAIRS] = entry.keyValuePairs().isEmpty() ? null : entry.keyValuePairs();
         LogEntry.CallerData cd = entry.callerData();
-        fields[10] = cd != null ? cd.className() : null;
-        fields[11] = cd != null ? cd.method() : null;
-        fields[12] = cd != null ? cd.file() : null;
-        fields[13] = cd != null ? cd.line() : null;
+        fields[COL_CALLER_CLASS] = cd != null ? cd.className() : null;
+        fields[COL_CALLER_METHOD] = cd != null ? cd.method() : null;
+        fields[COL_CALLER_FILE] = cd != null ? cd.file() : null;
+        fields[COL_CALLER_LINE] = cd != null ? cd.line() : null;
         return new JavaRow(fields);
     }
 
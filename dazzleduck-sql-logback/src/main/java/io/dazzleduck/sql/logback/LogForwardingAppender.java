@@ -1,9 +1,11 @@
 package io.dazzleduck.sql.logback;
 
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -13,8 +15,14 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Custom Logback appender that captures log events and forwards them
- * to a remote server via HTTP. Log entries are sent directly to the
- * ArrowProducer which handles batching and sending.
+ * to a remote server via HTTP.
+ *
+ * <p>Logging threads do not lock: each event is copied into a slot of a preallocated ring buffer, and a background
+ * thread encodes the events into the Arrow columns of the ArrowProducer, which handles batching and sending. When
+ * the buffer is full the {@code overflowPolicy} applies: {@code BLOCK} waits for a free slot,
+ * {@code DROP_OLDEST} drops the oldest event, and {@code DROP_BELOW_LEVEL} (the default) drops events below
+ * {@code overflowLevel} (WARN by default) and waits for the others. These two settings apply with a
+ * {@code configFile} too.</p>
  *
  * <p>Each appender instance maintains its own {@link LogForwarder}, so multiple
  * appenders with different configurations (different servers, queues, etc.)
@@ -43,7 +51,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * The conf file must contain a {@code dazzleduck_logback} block in TypeSafe Config format.
  * Keys not present in the file fall back to the defaults in reference.conf.</p>
  */
-public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
+public class LogForwardingAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
 
     // Packages to exclude from forwarding to prevent infinite loops
     // Note: excludes the internal forwarder classes but NOT demo classes
@@ -53,7 +61,7 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
             "org.apache.arrow"
     };
 
-    // Counter used for error/warn throttling only (not for LogEntry sequence numbers)
+    // Counter used for error throttling only (sequence numbers are positions in the buffer)
     private static final AtomicLong sequenceCounter = new AtomicLong(0);
 
     /**
@@ -64,6 +72,9 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
     // Per-instance forwarder - each appender has its own independent forwarder
     private volatile LogForwarder forwarder;
 
+    // Ring buffer between the logging threads and the forwarder, null when there is no forwarder
+    private volatile LogEventBuffer buffer;
+
     // Whether to capture call-site caller data (class/method/file/line) for each log entry.
     // Disabled by default — enabling triggers a stack walk on every log call.
     private volatile boolean captureCallerData = false;
@@ -80,6 +91,10 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
     private String jwt;
     private String ingestionQueue = "log";
     private long minBatchSize = 1024; // 1 KB default for logs (smaller than metrics)
+    private int maxBufferSize = 10000;
+    private Duration pollInterval = Duration.ofSeconds(5);
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_BELOW_LEVEL;
+    private Level overflowLevel = Level.WARN;
     private List<String> project = Collections.emptyList();
     private List<String> partitionBy = Collections.emptyList();
 
@@ -166,6 +181,46 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
         this.minBatchSize = minBatchSize;
     }
 
+    /**
+     * Set the number of events the buffer holds before the overflow policy applies.
+     * Default is 10000.
+     */
+    public void setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Set how long the background thread waits for events when the buffer is empty, in milliseconds.
+     * It is woken earlier by the next event. Default is 5000.
+     */
+    public void setPollIntervalMs(long pollIntervalMs) {
+        this.pollInterval = Duration.ofMillis(pollIntervalMs);
+    }
+
+    /**
+     * Set what happens to an event when the buffer is full: BLOCK, DROP_OLDEST or DROP_BELOW_LEVEL.
+     * Default is DROP_BELOW_LEVEL.
+     */
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+    }
+
+    /**
+     * Set the level below which events are dropped when the buffer is full under DROP_BELOW_LEVEL.
+     * Default is WARN.
+     */
+    public void setOverflowLevel(String overflowLevel) {
+        this.overflowLevel = Level.toLevel(overflowLevel, Level.WARN);
+    }
+
+    /**
+     * Get the number of events dropped because the buffer was full or the forwarder did not accept them.
+     */
+    public long getDroppedCount() {
+        LogEventBuffer current = buffer;
+        return current != null ? current.getDroppedCount() : 0;
+    }
+
     /**
      * Set project expressions (comma-separated).
      * Example: "*,'hostname' AS application_host,CAST(timestamp AS date) AS date"
@@ -202,6 +257,7 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
                 LogForwarderConfig config = LogForwarderConfigFactory.createConfig(configFile);
                 this.captureCallerData = config.captureCallerData();
                 forwarder = new LogForwarder(config);
+                buffer = newBuffer(config);
                 addInfo("LogForwardingAppender successfully initialized from " + configFile);
             } else if (baseUrl == null || baseUrl.isEmpty()) {
                 addError("LogForwardingAppender is not configured - set either <configFile> or <baseUrl>. " +
@@ -222,6 +278,8 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
                             .claims(claims)
                             .ingestionQueue(ingestionQueue)
                             .minBatchSize(minBatchSize)
+                            .maxBufferSize(maxBufferSize)
+                            .pollInterval(pollInterval)
                             .project(project)
                             .partitionBy(partitionBy)
                             .captureCallerData(captureCallerData)
@@ -232,6 +290,8 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
                             .jwt(jwt)
                             .ingestionQueue(ingestionQueue)
                             .minBatchSize(minBatchSize)
+                            .maxBufferSize(maxBufferSize)
+                            .pollInterval(pollInterval)
                             .project(project)
                             .partitionBy(partitionBy)
                             .captureCallerData(captureCallerData)
@@ -239,6 +299,7 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
                 }
 
                 forwarder = new LogForwarder(config);
+                buffer = newBuffer(config);
                 addInfo("LogForwardingAppender successfully initialized");
             }
         } catch (Exception e) {
@@ -248,9 +309,19 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
         super.start();
     }
 
+    private LogEventBuffer newBuffer(LogForwarderConfig config) {
+        return new LogEventBuffer(LogEventBuffer.of(forwarder), this, config.maxBufferSize(), config.pollInterval(),
+                overflowPolicy, overflowLevel, captureCallerData);
+    }
+
     @Override
     public void stop() {
         super.stop();
+        // Forward what is buffered before the forwarder closes
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
         if (forwarder != null) {
             forwarder.close();
             forwarder = null;
@@ -263,10 +334,11 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
             return;
         }
 
-        if (forwarder == null) {
+        LogEventBuffer current = buffer;
+        if (current == null) {
             // Only log this error once every 1000 entries to avoid spamming
-            long seq = sequenceCounter.get();
-            if (seq == 0 || seq % 1000 == 0) {
+            long seq = sequenceCounter.incrementAndGet();
+            if (seq == 1 || seq % 1000 == 0) {
                 addError("LogForwardingAppender forwarder is null - logs are being dropped. " +
                         "Check configuration and initialization errors.");
             }
@@ -279,17 +351,9 @@ public class LogForwardingAppender extends AppenderBase<ILoggingEvent> {
             return;
         }
 
-        long seq = sequenceCounter.incrementAndGet();
-        LogEntry entry = LogEntry.from(event, seq, captureCallerData);
-
-        // Add directly to forwarder - it handles batching via ArrowProducer
+        // Dropped entries are counted by the buffer and reported from its background thread
         try {
-            if (!forwarder.addLogEntry(entry)) {
-                // Queue full or forwarder not running - log this warning periodically
-                if (seq == 1 || seq % 100 == 0) {
-                    addWarn("Log forwarder queue full, dropping entry (seq=" + seq + ")");
-                }
-            }
+            current.offer(event);
         } catch (Exception e) {
             // Log errors using addError to avoid infinite loop
             // (this error itself will be excluded by the shouldExclude check)
@@ -31,6 +31,22 @@ import java.util.List;
  */
 public final class LogToArrowConverter {
 
+    // Column indices, in schema order
+    static final int COL_SEQUENCE_NUMBER = 0;
+    static final int COL_TIMESTAMP = 1;
+    static final int COL_LEVEL = 2;
+    static final int COL_LOGGER = 3;
+    static final int COL_THREAD = 4;
+    static final int COL_MESSAGE = 5;
+    static final int COL_MDC = 6;
+    static final int COL_THROWABLE = 7;
+    static final int COL_MARKER = 8;
+    static final int COL_KEY_VALUE_PAIRS = 9;
+    static final int COL_CALLER_CLASS = 10;
+    static final int COL_CALLER_METHOD = 11;
+    static final int COL_CALLER_FILE = 12;
+    static final int COL_CALLER_LINE = 13;
+
     private static final Schema SCHEMA = buildSchema();
 
     public Schema getSchema() {
@@ -0,0 +1,23 @@
+package io.dazzleduck.sql.logback;
+
+/**
+ * What {@link LogForwardingAppender} does with an event when its buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The logging thread waits until the background thread frees a slot.
+     */
+    BLOCK,
+
+    /**
+     * The oldest buffered event is dropped to make room.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Events below the overflow level are dropped; the logging thread waits for the others, as with
+     * {@link #BLOCK}.
+     */
+    DROP_BELOW_LEVEL
+}
@@ -0,0 +1,174 @@
+package io.dazzleduck.sql.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Measures the latency of a log call, the time a logging thread spends handing an event to the appender's ring
+ * buffer, with 1 to 64 threads logging at once under each overflow policy. The background thread encodes the events
+ * into Arrow columns and discards them, so only the appender is measured, not the network.
+ *
+ * Run with: ./mvnw test -pl dazzleduck-sql-logback -Dtest=LogCallLatencyBenchmark
+ */
+public class LogCallLatencyBenchmark {
+
+    private static final int[] THREADS = {1, 8, 64};
+    private static final long RUN_MILLIS = Long.getLong("benchmark.millis", 2000);
+    private static final int BUFFER_SIZE = Integer.getInteger("benchmark.buffer", 10_000);
+    /** Latencies kept per thread, the latest ones once a thread has logged more. */
+    private static final int MAX_SAMPLES = 100_000;
+    /** Rows the background thread encodes before it discards them. */
+    private static final int BATCH_ROWS = 4096;
+
+    @Test
+    void benchmark() throws Exception {
+        var context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        // Warm up the log path before measuring
+        run(context, 8, OverflowPolicy.DROP_OLDEST, RUN_MILLIS);
+        System.out.printf("%-17s %8s %14s %10s %10s %10s %10s %12s%n",
+                "policy", "threads", "calls/s", "p50 ns", "p99 ns", "p99.9 ns", "max ns", "dropped");
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            for (int threads : THREADS) {
+                var result = run(context, threads, policy, RUN_MILLIS);
+                System.out.printf("%-17s %8d %14d %10d %10d %10d %10d %12d%n", policy, threads,
+                        result.callsPerSecond, result.percentile(50), result.percentile(99),
+                        result.percentile(99.9), result.latencies[result.latencies.length - 1], result.dropped);
+            }
+        }
+    }
+
+    private static final class Result {
+        final long callsPerSecond;
+        /** Sorted. */
+        final long[] latencies;
+        final long dropped;
+
+        Result(long callsPerSecond, long[] latencies, long dropped) {
+            this.callsPerSecond = callsPerSecond;
+            this.latencies = latencies;
+            this.dropped = dropped;
+        }
+
+        long percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+    }
+
+    private static Result run(LoggerContext context, int threads, OverflowPolicy policy, long millis)
+            throws Exception {
+        var status = new ContextAwareBase();
+        status.setContext(context);
+        var stop = new AtomicBoolean();
+        var start = new CountDownLatch(1);
+        var calls = new long[threads];
+        var samples = new long[threads][MAX_SAMPLES];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (var allocator = new RootAllocator();
+             var sink = new DiscardingSink(allocator)) {
+            var buffer = new LogEventBuffer(sink, status, BUFFER_SIZE, Duration.ofMillis(100), policy, Level.WARN,
+                    false);
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    var latencies = samples[thread];
+                    long count = 0;
+                    while (!stop.get()) {
+                        // Every tenth call is a warning, which DROP_BELOW_LEVEL keeps
+                        var event = event(context, count % 10 == 0 ? Level.WARN : Level.INFO, count);
+                        long begin = System.nanoTime();
+                        buffer.offer(event);
+                        latencies[(int) (count % MAX_SAMPLES)] = System.nanoTime() - begin;
+                        count++;
+                    }
+                    calls[thread] = count;
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            Thread.sleep(millis);
+            stop.set(true);
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - begin;
+            buffer.close();
+
+            long total = Arrays.stream(calls).sum();
+            var latencies = new long[(int) Arrays.stream(calls).map(c -> Math.min(c, MAX_SAMPLES)).sum()];
+            int offset = 0;
+            for (int t = 0; t < threads; t++) {
+                int kept = (int) Math.min(calls[t], MAX_SAMPLES);
+                System.arraycopy(samples[t], 0, latencies, offset, kept);
+                offset += kept;
+            }
+            Arrays.sort(latencies);
+            return new Result(total * TimeUnit.SECONDS.toNanos(1) / elapsed, latencies, buffer.getDroppedCount());
+        }
+    }
+
+    private static LoggingEvent event(LoggerContext context, Level level, long count) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLoggerName("com.example.Service");
+        event.setLevel(level);
+        event.setMessage("request {} handled");
+        event.setArgumentArray(new Object[]{count});
+        event.setThreadName(Thread.currentThread().getName());
+        event.setTimeStamp(System.currentTimeMillis());
+        event.setLoggerContext(context);
+        return event;
+    }
+
+    /**
+     * Encodes the rows into the Arrow columns a {@link LogForwarder} sends, discarding every batch once it is full.
+     */
+    private static final class DiscardingSink implements LogEventBuffer.Sink, AutoCloseable {
+
+        private final VectorSchemaRootAppender rows;
+
+        DiscardingSink(RootAllocator allocator) {
+            this.rows = new VectorSchemaRootAppender(new LogToArrowConverter().getSchema(), allocator);
+        }
+
+        @Override
+        public boolean appendRow(Consumer<VectorSchemaRootAppender> row) {
+            row.accept(rows);
+            rows.endRow();
+            if (rows.getRowCount() >= BATCH_ROWS) {
+                rows.reset();
+            }
+            return true;
+        }
+
+        @Override
+        public Map<String, String> withResourceMdc(Map<String, String> eventMdc) {
+            return eventMdc;
+        }
+
+        @Override
+        public void close() {
+            rows.close();
+        }
+    }
+}
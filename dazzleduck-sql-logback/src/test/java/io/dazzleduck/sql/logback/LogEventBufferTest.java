@@ -0,0 +1,213 @@
+package io.dazzleduck.sql.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.KeyValuePair;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogEventBufferTest {
+
+    private LoggerContext loggerContext;
+    private ContextAwareBase status;
+    private BufferAllocator allocator;
+    private CapturingSink sink;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        status = new ContextAwareBase();
+        status.setContext(loggerContext);
+        allocator = new RootAllocator();
+        sink = new CapturingSink();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sink.rows.close();
+        allocator.close();
+    }
+
+    @Test
+    void close_shouldForwardEventColumns() {
+        LogEventBuffer buffer = buffer(16, OverflowPolicy.BLOCK);
+        LoggingEvent event = event("com.example.Service", Level.ERROR, "failed {}", "job-1");
+        event.setMDCPropertyMap(Map.of("request", "r-1"));
+        event.addMarker(MarkerFactory.getMarker("AUDIT"));
+        event.addKeyValuePair(new KeyValuePair("user", 42));
+        event.setThrowableProxy(new ThrowableProxy(new IllegalStateException("boom")));
+
+        assertTrue(buffer.offer(event));
+        buffer.close();
+
+        var root = sink.rows.finish();
+        assertEquals(1, root.getRowCount());
+        assertEquals(1L, root.getVector("sequence_number").getObject(0));
+        assertEquals("ERROR", root.getVector("level").getObject(0).toString());
+        assertEquals("com.example.Service", root.getVector("logger").getObject(0).toString());
+        assertEquals("failed job-1", root.getVector("message").getObject(0).toString());
+        assertTrue(root.getVector("mdc").getObject(0).toString().contains("r-1"));
+        assertTrue(root.getVector("marker").getObject(0).toString().contains("AUDIT"));
+        assertTrue(root.getVector("key_value_pairs").getObject(0).toString().contains("42"));
+        assertTrue(root.getVector("throwable").getObject(0).toString().contains("boom"));
+        assertNull(root.getVector("caller_class").getObject(0));
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    void offer_shouldDropOldestWhenFull() throws Exception {
+        LogEventBuffer buffer = buffer(2, OverflowPolicy.DROP_OLDEST);
+        sink.hold();
+        buffer.offer(event("a", Level.INFO, "1"));
+        sink.awaitHeld();
+
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(buffer.offer(event("a", Level.INFO, String.valueOf(i))));
+        }
+        sink.release();
+        buffer.close();
+
+        assertEquals(List.of("1", "4", "5"), messages());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    @Test
+    void offer_shouldDropBelowLevelAndWaitForOthers() throws Exception {
+        LogEventBuffer buffer = buffer(2, OverflowPolicy.DROP_BELOW_LEVEL);
+        sink.hold();
+        buffer.offer(event("a", Level.INFO, "1"));
+        sink.awaitHeld();
+        buffer.offer(event("a", Level.INFO, "2"));
+        buffer.offer(event("a", Level.INFO, "3"));
+
+        assertFalse(buffer.offer(event("a", Level.INFO, "dropped")));
+        assertEquals(1, buffer.getDroppedCount());
+
+        AtomicBoolean accepted = new AtomicBoolean();
+        Thread warn = new Thread(() -> accepted.set(buffer.offer(event("a", Level.WARN, "4"))));
+        warn.start();
+        warn.join(200);
+        assertTrue(warn.isAlive(), "WARN should wait for a free slot");
+
+        sink.release();
+        warn.join(5000);
+        assertTrue(accepted.get());
+        buffer.close();
+
+        assertEquals(List.of("1", "2", "3", "4"), messages());
+    }
+
+    @Test
+    void offer_shouldLoseNothingWhenBlockingUnder64Threads() throws Exception {
+        LogEventBuffer buffer = buffer(256, OverflowPolicy.BLOCK);
+        int threads = 64;
+        int perThread = 250;
+        List<Thread> loggers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread logger = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    buffer.offer(event("a", Level.INFO, "m"));
+                }
+            });
+            loggers.add(logger);
+            logger.start();
+        }
+        for (Thread logger : loggers) {
+            logger.join();
+        }
+        buffer.close();
+
+        assertEquals(threads * perThread, sink.rows.getRowCount());
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    private LogEventBuffer buffer(int capacity, OverflowPolicy policy) {
+        return new LogEventBuffer(sink, status, capacity, Duration.ofMillis(100), policy, Level.WARN, false);
+    }
+
+    private List<String> messages() {
+        var root = sink.rows.finish();
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < root.getRowCount(); i++) {
+            messages.add(root.getVector("message").getObject(i).toString());
+        }
+        return messages;
+    }
+
+    private LoggingEvent event(String loggerName, Level level, String message, Object... args) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLoggerName(loggerName);
+        event.setLevel(level);
+        event.setMessage(message);
+        event.setArgumentArray(args.length > 0 ? args : null);
+        event.setThreadName(Thread.currentThread().getName());
+        event.setTimeStamp(System.currentTimeMillis());
+        event.setLoggerContext(loggerContext);
+        return event;
+    }
+
+    /**
+     * Appends rows to an appender of its own, optionally holding the background thread in the first row until
+     * released.
+     */
+    private final class CapturingSink implements LogEventBuffer.Sink {
+        final VectorSchemaRootAppender rows = new VectorSchemaRootAppender(new LogToArrowConverter().getSchema(),
+                allocator);
+        private final CountDownLatch held = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean hold;
+
+        void hold() {
+            hold = true;
+        }
+
+        void awaitHeld() throws InterruptedException {
+            assertTrue(held.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public boolean appendRow(Consumer<VectorSchemaRootAppender> row) {
+            if (hold) {
+                hold = false;
+                held.countDown();
+                try {
+                    released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            row.accept(rows);
+            rows.endRow();
+            return true;
+        }
+
+        @Override
+        public Map<String, String> withResourceMdc(Map<String, String> eventMdc) {
+            return eventMdc;
+        }
+    }
+}
@@ -125,12 +125,15 @@ public final class MicrometerForwarder implements Closeable {
                             config.maxInMemorySize(),
                             config.maxOnDiskSize(),
                             java.time.Clock.systemUTC());
+            // Metric names and types repeat in every step, so they are sent once per batch
+            this.httpProducer.setDictionaryColumns(java.util.List.of("name", "type"));
 
             // Create ArrowMicroMeterRegistry
             this.arrowRegistry = new ArrowMicroMeterRegistry(
                     httpProducer,
                     clock,
-                    config.stepInterval()
+                    config.stepInterval(),
+                    config.temporality()
             );
 
             // Add to composite registry
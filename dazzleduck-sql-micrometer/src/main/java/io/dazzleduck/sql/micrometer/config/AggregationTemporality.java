@@ -0,0 +1,18 @@
+package io.dazzleduck.sql.micrometer.config;
+
+/**
+ * Whether the counts, sums and bucket counts of monotonic meters are published per step or as running totals.
+ * Gauges and long task timers are instantaneous and are published as they are under both.
+ */
+public enum AggregationTemporality {
+
+    /**
+     * Each row holds what was recorded in its step.
+     */
+    DELTA,
+
+    /**
+     * Each row holds what was recorded since the meter was registered, so that a lost step is made up by the next.
+     */
+    CUMULATIVE
+}
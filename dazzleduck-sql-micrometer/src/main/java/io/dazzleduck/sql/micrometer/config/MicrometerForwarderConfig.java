@@ -22,6 +22,7 @@ public record MicrometerForwarderConfig(
 
         // Micrometer step interval
         Duration stepInterval,
+        AggregationTemporality temporality,
 
         // Sender settings
         long minBatchSize,
@@ -41,6 +42,7 @@ public record MicrometerForwarderConfig(
         Objects.requireNonNull(ingestionQueue, "ingestionQueue must not be null");
         Objects.requireNonNull(httpClientTimeout, "httpClientTimeout must not be null");
         Objects.requireNonNull(stepInterval, "stepInterval must not be null");
+        Objects.requireNonNull(temporality, "temporality must not be null");
         Objects.requireNonNull(maxSendInterval, "maxSendInterval must not be null");
         if (jwt == null) {
             Objects.requireNonNull(username, "username must not be null when jwt is not provided");
@@ -62,6 +64,7 @@ public record MicrometerForwarderConfig(
         private String ingestionQueue = "metrics";
         private Duration httpClientTimeout = Duration.ofSeconds(3);
         private Duration stepInterval = Duration.ofSeconds(10);
+        private AggregationTemporality temporality = AggregationTemporality.DELTA;
         private long minBatchSize = 1024 * 1024; // 1 MB
         private long maxBatchSize = 10 * 1024 * 1024; // 10 MB
         private Duration maxSendInterval = Duration.ofSeconds(2);
@@ -115,6 +118,11 @@ public record MicrometerForwarderConfig(
             return this;
         }
 
+        public Builder temporality(AggregationTemporality temporality) {
+            this.temporality = Objects.requireNonNull(temporality);
+            return this;
+        }
+
         public Builder minBatchSize(long minBatchSize) {
             if (minBatchSize <= 0) throw new IllegalArgumentException("minBatchSize must be positive");
             this.minBatchSize = minBatchSize;
@@ -176,6 +184,7 @@ public record MicrometerForwarderConfig(
                     ingestionQueue,
                     httpClientTimeout,
                     stepInterval,
+                    temporality,
                     minBatchSize,
                     maxBatchSize,
                     maxSendInterval,
@@ -4,6 +4,7 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import io.dazzleduck.sql.common.ConfigConstants;
 import io.dazzleduck.sql.micrometer.MicrometerForwarder;
+import io.dazzleduck.sql.micrometer.config.AggregationTemporality;
 import io.dazzleduck.sql.micrometer.config.MicrometerForwarderConfig;
 import io.micrometer.core.instrument.MeterRegistry;
 
@@ -28,6 +29,7 @@ import java.util.stream.Collectors;
  *   }
  *
  *   step_interval_ms = 10000
+ *   temporality = "delta"
  *   min_batch_size = 1048576
  *   max_batch_size = 10485760
  *   max_send_interval_ms = 2000
@@ -86,6 +88,8 @@ public final class MetricsRegistryFactory {
                 .ingestionQueue(http.getString(ConfigConstants.INGESTION_QUEUE_KEY))
                 .httpClientTimeout(Duration.ofMillis(http.getLong(ConfigConstants.HTTP_CLIENT_TIMEOUT_MS_KEY)))
                 .stepInterval(Duration.ofMillis(config.getLong(ConfigConstants.STEP_INTERVAL_MS_KEY)))
+                .temporality(AggregationTemporality.valueOf(
+                        config.getString(ConfigConstants.TEMPORALITY_KEY).toUpperCase()))
                 .minBatchSize(config.getLong(ConfigConstants.MIN_BATCH_SIZE_KEY))
                 .maxBatchSize(config.getLong(ConfigConstants.MAX_BATCH_SIZE_KEY))
                 .maxSendInterval(Duration.ofMillis(config.getLong(ConfigConstants.MAX_SEND_INTERVAL_MS_KEY)))
@@ -1,32 +1,69 @@
 package io.dazzleduck.sql.micrometer.service;
 
 import io.dazzleduck.sql.client.ArrowProducer;
-import io.dazzleduck.sql.common.types.JavaRow;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
+import io.dazzleduck.sql.micrometer.config.AggregationTemporality;
 import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
 import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.Histogram;
 import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.NoopHistogram;
+import io.micrometer.core.instrument.distribution.StepBucketHistogram;
+import io.micrometer.core.instrument.distribution.TimeWindowPercentileHistogram;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.distribution.pause.PauseDetector;
+import io.micrometer.core.instrument.step.StepDistributionSummary;
 import io.micrometer.core.instrument.step.StepMeterRegistry;
 import io.micrometer.core.instrument.step.StepRegistryConfig;
+import io.micrometer.core.instrument.step.StepTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import static io.dazzleduck.sql.micrometer.util.ArrowMetricSchema.*;
+
+/**
+ * Publishes the meters of each step as rows of {@link io.dazzleduck.sql.micrometer.util.ArrowMetricSchema}.
+ *
+ * <p>Timers and distribution summaries keep their histogram buckets and percentiles as list columns. Buckets are
+ * counted per step, so that the buckets of a row add up with its count, and with {@link AggregationTemporality#CUMULATIVE}
+ * the counts, sums and buckets of monotonic meters are summed across steps. The meters of a step are evaluated first
+ * and then appended to the producer in one batch. No {@code .percentile} or {@code .histogram} gauges are registered,
+ * as the row of the meter already holds them.
+ */
 public final class ArrowMicroMeterRegistry extends StepMeterRegistry implements AutoCloseable {
 
     private static final Logger log =
             LoggerFactory.getLogger(ArrowMicroMeterRegistry.class);
 
     private final ArrowProducer sender;
+    private final AggregationTemporality temporality;
+    private final long stepMillis;
+    // What is kept of each meter across steps, dropped when the meter is removed
+    private final Map<Meter.Id, Series> series = new ConcurrentHashMap<>();
 
     public ArrowMicroMeterRegistry(
             ArrowProducer sender,
             Clock clock,
             Duration step
+    ) {
+        this(sender, clock, step, AggregationTemporality.DELTA);
+    }
+
+    public ArrowMicroMeterRegistry(
+            ArrowProducer sender,
+            Clock clock,
+            Duration step,
+            AggregationTemporality temporality
     ) {
         super(new StepRegistryConfig() {
             @Override public String prefix() { return "arrow"; }
@@ -35,90 +72,109 @@ public final class ArrowMicroMeterRegistry extends StepMeterRegistry implements
         }, clock);
 
         this.sender = sender;
+        this.temporality = Objects.requireNonNull(temporality, "temporality must not be null");
+        this.stepMillis = step.toMillis();
+        config().onMeterRemoved(meter -> series.remove(meter.getId()));
     }
 
     @Override
     protected void publish() {
+        List<Sample> samples = new ArrayList<>();
         for (Meter meter : getMeters()) {
             try {
-                sender.addRow(toRow(meter));
+                samples.add(sample(meter));
             } catch (Exception e) {
                 log.warn("Failed to publish meter {}", meter.getId(), e);
             }
         }
-    }
-
-    private JavaRow toRow(Meter meter) {
-        Meter.Id id = meter.getId();
-
-        Map<String, String> tags = new LinkedHashMap<>();
-        for (Tag t : id.getTags()) {
-            tags.put(t.getKey(), t.getValue());
+        if (samples.isEmpty()) {
+            return;
         }
-
-        double value = 0, min = 0, max = 0, mean = 0;
-
+        long timestamp = clock.wallTime();
+        int[] appended = {0};
         try {
-            switch (meter) {
-                case Counter c -> value = c.count();
-                case Gauge g -> value = g.value();
-
-                case Timer t -> {
-                    HistogramSnapshot s = t.takeSnapshot();
-                    value = t.count();
-                    max = s.max(TimeUnit.SECONDS);
-                    mean = s.mean(TimeUnit.SECONDS);
-                }
-
-                case DistributionSummary ds -> {
-                    value = ds.count();
-                    max = ds.max();
-                    mean = ds.mean();
-                }
+            sender.appendRows(samples.size(), (row, i) -> {
+                samples.get(i).writeTo(row, timestamp);
+                appended[0]++;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to publish meters, {} of {} were appended", appended[0], samples.size(), e);
+        }
+    }
 
-                case LongTaskTimer ltt -> {
-                    value = ltt.activeTasks();
-                    double total = ltt.duration(TimeUnit.SECONDS);
-                    max = total;
-                    if (value > 0) mean = total / value;
+    private Sample sample(Meter meter) {
+        Series s = series.computeIfAbsent(meter.getId(), Series::new);
+        switch (meter) {
+            case Counter c -> {
+                return s.monotonic(c.count(), Double.NaN, Double.NaN, null, null);
+            }
+            case Gauge g -> {
+                return s.instant(g.value(), Double.NaN, Double.NaN, null, null);
+            }
+            case Timer t -> {
+                HistogramSnapshot snapshot = t.takeSnapshot();
+                return s.monotonic(snapshot.count(), snapshot.total(TimeUnit.SECONDS), snapshot.max(TimeUnit.SECONDS),
+                        snapshot, TimeUnit.SECONDS);
+            }
+            case DistributionSummary ds -> {
+                HistogramSnapshot snapshot = ds.takeSnapshot();
+                return s.monotonic(snapshot.count(), snapshot.total(), snapshot.max(), snapshot, null);
+            }
+            case LongTaskTimer ltt -> {
+                return s.instant(ltt.activeTasks(), ltt.duration(TimeUnit.SECONDS), ltt.max(TimeUnit.SECONDS),
+                        ltt.takeSnapshot(), TimeUnit.SECONDS);
+            }
+            case FunctionCounter fc -> {
+                return s.monotonic(fc.count(), Double.NaN, Double.NaN, null, null);
+            }
+            case FunctionTimer ft -> {
+                return s.monotonic(ft.count(), ft.totalTime(TimeUnit.SECONDS), Double.NaN, null, null);
+            }
+            default -> {
+                double total = 0;
+                int c = 0;
+                for (Measurement m : meter.measure()) {
+                    total += m.getValue();
+                    c++;
                 }
+                return s.instant(c > 0 ? total : 0, Double.NaN, Double.NaN, null, null);
+            }
+        }
+    }
 
-                case FunctionCounter fc -> value = fc.count();
+    @Override
+    protected Timer newTimer(Meter.Id id, DistributionStatisticConfig distributionStatisticConfig,
+                             PauseDetector pauseDetector) {
+        return new StepTimer(id, clock, distributionStatisticConfig, pauseDetector, getBaseTimeUnit(),
+                stepMillis, histogram(distributionStatisticConfig)) {};
+    }
 
-                case FunctionTimer ft -> {
-                    value = ft.count();
-                    double total = ft.totalTime(TimeUnit.SECONDS);
-                    max = total;
-                    if (value > 0) mean = total / value;
-                }
+    @Override
+    protected DistributionSummary newDistributionSummary(Meter.Id id,
+                                                         DistributionStatisticConfig distributionStatisticConfig,
+                                                         double scale) {
+        return new StepDistributionSummary(id, clock, distributionStatisticConfig, scale,
+                stepMillis, histogram(distributionStatisticConfig)) {};
+    }
 
-                default -> {
-                    double total = 0;
-                    int c = 0;
-                    for (Measurement m : meter.measure()) {
-                        total += m.getValue();
-                        c++;
-                    }
-                    if (c > 0) {
-                        value = total;
-                        mean = total / c;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.debug("Metric evaluation error: {}", id.getName(), e);
-        }
-
-        return new JavaRow(new Object[]{
-                Instant.now().toEpochMilli(),
-                id.getName(),
-                id.getType().name().toLowerCase(),
-                tags,
-                value,
-                min,
-                max,
-                mean
-        });
+    /**
+     * Buckets are counted per step, including the buckets of a percentile histogram, and percentiles are taken over a
+     * window of about a step.
+     */
+    private Histogram histogram(DistributionStatisticConfig config) {
+        Histogram buckets = config.isPublishingHistogram()
+                ? new StepBucketHistogram(clock, stepMillis, config, true, false)
+                : null;
+        Histogram percentiles = config.isPublishingPercentiles()
+                ? new TimeWindowPercentileHistogram(clock, config, false)
+                : null;
+        if (buckets != null && percentiles != null) {
+            return new BucketsAndPercentiles(buckets, percentiles);
+        }
+        if (buckets != null) {
+            return buckets;
+        }
+        return percentiles != null ? percentiles : NoopHistogram.INSTANCE;
     }
 
     @Override
@@ -141,8 +197,140 @@ public final class ArrowMicroMeterRegistry extends StepMeterRegistry implements
         }
     }
 
-    @Override
-    protected DistributionStatisticConfig defaultHistogramConfig() {
-        return DistributionStatisticConfig.DEFAULT;
+    /**
+     * A meter as it is published, with its tags converted once. Only the publishing thread reads or updates the
+     * running totals.
+     */
+    private final class Series {
+        final String name;
+        final String type;
+        final Map<String, String> tags = new LinkedHashMap<>();
+        double count;
+        double sum;
+        double[] bucketCounts;
+
+        Series(Meter.Id id) {
+            this.name = id.getName();
+            this.type = id.getType().name().toLowerCase();
+            for (Tag t : id.getTags()) {
+                tags.put(t.getKey(), t.getValue());
+            }
+        }
+
+        Sample monotonic(double stepCount, double stepSum, double max, HistogramSnapshot snapshot, TimeUnit unit) {
+            double[] stepBuckets = snapshot == null ? null : bucketCounts(snapshot);
+            if (temporality == AggregationTemporality.DELTA) {
+                return new Sample(this, "delta", stepCount, stepSum, max, snapshot, unit, stepBuckets);
+            }
+            count += stepCount;
+            if (!Double.isNaN(stepSum)) {
+                sum += stepSum;
+            }
+            if (stepBuckets != null) {
+                if (bucketCounts == null || bucketCounts.length != stepBuckets.length) {
+                    bucketCounts = new double[stepBuckets.length];
+                }
+                for (int i = 0; i < stepBuckets.length; i++) {
+                    bucketCounts[i] += stepBuckets[i];
+                }
+            }
+            return new Sample(this, "cumulative", count, Double.isNaN(stepSum) ? Double.NaN : sum, max, snapshot,
+                    unit, stepBuckets == null ? null : bucketCounts.clone());
+        }
+
+        Sample instant(double value, double sum, double max, HistogramSnapshot snapshot, TimeUnit unit) {
+            return new Sample(this, null, value, sum, max, snapshot, unit,
+                    snapshot == null ? null : bucketCounts(snapshot));
+        }
+
+        private static double[] bucketCounts(HistogramSnapshot snapshot) {
+            CountAtBucket[] buckets = snapshot.histogramCounts();
+            if (buckets.length == 0) {
+                return null;
+            }
+            double[] counts = new double[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].count();
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * The columns of a meter in a step, taken before the rows of the step are appended. NaN columns are null.
+     */
+    private record Sample(Series series, String temporality, double value, double sum, double max,
+                          HistogramSnapshot snapshot, TimeUnit unit, double[] bucketCounts) {
+
+        void writeTo(VectorSchemaRootAppender row, long timestamp) {
+            row.setLong(COL_TIMESTAMP, timestamp)
+                    .setString(COL_NAME, series.name)
+                    .setString(COL_TYPE, series.type)
+                    .setObject(COL_TAGS, series.tags)
+                    .setDouble(COL_VALUE, value)
+                    .setString(COL_TEMPORALITY, temporality);
+            // Micrometer does not keep minimums, so min is left null
+            setIfNumber(row, COL_MAX, max);
+            setIfNumber(row, COL_SUM, sum);
+            if (!Double.isNaN(sum) && value > 0) {
+                row.setDouble(COL_MEAN, sum / value);
+            }
+            if (bucketCounts != null) {
+                CountAtBucket[] buckets = snapshot.histogramCounts();
+                double[] bounds = new double[buckets.length];
+                for (int i = 0; i < buckets.length; i++) {
+                    bounds[i] = unit == null ? buckets[i].bucket() : buckets[i].bucket(unit);
+                }
+                row.setDoubles(COL_BUCKET_BOUNDS, bounds).setDoubles(COL_BUCKET_COUNTS, bucketCounts);
+            }
+            ValueAtPercentile[] percentiles = snapshot == null ? new ValueAtPercentile[0] : snapshot.percentileValues();
+            if (percentiles.length > 0) {
+                double[] ps = new double[percentiles.length];
+                double[] values = new double[percentiles.length];
+                for (int i = 0; i < percentiles.length; i++) {
+                    ps[i] = percentiles[i].percentile();
+                    values[i] = unit == null ? percentiles[i].value() : percentiles[i].value(unit);
+                }
+                row.setDoubles(COL_PERCENTILES, ps).setDoubles(COL_PERCENTILE_VALUES, values);
+            }
+        }
+
+        private static void setIfNumber(VectorSchemaRootAppender row, int column, double value) {
+            if (!Double.isNaN(value)) {
+                row.setDouble(column, value);
+            }
+        }
+    }
+
+    /**
+     * Records into a step bucket histogram for the buckets and a time window histogram for the percentiles, since
+     * neither gives both.
+     */
+    private record BucketsAndPercentiles(Histogram buckets, Histogram percentiles) implements Histogram {
+
+        @Override
+        public void recordLong(long value) {
+            buckets.recordLong(value);
+            percentiles.recordLong(value);
+        }
+
+        @Override
+        public void recordDouble(double value) {
+            buckets.recordDouble(value);
+            percentiles.recordDouble(value);
+        }
+
+        @Override
+        public HistogramSnapshot takeSnapshot(long count, double total, double max) {
+            return new HistogramSnapshot(count, total, max,
+                    percentiles.takeSnapshot(count, total, max).percentileValues(),
+                    buckets.takeSnapshot(count, total, max).histogramCounts(), null);
+        }
+
+        @Override
+        public void close() {
+            buckets.close();
+            percentiles.close();
+        }
     }
 }
@@ -11,6 +11,21 @@ public final class ArrowMetricSchema {
 
     private ArrowMetricSchema() {}
 
+    public static final int COL_TIMESTAMP = 0;
+    public static final int COL_NAME = 1;
+    public static final int COL_TYPE = 2;
+    public static final int COL_TAGS = 3;
+    public static final int COL_VALUE = 4;
+    public static final int COL_MIN = 5;
+    public static final int COL_MAX = 6;
+    public static final int COL_MEAN = 7;
+    public static final int COL_SUM = 8;
+    public static final int COL_TEMPORALITY = 9;
+    public static final int COL_BUCKET_BOUNDS = 10;
+    public static final int COL_BUCKET_COUNTS = 11;
+    public static final int COL_PERCENTILES = 12;
+    public static final int COL_PERCENTILE_VALUES = 13;
+
     public static final Schema SCHEMA = new Schema(List.of(
             new Field("timestamp", FieldType.notNullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)), null),
             new Field("name", FieldType.notNullable(new ArrowType.Utf8()), null),
@@ -22,7 +37,19 @@ public final class ArrowMetricSchema {
             new Field("value", fp(), null),
             new Field("min", fp(), null),
             new Field("max", fp(), null),
-            new Field("mean", fp(), null)
+            new Field("mean", fp(), null),
+            new Field("sum", fp(), null),
+
+            // delta or cumulative, null for gauges
+            new Field("temporality", FieldType.nullable(new ArrowType.Utf8()), null),
+
+            // Histogram buckets: the upper bound of each bucket and the values recorded in it
+            fpList("bucket_bounds"),
+            fpList("bucket_counts"),
+
+            // Configured percentiles, e.g. 0.99, and their values
+            fpList("percentiles"),
+            fpList("percentile_values")
     ));
 
     private static FieldType fp() {
@@ -30,4 +57,8 @@ public final class ArrowMetricSchema {
                 new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)
         );
     }
+
+    private static Field fpList(String name) {
+        return new Field(name, FieldType.nullable(new ArrowType.List()), List.of(new Field("item", fp(), null)));
+    }
 }
@@ -0,0 +1,164 @@
+package io.dazzleduck.sql.micrometer.service;
+
+import io.dazzleduck.sql.client.ArrowProducer;
+import io.dazzleduck.sql.micrometer.config.AggregationTemporality;
+import io.dazzleduck.sql.micrometer.util.ArrowMetricSchema;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrowMicroMeterRegistryPublishTest {
+
+    private static final Duration STEP = Duration.ofSeconds(5);
+
+    private final MockClock clock = new MockClock();
+    private final List<Map<String, Object>> rows = new CopyOnWriteArrayList<>();
+
+    @Test
+    void publish_shouldKeepBucketsAndPercentilesPerStep() {
+        CapturingProducer producer = new CapturingProducer();
+        ArrowMicroMeterRegistry registry = new ArrowMicroMeterRegistry(producer, clock, STEP);
+        Timer timer = Timer.builder("http.latency")
+                .serviceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(200))
+                .publishPercentiles(0.5, 0.99)
+                .tag("uri", "/orders")
+                .register(registry);
+        Gauge.builder("queue.size", () -> 7).register(registry);
+        timer.record(Duration.ofMillis(50));
+        timer.record(Duration.ofMillis(150));
+        timer.record(Duration.ofMillis(300));
+
+        clock.add(STEP);
+        registry.publish();
+        producer.close();
+
+        Map<String, Object> latency = row("http.latency");
+        assertEquals("timer", latency.get("type").toString());
+        assertEquals(3.0, latency.get("value"));
+        assertEquals(0.5, (double) latency.get("sum"), 1e-9);
+        assertEquals(0.5 / 3, (double) latency.get("mean"), 1e-9);
+        assertEquals(0.3, (double) latency.get("max"), 1e-9);
+        assertNull(latency.get("min"));
+        assertEquals("delta", latency.get("temporality").toString());
+        assertEquals(List.of(0.1, 0.2), latency.get("bucket_bounds"));
+        assertEquals(List.of(1.0, 1.0), latency.get("bucket_counts"));
+        assertEquals(List.of(0.5, 0.99), latency.get("percentiles"));
+        assertEquals(2, ((List<?>) latency.get("percentile_values")).size());
+        assertTrue(latency.get("tags").toString().contains("/orders"));
+        // The percentiles and buckets are only in the row of the timer
+        assertEquals(List.of("http.latency", "queue.size"),
+                rows.stream().map(r -> r.get("name").toString()).sorted().toList());
+
+        Map<String, Object> queue = row("queue.size");
+        assertEquals(7.0, queue.get("value"));
+        assertNull(queue.get("temporality"));
+        assertNull(queue.get("bucket_counts"));
+        assertNull(queue.get("percentiles"));
+    }
+
+    @Test
+    void publish_shouldSumAcrossStepsWhenCumulative() {
+        CapturingProducer producer = new CapturingProducer();
+        ArrowMicroMeterRegistry registry = new ArrowMicroMeterRegistry(producer, clock, STEP,
+                AggregationTemporality.CUMULATIVE);
+        Counter counter = Counter.builder("orders").register(registry);
+        DistributionSummary summary = DistributionSummary.builder("order.value")
+                .serviceLevelObjectives(10, 100)
+                .register(registry);
+
+        counter.increment(2);
+        summary.record(5);
+        summary.record(50);
+        clock.add(STEP);
+        registry.publish();
+
+        counter.increment(3);
+        summary.record(7);
+        clock.add(STEP);
+        registry.publish();
+        producer.close();
+
+        List<Map<String, Object>> orders = rows("orders");
+        assertEquals(List.of(2.0, 5.0), orders.stream().map(r -> r.get("value")).toList());
+        assertEquals("cumulative", orders.get(1).get("temporality").toString());
+
+        List<Map<String, Object>> values = rows("order.value");
+        assertEquals(3.0, values.get(1).get("value"));
+        assertEquals(62.0, values.get(1).get("sum"));
+        assertEquals(List.of(2.0, 1.0), values.get(1).get("bucket_counts"));
+    }
+
+    private Map<String, Object> row(String name) {
+        List<Map<String, Object>> matching = rows(name);
+        assertEquals(1, matching.size(), "Rows for " + name);
+        return matching.get(0);
+    }
+
+    private List<Map<String, Object>> rows(String name) {
+        // Batches may be sent out of order
+        return rows.stream().filter(r -> r.get("name").toString().equals(name))
+                .sorted(Comparator.comparing(r -> (LocalDateTime) r.get("timestamp"))).toList();
+    }
+
+    /**
+     * Reads the batches it is given back into rows.
+     */
+    private final class CapturingProducer extends ArrowProducer.AbstractArrowProducer {
+
+        CapturingProducer() {
+            super(1024 * 1024, 10 * 1024 * 1024, Duration.ofMillis(200), ArrowMetricSchema.SCHEMA,
+                    Clock.systemUTC(), 0, 0, List.of());
+        }
+
+        @Override
+        public long getMaxInMemorySize() {
+            return 10 * 1024 * 1024;
+        }
+
+        @Override
+        public long getMaxOnDiskSize() {
+            return 10 * 1024 * 1024;
+        }
+
+        @Override
+        protected void doSend(ProducerElement element) {
+            try (BufferAllocator allocator = new RootAllocator();
+                 ArrowStreamReader reader = new ArrowStreamReader(element.read(), allocator,
+                         CommonsCompressionFactory.INSTANCE)) {
+                while (reader.loadNextBatch()) {
+                    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                    for (int i = 0; i < root.getRowCount(); i++) {
+                        Map<String, Object> row = new HashMap<>();
+                        for (var vector : root.getFieldVectors()) {
+                            row.put(vector.getName(), vector.getObject(i));
+                        }
+                        rows.add(row);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
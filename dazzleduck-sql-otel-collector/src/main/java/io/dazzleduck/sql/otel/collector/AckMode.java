@@ -0,0 +1,33 @@
+package io.dazzleduck.sql.otel.collector;
+
+import java.util.Locale;
+
+/**
+ * When an OTLP export is acknowledged, trading durability for export latency.
+ *
+ * <p>Whatever the mode, batches are written to Parquet by the same {@link SignalWriter} queue; only the point at
+ * which the exporter is answered moves. An export that the queue rejects outright, for example because too many
+ * bytes are pending, is always answered with the error.
+ */
+public enum AckMode {
+
+    /** Once the batch is written to Parquet. An exporter waits up to the queue's max delay plus the write. */
+    PARQUET,
+
+    /**
+     * Once the batch is synced to the local journal. Journaled batches not yet written to Parquet are queued
+     * again when the collector restarts.
+     */
+    JOURNAL,
+
+    /** Once the queue accepted the batch. Batches not yet written to Parquet are lost if the collector stops. */
+    MEMORY;
+
+    public static AckMode fromString(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported ack mode: " + value + ". Use parquet, journal or memory.");
+        }
+    }
+}
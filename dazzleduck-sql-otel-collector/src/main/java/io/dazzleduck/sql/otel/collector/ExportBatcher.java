@@ -0,0 +1,149 @@
+package io.dazzleduck.sql.otel.collector;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.VectorSchemaRootAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the exports of one signal into one Arrow batch, so that many small requests make one Arrow file for
+ * {@link SignalWriter#addBatch} rather than a file each. Each export is decoded into a root of its own first, so
+ * that a malformed one is rejected without touching the batch, and then appended to the batch. The batch is written
+ * once it holds {@code maxRows} rows, or {@code maxDelay} after its first export.
+ *
+ * <p>An export is written and acknowledged with its batch, as {@link SignalWriter#acknowledgement} decides for the
+ * batch once it is written to its Arrow file.
+ */
+public class ExportBatcher implements ExportStage {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportBatcher.class);
+
+    private final SignalWriter writer;
+    private final Schema schema;
+    private final Decoder decoder;
+    private final int maxRows;
+    private final Duration maxDelay;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private VectorSchemaRoot batch;
+    private List<Export> exports = new ArrayList<>();
+    /** Counts the batches, so that a scheduled write only writes the batch it was scheduled for. */
+    private long batchNumber;
+
+    public ExportBatcher(SignalWriter writer, Schema schema, Decoder decoder,
+                         int maxRows, Duration maxDelay, ScheduledExecutorService scheduler) {
+        this.writer = writer;
+        this.schema = schema;
+        this.decoder = decoder;
+        this.maxRows = maxRows;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Decodes {@code request} and adds it to the current batch, writing the batch if it is then full.
+     */
+    @Override
+    public Export add(byte[] request) throws IOException {
+        VectorSchemaRoot decoded = writer.acquireRoot(schema);
+        try {
+            int records = decoder.write(request, decoded);
+            if (records == 0) {
+                return Export.completed(0);
+            }
+            var export = new Export(records, new CompletableFuture<>(), new CompletableFuture<>());
+            VectorSchemaRoot full = null;
+            List<Export> fullExports = null;
+            synchronized (this) {
+                if (batch == null) {
+                    batch = writer.acquireRoot(schema);
+                    long scheduled = ++batchNumber;
+                    scheduler.schedule(() -> flush(scheduled), maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                VectorSchemaRootAppender.append(false, batch, decoded);
+                exports.add(export);
+                if (batch.getRowCount() >= maxRows) {
+                    full = batch;
+                    fullExports = exports;
+                    batch = null;
+                    exports = new ArrayList<>();
+                }
+            }
+            if (full != null) {
+                write(full, fullExports);
+            }
+            return export;
+        } finally {
+            writer.releaseRoot(decoded);
+        }
+    }
+
+    private void flush(long scheduled) {
+        VectorSchemaRoot full;
+        List<Export> fullExports;
+        synchronized (this) {
+            if (batch == null || batchNumber != scheduled) {
+                return;
+            }
+            full = batch;
+            fullExports = exports;
+            batch = null;
+            exports = new ArrayList<>();
+        }
+        write(full, fullExports);
+    }
+
+    private void write(VectorSchemaRoot root, List<Export> batchExports) {
+        int rows = root.getRowCount();
+        Path arrowFile;
+        try {
+            arrowFile = writer.writeArrowFile(root);
+        } catch (IOException e) {
+            log.error("Failed to write Arrow file for a batch of {} exports", batchExports.size(), e);
+            for (Export export : batchExports) {
+                export.written().completeExceptionally(e);
+                export.acknowledged().completeExceptionally(e);
+            }
+            return;
+        } finally {
+            writer.releaseRoot(root);
+        }
+        log.debug("Batched {} exports into {} rows", batchExports.size(), rows);
+        var written = writer.addBatch(arrowFile);
+        var acknowledged = writer.acknowledgement(written);
+        for (Export export : batchExports) {
+            forward(written, export.written());
+            forward(acknowledged, export.acknowledged());
+        }
+    }
+
+    static void forward(CompletableFuture<Void> from, CompletableFuture<Void> to) {
+        from.whenComplete((v, ex) -> {
+            if (ex != null) {
+                to.completeExceptionally(ex);
+            } else {
+                to.complete(null);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        long current;
+        synchronized (this) {
+            current = batchNumber;
+        }
+        flush(current);
+    }
+}
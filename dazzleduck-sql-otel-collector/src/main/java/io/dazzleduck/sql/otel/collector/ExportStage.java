@@ -0,0 +1,46 @@
+package io.dazzleduck.sql.otel.collector;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds on to decoded exports before they reach their {@link SignalWriter}, such as {@link ExportBatcher}, which
+ * batches them together, and {@link TraceSampler}, which keeps the spans of sampled traces only.
+ */
+public interface ExportStage extends Closeable {
+
+    /**
+     * Decodes a serialized export request into an empty root, like {@link LogRecordBatchWriter#write}.
+     */
+    @FunctionalInterface
+    interface Decoder {
+        int write(byte[] request, VectorSchemaRoot root) throws IOException;
+    }
+
+    /**
+     * An export taken by a stage: completes {@code written} once its records are written to Parquet, or dropped,
+     * and {@code acknowledged} once the export can be acknowledged.
+     */
+    record Export(int records, CompletableFuture<Void> written, CompletableFuture<Void> acknowledged) {
+
+        static Export completed(int records) {
+            return new Export(records, CompletableFuture.completedFuture(null), CompletableFuture.completedFuture(null));
+        }
+    }
+
+    /**
+     * Decodes {@code request} and takes its records.
+     *
+     * @throws com.google.protobuf.InvalidProtocolBufferException if the request is malformed
+     */
+    Export add(byte[] request) throws IOException;
+
+    /**
+     * Writes the records the stage holds without waiting any longer.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,84 @@
+package io.dazzleduck.sql.otel.collector;
+
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+
+/**
+ * Writes the rows of a List column one element at a time, straight into the vector of its elements.
+ * A row is started with {@link #start} or {@link #startOnFirstElement}, given its elements by writing to the
+ * indices {@link #nextElement} returns, and finished with {@link #end}. Rows must be written in order.
+ */
+class ListColumn {
+
+    private final ListVector list;
+    /** The elements when they are structs, null otherwise. */
+    private final StructVector structs;
+    private int row;
+    private int first;
+    private int size;
+    private boolean started;
+
+    ListColumn(ListVector list) {
+        this.list = list;
+        this.structs = list.getDataVector() instanceof StructVector s ? s : null;
+    }
+
+    /**
+     * Starts {@code row} as an empty list.
+     */
+    void start(int row) {
+        startOnFirstElement(row);
+        begin();
+    }
+
+    /**
+     * Starts {@code row}, which stays null unless it is given an element.
+     */
+    void startOnFirstElement(int row) {
+        this.row = row;
+        this.started = false;
+    }
+
+    /**
+     * @return the index of the next element of the row in the vector of the elements
+     */
+    int nextElement() {
+        if (!started) {
+            begin();
+        }
+        int index = first + size++;
+        if (structs != null) {
+            structs.setIndexDefined(index);
+        }
+        return index;
+    }
+
+    void end() {
+        if (started) {
+            list.endValue(row, size);
+            started = false;
+        }
+    }
+
+    FieldVector elements() {
+        return list.getDataVector();
+    }
+
+    <T extends FieldVector> T child(String name, Class<T> type) {
+        return structs.getChild(name, type);
+    }
+
+    /**
+     * @return the index of the first element of an earlier row
+     */
+    int firstElement(int row) {
+        return list.getOffsetBuffer().getInt((long) row * ListVector.OFFSET_WIDTH);
+    }
+
+    private void begin() {
+        first = list.startNewValue(row);
+        size = 0;
+        started = true;
+    }
+}
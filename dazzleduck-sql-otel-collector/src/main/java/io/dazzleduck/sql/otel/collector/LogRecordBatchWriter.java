@@ -1,116 +1,130 @@
 package io.dazzleduck.sql.otel.collector;
 
-import io.opentelemetry.proto.common.v1.InstrumentationScope;
-import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
 import io.opentelemetry.proto.logs.v1.LogRecord;
-import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
 import org.apache.arrow.vector.IntVector;
 import org.apache.arrow.vector.TimeStampMilliVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.complex.MapVector;
-import org.apache.arrow.vector.complex.impl.UnionMapWriter;
-import org.apache.arrow.vector.complex.writer.BaseWriter;
 
-import java.nio.charset.StandardCharsets;
-import java.util.HexFormat;
-import java.util.List;
+import java.io.IOException;
 
 /**
- * Writes a batch of OTLP log records directly into an Arrow VectorSchemaRoot,
- * bypassing the JavaRow intermediate representation.
+ * Decodes a serialized OTLP logs export straight into an Arrow VectorSchemaRoot, one row per log record,
+ * without building the protobuf objects.
  */
 public class LogRecordBatchWriter {
 
-    private static final HexFormat HEX = HexFormat.of();
-
-    public static void write(List<LogEntry> entries, VectorSchemaRoot root) {
-        root.allocateNew();
-
-        TimeStampMilliVector tsVec      = (TimeStampMilliVector) root.getVector(OtelLogSchema.COL_TIMESTAMP);
-        TimeStampMilliVector obsTsVec   = (TimeStampMilliVector) root.getVector(OtelLogSchema.COL_OBSERVED_TIMESTAMP);
-        IntVector severityNumVec        = (IntVector)            root.getVector(OtelLogSchema.COL_SEVERITY_NUMBER);
-        VarCharVector severityTextVec   = (VarCharVector)        root.getVector(OtelLogSchema.COL_SEVERITY_TEXT);
-        VarCharVector bodyVec           = (VarCharVector)        root.getVector(OtelLogSchema.COL_BODY);
-        VarCharVector traceIdVec        = (VarCharVector)        root.getVector(OtelLogSchema.COL_TRACE_ID);
-        VarCharVector spanIdVec         = (VarCharVector)        root.getVector(OtelLogSchema.COL_SPAN_ID);
-        IntVector flagsVec              = (IntVector)            root.getVector(OtelLogSchema.COL_FLAGS);
-        VarCharVector eventNameVec      = (VarCharVector)        root.getVector(OtelLogSchema.COL_EVENT_NAME);
-        MapVector attributesVec         = (MapVector)            root.getVector(OtelLogSchema.COL_ATTRIBUTES);
-        MapVector resourceAttributesVec = (MapVector)            root.getVector(OtelLogSchema.COL_RESOURCE_ATTRIBUTES);
-        VarCharVector scopeNameVec      = (VarCharVector)        root.getVector(OtelLogSchema.COL_SCOPE_NAME);
-        VarCharVector scopeVersionVec   = (VarCharVector)        root.getVector(OtelLogSchema.COL_SCOPE_VERSION);
-
-        UnionMapWriter attrWriter    = attributesVec.getWriter();
-        UnionMapWriter resAttrWriter = resourceAttributesVec.getWriter();
-
-        for (int i = 0; i < entries.size(); i++) {
-            LogEntry entry = entries.get(i);
-            LogRecord record = entry.record();
-            Resource resource = entry.resource();
-            InstrumentationScope scope = entry.scope();
-
-            if (record.getTimeUnixNano() > 0) {
-                tsVec.setSafe(i, record.getTimeUnixNano() / 1_000_000L);
-            } else {
-                tsVec.setNull(i);
-            }
-            if (record.getObservedTimeUnixNano() > 0) {
-                obsTsVec.setSafe(i, record.getObservedTimeUnixNano() / 1_000_000L);
-            } else {
-                obsTsVec.setNull(i);
-            }
-
-            severityNumVec.setSafe(i, record.getSeverityNumberValue());
-            writeVarChar(severityTextVec, i, LogRecordConverter.emptyToNull(record.getSeverityText()));
-            writeVarChar(bodyVec, i, record.hasBody() ? LogRecordConverter.anyValueToString(record.getBody()) : null);
-
-            byte[] traceId = record.getTraceId().toByteArray();
-            writeVarChar(traceIdVec, i, traceId.length > 0 ? HEX.formatHex(traceId) : null);
-
-            byte[] spanId = record.getSpanId().toByteArray();
-            writeVarChar(spanIdVec, i, spanId.length > 0 ? HEX.formatHex(spanId) : null);
-
-            flagsVec.setSafe(i, (int) (record.getFlags() & 0xFFFFFFFFL));
-            eventNameVec.setNull(i);
-
-            writeMap(attrWriter, i, record.getAttributesList());
-            writeMap(resAttrWriter, i, resource != null ? resource.getAttributesList() : List.of());
+    private final TimeStampMilliVector tsVec;
+    private final TimeStampMilliVector obsTsVec;
+    private final IntVector severityNumVec;
+    private final VarCharVector severityTextVec;
+    private final VarCharVector bodyVec;
+    private final FixedSizeBinaryVector traceIdVec;
+    private final FixedSizeBinaryVector spanIdVec;
+    private final IntVector flagsVec;
+    private final MapColumn attributes;
+    private final MapColumn resourceAttributes;
+    private final VarCharVector scopeNameVec;
+    private final VarCharVector scopeVersionVec;
+    private int rows;
+
+    private LogRecordBatchWriter(VectorSchemaRoot root) {
+        tsVec              = (TimeStampMilliVector)  root.getVector(OtelLogSchema.COL_TIMESTAMP);
+        obsTsVec           = (TimeStampMilliVector)  root.getVector(OtelLogSchema.COL_OBSERVED_TIMESTAMP);
+        severityNumVec     = (IntVector)             root.getVector(OtelLogSchema.COL_SEVERITY_NUMBER);
+        severityTextVec    = (VarCharVector)         root.getVector(OtelLogSchema.COL_SEVERITY_TEXT);
+        bodyVec            = (VarCharVector)         root.getVector(OtelLogSchema.COL_BODY);
+        traceIdVec         = (FixedSizeBinaryVector) root.getVector(OtelLogSchema.COL_TRACE_ID);
+        spanIdVec          = (FixedSizeBinaryVector) root.getVector(OtelLogSchema.COL_SPAN_ID);
+        flagsVec           = (IntVector)             root.getVector(OtelLogSchema.COL_FLAGS);
+        attributes         = new MapColumn((MapVector) root.getVector(OtelLogSchema.COL_ATTRIBUTES));
+        resourceAttributes = new MapColumn((MapVector) root.getVector(OtelLogSchema.COL_RESOURCE_ATTRIBUTES));
+        scopeNameVec       = (VarCharVector)         root.getVector(OtelLogSchema.COL_SCOPE_NAME);
+        scopeVersionVec    = (VarCharVector)         root.getVector(OtelLogSchema.COL_SCOPE_VERSION);
+    }
 
-            if (scope != null) {
-                writeVarChar(scopeNameVec, i, LogRecordConverter.emptyToNull(scope.getName()));
-                writeVarChar(scopeVersionVec, i, LogRecordConverter.emptyToNull(scope.getVersion()));
-            } else {
-                scopeNameVec.setNull(i);
-                scopeVersionVec.setNull(i);
-            }
+    /**
+     * Writes the log records of a serialized {@link ExportLogsServiceRequest} to {@code root}, which must be empty.
+     *
+     * @return the number of log records written
+     */
+    public static int write(byte[] request, VectorSchemaRoot root) throws IOException {
+        var writer = new LogRecordBatchWriter(root);
+        var reader = new OtlpWireReader(request);
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ExportLogsServiceRequest.RESOURCE_LOGS_FIELD_NUMBER) writer.writeResourceLogs(reader.message());
+            else reader.skip();
         }
+        root.setRowCount(writer.rows);
+        return writer.rows;
+    }
 
-        root.setRowCount(entries.size());
+    private void writeResourceLogs(OtlpWireReader reader) throws IOException {
+        OtlpWireReader resource = null;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceLogs.RESOURCE_FIELD_NUMBER) resource = reader.message();
+            else reader.skip();
+        }
+        resourceAttributes.nextResource();
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceLogs.SCOPE_LOGS_FIELD_NUMBER) writeScopeLogs(reader.message(), resource);
+            else reader.skip();
+        }
     }
 
-    private static void writeVarChar(VarCharVector vec, int index, String value) {
-        if (value == null) {
-            vec.setNull(index);
-        } else {
-            vec.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+    private void writeScopeLogs(OtlpWireReader reader, OtlpWireReader resource) throws IOException {
+        var scope = OtlpWireReader.Scope.NONE;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeLogs.SCOPE_FIELD_NUMBER) scope = reader.readScope();
+            else reader.skip();
+        }
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeLogs.LOG_RECORDS_FIELD_NUMBER) writeLogRecord(reader, resource, scope);
+            else reader.skip();
         }
     }
 
-    private static void writeMap(UnionMapWriter writer, int index, List<KeyValue> kvList) {
-        writer.setPosition(index);
-        writer.startMap();
-        for (KeyValue kv : kvList) {
-            writer.startEntry();
-            ((BaseWriter.ListWriter) writer.key()).varChar().writeVarChar(kv.getKey());
-            String val = LogRecordConverter.anyValueToString(kv.getValue());
-            if (val != null) {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeVarChar(val);
-            } else {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeNull();
+    private void writeLogRecord(OtlpWireReader reader, OtlpWireReader resource, OtlpWireReader.Scope scope) throws IOException {
+        int row = rows++;
+        int severityNumber = 0;
+        int flags = 0;
+        attributes.start(row);
+
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case LogRecord.TIME_UNIX_NANO_FIELD_NUMBER -> {
+                    long nanos = reader.readFixed64();
+                    if (nanos > 0) tsVec.setSafe(row, nanos / 1_000_000L);
+                }
+                case LogRecord.OBSERVED_TIME_UNIX_NANO_FIELD_NUMBER -> {
+                    long nanos = reader.readFixed64();
+                    if (nanos > 0) obsTsVec.setSafe(row, nanos / 1_000_000L);
+                }
+                case LogRecord.SEVERITY_NUMBER_FIELD_NUMBER -> severityNumber = reader.readEnum();
+                case LogRecord.SEVERITY_TEXT_FIELD_NUMBER   -> reader.readNonEmptyString(severityTextVec, row);
+                case LogRecord.BODY_FIELD_NUMBER            -> reader.readAnyValue(bodyVec, row);
+                case LogRecord.ATTRIBUTES_FIELD_NUMBER      -> reader.readAttribute(attributes);
+                case LogRecord.FLAGS_FIELD_NUMBER           -> flags = reader.readFixed32();
+                case LogRecord.TRACE_ID_FIELD_NUMBER        -> reader.readId(traceIdVec, row);
+                case LogRecord.SPAN_ID_FIELD_NUMBER         -> reader.readId(spanIdVec, row);
+                // event_name is not part of the proto version in use
+                default                                     -> reader.skip();
             }
-            writer.endEntry();
         }
-        writer.endMap();
+        reader.exit(limit);
+        attributes.end();
+
+        severityNumVec.setSafe(row, severityNumber);
+        flagsVec.setSafe(row, flags);
+        resourceAttributes.writeResource(row, resource);
+        scope.write(scopeNameVec, scopeVersionVec, row);
     }
 }
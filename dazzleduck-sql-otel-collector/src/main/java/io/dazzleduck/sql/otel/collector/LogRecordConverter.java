@@ -35,12 +35,12 @@ public class LogRecordConverter {
         values[OtelLogSchema.COL_SEVERITY_TEXT] = emptyToNull(record.getSeverityText());
         values[OtelLogSchema.COL_BODY] = record.hasBody() ? anyValueToString(record.getBody()) : null;
 
-        // trace_id / span_id: raw bytes → lowercase hex
+        // trace_id / span_id: raw bytes, null unless 16 / 8 bytes long
         byte[] traceId = record.getTraceId().toByteArray();
-        values[OtelLogSchema.COL_TRACE_ID] = traceId.length > 0 ? HEX.formatHex(traceId) : null;
+        values[OtelLogSchema.COL_TRACE_ID] = traceId.length == 16 ? traceId : null;
 
         byte[] spanId = record.getSpanId().toByteArray();
-        values[OtelLogSchema.COL_SPAN_ID] = spanId.length > 0 ? HEX.formatHex(spanId) : null;
+        values[OtelLogSchema.COL_SPAN_ID] = spanId.length == 8 ? spanId : null;
 
         values[OtelLogSchema.COL_FLAGS] = (int) (record.getFlags() & 0xFFFFFFFFL);
         values[OtelLogSchema.COL_EVENT_NAME] = null; // field added in proto > 1.3.2
@@ -0,0 +1,82 @@
+package io.dazzleduck.sql.otel.collector;
+
+import java.util.Arrays;
+
+/**
+ * Maps {@code long} keys to non-negative {@code int} values in two primitive arrays, open addressed with linear
+ * probing, so that a lookup neither boxes its key nor follows a pointer per entry. Entries are only added; the map
+ * is cleared and filled again to drop some.
+ */
+final class LongIntHashMap {
+
+    private static final int NONE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NONE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the value of {@code key}, -1 if it has none
+     */
+    int get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (values[i] == NONE || keys[i] == key) {
+                return values[i];
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        int i = slot(key);
+        while (values[i] != NONE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == NONE) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, NONE);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, NONE);
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NONE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        // Spreads the high bits into the low ones the mask keeps
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,76 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.MapVector;
+
+import java.io.IOException;
+
+/**
+ * Writes the rows of a Map(Utf8, Utf8) attributes column; {@link OtlpWireReader#readAttribute} adds the entries.
+ *
+ * <p>Every row of a resource carries the same resource attributes, so {@link #writeResource} decodes them for the
+ * first row only and copies them within the vectors for the rest.
+ */
+class MapColumn extends ListColumn {
+
+    private final VarCharVector keys;
+    private final VarCharVector values;
+    /** The first row of the current resource, -1 before it is written. */
+    private int resourceRow = -1;
+
+    MapColumn(MapVector map) {
+        super(map);
+        this.keys = child(MapVector.KEY_NAME, VarCharVector.class);
+        this.values = child(MapVector.VALUE_NAME, VarCharVector.class);
+    }
+
+    VarCharVector keys() {
+        return keys;
+    }
+
+    VarCharVector values() {
+        return values;
+    }
+
+    /**
+     * Moves on to the rows of another resource.
+     */
+    void nextResource() {
+        resourceRow = -1;
+    }
+
+    /**
+     * Writes the attributes of the current resource to {@code row}, an empty map if there is no resource.
+     *
+     * @param resource a reader of the {@link Resource}, null if there is none
+     */
+    void writeResource(int row, OtlpWireReader resource) throws IOException {
+        if (resourceRow >= 0) {
+            copy(resourceRow, row);
+            return;
+        }
+        start(row);
+        if (resource != null) {
+            var reader = resource.reread();
+            for (int field; (field = reader.nextField()) != 0; ) {
+                if (field == Resource.ATTRIBUTES_FIELD_NUMBER) reader.readAttribute(this);
+                else reader.skip();
+            }
+        }
+        end();
+        resourceRow = row;
+    }
+
+    private void copy(int from, int row) {
+        int first = firstElement(from);
+        int last = firstElement(from + 1);
+        start(row);
+        for (int i = first; i < last; i++) {
+            int entry = nextElement();
+            keys.copyFromSafe(i, entry, keys);
+            values.copyFromSafe(i, entry, values);
+        }
+        end();
+    }
+}
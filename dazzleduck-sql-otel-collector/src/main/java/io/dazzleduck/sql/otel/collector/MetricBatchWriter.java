@@ -1,13 +1,19 @@
 package io.dazzleduck.sql.otel.collector;
 
-import io.opentelemetry.proto.common.v1.InstrumentationScope;
-import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.ExponentialHistogram;
 import io.opentelemetry.proto.metrics.v1.ExponentialHistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.Gauge;
+import io.opentelemetry.proto.metrics.v1.Histogram;
 import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
 import io.opentelemetry.proto.metrics.v1.Metric;
 import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.metrics.v1.ScopeMetrics;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import io.opentelemetry.proto.metrics.v1.Summary;
 import io.opentelemetry.proto.metrics.v1.SummaryDataPoint;
-import io.opentelemetry.proto.resource.v1.Resource;
 import org.apache.arrow.vector.BigIntVector;
 import org.apache.arrow.vector.BitVector;
 import org.apache.arrow.vector.Float8Vector;
@@ -16,264 +22,363 @@ import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.MapVector;
-import org.apache.arrow.vector.complex.impl.UnionMapWriter;
-import org.apache.arrow.vector.complex.writer.BaseWriter;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 
 /**
- * Writes a batch of OTLP metrics directly into an Arrow VectorSchemaRoot,
- * bypassing the JavaRow intermediate representation.
- * One MetricEntry may produce multiple rows (one per data point).
+ * Decodes a serialized OTLP metrics export straight into an Arrow VectorSchemaRoot,
+ * without building the protobuf objects.
+ * One metric may produce multiple rows (one per data point).
  */
 public class MetricBatchWriter {
 
-    public static void write(List<MetricEntry> entries, VectorSchemaRoot root) {
-        root.allocateNew();
+    private static final byte[] GAUGE = "GAUGE".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUM = "SUM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HISTOGRAM = "HISTOGRAM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPONENTIAL_HISTOGRAM = "EXPONENTIAL_HISTOGRAM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUMMARY = "SUMMARY".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[][] TEMPORALITIES =
+            OtlpWireReader.enumNames(AggregationTemporality.class, "AGGREGATION_TEMPORALITY_");
 
-        VarCharVector nameVec           = (VarCharVector)        root.getVector(OtelMetricSchema.COL_NAME);
-        VarCharVector descVec           = (VarCharVector)        root.getVector(OtelMetricSchema.COL_DESCRIPTION);
-        VarCharVector unitVec           = (VarCharVector)        root.getVector(OtelMetricSchema.COL_UNIT);
-        VarCharVector typeVec           = (VarCharVector)        root.getVector(OtelMetricSchema.COL_METRIC_TYPE);
-        TimeStampMilliVector startVec   = (TimeStampMilliVector) root.getVector(OtelMetricSchema.COL_START_TIME_MS);
-        TimeStampMilliVector timeVec    = (TimeStampMilliVector) root.getVector(OtelMetricSchema.COL_TIME_MS);
-        MapVector attributesVec         = (MapVector)            root.getVector(OtelMetricSchema.COL_ATTRIBUTES);
-        MapVector resourceAttributesVec = (MapVector)            root.getVector(OtelMetricSchema.COL_RESOURCE_ATTRIBUTES);
-        VarCharVector scopeNameVec      = (VarCharVector)        root.getVector(OtelMetricSchema.COL_SCOPE_NAME);
-        VarCharVector scopeVersionVec   = (VarCharVector)        root.getVector(OtelMetricSchema.COL_SCOPE_VERSION);
-        Float8Vector valueDoubleVec     = (Float8Vector)         root.getVector(OtelMetricSchema.COL_VALUE_DOUBLE);
-        BigIntVector valueIntVec        = (BigIntVector)         root.getVector(OtelMetricSchema.COL_VALUE_INT);
-        BigIntVector countVec           = (BigIntVector)         root.getVector(OtelMetricSchema.COL_COUNT);
-        Float8Vector sumVec             = (Float8Vector)         root.getVector(OtelMetricSchema.COL_SUM);
-        ListVector bucketCountsVec      = (ListVector)           root.getVector(OtelMetricSchema.COL_BUCKET_COUNTS);
-        ListVector explicitBoundsVec    = (ListVector)           root.getVector(OtelMetricSchema.COL_EXPLICIT_BOUNDS);
-        ListVector quantileValuesVec    = (ListVector)           root.getVector(OtelMetricSchema.COL_QUANTILE_VALUES);
-        BitVector isMonotonicVec        = (BitVector)            root.getVector(OtelMetricSchema.COL_IS_MONOTONIC);
-        VarCharVector aggTempVec        = (VarCharVector)        root.getVector(OtelMetricSchema.COL_AGGREGATION_TEMPORALITY);
+    private final VarCharVector nameVec;
+    private final VarCharVector descVec;
+    private final VarCharVector unitVec;
+    private final VarCharVector typeVec;
+    private final TimeStampMilliVector startVec;
+    private final TimeStampMilliVector timeVec;
+    private final MapColumn attributes;
+    private final MapColumn resourceAttributes;
+    private final VarCharVector scopeNameVec;
+    private final VarCharVector scopeVersionVec;
+    private final Float8Vector valueDoubleVec;
+    private final BigIntVector valueIntVec;
+    private final BigIntVector countVec;
+    private final Float8Vector sumVec;
+    private final ListColumn bucketCounts;
+    private final BigIntVector bucketCountVec;
+    private final ListColumn explicitBounds;
+    private final Float8Vector explicitBoundVec;
+    private final ListColumn quantileValues;
+    private final Float8Vector quantileVec;
+    private final Float8Vector quantileValueVec;
+    private final BitVector isMonotonicVec;
+    private final VarCharVector aggTempVec;
+    private int rows;
 
-        UnionMapWriter attrWriter    = attributesVec.getWriter();
-        UnionMapWriter resAttrWriter = resourceAttributesVec.getWriter();
+    // The metric and its context, set for the rows of its data points
+    private OtlpWireReader resource;
+    private OtlpWireReader.Scope scope;
+    private byte[] name;
+    private byte[] description;
+    private byte[] unit;
 
-        int row = 0;
-        for (MetricEntry entry : entries) {
-            Metric metric = entry.metric();
-            Resource resource = entry.resource();
-            InstrumentationScope scope = entry.scope();
+    private MetricBatchWriter(VectorSchemaRoot root) {
+        nameVec            = (VarCharVector)        root.getVector(OtelMetricSchema.COL_NAME);
+        descVec            = (VarCharVector)        root.getVector(OtelMetricSchema.COL_DESCRIPTION);
+        unitVec            = (VarCharVector)        root.getVector(OtelMetricSchema.COL_UNIT);
+        typeVec            = (VarCharVector)        root.getVector(OtelMetricSchema.COL_METRIC_TYPE);
+        startVec           = (TimeStampMilliVector) root.getVector(OtelMetricSchema.COL_START_TIME_MS);
+        timeVec            = (TimeStampMilliVector) root.getVector(OtelMetricSchema.COL_TIME_MS);
+        attributes         = new MapColumn((MapVector) root.getVector(OtelMetricSchema.COL_ATTRIBUTES));
+        resourceAttributes = new MapColumn((MapVector) root.getVector(OtelMetricSchema.COL_RESOURCE_ATTRIBUTES));
+        scopeNameVec       = (VarCharVector)        root.getVector(OtelMetricSchema.COL_SCOPE_NAME);
+        scopeVersionVec    = (VarCharVector)        root.getVector(OtelMetricSchema.COL_SCOPE_VERSION);
+        valueDoubleVec     = (Float8Vector)         root.getVector(OtelMetricSchema.COL_VALUE_DOUBLE);
+        valueIntVec        = (BigIntVector)         root.getVector(OtelMetricSchema.COL_VALUE_INT);
+        countVec           = (BigIntVector)         root.getVector(OtelMetricSchema.COL_COUNT);
+        sumVec             = (Float8Vector)         root.getVector(OtelMetricSchema.COL_SUM);
+        isMonotonicVec     = (BitVector)            root.getVector(OtelMetricSchema.COL_IS_MONOTONIC);
+        aggTempVec         = (VarCharVector)        root.getVector(OtelMetricSchema.COL_AGGREGATION_TEMPORALITY);
 
-            switch (metric.getDataCase()) {
-                case GAUGE -> {
-                    for (var dp : metric.getGauge().getDataPointsList()) {
-                        writeBase(row, metric, resource, scope, "GAUGE",
-                                dp.getStartTimeUnixNano(), dp.getTimeUnixNano(),
-                                dp.getAttributesList(),
-                                nameVec, descVec, unitVec, typeVec, startVec, timeVec,
-                                attrWriter, resAttrWriter, scopeNameVec, scopeVersionVec);
-                        writeNumberValue(row, dp, valueDoubleVec, valueIntVec);
-                        isMonotonicVec.setNull(row);
-                        aggTempVec.setNull(row);
-                        nullListCols(row, countVec, sumVec, bucketCountsVec, explicitBoundsVec, quantileValuesVec);
-                        row++;
-                    }
-                }
-                case SUM -> {
-                    var sum = metric.getSum();
-                    String temporality = stripAggPrefix(sum.getAggregationTemporality().name());
-                    for (var dp : sum.getDataPointsList()) {
-                        writeBase(row, metric, resource, scope, "SUM",
-                                dp.getStartTimeUnixNano(), dp.getTimeUnixNano(),
-                                dp.getAttributesList(),
-                                nameVec, descVec, unitVec, typeVec, startVec, timeVec,
-                                attrWriter, resAttrWriter, scopeNameVec, scopeVersionVec);
-                        writeNumberValue(row, dp, valueDoubleVec, valueIntVec);
-                        isMonotonicVec.setSafe(row, sum.getIsMonotonic() ? 1 : 0);
-                        writeVarChar(aggTempVec, row, temporality);
-                        nullListCols(row, countVec, sumVec, bucketCountsVec, explicitBoundsVec, quantileValuesVec);
-                        row++;
-                    }
-                }
-                case HISTOGRAM -> {
-                    var hist = metric.getHistogram();
-                    String temporality = stripAggPrefix(hist.getAggregationTemporality().name());
-                    for (var dp : hist.getDataPointsList()) {
-                        writeBase(row, metric, resource, scope, "HISTOGRAM",
-                                dp.getStartTimeUnixNano(), dp.getTimeUnixNano(),
-                                dp.getAttributesList(),
-                                nameVec, descVec, unitVec, typeVec, startVec, timeVec,
-                                attrWriter, resAttrWriter, scopeNameVec, scopeVersionVec);
-                        writeHistogram(row, dp, countVec, sumVec, bucketCountsVec, explicitBoundsVec);
-                        writeVarChar(aggTempVec, row, temporality);
-                        valueDoubleVec.setNull(row);
-                        valueIntVec.setNull(row);
-                        isMonotonicVec.setNull(row);
-                        quantileValuesVec.setNull(row);
-                        row++;
-                    }
-                }
-                case EXPONENTIAL_HISTOGRAM -> {
-                    var expHist = metric.getExponentialHistogram();
-                    String temporality = stripAggPrefix(expHist.getAggregationTemporality().name());
-                    for (var dp : expHist.getDataPointsList()) {
-                        writeBase(row, metric, resource, scope, "EXPONENTIAL_HISTOGRAM",
-                                dp.getStartTimeUnixNano(), dp.getTimeUnixNano(),
-                                dp.getAttributesList(),
-                                nameVec, descVec, unitVec, typeVec, startVec, timeVec,
-                                attrWriter, resAttrWriter, scopeNameVec, scopeVersionVec);
-                        countVec.setSafe(row, dp.getCount());
-                        if (dp.hasSum()) sumVec.setSafe(row, dp.getSum()); else sumVec.setNull(row);
-                        writeVarChar(aggTempVec, row, temporality);
-                        valueDoubleVec.setNull(row);
-                        valueIntVec.setNull(row);
-                        isMonotonicVec.setNull(row);
-                        bucketCountsVec.setNull(row);
-                        explicitBoundsVec.setNull(row);
-                        quantileValuesVec.setNull(row);
-                        row++;
-                    }
-                }
-                case SUMMARY -> {
-                    for (var dp : metric.getSummary().getDataPointsList()) {
-                        writeBase(row, metric, resource, scope, "SUMMARY",
-                                dp.getStartTimeUnixNano(), dp.getTimeUnixNano(),
-                                dp.getAttributesList(),
-                                nameVec, descVec, unitVec, typeVec, startVec, timeVec,
-                                attrWriter, resAttrWriter, scopeNameVec, scopeVersionVec);
-                        countVec.setSafe(row, dp.getCount());
-                        sumVec.setSafe(row, dp.getSum());
-                        writeQuantileValues(row, dp, quantileValuesVec);
-                        valueDoubleVec.setNull(row);
-                        valueIntVec.setNull(row);
-                        isMonotonicVec.setNull(row);
-                        aggTempVec.setNull(row);
-                        bucketCountsVec.setNull(row);
-                        explicitBoundsVec.setNull(row);
-                        row++;
-                    }
+        bucketCounts     = new ListColumn((ListVector) root.getVector(OtelMetricSchema.COL_BUCKET_COUNTS));
+        bucketCountVec   = (BigIntVector) bucketCounts.elements();
+        explicitBounds   = new ListColumn((ListVector) root.getVector(OtelMetricSchema.COL_EXPLICIT_BOUNDS));
+        explicitBoundVec = (Float8Vector) explicitBounds.elements();
+        quantileValues   = new ListColumn((ListVector) root.getVector(OtelMetricSchema.COL_QUANTILE_VALUES));
+        quantileVec      = quantileValues.child("quantile", Float8Vector.class);
+        quantileValueVec = quantileValues.child("value", Float8Vector.class);
+    }
+
+    /**
+     * Writes the data points of a serialized {@link ExportMetricsServiceRequest} to {@code root}, which must be
+     * empty.
+     *
+     * @return the number of data points written
+     */
+    public static int write(byte[] request, VectorSchemaRoot root) throws IOException {
+        var writer = new MetricBatchWriter(root);
+        var reader = new OtlpWireReader(request);
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ExportMetricsServiceRequest.RESOURCE_METRICS_FIELD_NUMBER) writer.writeResourceMetrics(reader.message());
+            else reader.skip();
+        }
+        root.setRowCount(writer.rows);
+        return writer.rows;
+    }
+
+    private void writeResourceMetrics(OtlpWireReader reader) throws IOException {
+        resource = null;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceMetrics.RESOURCE_FIELD_NUMBER) resource = reader.message();
+            else reader.skip();
+        }
+        resourceAttributes.nextResource();
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceMetrics.SCOPE_METRICS_FIELD_NUMBER) writeScopeMetrics(reader.message());
+            else reader.skip();
+        }
+    }
+
+    private void writeScopeMetrics(OtlpWireReader reader) throws IOException {
+        scope = OtlpWireReader.Scope.NONE;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeMetrics.SCOPE_FIELD_NUMBER) scope = reader.readScope();
+            else reader.skip();
+        }
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeMetrics.METRICS_FIELD_NUMBER) writeMetric(reader.message());
+            else reader.skip();
+        }
+    }
+
+    private void writeMetric(OtlpWireReader reader) throws IOException {
+        name = EMPTY;
+        description = null;
+        unit = null;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Metric.NAME_FIELD_NUMBER -> {
+                    byte[] value = reader.readNonEmptyString();
+                    name = value != null ? value : EMPTY;
                 }
-                default -> {} // DATA_NOT_SET — ignore
+                case Metric.DESCRIPTION_FIELD_NUMBER -> description = reader.readNonEmptyString();
+                case Metric.UNIT_FIELD_NUMBER        -> unit = reader.readNonEmptyString();
+                default                              -> reader.skip();
+            }
+        }
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Metric.GAUGE_FIELD_NUMBER                 -> writeGauge(reader.message());
+                case Metric.SUM_FIELD_NUMBER                   -> writeSum(reader.message());
+                case Metric.HISTOGRAM_FIELD_NUMBER             -> writeHistogram(reader.message());
+                case Metric.EXPONENTIAL_HISTOGRAM_FIELD_NUMBER -> writeExponentialHistogram(reader.message());
+                case Metric.SUMMARY_FIELD_NUMBER               -> writeSummary(reader.message());
+                default                                        -> reader.skip();
             }
         }
+    }
 
-        root.setRowCount(row);
+    private void writeGauge(OtlpWireReader reader) throws IOException {
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == Gauge.DATA_POINTS_FIELD_NUMBER) writeNumberDataPoint(reader, GAUGE);
+            else reader.skip();
+        }
     }
 
-    private static void writeBase(int row, Metric metric, Resource resource, InstrumentationScope scope,
-                                  String metricType, long startNanos, long timeNanos,
-                                  List<KeyValue> attributes,
-                                  VarCharVector nameVec, VarCharVector descVec, VarCharVector unitVec,
-                                  VarCharVector typeVec, TimeStampMilliVector startVec, TimeStampMilliVector timeVec,
-                                  UnionMapWriter attrWriter, UnionMapWriter resAttrWriter,
-                                  VarCharVector scopeNameVec, VarCharVector scopeVersionVec) {
-        writeVarChar(nameVec, row, metric.getName());
-        writeVarChar(descVec, row, LogRecordConverter.emptyToNull(metric.getDescription()));
-        writeVarChar(unitVec, row, LogRecordConverter.emptyToNull(metric.getUnit()));
-        writeVarChar(typeVec, row, metricType);
-        if (startNanos > 0) startVec.setSafe(row, startNanos / 1_000_000L); else startVec.setNull(row);
-        if (timeNanos  > 0) timeVec.setSafe(row, timeNanos  / 1_000_000L);  else timeVec.setNull(row);
-        writeMap(attrWriter, row, attributes);
-        writeMap(resAttrWriter, row, resource != null ? resource.getAttributesList() : List.of());
-        if (scope != null) {
-            writeVarChar(scopeNameVec, row, LogRecordConverter.emptyToNull(scope.getName()));
-            writeVarChar(scopeVersionVec, row, LogRecordConverter.emptyToNull(scope.getVersion()));
-        } else {
-            scopeNameVec.setNull(row);
-            scopeVersionVec.setNull(row);
+    private void writeSum(OtlpWireReader reader) throws IOException {
+        int temporality = 0;
+        boolean monotonic = false;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Sum.AGGREGATION_TEMPORALITY_FIELD_NUMBER -> temporality = reader.readEnum();
+                case Sum.IS_MONOTONIC_FIELD_NUMBER            -> monotonic = reader.readBool();
+                default                                       -> reader.skip();
+            }
+        }
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field != Sum.DATA_POINTS_FIELD_NUMBER) {
+                reader.skip();
+                continue;
+            }
+            int row = writeNumberDataPoint(reader, SUM);
+            isMonotonicVec.setSafe(row, monotonic ? 1 : 0);
+            aggTempVec.setSafe(row, OtlpWireReader.enumName(TEMPORALITIES, temporality));
         }
     }
 
-    private static void writeNumberValue(int row, NumberDataPoint dp,
-                                         Float8Vector valueDoubleVec, BigIntVector valueIntVec) {
-        switch (dp.getValueCase()) {
-            case AS_DOUBLE -> { valueDoubleVec.setSafe(row, dp.getAsDouble()); valueIntVec.setNull(row); }
-            case AS_INT    -> { valueIntVec.setSafe(row, dp.getAsInt());       valueDoubleVec.setNull(row); }
-            default        -> { valueDoubleVec.setNull(row); valueIntVec.setNull(row); }
+    private void writeHistogram(OtlpWireReader reader) throws IOException {
+        int temporality = readTemporality(reader, Histogram.AGGREGATION_TEMPORALITY_FIELD_NUMBER);
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field != Histogram.DATA_POINTS_FIELD_NUMBER) {
+                reader.skip();
+                continue;
+            }
+            int row = writeHistogramDataPoint(reader);
+            aggTempVec.setSafe(row, OtlpWireReader.enumName(TEMPORALITIES, temporality));
         }
     }
 
-    private static void writeHistogram(int row, HistogramDataPoint dp,
-                                        BigIntVector countVec, Float8Vector sumVec,
-                                        ListVector bucketCountsVec, ListVector explicitBoundsVec) {
-        countVec.setSafe(row, dp.getCount());
-        if (dp.hasSum()) sumVec.setSafe(row, dp.getSum()); else sumVec.setNull(row);
+    private void writeExponentialHistogram(OtlpWireReader reader) throws IOException {
+        int temporality = readTemporality(reader, ExponentialHistogram.AGGREGATION_TEMPORALITY_FIELD_NUMBER);
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field != ExponentialHistogram.DATA_POINTS_FIELD_NUMBER) {
+                reader.skip();
+                continue;
+            }
+            int row = writeExponentialHistogramDataPoint(reader);
+            aggTempVec.setSafe(row, OtlpWireReader.enumName(TEMPORALITIES, temporality));
+        }
+    }
 
-        List<Long> buckets = dp.getBucketCountsList();
-        if (buckets.isEmpty()) {
-            bucketCountsVec.setNull(row);
-        } else {
-            BaseWriter.ListWriter bw = bucketCountsVec.getWriter();
-            bw.setPosition(row);
-            bw.startList();
-            for (long b : buckets) bw.bigInt().writeBigInt(b);
-            bw.endList();
+    private void writeSummary(OtlpWireReader reader) throws IOException {
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == Summary.DATA_POINTS_FIELD_NUMBER) writeSummaryDataPoint(reader);
+            else reader.skip();
         }
+    }
 
-        List<Double> bounds = dp.getExplicitBoundsList();
-        if (bounds.isEmpty()) {
-            explicitBoundsVec.setNull(row);
-        } else {
-            BaseWriter.ListWriter ew = explicitBoundsVec.getWriter();
-            ew.setPosition(row);
-            ew.startList();
-            for (double b : bounds) ew.float8().writeFloat8(b);
-            ew.endList();
+    private static int readTemporality(OtlpWireReader reader, int temporalityField) throws IOException {
+        int temporality = 0;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == temporalityField) temporality = reader.readEnum();
+            else reader.skip();
         }
+        return temporality;
     }
 
-    private static void writeQuantileValues(int row, SummaryDataPoint dp, ListVector quantileValuesVec) {
-        if (dp.getQuantileValuesCount() == 0) {
-            quantileValuesVec.setNull(row);
-            return;
+    private int writeNumberDataPoint(OtlpWireReader reader, byte[] metricType) throws IOException {
+        int row = rows++;
+        long startNanos = 0;
+        long timeNanos = 0;
+        attributes.start(row);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case NumberDataPoint.ATTRIBUTES_FIELD_NUMBER           -> reader.readAttribute(attributes);
+                case NumberDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER -> startNanos = reader.readFixed64();
+                case NumberDataPoint.TIME_UNIX_NANO_FIELD_NUMBER       -> timeNanos = reader.readFixed64();
+                case NumberDataPoint.AS_DOUBLE_FIELD_NUMBER -> {
+                    valueDoubleVec.setSafe(row, reader.readDouble());
+                    valueIntVec.setNull(row);
+                }
+                case NumberDataPoint.AS_INT_FIELD_NUMBER -> {
+                    valueIntVec.setSafe(row, reader.readSFixed64());
+                    valueDoubleVec.setNull(row);
+                }
+                default -> reader.skip();
+            }
         }
-        BaseWriter.ListWriter lw = quantileValuesVec.getWriter();
-        lw.setPosition(row);
-        lw.startList();
-        for (var qv : dp.getQuantileValuesList()) {
-            BaseWriter.StructWriter sw = lw.struct();
-            sw.start();
-            sw.float8("quantile").writeFloat8(qv.getQuantile());
-            sw.float8("value").writeFloat8(qv.getValue());
-            sw.end();
+        reader.exit(limit);
+        attributes.end();
+        writeBase(row, metricType, startNanos, timeNanos);
+        return row;
+    }
+
+    private int writeHistogramDataPoint(OtlpWireReader reader) throws IOException {
+        int row = rows++;
+        long startNanos = 0;
+        long timeNanos = 0;
+        long count = 0;
+        attributes.start(row);
+        bucketCounts.startOnFirstElement(row);
+        explicitBounds.startOnFirstElement(row);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case HistogramDataPoint.ATTRIBUTES_FIELD_NUMBER           -> reader.readAttribute(attributes);
+                case HistogramDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER -> startNanos = reader.readFixed64();
+                case HistogramDataPoint.TIME_UNIX_NANO_FIELD_NUMBER       -> timeNanos = reader.readFixed64();
+                case HistogramDataPoint.COUNT_FIELD_NUMBER                -> count = reader.readFixed64();
+                case HistogramDataPoint.SUM_FIELD_NUMBER                  -> sumVec.setSafe(row, reader.readDouble());
+                case HistogramDataPoint.BUCKET_COUNTS_FIELD_NUMBER        -> reader.readFixed64s(bucketCounts, bucketCountVec);
+                case HistogramDataPoint.EXPLICIT_BOUNDS_FIELD_NUMBER      -> reader.readDoubles(explicitBounds, explicitBoundVec);
+                default                                                   -> reader.skip();
+            }
         }
-        lw.endList();
+        reader.exit(limit);
+        attributes.end();
+        bucketCounts.end();
+        explicitBounds.end();
+        countVec.setSafe(row, count);
+        writeBase(row, HISTOGRAM, startNanos, timeNanos);
+        return row;
     }
 
-    private static void nullListCols(int row, BigIntVector countVec, Float8Vector sumVec,
-                                     ListVector bucketCountsVec, ListVector explicitBoundsVec,
-                                     ListVector quantileValuesVec) {
-        countVec.setNull(row);
-        sumVec.setNull(row);
-        bucketCountsVec.setNull(row);
-        explicitBoundsVec.setNull(row);
-        quantileValuesVec.setNull(row);
+    private int writeExponentialHistogramDataPoint(OtlpWireReader reader) throws IOException {
+        int row = rows++;
+        long startNanos = 0;
+        long timeNanos = 0;
+        long count = 0;
+        attributes.start(row);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case ExponentialHistogramDataPoint.ATTRIBUTES_FIELD_NUMBER           -> reader.readAttribute(attributes);
+                case ExponentialHistogramDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER -> startNanos = reader.readFixed64();
+                case ExponentialHistogramDataPoint.TIME_UNIX_NANO_FIELD_NUMBER       -> timeNanos = reader.readFixed64();
+                case ExponentialHistogramDataPoint.COUNT_FIELD_NUMBER                -> count = reader.readFixed64();
+                case ExponentialHistogramDataPoint.SUM_FIELD_NUMBER                  -> sumVec.setSafe(row, reader.readDouble());
+                default                                                              -> reader.skip();
+            }
+        }
+        reader.exit(limit);
+        attributes.end();
+        countVec.setSafe(row, count);
+        writeBase(row, EXPONENTIAL_HISTOGRAM, startNanos, timeNanos);
+        return row;
     }
 
-    private static void writeMap(UnionMapWriter writer, int index, List<KeyValue> kvList) {
-        writer.setPosition(index);
-        writer.startMap();
-        for (KeyValue kv : kvList) {
-            writer.startEntry();
-            ((BaseWriter.ListWriter) writer.key()).varChar().writeVarChar(kv.getKey());
-            String val = LogRecordConverter.anyValueToString(kv.getValue());
-            if (val != null) {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeVarChar(val);
-            } else {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeNull();
+    private void writeSummaryDataPoint(OtlpWireReader reader) throws IOException {
+        int row = rows++;
+        long startNanos = 0;
+        long timeNanos = 0;
+        long count = 0;
+        double sum = 0;
+        attributes.start(row);
+        quantileValues.startOnFirstElement(row);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case SummaryDataPoint.ATTRIBUTES_FIELD_NUMBER           -> reader.readAttribute(attributes);
+                case SummaryDataPoint.START_TIME_UNIX_NANO_FIELD_NUMBER -> startNanos = reader.readFixed64();
+                case SummaryDataPoint.TIME_UNIX_NANO_FIELD_NUMBER       -> timeNanos = reader.readFixed64();
+                case SummaryDataPoint.COUNT_FIELD_NUMBER                -> count = reader.readFixed64();
+                case SummaryDataPoint.SUM_FIELD_NUMBER                  -> sum = reader.readDouble();
+                case SummaryDataPoint.QUANTILE_VALUES_FIELD_NUMBER      -> writeQuantileValue(reader);
+                default                                                 -> reader.skip();
             }
-            writer.endEntry();
         }
-        writer.endMap();
+        reader.exit(limit);
+        attributes.end();
+        quantileValues.end();
+        countVec.setSafe(row, count);
+        sumVec.setSafe(row, sum);
+        writeBase(row, SUMMARY, startNanos, timeNanos);
     }
 
-    private static void writeVarChar(VarCharVector vec, int index, String value) {
-        if (value == null) {
-            vec.setNull(index);
-        } else {
-            vec.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+    private void writeQuantileValue(OtlpWireReader reader) throws IOException {
+        int index = quantileValues.nextElement();
+        double quantile = 0;
+        double value = 0;
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case SummaryDataPoint.ValueAtQuantile.QUANTILE_FIELD_NUMBER -> quantile = reader.readDouble();
+                case SummaryDataPoint.ValueAtQuantile.VALUE_FIELD_NUMBER    -> value = reader.readDouble();
+                default                                                     -> reader.skip();
+            }
         }
+        reader.exit(limit);
+        quantileVec.setSafe(index, quantile);
+        quantileValueVec.setSafe(index, value);
     }
 
-    private static String stripAggPrefix(String name) {
-        String prefix = "AGGREGATION_TEMPORALITY_";
-        return name.startsWith(prefix) ? name.substring(prefix.length()) : name;
+    private void writeBase(int row, byte[] metricType, long startNanos, long timeNanos) throws IOException {
+        nameVec.setSafe(row, name);
+        if (description != null) descVec.setSafe(row, description);
+        if (unit != null) unitVec.setSafe(row, unit);
+        typeVec.setSafe(row, metricType);
+        if (startNanos > 0) startVec.setSafe(row, startNanos / 1_000_000L);
+        if (timeNanos  > 0) timeVec.setSafe(row, timeNanos  / 1_000_000L);
+        resourceAttributes.writeResource(row, resource);
+        scope.write(scopeNameVec, scopeVersionVec, row);
     }
 }
@@ -0,0 +1,668 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.dazzleduck.sql.otel.collector.config.MetricRollupConfig;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.memory.util.hash.ArrowBufHasher;
+import org.apache.arrow.memory.util.hash.MurmurHasher;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls OTLP metric data points up into one row per series and window, in {@link OtelMetricRollupSchema}, for a
+ * {@link SignalWriter} of their own next to the raw points. Dashboards then read a row per series and minute rather
+ * than every point every SDK sent.
+ *
+ * <p>A series is a metric name, type and unit with its attributes, resource attributes and scope, known by a 64-bit
+ * hash of those columns in a {@link LongIntHashMap} to the slot of the series. The state of the slots is kept off the
+ * heap: their columns in an Arrow root, and their aggregates as longs in an Arrow buffer, with a second buffer for
+ * their bucket counts. Cumulative points become deltas against the previous point of their series: the first point
+ * of a series, a point not after the previous one and a change of bucket layout only set the baseline, while a
+ * changed start time or a decreasing count is taken as a restart from zero.
+ *
+ * <p>Each window of a series is written once a point of the series falls in a later window, or once the grace
+ * period after its end has passed. Points of a window that was already written are dropped. When the slots are all
+ * taken, those of the series idle for longer than twice the longest window are freed, losing their baseline; the
+ * points of series beyond that are only written raw.
+ *
+ * <p>Rollups are written on their own schedule and never delay the acknowledgement of the raw points.
+ */
+public class MetricRollup implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricRollup.class);
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final byte[] GAUGE = "GAUGE".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUM = "SUM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HISTOGRAM = "HISTOGRAM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPONENTIAL_HISTOGRAM = "EXPONENTIAL_HISTOGRAM".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUMMARY = "SUMMARY".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CUMULATIVE = "CUMULATIVE".getBytes(StandardCharsets.UTF_8);
+    private static final byte[][] KINDS = {GAUGE, SUM, HISTOGRAM, EXPONENTIAL_HISTOGRAM, SUMMARY};
+    private static final int KIND_GAUGE = 0;
+    private static final int KIND_SUM = 1;
+    private static final int KIND_HISTOGRAM = 2;
+    private static final int KIND_SUMMARY = 4;
+
+    private static final ArrowBufHasher HASHER_HIGH = new MurmurHasher(0x5bd1e995);
+    private static final ArrowBufHasher HASHER_LOW = new MurmurHasher(0x1b873593);
+
+    // Fields of a slot, as longs (doubles by their bits), followed by WINDOW_FIELDS per window
+    private static final int KIND = 0;
+    private static final int LAST_SEEN = 1;
+    /** Time of the last cumulative point, NONE before the first. */
+    private static final int PREV_TIME = 2;
+    private static final int PREV_START = 3;
+    private static final int PREV_SUM = 4;
+    private static final int PREV_COUNT = 5;
+    /** Region of the last cumulative bucket counts. */
+    private static final int PREV_BUCKETS = 6;
+    /** Region of the last explicit bounds. */
+    private static final int BOUNDS = 7;
+    private static final int SERIES_FIELDS = 8;
+
+    // Fields of a window of a slot
+    /** Start of the window, NONE when no point is rolled up in it. */
+    private static final int W_START = 0;
+    private static final int W_SAMPLES = 1;
+    private static final int W_MIN = 2;
+    private static final int W_MAX = 3;
+    private static final int W_LAST = 4;
+    private static final int W_SUM = 5;
+    private static final int W_COUNT = 6;
+    private static final int W_BUCKETS = 7;
+    private static final int WINDOW_FIELDS = 8;
+
+    private final SignalWriter writer;
+    private final long[] windows;
+    private final long graceMs;
+    private final long idleMs;
+    private final int maxSeries;
+    private final int stride;
+    private final BufferAllocator allocator = new RootAllocator();
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private final LongIntHashMap slots;
+    private long[] slotKeys = new long[1024];
+    private int slotCount;
+    /** The series columns of each slot, in the first columns of the rollup schema. */
+    private VectorSchemaRoot series;
+    private ArrowBuf state;
+    /** Bucket counts and bounds, in regions of longs given by their offset in the high and length in the low bits. */
+    private ArrowBuf regions;
+    private int regionsUsed;
+    private VectorSchemaRoot out;
+    private int outRows;
+    /** The delta of the point being rolled up. */
+    private double deltaSum;
+    private long deltaCount;
+    private long[] buckets = new long[64];
+    private long droppedPoints;
+    private long overflowPoints;
+    private boolean closed;
+
+    public MetricRollup(SignalWriter writer, MetricRollupConfig config) {
+        if (config.windows().isEmpty()) {
+            throw new IllegalArgumentException("At least one rollup window is required");
+        }
+        this.writer = writer;
+        this.windows = config.windows().stream().mapToLong(Duration::toMillis).toArray();
+        this.graceMs = config.grace().toMillis();
+        this.idleMs = 2 * Arrays.stream(windows).max().getAsLong() + graceMs;
+        this.maxSeries = config.maxSeries();
+        this.stride = SERIES_FIELDS + WINDOW_FIELDS * windows.length;
+        this.slots = new LongIntHashMap(1024);
+        this.series = newSeriesRoot();
+        this.state = allocator.buffer((long) slotKeys.length * stride * Long.BYTES);
+        this.regions = allocator.buffer(64L * 1024 * Long.BYTES);
+        this.out = writer.acquireRoot(OtelMetricRollupSchema.SCHEMA);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "otel-metric-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        long tickMs = Math.max(100, graceMs / 2);
+        scheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decodes a serialized export with {@link MetricBatchWriter#write} and rolls its points up, so that it can stand
+     * in for it as an {@link ExportStage.Decoder}.
+     */
+    public int write(byte[] request, VectorSchemaRoot root) throws IOException {
+        int dataPoints = MetricBatchWriter.write(request, root);
+        add(root);
+        return dataPoints;
+    }
+
+    /**
+     * Rolls up the data points of {@code metrics}, a root of {@link OtelMetricSchema}.
+     */
+    public synchronized void add(VectorSchemaRoot metrics) {
+        if (closed) {
+            return;
+        }
+        var type = (VarCharVector) metrics.getVector(OtelMetricSchema.COL_METRIC_TYPE);
+        var time = (TimeStampMilliVector) metrics.getVector(OtelMetricSchema.COL_TIME_MS);
+        var start = (TimeStampMilliVector) metrics.getVector(OtelMetricSchema.COL_START_TIME_MS);
+        var valueDouble = (Float8Vector) metrics.getVector(OtelMetricSchema.COL_VALUE_DOUBLE);
+        var valueInt = (BigIntVector) metrics.getVector(OtelMetricSchema.COL_VALUE_INT);
+        var count = (BigIntVector) metrics.getVector(OtelMetricSchema.COL_COUNT);
+        var sum = (Float8Vector) metrics.getVector(OtelMetricSchema.COL_SUM);
+        var bucketCounts = (ListVector) metrics.getVector(OtelMetricSchema.COL_BUCKET_COUNTS);
+        var explicitBounds = (ListVector) metrics.getVector(OtelMetricSchema.COL_EXPLICIT_BOUNDS);
+        var monotonic = (BitVector) metrics.getVector(OtelMetricSchema.COL_IS_MONOTONIC);
+        var temporality = (VarCharVector) metrics.getVector(OtelMetricSchema.COL_AGGREGATION_TEMPORALITY);
+        long now = System.currentTimeMillis();
+
+        for (int row = 0; row < metrics.getRowCount(); row++) {
+            int kind = kind(type, row);
+            if (kind < 0 || time.isNull(row)) {
+                continue;
+            }
+            int slot = slot(metrics, row, kind, now);
+            if (slot < 0) {
+                overflowPoints++;
+                continue;
+            }
+            long pointTime = time.get(row);
+            long pointStart = start.isNull(row) ? NONE : start.get(row);
+            boolean cumulative = kind == KIND_SUMMARY || equals(temporality, row, CUMULATIVE);
+            int bucketCount = 0;
+            double value = 0;
+            switch (kind) {
+                case KIND_GAUGE, KIND_SUM -> {
+                    if (!valueDouble.isNull(row)) {
+                        value = valueDouble.get(row);
+                    } else if (!valueInt.isNull(row)) {
+                        value = valueInt.get(row);
+                    } else {
+                        continue;
+                    }
+                    deltaSum = value;
+                    deltaCount = 0;
+                    if (kind == KIND_SUM && cumulative && !toDelta(slot, pointTime, pointStart, value, 0, 0,
+                            !monotonic.isNull(row) && monotonic.get(row) == 1)) {
+                        continue;
+                    }
+                }
+                default -> {
+                    double pointSum = sum.isNull(row) ? 0 : sum.get(row);
+                    long pointCount = count.isNull(row) ? 0 : count.get(row);
+                    if (kind == KIND_HISTOGRAM) {
+                        bucketCount = readBuckets(bucketCounts, row);
+                        readBounds(slot, explicitBounds, row);
+                    }
+                    deltaSum = pointSum;
+                    deltaCount = pointCount;
+                    if (cumulative && !toDelta(slot, pointTime, pointStart, pointSum, pointCount, bucketCount, false)) {
+                        continue;
+                    }
+                }
+            }
+            for (int w = 0; w < windows.length; w++) {
+                fold(slot, w, kind, pointTime, value, bucketCount);
+            }
+        }
+    }
+
+    private static int kind(VarCharVector type, int row) {
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            if (equals(type, row, KINDS[kind])) {
+                return kind;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a value of {@code vector} in place, without copying it out of the vector.
+     */
+    private static boolean equals(VarCharVector vector, int row, byte[] expected) {
+        if (vector.isNull(row)) {
+            return false;
+        }
+        long start = vector.getStartOffset(row);
+        if (vector.getEndOffset(row) - start != expected.length) {
+            return false;
+        }
+        ArrowBuf data = vector.getDataBuffer();
+        for (int i = 0; i < expected.length; i++) {
+            if (data.getByte(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slot of the series of {@code row}, taken if the series is new, -1 if no slot is left
+     */
+    private int slot(VectorSchemaRoot metrics, int row, int kind, long now) {
+        long key = 0;
+        for (int column : OtelMetricRollupSchema.SERIES_COLUMNS) {
+            if (column == OtelMetricSchema.COL_DESCRIPTION) {
+                continue;
+            }
+            FieldVector vector = metrics.getVector(column);
+            long hash = ((long) vector.hashCode(row, HASHER_HIGH) << 32) | (vector.hashCode(row, HASHER_LOW) & 0xFFFFFFFFL);
+            key = (key + hash) * 0x9E3779B97F4A7C15L;
+        }
+        int slot = slots.get(key);
+        if (slot < 0) {
+            if (slotCount == maxSeries) {
+                compact(now);
+                if (slotCount == maxSeries) {
+                    return -1;
+                }
+            }
+            slot = newSlot(key, kind);
+            for (int i = 0; i < OtelMetricRollupSchema.SERIES_COLUMNS.length; i++) {
+                series.getVector(i).copyFromSafe(row, slot, metrics.getVector(OtelMetricRollupSchema.SERIES_COLUMNS[i]));
+            }
+            series.setRowCount(slotCount);
+        }
+        set(slot, LAST_SEEN, now);
+        return slot;
+    }
+
+    private int newSlot(long key, int kind) {
+        int slot = slotCount++;
+        if (slot == slotKeys.length) {
+            slotKeys = Arrays.copyOf(slotKeys, slotKeys.length * 2);
+            state = grow(state, (long) slotKeys.length * stride * Long.BYTES);
+        }
+        slotKeys[slot] = key;
+        slots.put(key, slot);
+        state.setZero((long) slot * stride * Long.BYTES, (long) stride * Long.BYTES);
+        set(slot, KIND, kind);
+        set(slot, PREV_TIME, NONE);
+        for (int w = 0; w < windows.length; w++) {
+            set(slot, window(w) + W_START, NONE);
+        }
+        return slot;
+    }
+
+    /**
+     * Reads the bucket counts of {@code row} into {@link #buckets}.
+     */
+    private int readBuckets(ListVector bucketCounts, int row) {
+        if (bucketCounts.isNull(row)) {
+            return 0;
+        }
+        var elements = (BigIntVector) bucketCounts.getDataVector();
+        int first = bucketCounts.getElementStartIndex(row);
+        int length = bucketCounts.getElementEndIndex(row) - first;
+        if (buckets.length < length) {
+            buckets = new long[Math.max(length, buckets.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            buckets[i] = elements.isNull(first + i) ? 0 : elements.get(first + i);
+        }
+        return length;
+    }
+
+    private void readBounds(int slot, ListVector explicitBounds, int row) {
+        if (explicitBounds.isNull(row)) {
+            return;
+        }
+        var elements = (Float8Vector) explicitBounds.getDataVector();
+        int first = explicitBounds.getElementStartIndex(row);
+        int length = explicitBounds.getElementEndIndex(row) - first;
+        long region = get(slot, BOUNDS);
+        if (length(region) != length) {
+            region = allocateRegion(length);
+            set(slot, BOUNDS, region);
+        }
+        for (int i = 0; i < length; i++) {
+            setRegion(region, i, Double.doubleToRawLongBits(elements.get(first + i)));
+        }
+    }
+
+    /**
+     * Turns the cumulative point in {@link #deltaSum}, {@link #deltaCount} and {@link #buckets} into its delta from
+     * the previous point of the series, which it replaces.
+     *
+     * @return false when the point only sets the baseline of the next
+     */
+    private boolean toDelta(int slot, long time, long start, double sum, long count, int bucketCount,
+                            boolean monotonic) {
+        long prevTime = get(slot, PREV_TIME);
+        if (prevTime != NONE && time <= prevTime) {
+            droppedPoints++;
+            return false;
+        }
+        long prevBuckets = get(slot, PREV_BUCKETS);
+        boolean delta = prevTime != NONE && length(prevBuckets) == bucketCount;
+        if (length(prevBuckets) != bucketCount) {
+            prevBuckets = allocateRegion(bucketCount);
+            set(slot, PREV_BUCKETS, prevBuckets);
+        }
+        double prevSum = getDouble(slot, PREV_SUM);
+        long prevCount = get(slot, PREV_COUNT);
+        boolean reset = (start != NONE && start != get(slot, PREV_START))
+                || count < prevCount || (monotonic && sum < prevSum);
+        for (int i = 0; i < bucketCount; i++) {
+            long current = buckets[i];
+            buckets[i] = reset ? current : current - getRegion(prevBuckets, i);
+            setRegion(prevBuckets, i, current);
+        }
+        deltaSum = reset ? sum : sum - prevSum;
+        deltaCount = reset ? count : count - prevCount;
+        set(slot, PREV_TIME, time);
+        set(slot, PREV_START, start);
+        setDouble(slot, PREV_SUM, sum);
+        set(slot, PREV_COUNT, count);
+        return delta;
+    }
+
+    /**
+     * Rolls the point up into window {@code w} of the slot, writing the open window first if the point is in a
+     * later one.
+     */
+    private void fold(int slot, int w, int kind, long time, double value, int bucketCount) {
+        int base = window(w);
+        long windowStart = time - Math.floorMod(time, windows[w]);
+        long open = get(slot, base + W_START);
+        if (open != NONE && windowStart < open) {
+            droppedPoints++;
+            return;
+        }
+        long bucketRegion = get(slot, base + W_BUCKETS);
+        if (open != NONE && (windowStart > open || length(bucketRegion) != bucketCount)) {
+            emit(slot, w);
+            open = NONE;
+        }
+        if (open == NONE) {
+            set(slot, base + W_START, windowStart);
+            set(slot, base + W_SAMPLES, 0);
+            setDouble(slot, base + W_MIN, Double.POSITIVE_INFINITY);
+            setDouble(slot, base + W_MAX, Double.NEGATIVE_INFINITY);
+            setDouble(slot, base + W_SUM, 0);
+            set(slot, base + W_COUNT, 0);
+            if (length(bucketRegion) != bucketCount) {
+                bucketRegion = allocateRegion(bucketCount);
+                set(slot, base + W_BUCKETS, bucketRegion);
+            }
+            for (int i = 0; i < bucketCount; i++) {
+                setRegion(bucketRegion, i, 0);
+            }
+        }
+        set(slot, base + W_SAMPLES, get(slot, base + W_SAMPLES) + 1);
+        setDouble(slot, base + W_SUM, getDouble(slot, base + W_SUM) + deltaSum);
+        set(slot, base + W_COUNT, get(slot, base + W_COUNT) + deltaCount);
+        if (kind == KIND_GAUGE) {
+            setDouble(slot, base + W_MIN, Math.min(getDouble(slot, base + W_MIN), value));
+            setDouble(slot, base + W_MAX, Math.max(getDouble(slot, base + W_MAX), value));
+            setDouble(slot, base + W_LAST, value);
+        }
+        for (int i = 0; i < bucketCount; i++) {
+            setRegion(bucketRegion, i, getRegion(bucketRegion, i) + buckets[i]);
+        }
+    }
+
+    /**
+     * Appends window {@code w} of the slot to {@link #out} and closes it.
+     */
+    private void emit(int slot, int w) {
+        int base = window(w);
+        int row = outRows++;
+        for (int i = 0; i < OtelMetricRollupSchema.SERIES_COLUMNS.length; i++) {
+            out.getVector(i).copyFromSafe(slot, row, series.getVector(i));
+        }
+        ((BigIntVector) out.getVector(OtelMetricRollupSchema.COL_WINDOW_MS)).setSafe(row, windows[w]);
+        ((TimeStampMilliVector) out.getVector(OtelMetricRollupSchema.COL_WINDOW_START_MS))
+                .setSafe(row, get(slot, base + W_START));
+        ((BigIntVector) out.getVector(OtelMetricRollupSchema.COL_SAMPLES)).setSafe(row, get(slot, base + W_SAMPLES));
+        ((Float8Vector) out.getVector(OtelMetricRollupSchema.COL_SUM)).setSafe(row, getDouble(slot, base + W_SUM));
+        int kind = (int) get(slot, KIND);
+        if (kind == KIND_GAUGE) {
+            ((Float8Vector) out.getVector(OtelMetricRollupSchema.COL_VALUE_MIN)).setSafe(row, getDouble(slot, base + W_MIN));
+            ((Float8Vector) out.getVector(OtelMetricRollupSchema.COL_VALUE_MAX)).setSafe(row, getDouble(slot, base + W_MAX));
+            ((Float8Vector) out.getVector(OtelMetricRollupSchema.COL_VALUE_LAST)).setSafe(row, getDouble(slot, base + W_LAST));
+        } else if (kind != KIND_SUM) {
+            ((BigIntVector) out.getVector(OtelMetricRollupSchema.COL_COUNT)).setSafe(row, get(slot, base + W_COUNT));
+        }
+        if (kind == KIND_HISTOGRAM) {
+            writeRegion(row, OtelMetricRollupSchema.COL_BUCKET_COUNTS, get(slot, base + W_BUCKETS), false);
+            writeRegion(row, OtelMetricRollupSchema.COL_EXPLICIT_BOUNDS, get(slot, BOUNDS), true);
+        }
+        set(slot, base + W_START, NONE);
+    }
+
+    private void writeRegion(int row, int column, long region, boolean doubles) {
+        var list = new ListColumn((ListVector) out.getVector(column));
+        list.start(row);
+        for (int i = 0; i < length(region); i++) {
+            int index = list.nextElement();
+            long value = getRegion(region, i);
+            if (doubles) {
+                ((Float8Vector) list.elements()).setSafe(index, Double.longBitsToDouble(value));
+            } else {
+                ((BigIntVector) list.elements()).setSafe(index, value);
+            }
+        }
+        list.end();
+    }
+
+    /**
+     * Frees the slots of the series idle for longer than {@link #idleMs} with no open window, moving the others to
+     * new buffers.
+     */
+    private void compact(long now) {
+        VectorSchemaRoot oldSeries = series;
+        ArrowBuf oldState = state;
+        ArrowBuf oldRegions = regions;
+        long[] oldKeys = slotKeys;
+        int oldCount = slotCount;
+        series = newSeriesRoot();
+        state = allocator.buffer(oldState.capacity());
+        regions = allocator.buffer(oldRegions.capacity());
+        regionsUsed = 0;
+        slotKeys = new long[oldKeys.length];
+        slotCount = 0;
+        slots.clear();
+        long strideBytes = (long) stride * Long.BYTES;
+        try {
+            for (int old = 0; old < oldCount; old++) {
+                if (idle(oldState, old, now)) {
+                    continue;
+                }
+                int slot = slotCount++;
+                slotKeys[slot] = oldKeys[old];
+                slots.put(oldKeys[old], slot);
+                state.setBytes(slot * strideBytes, oldState, old * strideBytes, strideBytes);
+                for (int i = 0; i < OtelMetricRollupSchema.SERIES_COLUMNS.length; i++) {
+                    series.getVector(i).copyFromSafe(old, slot, oldSeries.getVector(i));
+                }
+                moveRegion(slot, PREV_BUCKETS, oldRegions);
+                moveRegion(slot, BOUNDS, oldRegions);
+                for (int w = 0; w < windows.length; w++) {
+                    moveRegion(slot, window(w) + W_BUCKETS, oldRegions);
+                }
+            }
+            series.setRowCount(slotCount);
+        } finally {
+            oldSeries.close();
+            oldState.close();
+            oldRegions.close();
+        }
+        log.info("Freed {} idle metric series, {} left", oldCount - slotCount, slotCount);
+    }
+
+    private boolean idle(ArrowBuf slots, int slot, long now) {
+        long base = (long) slot * stride;
+        if (slots.getLong((base + LAST_SEEN) * Long.BYTES) + idleMs > now) {
+            return false;
+        }
+        for (int w = 0; w < windows.length; w++) {
+            if (slots.getLong((base + window(w) + W_START) * Long.BYTES) != NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void moveRegion(int slot, int field, ArrowBuf from) {
+        long region = get(slot, field);
+        int length = length(region);
+        long moved = allocateRegion(length);
+        regions.setBytes((long) offset(moved) * Long.BYTES, from, (long) offset(region) * Long.BYTES,
+                (long) length * Long.BYTES);
+        set(slot, field, moved);
+    }
+
+    private void tick() {
+        try {
+            flush(false);
+        } catch (RuntimeException e) {
+            log.error("Failed to write metric rollups", e);
+        }
+    }
+
+    /**
+     * Writes the windows past their grace period, or every open window when {@code all} is set.
+     */
+    private void flush(boolean all) {
+        VectorSchemaRoot full;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < slotCount; slot++) {
+                for (int w = 0; w < windows.length; w++) {
+                    long open = get(slot, window(w) + W_START);
+                    if (open != NONE && (all || open + windows[w] + graceMs <= now)) {
+                        emit(slot, w);
+                    }
+                }
+            }
+            if (droppedPoints > 0 || overflowPoints > 0) {
+                log.debug("Dropped {} late metric points and {} points beyond {} series from the rollups",
+                        droppedPoints, overflowPoints, maxSeries);
+                droppedPoints = 0;
+                overflowPoints = 0;
+            }
+            if (outRows == 0) {
+                return;
+            }
+            out.setRowCount(outRows);
+            full = out;
+            out = writer.acquireRoot(OtelMetricRollupSchema.SCHEMA);
+            outRows = 0;
+        }
+        int rows = full.getRowCount();
+        try {
+            Path arrowFile = writer.writeArrowFile(full);
+            writer.addBatch(arrowFile).whenComplete((v, ex) -> {
+                if (ex != null) {
+                    log.error("Failed to write {} metric rollups", rows, ex);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to write Arrow file for {} metric rollups", rows, e);
+        } finally {
+            writer.releaseRoot(full);
+        }
+    }
+
+    private int window(int w) {
+        return SERIES_FIELDS + w * WINDOW_FIELDS;
+    }
+
+    private long get(int slot, int field) {
+        return state.getLong(((long) slot * stride + field) * Long.BYTES);
+    }
+
+    private void set(int slot, int field, long value) {
+        state.setLong(((long) slot * stride + field) * Long.BYTES, value);
+    }
+
+    private double getDouble(int slot, int field) {
+        return Double.longBitsToDouble(get(slot, field));
+    }
+
+    private void setDouble(int slot, int field, double value) {
+        set(slot, field, Double.doubleToRawLongBits(value));
+    }
+
+    private long allocateRegion(int length) {
+        long needed = (long) (regionsUsed + length) * Long.BYTES;
+        if (needed > regions.capacity()) {
+            regions = grow(regions, Math.max(needed, regions.capacity() * 2));
+        }
+        long region = ((long) regionsUsed << 32) | length;
+        regionsUsed += length;
+        return region;
+    }
+
+    private long getRegion(long region, int i) {
+        return regions.getLong((long) (offset(region) + i) * Long.BYTES);
+    }
+
+    private void setRegion(long region, int i, long value) {
+        regions.setLong((long) (offset(region) + i) * Long.BYTES, value);
+    }
+
+    private static int offset(long region) {
+        return (int) (region >>> 32);
+    }
+
+    private static int length(long region) {
+        return (int) region;
+    }
+
+    private ArrowBuf grow(ArrowBuf buffer, long capacity) {
+        ArrowBuf grown = allocator.buffer(capacity);
+        grown.setBytes(0, buffer, 0, buffer.capacity());
+        buffer.close();
+        return grown;
+    }
+
+    private VectorSchemaRoot newSeriesRoot() {
+        var root = VectorSchemaRoot.create(OtelMetricRollupSchema.SCHEMA, allocator);
+        root.allocateNew();
+        return root;
+    }
+
+    /**
+     * Writes every open window.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+        synchronized (this) {
+            closed = true;
+            writer.releaseRoot(out);
+            series.close();
+            state.close();
+            regions.close();
+        }
+        allocator.close();
+    }
+}
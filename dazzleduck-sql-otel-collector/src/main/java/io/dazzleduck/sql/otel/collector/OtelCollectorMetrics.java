@@ -5,6 +5,7 @@ import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 
+import java.util.Locale;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
@@ -20,7 +21,8 @@ import java.util.concurrent.atomic.LongAdder;
  *
  * Metric names:
  * <pre>
- *   dazzleduck.otel.export.latency         – end-to-end RPC latency (p50/p95/p99)
+ *   dazzleduck.otel.export.latency         – end-to-end latency until the records are written to Parquet (p50/p95/p99)
+ *   dazzleduck.otel.export.ack_latency     – latency until the exporter is acknowledged, tagged with the ack mode (histogram)
  *   dazzleduck.otel.export.requests        – number of export RPC calls received
  *   dazzleduck.otel.export.records         – number of individual records (log records / spans / data points)
  *   dazzleduck.otel.export.errors          – number of failed exports
@@ -28,6 +30,8 @@ import java.util.concurrent.atomic.LongAdder;
  *   dazzleduck.otel.writer.batches_written – cumulative number of batches flushed to Parquet
  *   dazzleduck.otel.writer.pending_batches – current queue depth (batches not yet written)
  *   dazzleduck.otel.writer.pending_buckets – current bucket queue depth
+ *   dazzleduck.otel.sampling.spans         – spans kept or dropped by trace sampling, tagged with decision=kept|dropped
+ *   dazzleduck.otel.sampling.traces        – traces kept or dropped by trace sampling, tagged with decision=kept|dropped
  * </pre>
  */
 public class OtelCollectorMetrics {
@@ -39,21 +43,36 @@ public class OtelCollectorMetrics {
     private final LongAdder logRecords    = new LongAdder();
     private final LongAdder logErrors     = new LongAdder();
     private final Timer     logExportTimer;
+    private final Timer     logAckTimer;
 
     // Traces
     private final LongAdder traceRequests = new LongAdder();
     private final LongAdder traceSpans    = new LongAdder();
     private final LongAdder traceErrors   = new LongAdder();
     private final Timer     traceExportTimer;
+    private final Timer     traceAckTimer;
 
     // Metrics
     private final LongAdder metricRequests   = new LongAdder();
     private final LongAdder metricDataPoints = new LongAdder();
     private final LongAdder metricErrors     = new LongAdder();
     private final Timer     metricExportTimer;
+    private final Timer     metricAckTimer;
+
+    // Trace sampling
+    private final LongAdder keptSpans     = new LongAdder();
+    private final LongAdder droppedSpans  = new LongAdder();
+    private final LongAdder keptTraces    = new LongAdder();
+    private final LongAdder droppedTraces = new LongAdder();
 
     public OtelCollectorMetrics(MeterRegistry registry,
                                 long logMaxDelayMs, long traceMaxDelayMs, long metricMaxDelayMs) {
+        this(registry, logMaxDelayMs, traceMaxDelayMs, metricMaxDelayMs, AckMode.PARQUET);
+    }
+
+    public OtelCollectorMetrics(MeterRegistry registry,
+                                long logMaxDelayMs, long traceMaxDelayMs, long metricMaxDelayMs,
+                                AckMode ackMode) {
         this.registry = registry;
         registerExportCounters("logs",    logRequests,    logRecords,      logErrors);
         registerExportCounters("traces",  traceRequests,  traceSpans,      traceErrors);
@@ -61,17 +80,31 @@ public class OtelCollectorMetrics {
         logExportTimer    = buildExportTimer("logs",    logMaxDelayMs);
         traceExportTimer  = buildExportTimer("traces",  traceMaxDelayMs);
         metricExportTimer = buildExportTimer("metrics", metricMaxDelayMs);
+        logAckTimer    = buildAckTimer("logs",    ackMode);
+        traceAckTimer  = buildAckTimer("traces",  ackMode);
+        metricAckTimer = buildAckTimer("metrics", ackMode);
+        registerSamplingCounters("dazzleduck.otel.sampling.spans", "spans", keptSpans, droppedSpans);
+        registerSamplingCounters("dazzleduck.otel.sampling.traces", "traces", keptTraces, droppedTraces);
     }
 
     private Timer buildExportTimer(String signal, long maxDelayMs) {
         return Timer.builder("dazzleduck.otel.export.latency")
                 .tag("signal", signal)
                 .tag("max.delay.ms", String.valueOf(maxDelayMs))
-                .description("End-to-end export RPC duration — from request received to onCompleted/onError")
+                .description("End-to-end export duration — from request received to the records written to Parquet or failed")
                 .publishPercentiles(0.5, 0.95, 0.99)
                 .register(registry);
     }
 
+    private Timer buildAckTimer(String signal, AckMode ackMode) {
+        return Timer.builder("dazzleduck.otel.export.ack_latency")
+                .tag("signal", signal)
+                .tag("ack.mode", ackMode.name().toLowerCase(Locale.ROOT))
+                .description("Export acknowledgement latency — from request received to onCompleted/onError")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
     private void registerExportCounters(String signal,
                                         LongAdder requests,
                                         LongAdder records,
@@ -90,11 +123,24 @@ public class OtelCollectorMetrics {
                 .register(registry);
     }
 
+    private void registerSamplingCounters(String name, String what, LongAdder kept, LongAdder dropped) {
+        FunctionCounter.builder(name, kept, LongAdder::sum)
+                .tag("signal", "traces")
+                .tag("decision", "kept")
+                .description("Number of " + what + " kept by trace sampling")
+                .register(registry);
+        FunctionCounter.builder(name, dropped, LongAdder::sum)
+                .tag("signal", "traces")
+                .tag("decision", "dropped")
+                .description("Number of " + what + " dropped by trace sampling")
+                .register(registry);
+    }
+
     /**
      * Registers writer stats for one signal type as Gauges and FunctionCounters.
      * Call this after the SignalWriter has been created.
      *
-     * @param signal one of "logs", "traces", "metrics"
+     * @param signal one of "logs", "traces", "metrics", "metric_rollups"
      * @param writer the corresponding SignalWriter
      */
     public void registerWriter(String signal, SignalWriter writer) {
@@ -143,6 +189,10 @@ public class OtelCollectorMetrics {
         sample.stop(logExportTimer);
     }
 
+    public void recordLogAck(Timer.Sample sample) {
+        sample.stop(logAckTimer);
+    }
+
     public void recordTraceExport(int spanCount, Timer.Sample sample) {
         traceRequests.increment();
         traceSpans.add(spanCount);
@@ -154,6 +204,17 @@ public class OtelCollectorMetrics {
         sample.stop(traceExportTimer);
     }
 
+    public void recordTraceAck(Timer.Sample sample) {
+        sample.stop(traceAckTimer);
+    }
+
+    public void recordSampling(int keptSpanCount, int droppedSpanCount, int keptTraceCount, int droppedTraceCount) {
+        keptSpans.add(keptSpanCount);
+        droppedSpans.add(droppedSpanCount);
+        keptTraces.add(keptTraceCount);
+        droppedTraces.add(droppedTraceCount);
+    }
+
     public void recordMetricExport(int dataPointCount, Timer.Sample sample) {
         metricRequests.increment();
         metricDataPoints.add(dataPointCount);
@@ -165,6 +226,10 @@ public class OtelCollectorMetrics {
         sample.stop(metricExportTimer);
     }
 
+    public void recordMetricAck(Timer.Sample sample) {
+        sample.stop(metricAckTimer);
+    }
+
     // -----------------------------------------------------------------------
     // Real-time accessors — return current values without Micrometer buffering
     // -----------------------------------------------------------------------
@@ -177,6 +242,11 @@ public class OtelCollectorMetrics {
     public long getTraceSpans()       { return traceSpans.sum(); }
     public long getTraceErrors()      { return traceErrors.sum(); }
 
+    public long getKeptSpans()        { return keptSpans.sum(); }
+    public long getDroppedSpans()     { return droppedSpans.sum(); }
+    public long getKeptTraces()       { return keptTraces.sum(); }
+    public long getDroppedTraces()    { return droppedTraces.sum(); }
+
     public long getMetricRequests()   { return metricRequests.sum(); }
     public long getMetricDataPoints() { return metricDataPoints.sum(); }
     public long getMetricErrors()     { return metricErrors.sum(); }
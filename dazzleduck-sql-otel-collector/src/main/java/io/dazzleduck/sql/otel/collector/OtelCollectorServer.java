@@ -2,6 +2,7 @@ package io.dazzleduck.sql.otel.collector;
 
 
 import io.dazzleduck.sql.commons.auth.Validator;
+import io.dazzleduck.sql.otel.collector.auth.JwtAuthenticator;
 import io.dazzleduck.sql.otel.collector.auth.JwtServerInterceptor;
 import io.dazzleduck.sql.otel.collector.config.CollectorProperties;
 import io.grpc.Server;
@@ -16,7 +17,8 @@ import java.net.InetAddress;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Manages the lifecycle of the OTLP gRPC server and signal writers for logs, traces, and metrics.
+ * Manages the lifecycle of the OTLP gRPC server, the OTLP/HTTP receiver, the trace sampler, the metric rollup and
+ * the signal writers for logs, traces, metrics and metric rollups.
  */
 public class OtelCollectorServer implements Closeable {
 
@@ -24,9 +26,13 @@ public class OtelCollectorServer implements Closeable {
 
     private final CollectorProperties props;
     private Server grpcServer;
+    private OtlpHttpReceiver httpReceiver;
+    private TraceSampler traceSampler;
+    private MetricRollup metricRollup;
     private SignalWriter logWriter;
     private SignalWriter traceWriter;
     private SignalWriter metricsWriter;
+    private SignalWriter rollupWriter;
 
     public OtelCollectorServer(CollectorProperties props) {
         this.props = props;
@@ -35,23 +41,43 @@ public class OtelCollectorServer implements Closeable {
     public void start() throws IOException {
         var handler = props.getIngestionHandler();
         var ingestionConfig = props.getIngestionConfig();
-        logWriter     = new SignalWriter("logs",    handler, ingestionConfig);
-        traceWriter   = new SignalWriter("traces",  handler, ingestionConfig);
-        metricsWriter = new SignalWriter("metrics", handler, ingestionConfig);
+        var ackMode = props.getAckMode();
+        var journalPath = props.getJournalPath();
+        logWriter     = new SignalWriter("logs",    handler, ingestionConfig, ackMode, journalPath);
+        traceWriter   = new SignalWriter("traces",  handler, ingestionConfig, ackMode, journalPath);
+        metricsWriter = new SignalWriter("metrics", handler, ingestionConfig, ackMode, journalPath);
 
         setupCommonTags(props.getMeterRegistry(), props.getServiceName());
         long maxDelayMs = ingestionConfig.maxDelay().toMillis();
         OtelCollectorMetrics metrics = new OtelCollectorMetrics(props.getMeterRegistry(),
-                maxDelayMs, maxDelayMs, maxDelayMs);
+                maxDelayMs, maxDelayMs, maxDelayMs, ackMode);
         metrics.registerWriter("logs",    logWriter);
         metrics.registerWriter("traces",  traceWriter);
         metrics.registerWriter("metrics", metricsWriter);
 
+        var sampling = props.getTraceSampling();
+        if (sampling.enabled()) {
+            traceSampler = new TraceSampler(traceWriter, metrics, sampling);
+            log.info("Trace sampling enabled: decision wait {} ms, keep errors {}, latency percentile {}, ratio {}",
+                    sampling.decisionWait().toMillis(), sampling.keepErrors(), sampling.latencyPercentile(),
+                    sampling.ratio());
+        }
+
+        var rollup = props.getMetricRollup();
+        if (rollup.enabled()) {
+            rollupWriter = new SignalWriter("metric_rollups", handler, ingestionConfig, ackMode, journalPath);
+            metrics.registerWriter("metric_rollups", rollupWriter);
+            metricRollup = new MetricRollup(rollupWriter, rollup);
+            log.info("Metric rollups enabled: windows {}, grace {} ms, up to {} series to {}",
+                    rollup.windows(), rollup.grace().toMillis(), rollup.maxSeries(),
+                    handler.getTargetPath("metric_rollups"));
+        }
+
         var builder = NettyServerBuilder
                 .forPort(props.getGrpcPort())
                 .addService(new OtelLogService(logWriter, metrics))
-                .addService(new OtelTraceService(traceWriter, metrics))
-                .addService(new OtelMetricsService(metricsWriter, metrics));
+                .addService(new OtelTraceService(traceWriter, metrics, traceSampler))
+                .addService(new OtelMetricsService(metricsWriter, metrics, metricRollup));
 
         if (!"jwt".equals(props.getAuthentication())) {
             throw new IllegalStateException("Unsupported authentication mode: " + props.getAuthentication() + ". Only 'jwt' is supported.");
@@ -62,7 +88,8 @@ public class OtelCollectorServer implements Closeable {
         var secretKey = Validator.fromBase64String(props.getSecretKey());
         var userHashMap = new java.util.HashMap<String, byte[]>();
         props.getUsers().forEach((u, p) -> userHashMap.put(u, Validator.hash(p)));
-        builder.intercept(new JwtServerInterceptor(secretKey, userHashMap, props.getJwtExpiration(), props.getLoginUrl()));
+        var authenticator = new JwtAuthenticator(secretKey, userHashMap, props.getJwtExpiration(), props.getLoginUrl());
+        builder.intercept(new JwtServerInterceptor(authenticator));
         if (props.getLoginUrl() != null) {
             log.info("JWT authentication enabled with login delegation to {}", props.getLoginUrl());
         } else {
@@ -71,11 +98,20 @@ public class OtelCollectorServer implements Closeable {
 
         grpcServer = builder.build().start();
 
-        log.info("OTLP gRPC server started on port {} — logs={}, traces={}, metrics={}",
-                props.getGrpcPort(),
+        log.info("OTLP gRPC server started on port {} with ack mode {} — logs={}, traces={}, metrics={}",
+                props.getGrpcPort(), ackMode,
                 props.getIngestionHandler().getTargetPath("logs"),
                 props.getIngestionHandler().getTargetPath("traces"),
                 props.getIngestionHandler().getTargetPath("metrics"));
+
+        if (props.getHttpPort() >= 0) {
+            httpReceiver = new OtlpHttpReceiver(props.getHttpPort(), authenticator, metrics,
+                    logWriter, traceWriter, metricsWriter,
+                    props.getHttpBatchMaxRows(), props.getHttpBatchMaxDelay(), traceSampler, metricRollup);
+            httpReceiver.start();
+            log.info("OTLP/HTTP receiver started on port {}, batching up to {} rows for {} ms",
+                    httpReceiver.port(), props.getHttpBatchMaxRows(), props.getHttpBatchMaxDelay().toMillis());
+        }
     }
 
     private static void setupCommonTags(MeterRegistry registry, String serviceName) {
@@ -114,9 +150,20 @@ public class OtelCollectorServer implements Closeable {
                 Thread.currentThread().interrupt();
             }
         }
+        if (httpReceiver != null) {
+            log.info("Shutting down OTLP/HTTP receiver...");
+            httpReceiver.close();
+        }
+        if (traceSampler != null) {
+            traceSampler.close();
+        }
+        if (metricRollup != null) {
+            metricRollup.close();
+        }
         if (logWriter != null) logWriter.close();
         if (traceWriter != null) traceWriter.close();
         if (metricsWriter != null) metricsWriter.close();
+        if (rollupWriter != null) rollupWriter.close();
         log.info("OtelCollectorServer stopped.");
     }
 }
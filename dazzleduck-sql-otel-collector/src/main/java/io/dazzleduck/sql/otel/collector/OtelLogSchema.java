@@ -10,7 +10,7 @@ import java.util.List;
 
 /**
  * Arrow schema for OTLP log records, flattened from the 3-level OTLP hierarchy
- * (ResourceLogs → ScopeLogs → LogRecord).
+ * (ResourceLogs → ScopeLogs → LogRecord). Trace and span ids are kept as their raw 16 and 8 bytes.
  */
 public class OtelLogSchema {
 
@@ -42,9 +42,9 @@ public class OtelLogSchema {
             new Field("body",
                     FieldType.nullable(new ArrowType.Utf8()), null),
             new Field("trace_id",
-                    FieldType.nullable(new ArrowType.Utf8()), null),
+                    FieldType.nullable(new ArrowType.FixedSizeBinary(16)), null),
             new Field("span_id",
-                    FieldType.nullable(new ArrowType.Utf8()), null),
+                    FieldType.nullable(new ArrowType.FixedSizeBinary(8)), null),
             new Field("flags",
                     FieldType.nullable(new ArrowType.Int(32, true)), null),
             new Field("event_name",
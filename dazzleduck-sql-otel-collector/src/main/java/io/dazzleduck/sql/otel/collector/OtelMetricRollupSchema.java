@@ -0,0 +1,88 @@
+package io.dazzleduck.sql.otel.collector;
+
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.util.List;
+
+/**
+ * Arrow schema for the rollups of OTLP metrics written by {@link MetricRollup}: one row per series and window. The
+ * series columns are those of {@link OtelMetricSchema}. Cumulative sums, histograms and summaries are rolled up as
+ * deltas, so that every rollup of a series adds up with the others.
+ * <ul>
+ *   <li>GAUGE: {@code value_min}, {@code value_max} and {@code value_last} of the points, and their {@code sum}</li>
+ *   <li>SUM: the {@code sum} of the deltas</li>
+ *   <li>HISTOGRAM: the {@code count}, {@code sum} and {@code bucket_counts} of the deltas</li>
+ *   <li>EXPONENTIAL_HISTOGRAM and SUMMARY: the {@code count} and {@code sum} of the deltas</li>
+ * </ul>
+ */
+public class OtelMetricRollupSchema {
+
+    public static final int COL_NAME = 0;
+    public static final int COL_DESCRIPTION = 1;
+    public static final int COL_UNIT = 2;
+    public static final int COL_METRIC_TYPE = 3;
+    public static final int COL_ATTRIBUTES = 4;
+    public static final int COL_RESOURCE_ATTRIBUTES = 5;
+    public static final int COL_SCOPE_NAME = 6;
+    public static final int COL_SCOPE_VERSION = 7;
+    public static final int COL_WINDOW_MS = 8;
+    public static final int COL_WINDOW_START_MS = 9;
+    public static final int COL_SAMPLES = 10;
+    public static final int COL_VALUE_MIN = 11;
+    public static final int COL_VALUE_MAX = 12;
+    public static final int COL_VALUE_LAST = 13;
+    public static final int COL_SUM = 14;
+    public static final int COL_COUNT = 15;
+    public static final int COL_BUCKET_COUNTS = 16;
+    public static final int COL_EXPLICIT_BOUNDS = 17;
+
+    /** The columns of {@link OtelMetricSchema} that identify a series, in the order of the rollup columns. */
+    static final int[] SERIES_COLUMNS = {
+            OtelMetricSchema.COL_NAME,
+            OtelMetricSchema.COL_DESCRIPTION,
+            OtelMetricSchema.COL_UNIT,
+            OtelMetricSchema.COL_METRIC_TYPE,
+            OtelMetricSchema.COL_ATTRIBUTES,
+            OtelMetricSchema.COL_RESOURCE_ATTRIBUTES,
+            OtelMetricSchema.COL_SCOPE_NAME,
+            OtelMetricSchema.COL_SCOPE_VERSION
+    };
+
+    public static final Schema SCHEMA = new Schema(List.of(
+            metricField(OtelMetricSchema.COL_NAME),
+            metricField(OtelMetricSchema.COL_DESCRIPTION),
+            metricField(OtelMetricSchema.COL_UNIT),
+            metricField(OtelMetricSchema.COL_METRIC_TYPE),
+            metricField(OtelMetricSchema.COL_ATTRIBUTES),
+            metricField(OtelMetricSchema.COL_RESOURCE_ATTRIBUTES),
+            metricField(OtelMetricSchema.COL_SCOPE_NAME),
+            metricField(OtelMetricSchema.COL_SCOPE_VERSION),
+            new Field("window_ms",
+                    FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("window_start_ms",
+                    FieldType.nullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)), null),
+            new Field("samples",
+                    FieldType.nullable(new ArrowType.Int(64, true)), null),
+            new Field("value_min",
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("value_max",
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("value_last",
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("sum",
+                    FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            new Field("count",
+                    FieldType.nullable(new ArrowType.Int(64, true)), null),
+            metricField(OtelMetricSchema.COL_BUCKET_COUNTS),
+            metricField(OtelMetricSchema.COL_EXPLICIT_BOUNDS)
+    ));
+
+    private static Field metricField(int column) {
+        return OtelMetricSchema.SCHEMA.getFields().get(column);
+    }
+}
@@ -1,91 +1,93 @@
 package io.dazzleduck.sql.otel.collector;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.BindableService;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
 import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceResponse;
 import io.opentelemetry.proto.collector.metrics.v1.MetricsServiceGrpc;
-import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
-import io.opentelemetry.proto.metrics.v1.ScopeMetrics;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
 
 /**
  * gRPC service that receives OTLP metric exports and writes them to Parquet.
+ * Requests reach it serialized and are decoded by {@link MetricBatchWriter} straight into Arrow.
  */
-public class OtelMetricsService extends MetricsServiceGrpc.MetricsServiceImplBase {
+public class OtelMetricsService implements BindableService {
 
     private static final Logger log = LoggerFactory.getLogger(OtelMetricsService.class);
 
     private final SignalWriter writer;
-    private final Path tempDir;
     private final OtelCollectorMetrics metrics;
+    private final ExportStage.Decoder decoder;
 
     public OtelMetricsService(SignalWriter writer, OtelCollectorMetrics metrics) throws IOException {
+        this(writer, metrics, null);
+    }
+
+    /**
+     * @param rollup the rollup exports are also folded into, null to write only the raw points
+     */
+    public OtelMetricsService(SignalWriter writer, OtelCollectorMetrics metrics, MetricRollup rollup) {
         this.writer = writer;
         this.metrics = metrics;
-        this.tempDir = Files.createTempDirectory("otel-metrics-arrow-");
+        this.decoder = rollup != null ? rollup::write : MetricBatchWriter::write;
     }
 
     @Override
-    public void export(ExportMetricsServiceRequest request,
-                       StreamObserver<ExportMetricsServiceResponse> responseObserver) {
-        List<MetricEntry> entries = new ArrayList<>();
-        for (ResourceMetrics resourceMetrics : request.getResourceMetricsList()) {
-            var resource = resourceMetrics.hasResource() ? resourceMetrics.getResource() : null;
-            for (ScopeMetrics scopeMetrics : resourceMetrics.getScopeMetricsList()) {
-                var scope = scopeMetrics.hasScope() ? scopeMetrics.getScope() : null;
-                for (var metric : scopeMetrics.getMetricsList()) {
-                    entries.add(new MetricEntry(metric, resource, scope));
-                }
-            }
-        }
-        log.debug("Received {} metrics", entries.size());
-        var sample = metrics.startSample();
+    public ServerServiceDefinition bindService() {
+        return OtlpGrpc.bindExport(MetricsServiceGrpc.getExportMethod(), this::export);
+    }
 
+    /**
+     * Exports a serialized {@link ExportMetricsServiceRequest}.
+     */
+    public void export(byte[] request, StreamObserver<ExportMetricsServiceResponse> responseObserver) {
+        var sample = metrics.startSample();
+        int dataPoints;
+        Path arrowFile;
+        VectorSchemaRoot root = writer.acquireRoot(OtelMetricSchema.SCHEMA);
         try {
-            Path arrowFile = writeArrowFile(entries);
-            writer.addBatch(arrowFile).whenComplete((v, ex) -> {
-                if (ex != null) {
-                    metrics.recordMetricError(sample);
-                    log.error("Failed to persist {} metrics", entries.size(), ex);
-                    responseObserver.onError(ex);
-                } else {
-                    metrics.recordMetricExport(entries.size(), sample);
-                    responseObserver.onNext(ExportMetricsServiceResponse.getDefaultInstance());
-                    responseObserver.onCompleted();
-                }
-            });
+            dataPoints = decoder.write(request, root);
+            arrowFile = writer.writeArrowFile(root);
+        } catch (InvalidProtocolBufferException e) {
+            metrics.recordMetricError(sample);
+            log.warn("Rejected malformed metric export: {}", e.getMessage());
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
         } catch (IOException e) {
             metrics.recordMetricError(sample);
-            log.error("Failed to write Arrow file for {} metrics", entries.size(), e);
+            log.error("Failed to write Arrow file for metric export", e);
             responseObserver.onError(e);
+            return;
+        } finally {
+            writer.releaseRoot(root);
         }
-    }
+        log.debug("Received {} metric data points", dataPoints);
 
-    private Path writeArrowFile(List<MetricEntry> entries) throws IOException {
-        Path tempFile = tempDir.resolve("batch_" + UUID.randomUUID() + ".arrow");
-        try (RootAllocator allocator = new RootAllocator();
-             VectorSchemaRoot root = VectorSchemaRoot.create(OtelMetricSchema.SCHEMA, allocator)) {
-            MetricBatchWriter.write(entries, root);
-            try (FileOutputStream fos = new FileOutputStream(tempFile.toFile());
-                 ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(fos))) {
-                writer.start();
-                writer.writeBatch();
-                writer.end();
+        var written = writer.addBatch(arrowFile);
+        written.whenComplete((v, ex) -> {
+            if (ex != null) {
+                metrics.recordMetricError(sample);
+                log.error("Failed to persist {} metric data points", dataPoints, ex);
+            } else {
+                metrics.recordMetricExport(dataPoints, sample);
             }
-        }
-        return tempFile;
+        });
+        writer.acknowledgement(written).whenComplete((v, ex) -> {
+            metrics.recordMetricAck(sample);
+            if (ex != null) {
+                responseObserver.onError(ex);
+            } else {
+                responseObserver.onNext(ExportMetricsServiceResponse.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        });
     }
 }
@@ -10,7 +10,7 @@ import java.util.List;
 
 /**
  * Arrow schema for OTLP spans, flattened from the 3-level OTLP hierarchy
- * (ResourceSpans → ScopeSpans → Span).
+ * (ResourceSpans → ScopeSpans → Span). Trace and span ids are kept as their raw 16 and 8 bytes.
  */
 public class OtelTraceSchema {
 
@@ -33,11 +33,11 @@ public class OtelTraceSchema {
 
     public static final Schema SCHEMA = new Schema(List.of(
             new Field("trace_id",
-                    FieldType.nullable(new ArrowType.Utf8()), null),
+                    FieldType.nullable(new ArrowType.FixedSizeBinary(16)), null),
             new Field("span_id",
-                    FieldType.nullable(new ArrowType.Utf8()), null),
+                    FieldType.nullable(new ArrowType.FixedSizeBinary(8)), null),
             new Field("parent_span_id",
-                    FieldType.nullable(new ArrowType.Utf8()), null),
+                    FieldType.nullable(new ArrowType.FixedSizeBinary(8)), null),
             new Field("name",
                     FieldType.nullable(new ArrowType.Utf8()), null),
             new Field("kind",
@@ -77,8 +77,8 @@ public class OtelTraceSchema {
         Field linkStruct = new Field("link",
                 FieldType.nullable(new ArrowType.Struct()),
                 List.of(
-                        new Field("trace_id", FieldType.nullable(new ArrowType.Utf8()), null),
-                        new Field("span_id", FieldType.nullable(new ArrowType.Utf8()), null),
+                        new Field("trace_id", FieldType.nullable(new ArrowType.FixedSizeBinary(16)), null),
+                        new Field("span_id", FieldType.nullable(new ArrowType.FixedSizeBinary(8)), null),
                         OtelSchemaFields.mapField("attributes")
                 ));
         return new Field("links", FieldType.nullable(new ArrowType.List()), List.of(linkStruct));
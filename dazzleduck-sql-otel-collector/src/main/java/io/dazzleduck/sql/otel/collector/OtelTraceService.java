@@ -1,91 +1,136 @@
 package io.dazzleduck.sql.otel.collector;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.BindableService;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
 import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
 import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
-import io.opentelemetry.proto.trace.v1.ResourceSpans;
-import io.opentelemetry.proto.trace.v1.ScopeSpans;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
 
 /**
  * gRPC service that receives OTLP trace exports and writes them to Parquet.
+ * Requests reach it serialized and are decoded by {@link SpanBatchWriter} straight into Arrow.
+ * With a {@link TraceSampler}, exports go through it and only the spans of the traces it keeps are written.
  */
-public class OtelTraceService extends TraceServiceGrpc.TraceServiceImplBase {
+public class OtelTraceService implements BindableService {
 
     private static final Logger log = LoggerFactory.getLogger(OtelTraceService.class);
 
     private final SignalWriter writer;
-    private final Path tempDir;
     private final OtelCollectorMetrics metrics;
+    private final TraceSampler sampler;
 
     public OtelTraceService(SignalWriter writer, OtelCollectorMetrics metrics) throws IOException {
+        this(writer, metrics, null);
+    }
+
+    /**
+     * @param sampler the sampler exports go through, null to write every span
+     */
+    public OtelTraceService(SignalWriter writer, OtelCollectorMetrics metrics, TraceSampler sampler) throws IOException {
         this.writer = writer;
         this.metrics = metrics;
-        this.tempDir = Files.createTempDirectory("otel-traces-arrow-");
+        this.sampler = sampler;
     }
 
     @Override
-    public void export(ExportTraceServiceRequest request,
-                       StreamObserver<ExportTraceServiceResponse> responseObserver) {
-        List<SpanEntry> entries = new ArrayList<>();
-        for (ResourceSpans resourceSpans : request.getResourceSpansList()) {
-            var resource = resourceSpans.hasResource() ? resourceSpans.getResource() : null;
-            for (ScopeSpans scopeSpans : resourceSpans.getScopeSpansList()) {
-                var scope = scopeSpans.hasScope() ? scopeSpans.getScope() : null;
-                for (var span : scopeSpans.getSpansList()) {
-                    entries.add(new SpanEntry(span, resource, scope));
-                }
-            }
+    public ServerServiceDefinition bindService() {
+        return OtlpGrpc.bindExport(TraceServiceGrpc.getExportMethod(), this::export);
+    }
+
+    /**
+     * Exports a serialized {@link ExportTraceServiceRequest}.
+     */
+    public void export(byte[] request, StreamObserver<ExportTraceServiceResponse> responseObserver) {
+        if (sampler != null) {
+            exportSampled(request, responseObserver);
+            return;
         }
-        log.debug("Received {} spans", entries.size());
         var sample = metrics.startSample();
-
+        int spans;
+        Path arrowFile;
+        VectorSchemaRoot root = writer.acquireRoot(OtelTraceSchema.SCHEMA);
         try {
-            Path arrowFile = writeArrowFile(entries);
-            writer.addBatch(arrowFile).whenComplete((v, ex) -> {
-                if (ex != null) {
-                    metrics.recordTraceError(sample);
-                    log.error("Failed to persist {} spans", entries.size(), ex);
-                    responseObserver.onError(ex);
-                } else {
-                    metrics.recordTraceExport(entries.size(), sample);
-                    responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
-                    responseObserver.onCompleted();
-                }
-            });
+            spans = SpanBatchWriter.write(request, root);
+            arrowFile = writer.writeArrowFile(root);
+        } catch (InvalidProtocolBufferException e) {
+            metrics.recordTraceError(sample);
+            log.warn("Rejected malformed trace export: {}", e.getMessage());
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
         } catch (IOException e) {
             metrics.recordTraceError(sample);
-            log.error("Failed to write Arrow file for {} spans", entries.size(), e);
+            log.error("Failed to write Arrow file for trace export", e);
             responseObserver.onError(e);
+            return;
+        } finally {
+            writer.releaseRoot(root);
         }
-    }
+        log.debug("Received {} spans", spans);
 
-    private Path writeArrowFile(List<SpanEntry> entries) throws IOException {
-        Path tempFile = tempDir.resolve("batch_" + UUID.randomUUID() + ".arrow");
-        try (RootAllocator allocator = new RootAllocator();
-             VectorSchemaRoot root = VectorSchemaRoot.create(OtelTraceSchema.SCHEMA, allocator)) {
-            SpanBatchWriter.write(entries, root);
-            try (FileOutputStream fos = new FileOutputStream(tempFile.toFile());
-                 ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(fos))) {
-                writer.start();
-                writer.writeBatch();
-                writer.end();
+        var written = writer.addBatch(arrowFile);
+        written.whenComplete((v, ex) -> {
+            if (ex != null) {
+                metrics.recordTraceError(sample);
+                log.error("Failed to persist {} spans", spans, ex);
+            } else {
+                metrics.recordTraceExport(spans, sample);
             }
+        });
+        writer.acknowledgement(written).whenComplete((v, ex) -> {
+            metrics.recordTraceAck(sample);
+            if (ex != null) {
+                responseObserver.onError(ex);
+            } else {
+                responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        });
+    }
+
+    private void exportSampled(byte[] request, StreamObserver<ExportTraceServiceResponse> responseObserver) {
+        var sample = metrics.startSample();
+        ExportStage.Export export;
+        try {
+            export = sampler.add(request);
+        } catch (InvalidProtocolBufferException e) {
+            metrics.recordTraceError(sample);
+            log.warn("Rejected malformed trace export: {}", e.getMessage());
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        } catch (IOException e) {
+            metrics.recordTraceError(sample);
+            log.error("Failed to buffer trace export for sampling", e);
+            responseObserver.onError(e);
+            return;
         }
-        return tempFile;
+        int spans = export.records();
+        log.debug("Received {} spans for sampling", spans);
+
+        export.written().whenComplete((v, ex) -> {
+            if (ex != null) {
+                metrics.recordTraceError(sample);
+                log.error("Failed to persist sampled spans of {} received", spans, ex);
+            } else {
+                metrics.recordTraceExport(spans, sample);
+            }
+        });
+        export.acknowledged().whenComplete((v, ex) -> {
+            metrics.recordTraceAck(sample);
+            if (ex != null) {
+                responseObserver.onError(ex);
+            } else {
+                responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        });
     }
 }
@@ -0,0 +1,44 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ServerCalls;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Binds the export method of an OTLP gRPC service to a handler of the serialized request, so that the batch writers
+ * can decode it straight into Arrow instead of gRPC parsing it into protobuf objects first.
+ */
+final class OtlpGrpc {
+
+    private static final MethodDescriptor.Marshaller<byte[]> BYTES = new MethodDescriptor.Marshaller<>() {
+        @Override
+        public InputStream stream(byte[] value) {
+            return new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public byte[] parse(InputStream stream) {
+            try {
+                return stream.readAllBytes();
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Failed to read the request").withCause(e).asRuntimeException();
+            }
+        }
+    };
+
+    private OtlpGrpc() {
+    }
+
+    static <RespT> ServerServiceDefinition bindExport(MethodDescriptor<?, RespT> export,
+                                                      ServerCalls.UnaryMethod<byte[], RespT> handler) {
+        var method = export.toBuilder(BYTES, export.getResponseMarshaller()).build();
+        return ServerServiceDefinition.builder(MethodDescriptor.extractFullServiceName(export.getFullMethodName()))
+                .addMethod(method, ServerCalls.asyncUnaryCall(handler))
+                .build();
+    }
+}
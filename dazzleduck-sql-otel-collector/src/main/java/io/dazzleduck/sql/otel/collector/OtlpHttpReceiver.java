@@ -0,0 +1,301 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import io.dazzleduck.sql.otel.collector.auth.JwtAuthenticator;
+import io.helidon.http.HeaderNames;
+import io.helidon.http.Status;
+import io.helidon.http.encoding.ContentDecoder;
+import io.helidon.http.encoding.ContentEncoder;
+import io.helidon.http.encoding.ContentEncoding;
+import io.helidon.webserver.WebServer;
+import io.helidon.webserver.http.FilterChain;
+import io.helidon.webserver.http.RoutingRequest;
+import io.helidon.webserver.http.RoutingResponse;
+import io.helidon.webserver.http.ServerRequest;
+import io.helidon.webserver.http.ServerResponse;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Receives OTLP exports over HTTP: {@code POST /v1/logs}, {@code /v1/traces} and {@code /v1/metrics}, with a body
+ * in the protobuf ({@code application/x-protobuf}) or JSON ({@code application/json}) encoding, gzipped when the
+ * request says so with {@code Content-Encoding}. Requests are authenticated like gRPC ones.
+ *
+ * <p>Exports reach the same {@link SignalWriter}s as gRPC ones, through an {@link ExportBatcher} per signal, so that
+ * the many small requests HTTP exporters tend to send make one Arrow file per batch rather than one per request.
+ * Trace exports go through the {@link TraceSampler} instead when there is one, which writes the traces it decides
+ * together as one batch.
+ * A request is answered once its export is acknowledged, with an empty export response in the encoding of the
+ * request.
+ */
+public class OtlpHttpReceiver implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(OtlpHttpReceiver.class);
+
+    /** The largest request body accepted, once decompressed. */
+    static final int MAX_REQUEST_BYTES = 64 * 1024 * 1024;
+
+    private static final String PROTOBUF = "application/x-protobuf";
+    private static final String JSON = "application/json";
+    private static final byte[] EMPTY_JSON_RESPONSE = "{}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * How the exports of one signal are decoded, batched and counted.
+     */
+    private record Endpoint(String signal,
+                            ExportStage stage,
+                            Supplier<Message.Builder> newRequest,
+                            ObjIntConsumer<Timer.Sample> recordExport,
+                            Consumer<Timer.Sample> recordError,
+                            Consumer<Timer.Sample> recordAck) {
+    }
+
+    private final int port;
+    private final JwtAuthenticator authenticator;
+    private final OtelCollectorMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final Endpoint logs;
+    private final Endpoint traces;
+    private final Endpoint metricsEndpoint;
+    /** The batchers created by the receiver, rather than stages it was given. */
+    private final List<ExportBatcher> batchers = new ArrayList<>();
+    private WebServer server;
+
+    /**
+     * @param maxBatchRows  rows after which a batch is written
+     * @param maxBatchDelay time after its first export after which a batch is written
+     */
+    public OtlpHttpReceiver(int port, JwtAuthenticator authenticator, OtelCollectorMetrics metrics,
+                            SignalWriter logWriter, SignalWriter traceWriter, SignalWriter metricsWriter,
+                            int maxBatchRows, Duration maxBatchDelay) {
+        this(port, authenticator, metrics, logWriter, traceWriter, metricsWriter, maxBatchRows, maxBatchDelay,
+                null, null);
+    }
+
+    /**
+     * @param sampler the sampler trace exports go through, null to write every span
+     * @param rollup  the rollup metric exports are also folded into, null to write only the raw points
+     */
+    public OtlpHttpReceiver(int port, JwtAuthenticator authenticator, OtelCollectorMetrics metrics,
+                            SignalWriter logWriter, SignalWriter traceWriter, SignalWriter metricsWriter,
+                            int maxBatchRows, Duration maxBatchDelay, TraceSampler sampler, MetricRollup rollup) {
+        this.port = port;
+        this.authenticator = authenticator;
+        this.metrics = metrics;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "otel-http-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.logs = new Endpoint("logs",
+                batcher(logWriter, OtelLogSchema.SCHEMA, LogRecordBatchWriter::write, maxBatchRows, maxBatchDelay),
+                ExportLogsServiceRequest::newBuilder,
+                (sample, count) -> metrics.recordLogExport(count, sample),
+                metrics::recordLogError, metrics::recordLogAck);
+        this.traces = new Endpoint("traces",
+                sampler != null ? sampler
+                        : batcher(traceWriter, OtelTraceSchema.SCHEMA, SpanBatchWriter::write, maxBatchRows, maxBatchDelay),
+                ExportTraceServiceRequest::newBuilder,
+                (sample, count) -> metrics.recordTraceExport(count, sample),
+                metrics::recordTraceError, metrics::recordTraceAck);
+        this.metricsEndpoint = new Endpoint("metrics",
+                batcher(metricsWriter, OtelMetricSchema.SCHEMA,
+                        rollup != null ? rollup::write : MetricBatchWriter::write, maxBatchRows, maxBatchDelay),
+                ExportMetricsServiceRequest::newBuilder,
+                (sample, count) -> metrics.recordMetricExport(count, sample),
+                metrics::recordMetricError, metrics::recordMetricAck);
+    }
+
+    private ExportBatcher batcher(SignalWriter writer, Schema schema, ExportStage.Decoder decoder,
+                                  int maxBatchRows, Duration maxBatchDelay) {
+        var batcher = new ExportBatcher(writer, schema, decoder, maxBatchRows, maxBatchDelay, scheduler);
+        batchers.add(batcher);
+        return batcher;
+    }
+
+    public void start() {
+        server = WebServer.builder()
+                .port(port)
+                .contentEncoding(encodings -> encodings
+                        .contentEncodingsDiscoverServices(false)
+                        .addContentEncoding(new GzipDecoding()))
+                .routing(routing -> routing
+                        .addFilter(this::authenticate)
+                        .post("/v1/logs", (req, res) -> export(logs, req, res))
+                        .post("/v1/traces", (req, res) -> export(traces, req, res))
+                        .post("/v1/metrics", (req, res) -> export(metricsEndpoint, req, res)))
+                .build()
+                .start();
+    }
+
+    /**
+     * @return the port the receiver listens on, chosen when started on port 0
+     */
+    public int port() {
+        return server.port();
+    }
+
+    private void authenticate(FilterChain chain, RoutingRequest req, RoutingResponse res) {
+        String token;
+        try {
+            token = authenticator.authenticate(req.headers().first(HeaderNames.AUTHORIZATION).orElse(null));
+        } catch (JwtAuthenticator.AuthenticationException e) {
+            res.status(Status.UNAUTHORIZED_401).send(e.getMessage());
+            return;
+        }
+        if (token != null) {
+            res.header(HeaderNames.AUTHORIZATION, token);
+        }
+        chain.proceed();
+    }
+
+    private void export(Endpoint endpoint, ServerRequest req, ServerResponse res) {
+        String contentType = req.headers().first(HeaderNames.CONTENT_TYPE)
+                .map(value -> value.split(";", 2)[0].trim().toLowerCase(Locale.ROOT))
+                .orElse("");
+        boolean json = contentType.equals(JSON);
+        if (!json && !contentType.equals(PROTOBUF)) {
+            res.status(Status.UNSUPPORTED_MEDIA_TYPE_415)
+                    .send("Content-Type must be " + PROTOBUF + " or " + JSON);
+            return;
+        }
+
+        var sample = metrics.startSample();
+        ExportStage.Export export;
+        try {
+            byte[] body = readBody(req);
+            if (body == null) {
+                endpoint.recordError().accept(sample);
+                res.status(Status.REQUEST_ENTITY_TOO_LARGE_413)
+                        .send("Request body is larger than " + MAX_REQUEST_BYTES + " bytes");
+                return;
+            }
+            byte[] request = json ? OtlpJson.toProtobuf(body, endpoint.newRequest().get()) : body;
+            export = endpoint.stage().add(request);
+        } catch (InvalidProtocolBufferException | ZipException | UncheckedIOException e) {
+            endpoint.recordError().accept(sample);
+            log.warn("Rejected malformed {} export: {}", endpoint.signal(), e.getMessage());
+            res.status(Status.BAD_REQUEST_400).send(e.getMessage());
+            return;
+        } catch (IOException e) {
+            endpoint.recordError().accept(sample);
+            log.error("Failed to read {} export", endpoint.signal(), e);
+            res.status(Status.INTERNAL_SERVER_ERROR_500).send(e.getMessage());
+            return;
+        }
+        int records = export.records();
+        log.debug("Received {} {} records over HTTP", records, endpoint.signal());
+
+        export.written().whenComplete((v, ex) -> {
+            if (ex != null) {
+                endpoint.recordError().accept(sample);
+                log.error("Failed to persist {} {} records", records, endpoint.signal(), ex);
+            } else {
+                endpoint.recordExport().accept(sample, records);
+            }
+        });
+        try {
+            export.acknowledged().join();
+        } catch (CompletionException e) {
+            // Retryable for OTLP exporters, the export was not kept
+            res.status(Status.SERVICE_UNAVAILABLE_503).send(String.valueOf(e.getCause().getMessage()));
+            return;
+        } finally {
+            endpoint.recordAck().accept(sample);
+        }
+        res.header(HeaderNames.CONTENT_TYPE, json ? JSON : PROTOBUF);
+        // Every export response is empty, which is no bytes at all in protobuf
+        res.send(json ? EMPTY_JSON_RESPONSE : new byte[0]);
+    }
+
+    /**
+     * @return the decompressed body, null if it is larger than {@link #MAX_REQUEST_BYTES}
+     */
+    private static byte[] readBody(ServerRequest req) throws IOException {
+        try (InputStream body = req.content().inputStream()) {
+            byte[] bytes = body.readNBytes(MAX_REQUEST_BYTES + 1);
+            return bytes.length > MAX_REQUEST_BYTES ? null : bytes;
+        }
+    }
+
+    /**
+     * Decompresses request bodies sent with {@code Content-Encoding: gzip}; other encodings are rejected.
+     */
+    private static class GzipDecoding implements ContentEncoding {
+
+        @Override
+        public Set<String> ids() {
+            return Set.of("gzip", "x-gzip");
+        }
+
+        @Override
+        public boolean supportsEncoding() {
+            return false;
+        }
+
+        @Override
+        public boolean supportsDecoding() {
+            return true;
+        }
+
+        @Override
+        public ContentDecoder decoder() {
+            return in -> {
+                try {
+                    return new GZIPInputStream(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }
+
+        @Override
+        public ContentEncoder encoder() {
+            return ContentEncoder.NO_OP;
+        }
+
+        @Override
+        public String name() {
+            return "gzip";
+        }
+
+        @Override
+        public String type() {
+            return "gzip";
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop();
+        }
+        batchers.forEach(ExportBatcher::close);
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,173 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the JSON encoding of an OTLP export request into its protobuf encoding, for the batch writers. This is the
+ * proto3 JSON mapping with the differences OTLP makes: trace and span ids are hex strings rather than base64, and
+ * enums are numbers, though names are accepted as well. Fields may be named in lowerCamelCase or as in the proto;
+ * unknown fields are ignored.
+ */
+final class OtlpJson {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Set<String> HEX_ID_FIELDS = Set.of("trace_id", "span_id", "parent_span_id");
+    private static final Map<Descriptor, Map<String, FieldDescriptor>> FIELDS = new ConcurrentHashMap<>();
+
+    private OtlpJson() {
+    }
+
+    /**
+     * @param request an empty builder of the request, such as {@code ExportLogsServiceRequest.newBuilder()}
+     * @return the request in the protobuf encoding
+     * @throws InvalidProtocolBufferException if {@code json} is not a request of that type
+     */
+    static byte[] toProtobuf(byte[] json, Message.Builder request) throws InvalidProtocolBufferException {
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException("Malformed JSON: " + e.getMessage());
+        }
+        try {
+            merge(node, request);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidProtocolBufferException(e.getMessage());
+        }
+        return request.build().toByteArray();
+    }
+
+    private static void merge(JsonNode json, Message.Builder builder) {
+        Descriptor type = builder.getDescriptorForType();
+        if (!json.isObject()) {
+            throw new IllegalArgumentException("Expected an object for " + type.getFullName() + ", got " + json.getNodeType());
+        }
+        Map<String, FieldDescriptor> fields = FIELDS.computeIfAbsent(type, OtlpJson::fieldsByName);
+        for (var entries = json.fields(); entries.hasNext(); ) {
+            var entry = entries.next();
+            FieldDescriptor field = fields.get(entry.getKey());
+            JsonNode value = entry.getValue();
+            if (field == null || value.isNull()) {
+                continue;
+            }
+            if (!field.isRepeated()) {
+                builder.setField(field, value(field, value, builder));
+            } else if (value.isArray()) {
+                for (JsonNode element : value) {
+                    builder.addRepeatedField(field, value(field, element, builder));
+                }
+            } else {
+                throw new IllegalArgumentException("Expected an array for " + field.getFullName());
+            }
+        }
+    }
+
+    private static Object value(FieldDescriptor field, JsonNode json, Message.Builder parent) {
+        return switch (field.getJavaType()) {
+            case MESSAGE -> {
+                Message.Builder builder = parent.newBuilderForField(field);
+                merge(json, builder);
+                yield builder.build();
+            }
+            case ENUM -> enumValue(field.getEnumType(), json);
+            case LONG -> longValue(field, json);
+            case INT -> intValue(field, json);
+            case DOUBLE -> doubleValue(json);
+            case FLOAT -> (float) doubleValue(json);
+            case BOOLEAN -> {
+                if (!json.isBoolean()) {
+                    throw new IllegalArgumentException("Expected a boolean for " + field.getFullName());
+                }
+                yield json.booleanValue();
+            }
+            case STRING -> text(field, json);
+            case BYTE_STRING -> {
+                String text = text(field, json);
+                yield ByteString.copyFrom(HEX_ID_FIELDS.contains(field.getName())
+                        ? HEX.parseHex(text)
+                        : Base64.getDecoder().decode(text.replace('-', '+').replace('_', '/')));
+            }
+        };
+    }
+
+    private static Object enumValue(EnumDescriptor type, JsonNode json) {
+        if (json.isIntegralNumber()) {
+            return type.findValueByNumberCreatingIfUnknown(json.intValue());
+        }
+        var value = json.isTextual() ? type.findValueByName(json.textValue()) : null;
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown " + type.getFullName() + " value " + json);
+        }
+        return value;
+    }
+
+    /**
+     * 64-bit integers are written as strings in JSON, but numbers are accepted as well.
+     */
+    private static long longValue(FieldDescriptor field, JsonNode json) {
+        if (json.isIntegralNumber()) {
+            return json.bigIntegerValue().longValue();
+        }
+        String text = text(field, json);
+        return switch (field.getType()) {
+            case UINT64, FIXED64 -> Long.parseUnsignedLong(text);
+            default -> Long.parseLong(text);
+        };
+    }
+
+    private static int intValue(FieldDescriptor field, JsonNode json) {
+        if (json.isIntegralNumber()) {
+            return json.bigIntegerValue().intValue();
+        }
+        String text = text(field, json);
+        return switch (field.getType()) {
+            case UINT32, FIXED32 -> Integer.parseUnsignedInt(text);
+            default -> Integer.parseInt(text);
+        };
+    }
+
+    /**
+     * Doubles may be strings, which is how NaN and the infinities are written.
+     */
+    private static double doubleValue(JsonNode json) {
+        if (json.isNumber()) {
+            return json.doubleValue();
+        }
+        if (json.isTextual()) {
+            return Double.parseDouble(json.textValue());
+        }
+        throw new IllegalArgumentException("Expected a number, got " + json.getNodeType());
+    }
+
+    private static String text(FieldDescriptor field, JsonNode json) {
+        if (!json.isTextual()) {
+            throw new IllegalArgumentException("Expected a string for " + field.getFullName() + ", got " + json.getNodeType());
+        }
+        return json.textValue();
+    }
+
+    private static Map<String, FieldDescriptor> fieldsByName(Descriptor type) {
+        var fields = new HashMap<String, FieldDescriptor>();
+        for (FieldDescriptor field : type.getFields()) {
+            fields.put(field.getName(), field);
+            fields.put(field.getJsonName(), field);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,323 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ProtocolMessageEnum;
+import com.google.protobuf.WireFormat;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+/**
+ * Reads a serialized OTLP export request field by field with a {@link CodedInputStream}, for the batch writers that
+ * decode it straight into Arrow vectors instead of building the protobuf objects first. Strings and ids are copied
+ * from the request bytes into the vectors; only attribute values that are not strings are rendered to text.
+ *
+ * <p>A record such as a span or a data point is read in place with {@link #enter()} and {@link #exit(int)}. Fields
+ * may come in any order on the wire, so a message whose fields give context to the records nested in it, such as a
+ * resource, a scope or the aggregation temporality of a sum, is read as a {@link #message()} of its own, once for
+ * the context and once more with {@link #reread()} for the records.
+ */
+final class OtlpWireReader {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNRECOGNIZED = "UNRECOGNIZED".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] buf;
+    private final int offset;
+    private final int length;
+    private final CodedInputStream in;
+    private int tag;
+    private byte[] id;
+
+    OtlpWireReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    private OtlpWireReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        this.in = CodedInputStream.newInstance(buf, offset, length);
+    }
+
+    /**
+     * @return the number of the next field, 0 at the end of the message being read
+     */
+    int nextField() throws IOException {
+        tag = in.readTag();
+        return WireFormat.getTagFieldNumber(tag);
+    }
+
+    void skip() throws IOException {
+        in.skipField(tag);
+    }
+
+    /**
+     * Reads the fields of the message in the current field until {@link #nextField()} returns 0.
+     *
+     * @return the limit to pass to {@link #exit(int)} once they are read
+     */
+    int enter() throws IOException {
+        return in.pushLimit(in.readRawVarint32());
+    }
+
+    void exit(int limit) {
+        in.popLimit(limit);
+    }
+
+    /**
+     * @return a reader of the message in the current field
+     */
+    OtlpWireReader message() throws IOException {
+        int size = in.readRawVarint32();
+        int start = position();
+        in.skipRawBytes(size);
+        return new OtlpWireReader(buf, start, size);
+    }
+
+    /**
+     * @return a reader of the same message from its first field
+     */
+    OtlpWireReader reread() {
+        return new OtlpWireReader(buf, offset, length);
+    }
+
+    long readFixed64() throws IOException {
+        return in.readFixed64();
+    }
+
+    int readFixed32() throws IOException {
+        return in.readFixed32();
+    }
+
+    long readSFixed64() throws IOException {
+        return in.readSFixed64();
+    }
+
+    double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+    boolean readBool() throws IOException {
+        return in.readBool();
+    }
+
+    int readEnum() throws IOException {
+        return in.readEnum();
+    }
+
+    /**
+     * @return the string in the current field, null if it is empty
+     */
+    byte[] readNonEmptyString() throws IOException {
+        byte[] value = in.readByteArray();
+        return value.length > 0 ? value : null;
+    }
+
+    void readString(VarCharVector vector, int index) throws IOException {
+        int size = in.readRawVarint32();
+        int start = position();
+        in.skipRawBytes(size);
+        vector.setSafe(index, buf, start, size);
+    }
+
+    /**
+     * Leaves {@code index} null if the string is empty.
+     */
+    void readNonEmptyString(VarCharVector vector, int index) throws IOException {
+        int size = in.readRawVarint32();
+        int start = position();
+        in.skipRawBytes(size);
+        if (size > 0) {
+            vector.setSafe(index, buf, start, size);
+        }
+    }
+
+    /**
+     * Leaves {@code index} null unless the id has the width of the vector, 16 bytes for a trace and 8 for a span.
+     */
+    void readId(FixedSizeBinaryVector vector, int index) throws IOException {
+        int size = in.readRawVarint32();
+        int start = position();
+        in.skipRawBytes(size);
+        if (size != vector.getByteWidth()) {
+            return;
+        }
+        if (id == null) {
+            id = new byte[16];
+        }
+        System.arraycopy(buf, start, id, 0, size);
+        vector.setSafe(index, id);
+    }
+
+    /**
+     * Reads the {@link KeyValue} in the current field into the next entry of the row {@code map} is writing. A
+     * value that is not set is written as an empty string.
+     */
+    void readAttribute(MapColumn map) throws IOException {
+        int limit = enter();
+        int entry = map.nextElement();
+        boolean hasKey = false;
+        boolean hasValue = false;
+        for (int field; (field = nextField()) != 0; ) {
+            switch (field) {
+                case KeyValue.KEY_FIELD_NUMBER -> {
+                    readString(map.keys(), entry);
+                    hasKey = true;
+                }
+                case KeyValue.VALUE_FIELD_NUMBER -> {
+                    readAnyValue(map.values(), entry);
+                    hasValue = true;
+                }
+                default -> skip();
+            }
+        }
+        exit(limit);
+        if (!hasKey) map.keys().setSafe(entry, EMPTY);
+        if (!hasValue) map.values().setSafe(entry, EMPTY);
+    }
+
+    /**
+     * Reads the {@link AnyValue} in the current field as text, like {@link LogRecordConverter#anyValueToString}.
+     * Arrays and key-value lists are rare enough to be parsed and rendered as JSON by the converter.
+     */
+    void readAnyValue(VarCharVector vector, int index) throws IOException {
+        int size = in.readRawVarint32();
+        int start = position();
+        int limit = in.pushLimit(size);
+        int kind = 0;
+        long bits = 0;
+        int valueStart = 0;
+        int valueSize = 0;
+        for (int field; (field = nextField()) != 0; ) {
+            switch (field) {
+                case AnyValue.STRING_VALUE_FIELD_NUMBER, AnyValue.BYTES_VALUE_FIELD_NUMBER,
+                     AnyValue.ARRAY_VALUE_FIELD_NUMBER, AnyValue.KVLIST_VALUE_FIELD_NUMBER -> {
+                    valueSize = in.readRawVarint32();
+                    valueStart = position();
+                    in.skipRawBytes(valueSize);
+                }
+                case AnyValue.BOOL_VALUE_FIELD_NUMBER, AnyValue.INT_VALUE_FIELD_NUMBER -> bits = in.readRawVarint64();
+                case AnyValue.DOUBLE_VALUE_FIELD_NUMBER -> bits = in.readRawLittleEndian64();
+                default -> {
+                    skip();
+                    continue;
+                }
+            }
+            // The last value set wins, as with any oneof
+            kind = field;
+        }
+        in.popLimit(limit);
+        switch (kind) {
+            case AnyValue.STRING_VALUE_FIELD_NUMBER -> vector.setSafe(index, buf, valueStart, valueSize);
+            case AnyValue.BOOL_VALUE_FIELD_NUMBER -> vector.setSafe(index, bits != 0 ? TRUE : FALSE);
+            case AnyValue.INT_VALUE_FIELD_NUMBER -> setText(vector, index, Long.toString(bits));
+            case AnyValue.DOUBLE_VALUE_FIELD_NUMBER -> setText(vector, index, String.valueOf(Double.longBitsToDouble(bits)));
+            case AnyValue.BYTES_VALUE_FIELD_NUMBER -> setText(vector, index, HEX.formatHex(buf, valueStart, valueStart + valueSize));
+            case AnyValue.ARRAY_VALUE_FIELD_NUMBER, AnyValue.KVLIST_VALUE_FIELD_NUMBER -> {
+                var value = AnyValue.parseFrom(CodedInputStream.newInstance(buf, start, size));
+                setText(vector, index, LogRecordConverter.anyValueToString(value));
+            }
+            default -> vector.setSafe(index, EMPTY);
+        }
+    }
+
+    /**
+     * Reads the packed or unpacked {@code fixed64} values in the current field into the row {@code list} is writing.
+     */
+    void readFixed64s(ListColumn list, BigIntVector values) throws IOException {
+        if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            values.setSafe(list.nextElement(), in.readFixed64());
+            return;
+        }
+        int limit = enter();
+        while (!in.isAtEnd()) {
+            values.setSafe(list.nextElement(), in.readFixed64());
+        }
+        exit(limit);
+    }
+
+    /**
+     * Reads the packed or unpacked {@code double} values in the current field into the row {@code list} is writing.
+     */
+    void readDoubles(ListColumn list, Float8Vector values) throws IOException {
+        if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            values.setSafe(list.nextElement(), in.readDouble());
+            return;
+        }
+        int limit = enter();
+        while (!in.isAtEnd()) {
+            values.setSafe(list.nextElement(), in.readDouble());
+        }
+        exit(limit);
+    }
+
+    /**
+     * Reads the {@link InstrumentationScope} in the current field.
+     */
+    Scope readScope() throws IOException {
+        int limit = enter();
+        byte[] name = null;
+        byte[] version = null;
+        for (int field; (field = nextField()) != 0; ) {
+            switch (field) {
+                case InstrumentationScope.NAME_FIELD_NUMBER -> name = readNonEmptyString();
+                case InstrumentationScope.VERSION_FIELD_NUMBER -> version = readNonEmptyString();
+                default -> skip();
+            }
+        }
+        exit(limit);
+        return new Scope(name, version);
+    }
+
+    private int position() {
+        return offset + in.getTotalBytesRead();
+    }
+
+    private static void setText(VarCharVector vector, int index, String text) {
+        vector.setSafe(index, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The name and version of an instrumentation scope, null when they are empty.
+     */
+    record Scope(byte[] name, byte[] version) {
+
+        static final Scope NONE = new Scope(null, null);
+
+        void write(VarCharVector names, VarCharVector versions, int row) {
+            if (name != null) names.setSafe(row, name);
+            if (version != null) versions.setSafe(row, version);
+        }
+    }
+
+    /**
+     * @return the names of the constants of an OTLP enum without {@code prefix}, by number
+     */
+    static <E extends Enum<E> & ProtocolMessageEnum> byte[][] enumNames(Class<E> type, String prefix) {
+        E[] constants = type.getEnumConstants();
+        byte[][] names = new byte[constants.length][];
+        for (E constant : constants) {
+            String name = constant.name();
+            if (name.equals("UNRECOGNIZED")) continue;
+            if (name.startsWith(prefix)) name = name.substring(prefix.length());
+            names[constant.getNumber()] = name.getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    static byte[] enumName(byte[][] names, int number) {
+        return number >= 0 && number < names.length && names[number] != null ? names[number] : UNRECOGNIZED;
+    }
+}
@@ -5,18 +5,36 @@ import io.dazzleduck.sql.commons.ingestion.IngestionConfig;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.ParquetIngestionQueue;
 import io.dazzleduck.sql.commons.ingestion.Stats;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Accepts Arrow batches from OTLP services, spills each batch to a temp Arrow
@@ -29,24 +47,67 @@ import java.util.concurrent.ScheduledExecutorService;
  *
  * <p>Queue tuning parameters (bucket sizes, flush delay) come from {@link IngestionConfig},
  * following the same pattern as the flight module.
+ *
+ * <p>The {@link AckMode} decides when an export can be acknowledged, see {@link #acknowledgement}. With
+ * {@link AckMode#JOURNAL} the Arrow files are kept in a journal directory per signal and synced before the export
+ * is acknowledged; the queue deletes them once they are written to Parquet, so the files left on startup are
+ * queued again. A batch whose Parquet write fails after it was acknowledged is kept and queued again after the
+ * max delay, up to {@value #MAX_WRITE_ATTEMPTS} attempts; after that it stays in the journal until the next start.
+ *
+ * <p>The services decode exports into roots from {@link #acquireRoot}, which come from one allocator that lives as
+ * long as the writer. Released roots are pooled and reused, so that their buffers are allocated once and then only
+ * grow to the largest export seen, rather than allocated and freed for every export.
  */
 public class SignalWriter implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(SignalWriter.class);
 
+    /** Roots kept for reuse; exports decoded concurrently beyond this allocate roots of their own. */
+    private static final int MAX_POOLED_ROOTS = Runtime.getRuntime().availableProcessors();
+
+    static final int MAX_WRITE_ATTEMPTS = 3;
+
     private final String queueId;
     private final ScheduledExecutorService scheduler;
     private final IngestionHandler ingestionHandler;
     private final IngestionHandler.QueueCreator creator;
     private final IngestionHandler.QueueEventListener logListener;
+    private final AckMode ackMode;
+    /** Where Arrow files wait to be written to Parquet: the journal, or a temporary directory. */
+    private final Path batchDir;
+    /** Wait before a journaled batch whose write failed is queued again. */
+    private final Duration retryDelay;
     /** Cached for {@link #getStats()} and {@link #close()}. */
     private volatile ParquetIngestionQueue queue;
+    private final BufferAllocator allocator = new RootAllocator();
+    private final BlockingQueue<VectorSchemaRoot> roots = new ArrayBlockingQueue<>(MAX_POOLED_ROOTS);
 
     public SignalWriter(String queueId,
                         IngestionHandler ingestionHandler,
                         IngestionConfig ingestionConfig) throws IOException {
+        this(queueId, ingestionHandler, ingestionConfig, AckMode.PARQUET, null);
+    }
+
+    /**
+     * @param journalPath parent of the per-signal journal directories, required with {@link AckMode#JOURNAL}
+     */
+    public SignalWriter(String queueId,
+                        IngestionHandler ingestionHandler,
+                        IngestionConfig ingestionConfig,
+                        AckMode ackMode,
+                        Path journalPath) throws IOException {
         this.queueId          = queueId;
         this.ingestionHandler = ingestionHandler;
+        this.ackMode          = ackMode;
+        this.retryDelay       = ingestionConfig.maxDelay();
+        if (ackMode == AckMode.JOURNAL) {
+            if (journalPath == null) {
+                throw new IllegalArgumentException("A journal path is required with ack mode " + ackMode);
+            }
+            this.batchDir = Files.createDirectories(journalPath.resolve(queueId));
+        } else {
+            this.batchDir = Files.createTempDirectory("otel-" + queueId + "-arrow-");
+        }
 
         String outputPath = ingestionHandler.getTargetPath(queueId);
         if (outputPath == null) outputPath = "./" + queueId;
@@ -71,7 +132,9 @@ public class SignalWriter implements Closeable {
                 ingestionConfig.maxPendingWrite(),
                 ingestionConfig.maxDelay(),
                 ingestionHandler,
-                scheduler, Clock.systemUTC());
+                scheduler, Clock.systemUTC(),
+                // Journaled files of a failed write are queued again rather than lost
+                ackMode == AckMode.JOURNAL);
 
         this.logListener = new IngestionHandler.QueueEventListener() {
             @Override public void onCreated(String id)   { log.info("Queue created: {}", id);   }
@@ -84,6 +147,89 @@ public class SignalWriter implements Closeable {
             log.info("Handler returned no target path for '{}', using local output path: {}", queueId, resolvedOutputPath);
             this.queue = creator.create(queueId, resolvedOutputPath);
         }
+        if (ackMode == AckMode.JOURNAL) {
+            replayJournal();
+        }
+    }
+
+    /**
+     * Queues the journaled batches of a previous run that were not written to Parquet.
+     */
+    private void replayJournal() throws IOException {
+        List<Path> journaled;
+        try (var files = Files.list(batchDir)) {
+            journaled = files.sorted().toList();
+        }
+        int replayed = 0;
+        for (Path file : journaled) {
+            if (!file.getFileName().toString().endsWith(".arrow")) {
+                // Never synced, so never acknowledged
+                Files.deleteIfExists(file);
+                continue;
+            }
+            // Acknowledged by the previous run, so queued again whatever happens to this attempt
+            retryOnFailure(file, submit(file), 1);
+            replayed++;
+        }
+        if (replayed > 0) {
+            log.info("Replaying {} journaled batches for '{}'", replayed, queueId);
+        }
+    }
+
+    /**
+     * Returns an empty root of {@code schema}, the schema of the signal, to decode an export into. It must be
+     * given back with {@link #releaseRoot} once it is written with {@link #writeArrowFile}.
+     */
+    public VectorSchemaRoot acquireRoot(Schema schema) {
+        VectorSchemaRoot root = roots.poll();
+        if (root == null) {
+            root = VectorSchemaRoot.create(schema, allocator);
+            root.allocateNew();
+            return root;
+        }
+        root.getFieldVectors().forEach(ValueVector::reset);
+        root.setRowCount(0);
+        return root;
+    }
+
+    public void releaseRoot(VectorSchemaRoot root) {
+        if (!roots.offer(root)) {
+            root.close();
+        }
+    }
+
+    /**
+     * Writes {@code root} to a new Arrow file for {@link #addBatch}. With {@link AckMode#JOURNAL} the file is
+     * synced and only then given its {@code .arrow} name, so that a crash never leaves a partial batch to replay.
+     */
+    public Path writeArrowFile(VectorSchemaRoot root) throws IOException {
+        // Named by arrival time so that journaled batches are replayed in order
+        String name = "batch_" + System.currentTimeMillis() + "_" + UUID.randomUUID();
+        Path file = batchDir.resolve(name + ".arrow");
+        if (ackMode != AckMode.JOURNAL) {
+            write(root, file, false);
+            return file;
+        }
+        Path partial = batchDir.resolve(name + ".partial");
+        write(root, partial, true);
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        // The rename is only durable once the directory is synced
+        try (var directory = FileChannel.open(batchDir, StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+        return file;
+    }
+
+    private static void write(VectorSchemaRoot root, Path file, boolean sync) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file.toFile());
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, null, Channels.newChannel(fos))) {
+            writer.start();
+            writer.writeBatch();
+            writer.end();
+            if (sync) {
+                fos.getFD().sync();
+            }
+        }
     }
 
     /**
@@ -92,6 +238,23 @@ public class SignalWriter implements Closeable {
      * tombstone detection run automatically.
      */
     public CompletableFuture<Void> addBatch(Path arrowFile) {
+        var written = submit(arrowFile);
+        if (ackMode == AckMode.JOURNAL) {
+            if (written.isCompletedExceptionally()) {
+                // Rejected outright, so the export is answered with the error and sent again by the exporter
+                try {
+                    Files.deleteIfExists(arrowFile);
+                } catch (IOException e) {
+                    log.warn("Failed to delete rejected journaled batch {}", arrowFile, e);
+                }
+            } else {
+                retryOnFailure(arrowFile, written, 1);
+            }
+        }
+        return written;
+    }
+
+    private CompletableFuture<Void> submit(Path arrowFile) {
         ParquetIngestionQueue q = ingestionHandler.getOrCreateQueue(queueId, creator, logListener);
         if (q == null) q = this.queue;
         else this.queue = q;
@@ -100,11 +263,50 @@ public class SignalWriter implements Closeable {
             Batch<String> batch = new Batch<>(new String[0], new String[0],
                     arrowFile.toString(), null, 0, fileSize, "parquet", Instant.now());
             return q.add(batch).thenApply(ignored -> null);
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
             return CompletableFuture.failedFuture(e);
         }
     }
 
+    /**
+     * Queues an acknowledged journaled batch again when its write fails. The queue keeps the file of a failed
+     * write, so a batch given up on or not retried because the writer closes is replayed on the next start.
+     */
+    private void retryOnFailure(Path file, CompletableFuture<Void> written, int attempt) {
+        written.whenComplete((v, ex) -> {
+            if (ex == null) {
+                return;
+            }
+            if (attempt >= MAX_WRITE_ATTEMPTS) {
+                log.error("Failed to write journaled batch {} for '{}' after {} attempts, keeping it for the next start",
+                        file, queueId, attempt, ex);
+                return;
+            }
+            log.warn("Failed to write journaled batch {} for '{}', queueing it again in {}", file, queueId, retryDelay, ex);
+            try {
+                scheduler.schedule(() -> retryOnFailure(file, submit(file), attempt + 1),
+                        retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.info("SignalWriter[{}] closing, journaled batch {} is queued again on the next start", queueId, file);
+            }
+        });
+    }
+
+    /**
+     * Returns when the export of a batch can be acknowledged, given the result of {@link #addBatch}: once it is
+     * written with {@link AckMode#PARQUET}, and right away otherwise unless the queue already rejected it.
+     */
+    public CompletableFuture<Void> acknowledgement(CompletableFuture<Void> written) {
+        if (ackMode == AckMode.PARQUET || written.isDone()) {
+            return written;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
     public Stats getStats() {
         return queue.getStats();
     }
@@ -117,6 +319,14 @@ public class SignalWriter implements Closeable {
             log.warn("Error closing ingestion queue for '{}'", queueId, e);
         }
         scheduler.shutdown();
+        for (VectorSchemaRoot root; (root = roots.poll()) != null; ) {
+            root.close();
+        }
+        try {
+            allocator.close();
+        } catch (IllegalStateException e) {
+            log.warn("Arrow memory still in use when closing SignalWriter[{}]", queueId, e);
+        }
         log.info("SignalWriter[{}] closed", queueId);
     }
 }
@@ -1,197 +1,215 @@
 package io.dazzleduck.sql.otel.collector;
 
-import io.opentelemetry.proto.common.v1.InstrumentationScope;
-import io.opentelemetry.proto.common.v1.KeyValue;
-import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
 import io.opentelemetry.proto.trace.v1.Span;
 import io.opentelemetry.proto.trace.v1.Status;
 import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
 import org.apache.arrow.vector.TimeStampMilliVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.complex.ListVector;
 import org.apache.arrow.vector.complex.MapVector;
-import org.apache.arrow.vector.complex.impl.UnionMapWriter;
-import org.apache.arrow.vector.complex.writer.BaseWriter;
 
-import java.nio.charset.StandardCharsets;
-import java.util.HexFormat;
-import java.util.List;
+import java.io.IOException;
 
 /**
- * Writes a batch of OTLP spans directly into an Arrow VectorSchemaRoot,
- * bypassing the JavaRow intermediate representation.
+ * Decodes a serialized OTLP trace export straight into an Arrow VectorSchemaRoot, one row per span,
+ * without building the protobuf objects.
  */
 public class SpanBatchWriter {
 
-    private static final HexFormat HEX = HexFormat.of();
-
-    public static void write(List<SpanEntry> entries, VectorSchemaRoot root) {
-        root.allocateNew();
-
-        VarCharVector traceIdVec        = (VarCharVector)        root.getVector(OtelTraceSchema.COL_TRACE_ID);
-        VarCharVector spanIdVec         = (VarCharVector)        root.getVector(OtelTraceSchema.COL_SPAN_ID);
-        VarCharVector parentSpanIdVec   = (VarCharVector)        root.getVector(OtelTraceSchema.COL_PARENT_SPAN_ID);
-        VarCharVector nameVec           = (VarCharVector)        root.getVector(OtelTraceSchema.COL_NAME);
-        VarCharVector kindVec           = (VarCharVector)        root.getVector(OtelTraceSchema.COL_KIND);
-        TimeStampMilliVector startVec   = (TimeStampMilliVector) root.getVector(OtelTraceSchema.COL_START_TIME_MS);
-        TimeStampMilliVector endVec     = (TimeStampMilliVector) root.getVector(OtelTraceSchema.COL_END_TIME_MS);
-        BigIntVector durationVec        = (BigIntVector)         root.getVector(OtelTraceSchema.COL_DURATION_MS);
-        VarCharVector statusCodeVec     = (VarCharVector)        root.getVector(OtelTraceSchema.COL_STATUS_CODE);
-        VarCharVector statusMsgVec      = (VarCharVector)        root.getVector(OtelTraceSchema.COL_STATUS_MESSAGE);
-        MapVector attributesVec         = (MapVector)            root.getVector(OtelTraceSchema.COL_ATTRIBUTES);
-        MapVector resourceAttributesVec = (MapVector)            root.getVector(OtelTraceSchema.COL_RESOURCE_ATTRIBUTES);
-        VarCharVector scopeNameVec      = (VarCharVector)        root.getVector(OtelTraceSchema.COL_SCOPE_NAME);
-        VarCharVector scopeVersionVec   = (VarCharVector)        root.getVector(OtelTraceSchema.COL_SCOPE_VERSION);
-        ListVector eventsVec            = (ListVector)           root.getVector(OtelTraceSchema.COL_EVENTS);
-        ListVector linksVec             = (ListVector)           root.getVector(OtelTraceSchema.COL_LINKS);
-
-        UnionMapWriter attrWriter    = attributesVec.getWriter();
-        UnionMapWriter resAttrWriter = resourceAttributesVec.getWriter();
-
-        for (int i = 0; i < entries.size(); i++) {
-            SpanEntry entry = entries.get(i);
-            Span span = entry.span();
-            Resource resource = entry.resource();
-            InstrumentationScope scope = entry.scope();
-
-            writeVarChar(traceIdVec, i, hexOrNull(span.getTraceId().toByteArray()));
-            writeVarChar(spanIdVec, i, hexOrNull(span.getSpanId().toByteArray()));
-            writeVarChar(parentSpanIdVec, i, hexOrNull(span.getParentSpanId().toByteArray()));
-            writeVarChar(nameVec, i, LogRecordConverter.emptyToNull(span.getName()));
-
-            String kind = span.getKind().name();
-            if (kind.startsWith("SPAN_KIND_")) kind = kind.substring("SPAN_KIND_".length());
-            writeVarChar(kindVec, i, kind);
-
-            long startNanos = span.getStartTimeUnixNano();
-            long endNanos   = span.getEndTimeUnixNano();
-            long startMs = startNanos > 0 ? startNanos / 1_000_000L : 0L;
-            long endMs   = endNanos   > 0 ? endNanos   / 1_000_000L : 0L;
-            if (startNanos > 0) startVec.setSafe(i, startMs); else startVec.setNull(i);
-            if (endNanos   > 0) endVec.setSafe(i, endMs);     else endVec.setNull(i);
-            if (startNanos > 0 && endNanos > 0) durationVec.setSafe(i, endMs - startMs);
-            else durationVec.setNull(i);
-
-            Status status = span.getStatus();
-            String statusCode = status.getCode().name();
-            if (statusCode.startsWith("STATUS_CODE_")) statusCode = statusCode.substring("STATUS_CODE_".length());
-            writeVarChar(statusCodeVec, i, statusCode);
-            writeVarChar(statusMsgVec, i, LogRecordConverter.emptyToNull(status.getMessage()));
-
-            writeMap(attrWriter, i, span.getAttributesList());
-            writeMap(resAttrWriter, i, resource != null ? resource.getAttributesList() : List.of());
-
-            if (scope != null) {
-                writeVarChar(scopeNameVec, i, LogRecordConverter.emptyToNull(scope.getName()));
-                writeVarChar(scopeVersionVec, i, LogRecordConverter.emptyToNull(scope.getVersion()));
-            } else {
-                scopeNameVec.setNull(i);
-                scopeVersionVec.setNull(i);
-            }
+    private static final byte[][] KINDS = OtlpWireReader.enumNames(Span.SpanKind.class, "SPAN_KIND_");
+    private static final byte[][] STATUS_CODES = OtlpWireReader.enumNames(Status.StatusCode.class, "STATUS_CODE_");
+
+    private final FixedSizeBinaryVector traceIdVec;
+    private final FixedSizeBinaryVector spanIdVec;
+    private final FixedSizeBinaryVector parentSpanIdVec;
+    private final VarCharVector nameVec;
+    private final VarCharVector kindVec;
+    private final TimeStampMilliVector startVec;
+    private final TimeStampMilliVector endVec;
+    private final BigIntVector durationVec;
+    private final VarCharVector statusCodeVec;
+    private final VarCharVector statusMsgVec;
+    private final MapColumn attributes;
+    private final MapColumn resourceAttributes;
+    private final VarCharVector scopeNameVec;
+    private final VarCharVector scopeVersionVec;
+    private final ListColumn events;
+    private final VarCharVector eventNameVec;
+    private final BigIntVector eventTimeVec;
+    private final MapColumn eventAttributes;
+    private final ListColumn links;
+    private final FixedSizeBinaryVector linkTraceIdVec;
+    private final FixedSizeBinaryVector linkSpanIdVec;
+    private final MapColumn linkAttributes;
+    private int rows;
+
+    private SpanBatchWriter(VectorSchemaRoot root) {
+        traceIdVec         = (FixedSizeBinaryVector) root.getVector(OtelTraceSchema.COL_TRACE_ID);
+        spanIdVec          = (FixedSizeBinaryVector) root.getVector(OtelTraceSchema.COL_SPAN_ID);
+        parentSpanIdVec    = (FixedSizeBinaryVector) root.getVector(OtelTraceSchema.COL_PARENT_SPAN_ID);
+        nameVec            = (VarCharVector)         root.getVector(OtelTraceSchema.COL_NAME);
+        kindVec            = (VarCharVector)         root.getVector(OtelTraceSchema.COL_KIND);
+        startVec           = (TimeStampMilliVector)  root.getVector(OtelTraceSchema.COL_START_TIME_MS);
+        endVec             = (TimeStampMilliVector)  root.getVector(OtelTraceSchema.COL_END_TIME_MS);
+        durationVec        = (BigIntVector)          root.getVector(OtelTraceSchema.COL_DURATION_MS);
+        statusCodeVec      = (VarCharVector)         root.getVector(OtelTraceSchema.COL_STATUS_CODE);
+        statusMsgVec       = (VarCharVector)         root.getVector(OtelTraceSchema.COL_STATUS_MESSAGE);
+        attributes         = new MapColumn((MapVector) root.getVector(OtelTraceSchema.COL_ATTRIBUTES));
+        resourceAttributes = new MapColumn((MapVector) root.getVector(OtelTraceSchema.COL_RESOURCE_ATTRIBUTES));
+        scopeNameVec       = (VarCharVector)         root.getVector(OtelTraceSchema.COL_SCOPE_NAME);
+        scopeVersionVec    = (VarCharVector)         root.getVector(OtelTraceSchema.COL_SCOPE_VERSION);
+
+        events          = new ListColumn((ListVector) root.getVector(OtelTraceSchema.COL_EVENTS));
+        eventNameVec    = events.child("name", VarCharVector.class);
+        eventTimeVec    = events.child("time_ms", BigIntVector.class);
+        eventAttributes = new MapColumn(events.child("attributes", MapVector.class));
+
+        links          = new ListColumn((ListVector) root.getVector(OtelTraceSchema.COL_LINKS));
+        linkTraceIdVec = links.child("trace_id", FixedSizeBinaryVector.class);
+        linkSpanIdVec  = links.child("span_id", FixedSizeBinaryVector.class);
+        linkAttributes = new MapColumn(links.child("attributes", MapVector.class));
+    }
 
-            writeEvents(eventsVec.getWriter(), i, span);
-            writeLinks(linksVec.getWriter(), i, span);
+    /**
+     * Writes the spans of a serialized {@link ExportTraceServiceRequest} to {@code root}, which must be empty.
+     *
+     * @return the number of spans written
+     */
+    public static int write(byte[] request, VectorSchemaRoot root) throws IOException {
+        var writer = new SpanBatchWriter(root);
+        var reader = new OtlpWireReader(request);
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER) writer.writeResourceSpans(reader.message());
+            else reader.skip();
         }
-
-        root.setRowCount(entries.size());
+        root.setRowCount(writer.rows);
+        return writer.rows;
     }
 
-    private static void writeEvents(BaseWriter.ListWriter writer, int index, Span span) {
-        writer.setPosition(index);
-        if (span.getEventsCount() == 0) {
-            writer.writeNull();
-            return;
+    private void writeResourceSpans(OtlpWireReader reader) throws IOException {
+        OtlpWireReader resource = null;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceSpans.RESOURCE_FIELD_NUMBER) resource = reader.message();
+            else reader.skip();
         }
-        writer.startList();
-        for (Span.Event e : span.getEventsList()) {
-            BaseWriter.StructWriter sw = writer.struct();
-            sw.start();
-            writeStructVarChar(sw, "name", LogRecordConverter.emptyToNull(e.getName()));
-            if (e.getTimeUnixNano() > 0) {
-                sw.bigInt("time_ms").writeBigInt(e.getTimeUnixNano() / 1_000_000L);
-            } else {
-                sw.bigInt("time_ms").writeNull();
-            }
-            writeStructMap(sw, "attributes", e.getAttributesList());
-            sw.end();
+        resourceAttributes.nextResource();
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ResourceSpans.SCOPE_SPANS_FIELD_NUMBER) writeScopeSpans(reader.message(), resource);
+            else reader.skip();
         }
-        writer.endList();
     }
 
-    private static void writeLinks(BaseWriter.ListWriter writer, int index, Span span) {
-        writer.setPosition(index);
-        if (span.getLinksCount() == 0) {
-            writer.writeNull();
-            return;
+    private void writeScopeSpans(OtlpWireReader reader, OtlpWireReader resource) throws IOException {
+        var scope = OtlpWireReader.Scope.NONE;
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeSpans.SCOPE_FIELD_NUMBER) scope = reader.readScope();
+            else reader.skip();
         }
-        writer.startList();
-        for (Span.Link l : span.getLinksList()) {
-            BaseWriter.StructWriter sw = writer.struct();
-            sw.start();
-            writeStructVarChar(sw, "trace_id", hexOrNull(l.getTraceId().toByteArray()));
-            writeStructVarChar(sw, "span_id", hexOrNull(l.getSpanId().toByteArray()));
-            writeStructMap(sw, "attributes", l.getAttributesList());
-            sw.end();
+        reader = reader.reread();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            if (field == ScopeSpans.SPANS_FIELD_NUMBER) writeSpan(reader, resource, scope);
+            else reader.skip();
         }
-        writer.endList();
     }
 
-    private static void writeStructVarChar(BaseWriter.StructWriter sw, String name, String value) {
-        if (value == null) {
-            sw.varChar(name).writeNull();
-        } else {
-            sw.varChar(name).writeVarChar(value);
+    private void writeSpan(OtlpWireReader reader, OtlpWireReader resource, OtlpWireReader.Scope scope) throws IOException {
+        int row = rows++;
+        long startNanos = 0;
+        long endNanos = 0;
+        int kind = 0;
+        int statusCode = 0;
+        attributes.start(row);
+        events.startOnFirstElement(row);
+        links.startOnFirstElement(row);
+
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Span.TRACE_ID_FIELD_NUMBER             -> reader.readId(traceIdVec, row);
+                case Span.SPAN_ID_FIELD_NUMBER              -> reader.readId(spanIdVec, row);
+                case Span.PARENT_SPAN_ID_FIELD_NUMBER       -> reader.readId(parentSpanIdVec, row);
+                case Span.NAME_FIELD_NUMBER                 -> reader.readNonEmptyString(nameVec, row);
+                case Span.KIND_FIELD_NUMBER                 -> kind = reader.readEnum();
+                case Span.START_TIME_UNIX_NANO_FIELD_NUMBER -> startNanos = reader.readFixed64();
+                case Span.END_TIME_UNIX_NANO_FIELD_NUMBER   -> endNanos = reader.readFixed64();
+                case Span.ATTRIBUTES_FIELD_NUMBER           -> reader.readAttribute(attributes);
+                case Span.EVENTS_FIELD_NUMBER               -> writeEvent(reader);
+                case Span.LINKS_FIELD_NUMBER                -> writeLink(reader);
+                case Span.STATUS_FIELD_NUMBER               -> statusCode = readStatus(reader, row);
+                default                                     -> reader.skip();
+            }
         }
+        reader.exit(limit);
+        attributes.end();
+        events.end();
+        links.end();
+
+        kindVec.setSafe(row, OtlpWireReader.enumName(KINDS, kind));
+        long startMs = startNanos / 1_000_000L;
+        long endMs   = endNanos   / 1_000_000L;
+        if (startNanos > 0) startVec.setSafe(row, startMs);
+        if (endNanos   > 0) endVec.setSafe(row, endMs);
+        if (startNanos > 0 && endNanos > 0) durationVec.setSafe(row, endMs - startMs);
+        statusCodeVec.setSafe(row, OtlpWireReader.enumName(STATUS_CODES, statusCode));
+        resourceAttributes.writeResource(row, resource);
+        scope.write(scopeNameVec, scopeVersionVec, row);
     }
 
-    private static void writeStructMap(BaseWriter.StructWriter sw, String name, List<KeyValue> kvList) {
-        BaseWriter.MapWriter mw = sw.map(name, false);
-        if (kvList.isEmpty()) {
-            mw.writeNull();
-            return;
-        }
-        mw.startMap();
-        for (KeyValue kv : kvList) {
-            mw.startEntry();
-            ((BaseWriter.ListWriter) mw.key()).varChar().writeVarChar(kv.getKey());
-            String val = LogRecordConverter.anyValueToString(kv.getValue());
-            if (val != null) {
-                ((BaseWriter.ListWriter) mw.value()).varChar().writeVarChar(val);
-            } else {
-                ((BaseWriter.ListWriter) mw.value()).varChar().writeNull();
+    /**
+     * Writes the status message of the span and returns its status code.
+     */
+    private int readStatus(OtlpWireReader reader, int row) throws IOException {
+        int code = 0;
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Status.MESSAGE_FIELD_NUMBER -> reader.readNonEmptyString(statusMsgVec, row);
+                case Status.CODE_FIELD_NUMBER    -> code = reader.readEnum();
+                default                          -> reader.skip();
             }
-            mw.endEntry();
         }
-        mw.endMap();
+        reader.exit(limit);
+        return code;
     }
 
-    private static void writeMap(UnionMapWriter writer, int index, List<KeyValue> kvList) {
-        writer.setPosition(index);
-        writer.startMap();
-        for (KeyValue kv : kvList) {
-            writer.startEntry();
-            ((BaseWriter.ListWriter) writer.key()).varChar().writeVarChar(kv.getKey());
-            String val = LogRecordConverter.anyValueToString(kv.getValue());
-            if (val != null) {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeVarChar(val);
-            } else {
-                ((BaseWriter.ListWriter) writer.value()).varChar().writeNull();
+    private void writeEvent(OtlpWireReader reader) throws IOException {
+        int event = events.nextElement();
+        eventAttributes.startOnFirstElement(event);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Span.Event.TIME_UNIX_NANO_FIELD_NUMBER -> {
+                    long nanos = reader.readFixed64();
+                    if (nanos > 0) eventTimeVec.setSafe(event, nanos / 1_000_000L);
+                }
+                case Span.Event.NAME_FIELD_NUMBER       -> reader.readNonEmptyString(eventNameVec, event);
+                case Span.Event.ATTRIBUTES_FIELD_NUMBER -> reader.readAttribute(eventAttributes);
+                default                                 -> reader.skip();
             }
-            writer.endEntry();
         }
-        writer.endMap();
+        reader.exit(limit);
+        eventAttributes.end();
     }
 
-    private static void writeVarChar(VarCharVector vec, int index, String value) {
-        if (value == null) {
-            vec.setNull(index);
-        } else {
-            vec.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+    private void writeLink(OtlpWireReader reader) throws IOException {
+        int link = links.nextElement();
+        linkAttributes.startOnFirstElement(link);
+        int limit = reader.enter();
+        for (int field; (field = reader.nextField()) != 0; ) {
+            switch (field) {
+                case Span.Link.TRACE_ID_FIELD_NUMBER   -> reader.readId(linkTraceIdVec, link);
+                case Span.Link.SPAN_ID_FIELD_NUMBER    -> reader.readId(linkSpanIdVec, link);
+                case Span.Link.ATTRIBUTES_FIELD_NUMBER -> reader.readAttribute(linkAttributes);
+                default                                -> reader.skip();
+            }
         }
-    }
-
-    private static String hexOrNull(byte[] bytes) {
-        return bytes.length > 0 ? HEX.formatHex(bytes) : null;
+        reader.exit(limit);
+        linkAttributes.end();
     }
 }
@@ -0,0 +1,377 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.dazzleduck.sql.otel.collector.config.TraceSamplingConfig;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tail-based sampling of traces ahead of the trace {@link SignalWriter}. Each export is decoded into a pooled Arrow
+ * root, off the heap, and buffered for the decision wait; only a few fields per trace are kept on the heap. Once a
+ * buffered export has waited that long, or sooner when the buffered roots hold more than the configured bytes, each
+ * of its traces that is not decided yet is decided on the spans seen so far. A trace is kept
+ * <ol>
+ *   <li>if one of its spans has status {@code ERROR}, when errors are kept,</li>
+ *   <li>if it lasted longer than the latency percentile of the recently decided traces,</li>
+ *   <li>and otherwise if its trace id falls in the sampled ratio, as OpenTelemetry's {@code TraceIdRatioBased}
+ *   sampler decides, so that every collector and SDK sampling at the same ratio keeps the same traces.</li>
+ * </ol>
+ * A decision is remembered for a decision wait after it is made, or after the last span of its trace if that arrives
+ * later, so that late spans follow it. The kept spans of the exports decided together are written as one Arrow batch.
+ *
+ * <p>An export is acknowledged once its kept spans are written, as {@link SignalWriter#acknowledgement} decides, or
+ * right away with {@link AckMode#MEMORY}, since buffered spans are lost if the collector stops either way.
+ */
+public class TraceSampler implements ExportStage {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceSampler.class);
+
+    private static final byte[] ERROR = "ERROR".getBytes(StandardCharsets.UTF_8);
+    private static final TraceKey NO_TRACE = new TraceKey(0, 0);
+
+    private final SignalWriter writer;
+    private final OtelCollectorMetrics metrics;
+    private final long decisionWaitMs;
+    private final long maxBufferedBytes;
+    private final boolean keepErrors;
+    private final double latencyPercentile;
+    /** Trace ids whose random part is below this in absolute value are kept, as in {@code TraceIdRatioBased}. */
+    private final long idUpperBound;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private final ArrayDeque<Buffered> buffered = new ArrayDeque<>();
+    private final Map<TraceKey, Trace> traces = new HashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long bufferedBytes;
+    private boolean closed;
+
+    /** A trace id, as its high and low 8 bytes read big-endian. */
+    private record TraceKey(long high, long low) {
+    }
+
+    private static final class Trace {
+        long startMs = Long.MAX_VALUE;
+        long endMs = Long.MIN_VALUE;
+        boolean error;
+        /** When the last span arrived, or when the trace was decided if later. */
+        long lastSeen;
+        /** Null until the trace is decided. */
+        Boolean keep;
+    }
+
+    /** A buffered export, with the trace of each of its rows. */
+    private record Buffered(VectorSchemaRoot root, TraceKey[] traces, Export export, long arrivedAt, long bytes) {
+    }
+
+    private record Decided(Buffered buffered, BitSet kept) {
+    }
+
+    public TraceSampler(SignalWriter writer, OtelCollectorMetrics metrics, TraceSamplingConfig config) {
+        this.writer = writer;
+        this.metrics = metrics;
+        this.decisionWaitMs = config.decisionWait().toMillis();
+        this.maxBufferedBytes = config.maxBufferedBytes();
+        this.keepErrors = config.keepErrors();
+        this.latencyPercentile = config.latencyPercentile();
+        this.idUpperBound = config.ratio() <= 0 ? Long.MIN_VALUE
+                : config.ratio() >= 1 ? Long.MAX_VALUE
+                : (long) (config.ratio() * Long.MAX_VALUE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "otel-trace-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        long tickMs = Math.max(10, decisionWaitMs / 10);
+        scheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decodes {@code request} and buffers its spans until their traces are decided.
+     */
+    @Override
+    public Export add(byte[] request) throws IOException {
+        VectorSchemaRoot root = writer.acquireRoot(OtelTraceSchema.SCHEMA);
+        int spans;
+        try {
+            spans = SpanBatchWriter.write(request, root);
+        } catch (IOException | RuntimeException e) {
+            writer.releaseRoot(root);
+            throw e;
+        }
+        if (spans == 0) {
+            writer.releaseRoot(root);
+            return Export.completed(0);
+        }
+        TraceKey[] rowTraces = traceKeys(root);
+        long bytes = 0;
+        for (FieldVector vector : root.getFieldVectors()) {
+            bytes += vector.getBufferSize();
+        }
+        var export = new Export(spans, new CompletableFuture<>(), writer.getAckMode() == AckMode.MEMORY
+                ? CompletableFuture.completedFuture(null)
+                : new CompletableFuture<>());
+        boolean overBudget;
+        synchronized (this) {
+            if (closed) {
+                writer.releaseRoot(root);
+                throw new IOException("Trace sampler is closed");
+            }
+            long now = now();
+            track(root, rowTraces, now);
+            buffered.add(new Buffered(root, rowTraces, export, now, bytes));
+            bufferedBytes += bytes;
+            overBudget = bufferedBytes > maxBufferedBytes;
+        }
+        if (overBudget) {
+            try {
+                scheduler.execute(this::tick);
+            } catch (RejectedExecutionException e) {
+                // Closing, which decides every buffered export anyway
+            }
+        }
+        return export;
+    }
+
+    /**
+     * Arrow buffers are little-endian, while trace ids are compared big-endian, as OpenTelemetry reads them.
+     */
+    private static TraceKey[] traceKeys(VectorSchemaRoot root) {
+        var ids = (FixedSizeBinaryVector) root.getVector(OtelTraceSchema.COL_TRACE_ID);
+        ArrowBuf data = ids.getDataBuffer();
+        var keys = new TraceKey[root.getRowCount()];
+        for (int row = 0; row < keys.length; row++) {
+            long offset = (long) row * ids.getByteWidth();
+            keys[row] = ids.isNull(row) ? NO_TRACE
+                    : new TraceKey(Long.reverseBytes(data.getLong(offset)), Long.reverseBytes(data.getLong(offset + 8)));
+        }
+        return keys;
+    }
+
+    private void track(VectorSchemaRoot root, TraceKey[] rowTraces, long now) {
+        var status = (VarCharVector) root.getVector(OtelTraceSchema.COL_STATUS_CODE);
+        var start = (TimeStampMilliVector) root.getVector(OtelTraceSchema.COL_START_TIME_MS);
+        var end = (TimeStampMilliVector) root.getVector(OtelTraceSchema.COL_END_TIME_MS);
+        for (int row = 0; row < rowTraces.length; row++) {
+            Trace trace = traces.computeIfAbsent(rowTraces[row], key -> new Trace());
+            trace.lastSeen = now;
+            if (trace.keep != null) {
+                continue;
+            }
+            if (!start.isNull(row)) {
+                trace.startMs = Math.min(trace.startMs, start.get(row));
+            }
+            if (!end.isNull(row)) {
+                trace.endMs = Math.max(trace.endMs, end.get(row));
+            }
+            if (!status.isNull(row) && Arrays.equals(status.get(row), ERROR)) {
+                trace.error = true;
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            decide(false);
+        } catch (RuntimeException e) {
+            log.error("Failed to sample buffered traces", e);
+        }
+    }
+
+    /**
+     * Decides the traces of the exports that waited long enough, or of every export when {@code all} is set, and
+     * writes their kept spans.
+     */
+    private void decide(boolean all) {
+        var due = new ArrayList<Decided>();
+        int keptTraces = 0;
+        int droppedTraces = 0;
+        synchronized (this) {
+            long now = now();
+            while (!buffered.isEmpty() && (all || bufferedBytes > maxBufferedBytes
+                    || buffered.peek().arrivedAt() + decisionWaitMs <= now)) {
+                Buffered next = buffered.poll();
+                bufferedBytes -= next.bytes();
+                var kept = new BitSet(next.traces().length);
+                for (int row = 0; row < next.traces().length; row++) {
+                    Trace trace = traces.get(next.traces()[row]);
+                    if (trace.keep == null) {
+                        trace.keep = keep(next.traces()[row], trace);
+                        trace.lastSeen = now;
+                        if (trace.keep) {
+                            keptTraces++;
+                        } else {
+                            droppedTraces++;
+                        }
+                    }
+                    if (trace.keep) {
+                        kept.set(row);
+                    }
+                }
+                due.add(new Decided(next, kept));
+            }
+            // Every buffered span of a trace arrived before its last one, so a trace forgotten here is not buffered
+            traces.values().removeIf(trace -> trace.keep != null && (all || trace.lastSeen + decisionWaitMs <= now));
+        }
+        if (!due.isEmpty()) {
+            write(due, keptTraces, droppedTraces);
+        }
+    }
+
+    private boolean keep(TraceKey key, Trace trace) {
+        long durationMs = trace.endMs >= trace.startMs ? trace.endMs - trace.startMs : 0;
+        boolean slow = latencyPercentile < 1 && latencies.exceeds(latencyPercentile, durationMs);
+        latencies.record(durationMs);
+        return (keepErrors && trace.error) || slow || Math.abs(key.low()) < idUpperBound;
+    }
+
+    private void write(List<Decided> due, int keptTraces, int droppedTraces) {
+        VectorSchemaRoot out = writer.acquireRoot(OtelTraceSchema.SCHEMA);
+        var exports = new ArrayList<Export>(due.size());
+        int keptSpans = 0;
+        int droppedSpans = 0;
+        try {
+            for (Decided decided : due) {
+                VectorSchemaRoot root = decided.buffered().root();
+                BitSet kept = decided.kept();
+                for (int row = kept.nextSetBit(0); row >= 0; row = kept.nextSetBit(row + 1)) {
+                    for (int i = 0; i < root.getFieldVectors().size(); i++) {
+                        out.getVector(i).copyFromSafe(row, keptSpans, root.getVector(i));
+                    }
+                    keptSpans++;
+                }
+                droppedSpans += root.getRowCount() - kept.cardinality();
+                exports.add(decided.buffered().export());
+            }
+        } finally {
+            for (Decided decided : due) {
+                writer.releaseRoot(decided.buffered().root());
+            }
+        }
+        out.setRowCount(keptSpans);
+        metrics.recordSampling(keptSpans, droppedSpans, keptTraces, droppedTraces);
+        log.debug("Sampled {} exports: kept {} spans of {} traces, dropped {} spans of {} traces",
+                exports.size(), keptSpans, keptTraces, droppedSpans, droppedTraces);
+
+        if (keptSpans == 0) {
+            writer.releaseRoot(out);
+            for (Export export : exports) {
+                export.written().complete(null);
+                export.acknowledged().complete(null);
+            }
+            return;
+        }
+        Path arrowFile;
+        try {
+            arrowFile = writer.writeArrowFile(out);
+        } catch (IOException e) {
+            log.error("Failed to write Arrow file for {} sampled spans", keptSpans, e);
+            for (Export export : exports) {
+                export.written().completeExceptionally(e);
+                export.acknowledged().completeExceptionally(e);
+            }
+            return;
+        } finally {
+            writer.releaseRoot(out);
+        }
+        var written = writer.addBatch(arrowFile);
+        var acknowledged = writer.acknowledgement(written);
+        for (Export export : exports) {
+            ExportBatcher.forward(written, export.written());
+            ExportBatcher.forward(acknowledged, export.acknowledged());
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Decides every buffered trace without waiting any longer.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        decide(true);
+    }
+
+    /**
+     * Trace durations in buckets 10% apart, so that a percentile is known to within 10% from a few hundred
+     * counters. The counts are halved every {@link #HALF_LIFE} traces, so that the percentile follows recent traces.
+     */
+    private static final class LatencyHistogram {
+
+        private static final double LOG_GROWTH = Math.log(1.1);
+        /** Up to about a year in milliseconds. */
+        private static final int BUCKETS = 256;
+        /** Traces recorded before any is slow. */
+        private static final long MIN_COUNT = 100;
+        private static final long HALF_LIFE = 10_000;
+
+        private final long[] counts = new long[BUCKETS];
+        private long total;
+
+        void record(long durationMs) {
+            counts[bucket(durationMs)]++;
+            if (++total >= HALF_LIFE) {
+                total = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] >>= 1;
+                    total += counts[i];
+                }
+            }
+        }
+
+        /**
+         * @return whether {@code durationMs} is in a bucket above the one holding {@code percentile}
+         */
+        boolean exceeds(double percentile, long durationMs) {
+            if (total < MIN_COUNT) {
+                return false;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            int bucket = 0;
+            for (; bucket < BUCKETS - 1; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    break;
+                }
+            }
+            return bucket(durationMs) > bucket;
+        }
+
+        private static int bucket(long durationMs) {
+            return durationMs <= 0 ? 0 : Math.min(BUCKETS - 1, 1 + (int) (Math.log(durationMs) / LOG_GROWTH));
+        }
+    }
+}
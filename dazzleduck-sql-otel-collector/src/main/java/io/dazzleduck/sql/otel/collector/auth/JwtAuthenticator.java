@@ -0,0 +1,152 @@
+package io.dazzleduck.sql.otel.collector.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dazzleduck.sql.common.SslUtils;
+import io.dazzleduck.sql.common.auth.LoginResponse;
+import io.dazzleduck.sql.commons.auth.Validator;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKey;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Checks the Authorization header of an export, shared by the gRPC and HTTP receivers. Basic credentials are
+ * validated against the configured users, or by the login service when a login URL is set, and exchanged for a
+ * JWT; a bearer token must be a JWT signed with the secret key.
+ */
+public class JwtAuthenticator {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthenticator.class);
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HttpClient HTTP_CLIENT = SslUtils.httpClient();
+
+    private final SecretKey secretKey;
+    private final JwtParser jwtParser;
+    private final Map<String, byte[]> userHashMap;
+    private final Duration jwtExpiration;
+    private final String loginUrl;
+
+    public JwtAuthenticator(SecretKey secretKey, Map<String, byte[]> userHashMap,
+                            Duration jwtExpiration, String loginUrl) {
+        this.secretKey = secretKey;
+        this.jwtParser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
+        this.userHashMap = userHashMap;
+        this.jwtExpiration = jwtExpiration;
+        this.loginUrl = loginUrl;
+    }
+
+    /**
+     * @param authHeader the Authorization header of the request, null if it has none
+     * @return the Authorization header to send back with the response: a new token for Basic credentials, null for
+     *         a valid bearer token
+     * @throws AuthenticationException if the request is not authenticated
+     */
+    public String authenticate(String authHeader) throws AuthenticationException {
+        if (authHeader == null) {
+            throw new AuthenticationException("Missing Authorization header");
+        }
+        if (authHeader.startsWith(BASIC_PREFIX)) {
+            return handleBasicAuth(authHeader.substring(BASIC_PREFIX.length()));
+        } else if (authHeader.startsWith(BEARER_PREFIX)) {
+            handleBearer(authHeader.substring(BEARER_PREFIX.length()));
+            return null;
+        } else {
+            throw new AuthenticationException("Unsupported Authorization scheme");
+        }
+    }
+
+    private String handleBasicAuth(String encoded) throws AuthenticationException {
+        String username;
+        String password;
+        try {
+            String decoded = new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int colonPos = decoded.indexOf(':');
+            if (colonPos == -1) {
+                throw new AuthenticationException("Invalid Basic auth format");
+            }
+            username = decoded.substring(0, colonPos);
+            password = decoded.substring(colonPos + 1);
+        } catch (IllegalArgumentException e) {
+            log.debug("Basic auth failed: {}", e.getMessage());
+            throw new AuthenticationException("Authentication failed");
+        }
+        try {
+            return loginUrl != null
+                    ? delegateLogin(username, password)
+                    : validateLocallyAndGenerateToken(username, password);
+        } catch (Exception e) {
+            log.debug("Basic auth failed: {}", e.getMessage());
+            throw new AuthenticationException("Authentication failed");
+        }
+    }
+
+    private String delegateLogin(String username, String password) throws Exception {
+        String requestBody = MAPPER.writeValueAsString(Map.of(
+                "username", username,
+                "password", password
+        ));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(loginUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .build();
+        HttpResponse<String> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("Login delegation failed: " + response.statusCode());
+        }
+        LoginResponse result = MAPPER.readValue(response.body(), LoginResponse.class);
+        return result.tokenType() + " " + result.accessToken();
+    }
+
+    private String validateLocallyAndGenerateToken(String username, String password) {
+        byte[] storedHash = userHashMap.get(username);
+        if (storedHash == null || !Validator.passwordMatch(storedHash, Validator.hash(password))) {
+            throw new RuntimeException("Invalid credentials");
+        }
+        return BEARER_PREFIX + generateToken(username);
+    }
+
+    private void handleBearer(String token) throws AuthenticationException {
+        try {
+            jwtParser.parseSignedClaims(token);
+        } catch (Exception e) {
+            log.debug("JWT validation failed: {}", e.getMessage());
+            throw new AuthenticationException("Invalid or expired JWT token");
+        }
+    }
+
+    private String generateToken(String subject) {
+        Calendar expiration = Calendar.getInstance();
+        expiration.add(Calendar.MINUTE, (int) jwtExpiration.toMinutes());
+        return Jwts.builder()
+                .subject(subject)
+                .expiration(expiration.getTime())
+                .signWith(secretKey)
+                .compact();
+    }
+
+    /**
+     * A request that is not authenticated, with the reason to send back.
+     */
+    public static class AuthenticationException extends Exception {
+        public AuthenticationException(String message) {
+            super(message);
+        }
+    }
+}
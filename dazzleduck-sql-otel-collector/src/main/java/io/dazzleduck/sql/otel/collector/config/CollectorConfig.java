@@ -8,10 +8,12 @@ import io.dazzleduck.sql.commons.ingestion.IngestionConfig;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.IngestionTaskFactoryProvider;
 import io.dazzleduck.sql.commons.ingestion.NOOPIngestionTaskFactoryProvider;
+import io.dazzleduck.sql.otel.collector.AckMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
@@ -110,6 +112,56 @@ public class CollectorConfig {
         return getInt("grpc_port", 4317);
     }
 
+    /**
+     * Returns the port of the OTLP/HTTP receiver, which is disabled when it is negative.
+     */
+    public int getHttpPort() {
+        return getInt("http_port", 4318);
+    }
+
+    /**
+     * Returns the rows after which the HTTP receiver writes the exports it batched together.
+     */
+    public int getHttpBatchMaxRows() {
+        return getInt("http_batch.max_rows", 10_000);
+    }
+
+    /**
+     * Returns how long the HTTP receiver batches exports together before writing them.
+     */
+    public Duration getHttpBatchMaxDelay() {
+        return Duration.ofMillis(getLong("http_batch.max_delay_ms", 200));
+    }
+
+    /**
+     * Returns the tail-based trace sampling from the {@code trace_sampling} block, disabled unless enabled there.
+     */
+    public TraceSamplingConfig getTraceSampling() {
+        var defaults = TraceSamplingConfig.DISABLED;
+        return new TraceSamplingConfig(
+                getBoolean("trace_sampling.enabled", defaults.enabled()),
+                Duration.ofMillis(getLong("trace_sampling.decision_wait_ms", defaults.decisionWait().toMillis())),
+                getLong("trace_sampling.max_buffered_bytes", defaults.maxBufferedBytes()),
+                getBoolean("trace_sampling.keep_errors", defaults.keepErrors()),
+                getDouble("trace_sampling.latency_percentile", defaults.latencyPercentile()),
+                getDouble("trace_sampling.ratio", defaults.ratio()));
+    }
+
+    /**
+     * Returns the metric rollups from the {@code metric_rollup} block, disabled unless enabled there.
+     */
+    public MetricRollupConfig getMetricRollup() {
+        var defaults = MetricRollupConfig.DISABLED;
+        List<Duration> windows = getLongList("metric_rollup.windows_ms",
+                defaults.windows().stream().map(Duration::toMillis).toList())
+                .stream().map(Duration::ofMillis).toList();
+        return new MetricRollupConfig(
+                getBoolean("metric_rollup.enabled", defaults.enabled()),
+                windows,
+                Duration.ofMillis(getLong("metric_rollup.grace_ms", defaults.grace().toMillis())),
+                getInt("metric_rollup.max_series", defaults.maxSeries()));
+    }
+
     /**
      * Returns the startup SQL to execute on the singleton DuckDB connection.
      * Delegates to {@link StartupScriptProvider#load} which reads from the
@@ -161,6 +213,14 @@ public class CollectorConfig {
         }
     }
 
+    public AckMode getAckMode() {
+        return AckMode.fromString(getString("ack_mode", "parquet"));
+    }
+
+    public Path getJournalPath() {
+        return Path.of(getString("journal_path", "./otel-journal"));
+    }
+
     public String getServiceName() {
         return getString("service_name", "open-telemetry-collector");
     }
@@ -206,6 +266,11 @@ public class CollectorConfig {
     public CollectorProperties toProperties() {
         CollectorProperties props = new CollectorProperties();
         props.setGrpcPort(getGrpcPort());
+        props.setHttpPort(getHttpPort());
+        props.setHttpBatchMaxRows(getHttpBatchMaxRows());
+        props.setHttpBatchMaxDelay(getHttpBatchMaxDelay());
+        props.setTraceSampling(getTraceSampling());
+        props.setMetricRollup(getMetricRollup());
         props.setStartupScript(getStartupScript());
         props.setAuthentication(getAuthentication());
         props.setSecretKey(getSecretKey());
@@ -215,6 +280,8 @@ public class CollectorConfig {
         props.setServiceName(getServiceName());
         props.setIngestionHandler(getIngestionHandler());
         props.setIngestionConfig(getIngestionConfig());
+        props.setAckMode(getAckMode());
+        props.setJournalPath(getJournalPath());
         return props;
     }
 
@@ -254,6 +321,30 @@ public class CollectorConfig {
         return defaultValue;
     }
 
+    private double getDouble(String path, double defaultValue) {
+        String fullPath = CONFIG_PREFIX + "." + path;
+        try {
+            if (config.hasPath(fullPath)) {
+                return config.getDouble(fullPath);
+            }
+        } catch (Exception e) {
+            log.debug("Error reading config path {}: {}", fullPath, e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    private boolean getBoolean(String path, boolean defaultValue) {
+        String fullPath = CONFIG_PREFIX + "." + path;
+        try {
+            if (config.hasPath(fullPath)) {
+                return config.getBoolean(fullPath);
+            }
+        } catch (Exception e) {
+            log.debug("Error reading config path {}: {}", fullPath, e.getMessage());
+        }
+        return defaultValue;
+    }
+
     private List<String> getStringList(String path, List<String> defaultValue) {
         String fullPath = CONFIG_PREFIX + "." + path;
         try {
@@ -265,4 +356,16 @@ public class CollectorConfig {
         }
         return defaultValue;
     }
+
+    private List<Long> getLongList(String path, List<Long> defaultValue) {
+        String fullPath = CONFIG_PREFIX + "." + path;
+        try {
+            if (config.hasPath(fullPath)) {
+                return config.getLongList(fullPath);
+            }
+        } catch (Exception e) {
+            log.debug("Error reading config path {}: {}", fullPath, e.getMessage());
+        }
+        return defaultValue;
+    }
 }
@@ -3,9 +3,11 @@ package io.dazzleduck.sql.otel.collector.config;
 import io.dazzleduck.sql.commons.ingestion.IngestionConfig;
 import io.dazzleduck.sql.commons.ingestion.IngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.NOOPIngestionTaskFactoryProvider;
+import io.dazzleduck.sql.otel.collector.AckMode;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
@@ -13,12 +15,20 @@ import java.util.Map;
 public class CollectorProperties {
 
     private int grpcPort = 4317;
+    /** Disabled unless set, as by {@link CollectorConfig}, whose default is 4318. */
+    private int httpPort = -1;
+    private int httpBatchMaxRows = 10_000;
+    private Duration httpBatchMaxDelay = Duration.ofMillis(200);
+    private TraceSamplingConfig traceSampling = TraceSamplingConfig.DISABLED;
+    private MetricRollupConfig metricRollup = MetricRollupConfig.DISABLED;
     private IngestionHandler ingestionHandler =
             new NOOPIngestionTaskFactoryProvider("./otel-output").getIngestionHandler();
     private IngestionConfig ingestionConfig = new IngestionConfig(
             1_048_576L, IngestionConfig.DEFAULT_MAX_BUCKET_SIZE, IngestionConfig.DEFAULT_MAX_BATCHES,
             IngestionConfig.DEFAULT_MAX_PENDING_WRITE, Duration.ofSeconds(5),
             IngestionConfig.DEFAULT_CONFIG_REFRESH);
+    private AckMode ackMode = AckMode.PARQUET;
+    private Path journalPath = Path.of("./otel-journal");
     private String startupScript = "INSTALL arrow FROM community; LOAD arrow;";
     private String serviceName = "open-telemetry-collector";
     private String authentication = "jwt";
@@ -36,6 +46,49 @@ public class CollectorProperties {
         this.grpcPort = grpcPort;
     }
 
+    /**
+     * @return the port of the OTLP/HTTP receiver, negative when it is disabled
+     */
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public void setHttpPort(int httpPort) {
+        this.httpPort = httpPort;
+    }
+
+    public int getHttpBatchMaxRows() {
+        return httpBatchMaxRows;
+    }
+
+    public void setHttpBatchMaxRows(int httpBatchMaxRows) {
+        this.httpBatchMaxRows = httpBatchMaxRows;
+    }
+
+    public Duration getHttpBatchMaxDelay() {
+        return httpBatchMaxDelay;
+    }
+
+    public void setHttpBatchMaxDelay(Duration httpBatchMaxDelay) {
+        this.httpBatchMaxDelay = httpBatchMaxDelay;
+    }
+
+    public TraceSamplingConfig getTraceSampling() {
+        return traceSampling;
+    }
+
+    public void setTraceSampling(TraceSamplingConfig traceSampling) {
+        this.traceSampling = traceSampling;
+    }
+
+    public MetricRollupConfig getMetricRollup() {
+        return metricRollup;
+    }
+
+    public void setMetricRollup(MetricRollupConfig metricRollup) {
+        this.metricRollup = metricRollup;
+    }
+
     public IngestionHandler getIngestionHandler() {
         return ingestionHandler;
     }
@@ -52,6 +105,22 @@ public class CollectorProperties {
         this.ingestionConfig = ingestionConfig;
     }
 
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    public void setAckMode(AckMode ackMode) {
+        this.ackMode = ackMode;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
     public String getServiceName() {
         return serviceName;
     }
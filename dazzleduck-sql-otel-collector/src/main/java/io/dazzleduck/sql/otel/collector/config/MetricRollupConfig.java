@@ -0,0 +1,23 @@
+package io.dazzleduck.sql.otel.collector.config;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Rollups of metric data points written next to the raw points, see
+ * {@link io.dazzleduck.sql.otel.collector.MetricRollup}.
+ *
+ * @param windows   lengths of the windows points are rolled up over, each aligned to the epoch
+ * @param grace     how long after its end a window waits for late points before it is written
+ * @param maxSeries series rolled up at most; the points of further series are only written raw
+ */
+public record MetricRollupConfig(
+        boolean enabled,
+        List<Duration> windows,
+        Duration grace,
+        int maxSeries
+) {
+
+    public static final MetricRollupConfig DISABLED = new MetricRollupConfig(false,
+            List.of(Duration.ofMinutes(1), Duration.ofMinutes(5)), Duration.ofSeconds(10), 100_000);
+}
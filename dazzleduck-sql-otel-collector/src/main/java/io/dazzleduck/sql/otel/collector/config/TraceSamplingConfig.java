@@ -0,0 +1,25 @@
+package io.dazzleduck.sql.otel.collector.config;
+
+import java.time.Duration;
+
+/**
+ * Tail-based sampling of traces, see {@link io.dazzleduck.sql.otel.collector.TraceSampler}.
+ *
+ * @param decisionWait       how long the spans of a trace are buffered before the trace is kept or dropped
+ * @param maxBufferedBytes   Arrow bytes buffered at most; the oldest spans are decided early beyond it
+ * @param keepErrors         keep every trace with a span whose status is {@code ERROR}
+ * @param latencyPercentile  keep every trace slower than this percentile of recent traces, disabled when 1 or more
+ * @param ratio              fraction of the other traces kept, chosen by trace id
+ */
+public record TraceSamplingConfig(
+        boolean enabled,
+        Duration decisionWait,
+        long maxBufferedBytes,
+        boolean keepErrors,
+        double latencyPercentile,
+        double ratio
+) {
+
+    public static final TraceSamplingConfig DISABLED =
+            new TraceSamplingConfig(false, Duration.ofSeconds(5), 256L * 1024 * 1024, true, 0.99, 0.01);
+}
@@ -0,0 +1,355 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.Gauge;
+import io.opentelemetry.proto.metrics.v1.Histogram;
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.metrics.v1.ScopeMetrics;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import io.opentelemetry.proto.metrics.v1.Summary;
+import io.opentelemetry.proto.metrics.v1.SummaryDataPoint;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that the batch writers decode serialized OTLP exports into the rows of the signal schemas.
+ */
+class BatchWriterTest {
+
+    private static final byte[] TRACE_ID = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    private static final byte[] SPAN_ID = {0, 1, 2, 3, 4, 5, 6, 7};
+    private static final byte[] PARENT_SPAN_ID = {7, 6, 5, 4, 3, 2, 1, 0};
+
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setup() {
+        allocator = new RootAllocator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void spans() throws IOException {
+        var request = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .setResource(resource("service.name", "checkout"))
+                        .addScopeSpans(ScopeSpans.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("tracer").setVersion("1.0"))
+                                .addSpans(Span.newBuilder()
+                                        .setTraceId(ByteString.copyFrom(TRACE_ID))
+                                        .setSpanId(ByteString.copyFrom(SPAN_ID))
+                                        .setParentSpanId(ByteString.copyFrom(PARENT_SPAN_ID))
+                                        .setName("GET /cart")
+                                        .setKind(Span.SpanKind.SPAN_KIND_SERVER)
+                                        .setStartTimeUnixNano(1_000_000_000L)
+                                        .setEndTimeUnixNano(1_250_000_000L)
+                                        .addAttributes(attribute("http.status_code", AnyValue.newBuilder().setIntValue(200)))
+                                        .addAttributes(attribute("retried", AnyValue.newBuilder().setBoolValue(true)))
+                                        .addEvents(Span.Event.newBuilder()
+                                                .setName("cache-miss")
+                                                .setTimeUnixNano(1_100_000_000L)
+                                                .addAttributes(attribute("key", "cart:7")))
+                                        .addEvents(Span.Event.newBuilder().setName("retry"))
+                                        .addLinks(Span.Link.newBuilder()
+                                                .setTraceId(ByteString.copyFrom(TRACE_ID))
+                                                .setSpanId(ByteString.copyFrom(PARENT_SPAN_ID)))
+                                        .setStatus(Status.newBuilder()
+                                                .setCode(Status.StatusCode.STATUS_CODE_ERROR)
+                                                .setMessage("timeout")))
+                                .addSpans(Span.newBuilder()
+                                        // Not a valid span id, so it is left null
+                                        .setSpanId(ByteString.copyFrom(new byte[]{1, 2, 3})))))
+                .build();
+
+        try (var root = VectorSchemaRoot.create(OtelTraceSchema.SCHEMA, allocator)) {
+            assertEquals(2, SpanBatchWriter.write(request.toByteArray(), root));
+            assertEquals(2, root.getRowCount());
+
+            assertArrayEquals(TRACE_ID, (byte[]) value(root, "trace_id", 0));
+            assertArrayEquals(SPAN_ID, (byte[]) value(root, "span_id", 0));
+            assertArrayEquals(PARENT_SPAN_ID, (byte[]) value(root, "parent_span_id", 0));
+            assertEquals("GET /cart", text(root, "name", 0));
+            assertEquals("SERVER", text(root, "kind", 0));
+            assertEquals(millis(1_000), value(root, "start_time_ms", 0));
+            assertEquals(millis(1_250), value(root, "end_time_ms", 0));
+            assertEquals(250L, value(root, "duration_ms", 0));
+            assertEquals("ERROR", text(root, "status_code", 0));
+            assertEquals("timeout", text(root, "status_message", 0));
+            assertEquals(Map.of("http.status_code", "200", "retried", "true"), map(root, "attributes", 0));
+            assertEquals(Map.of("service.name", "checkout"), map(root, "resource_attributes", 0));
+            assertEquals("tracer", text(root, "scope_name", 0));
+            assertEquals("1.0", text(root, "scope_version", 0));
+            assertEquals("[{\"name\":\"cache-miss\",\"time_ms\":1100,\"attributes\":[{\"key\":\"key\",\"value\":\"cart:7\"}]},"
+                    + "{\"name\":\"retry\"}]", value(root, "events", 0).toString());
+            assertEquals(1, ((List<?>) value(root, "links", 0)).size());
+
+            assertNull(value(root, "trace_id", 1));
+            assertNull(value(root, "span_id", 1));
+            assertNull(value(root, "name", 1));
+            assertEquals("UNSPECIFIED", text(root, "kind", 1));
+            assertNull(value(root, "duration_ms", 1));
+            assertEquals("UNSET", text(root, "status_code", 1));
+            assertEquals(Map.of(), map(root, "attributes", 1));
+            // Copied from the first span of the resource
+            assertEquals(Map.of("service.name", "checkout"), map(root, "resource_attributes", 1));
+            assertNull(value(root, "events", 1));
+            assertNull(value(root, "links", 1));
+        }
+    }
+
+    @Test
+    void logRecords() throws IOException {
+        var request = ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .setResource(resource("service.name", "auth"))
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setTimeUnixNano(2_000_000_000L)
+                                        .setSeverityNumberValue(9)
+                                        .setSeverityText("INFO")
+                                        .setBody(AnyValue.newBuilder().setStringValue("user logged in"))
+                                        .setTraceId(ByteString.copyFrom(TRACE_ID))
+                                        .setSpanId(ByteString.copyFrom(SPAN_ID))
+                                        .setFlags(1)
+                                        .addAttributes(attribute("roles", AnyValue.newBuilder()
+                                                .setArrayValue(ArrayValue.newBuilder()
+                                                        .addValues(AnyValue.newBuilder().setStringValue("admin"))
+                                                        .addValues(AnyValue.newBuilder().setDoubleValue(1.5))))))
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setBody(AnyValue.newBuilder().setBytesValue(ByteString.copyFrom(new byte[]{(byte) 0xab, 0x01})))))
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .setScope(InstrumentationScope.newBuilder().setName("audit"))
+                                .addLogRecords(LogRecord.newBuilder())))
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .addLogRecords(LogRecord.newBuilder())))
+                .build();
+
+        try (var root = VectorSchemaRoot.create(OtelLogSchema.SCHEMA, allocator)) {
+            assertEquals(4, LogRecordBatchWriter.write(request.toByteArray(), root));
+
+            assertEquals(millis(2_000), value(root, "timestamp", 0));
+            assertNull(value(root, "observed_timestamp", 0));
+            assertEquals(9, value(root, "severity_number", 0));
+            assertEquals("INFO", text(root, "severity_text", 0));
+            assertEquals("user logged in", text(root, "body", 0));
+            assertArrayEquals(TRACE_ID, (byte[]) value(root, "trace_id", 0));
+            assertArrayEquals(SPAN_ID, (byte[]) value(root, "span_id", 0));
+            assertEquals(1, value(root, "flags", 0));
+            assertEquals(Map.of("roles", "[\"admin\",\"1.5\"]"), map(root, "attributes", 0));
+            assertNull(value(root, "scope_name", 0));
+
+            assertEquals("ab01", text(root, "body", 1));
+            assertEquals(0, value(root, "severity_number", 1));
+            assertNull(value(root, "trace_id", 1));
+
+            assertNull(value(root, "body", 2));
+            assertEquals("audit", text(root, "scope_name", 2));
+            assertEquals(Map.of("service.name", "auth"), map(root, "resource_attributes", 2));
+
+            // A resource of its own, without attributes
+            assertEquals(Map.of(), map(root, "resource_attributes", 3));
+        }
+    }
+
+    @Test
+    void metricDataPoints() throws IOException {
+        var request = ExportMetricsServiceRequest.newBuilder()
+                .addResourceMetrics(ResourceMetrics.newBuilder()
+                        .setResource(resource("host.name", "db-1"))
+                        .addScopeMetrics(ScopeMetrics.newBuilder()
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("cpu.usage")
+                                        .setUnit("1")
+                                        .setGauge(Gauge.newBuilder()
+                                                .addDataPoints(NumberDataPoint.newBuilder()
+                                                        .setTimeUnixNano(3_000_000_000L)
+                                                        .setAsDouble(0.75)
+                                                        .addAttributes(attribute("cpu", "0")))
+                                                .addDataPoints(NumberDataPoint.newBuilder().setAsInt(1))))
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("requests")
+                                        // Temporality and monotonicity come after the data points on the wire
+                                        .setSum(Sum.newBuilder()
+                                                .addDataPoints(NumberDataPoint.newBuilder().setAsInt(42))
+                                                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                                                .setIsMonotonic(true)))
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("latency")
+                                        .setDescription("request latency")
+                                        .setHistogram(Histogram.newBuilder()
+                                                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_DELTA)
+                                                .addDataPoints(HistogramDataPoint.newBuilder()
+                                                        .setCount(6)
+                                                        .setSum(12.5)
+                                                        .addAllBucketCounts(List.of(1L, 2L, 3L))
+                                                        .addAllExplicitBounds(List.of(1.0, 5.0)))
+                                                .addDataPoints(HistogramDataPoint.newBuilder().setCount(0))))
+                                .addMetrics(Metric.newBuilder()
+                                        .setName("gc.pause")
+                                        .setSummary(Summary.newBuilder()
+                                                .addDataPoints(SummaryDataPoint.newBuilder()
+                                                        .setCount(10)
+                                                        .setSum(20)
+                                                        .addQuantileValues(SummaryDataPoint.ValueAtQuantile.newBuilder()
+                                                                .setQuantile(0.99)
+                                                                .setValue(4.0)))))))
+                .build();
+
+        try (var root = VectorSchemaRoot.create(OtelMetricSchema.SCHEMA, allocator)) {
+            assertEquals(6, MetricBatchWriter.write(request.toByteArray(), root));
+
+            assertEquals("cpu.usage", text(root, "name", 0));
+            assertNull(value(root, "description", 0));
+            assertEquals("1", text(root, "unit", 0));
+            assertEquals("GAUGE", text(root, "metric_type", 0));
+            assertEquals(millis(3_000), value(root, "time_ms", 0));
+            assertEquals(0.75, value(root, "value_double", 0));
+            assertNull(value(root, "value_int", 0));
+            assertEquals(Map.of("cpu", "0"), map(root, "attributes", 0));
+            assertEquals(Map.of("host.name", "db-1"), map(root, "resource_attributes", 0));
+            assertNull(value(root, "aggregation_temporality", 0));
+
+            assertEquals(1L, value(root, "value_int", 1));
+            assertNull(value(root, "value_double", 1));
+
+            assertEquals("SUM", text(root, "metric_type", 2));
+            assertEquals(42L, value(root, "value_int", 2));
+            assertEquals(true, value(root, "is_monotonic", 2));
+            assertEquals("CUMULATIVE", text(root, "aggregation_temporality", 2));
+
+            assertEquals("HISTOGRAM", text(root, "metric_type", 3));
+            assertEquals("request latency", text(root, "description", 3));
+            assertEquals(6L, value(root, "count", 3));
+            assertEquals(12.5, value(root, "sum", 3));
+            assertEquals(List.of(1L, 2L, 3L), value(root, "bucket_counts", 3));
+            assertEquals(List.of(1.0, 5.0), value(root, "explicit_bounds", 3));
+            assertEquals("DELTA", text(root, "aggregation_temporality", 3));
+            assertNull(value(root, "is_monotonic", 3));
+
+            assertEquals(0L, value(root, "count", 4));
+            assertNull(value(root, "sum", 4));
+            assertNull(value(root, "bucket_counts", 4));
+
+            assertEquals("SUMMARY", text(root, "metric_type", 5));
+            assertEquals(10L, value(root, "count", 5));
+            assertEquals(20.0, value(root, "sum", 5));
+            assertEquals("[{\"quantile\":0.99,\"value\":4.0}]", value(root, "quantile_values", 5).toString());
+            assertEquals(Map.of("host.name", "db-1"), map(root, "resource_attributes", 5));
+        }
+    }
+
+    @Test
+    void rootReusedAfterReset() throws IOException {
+        var request = ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .setResource(resource("service.name", "auth"))
+                        .addScopeLogs(ScopeLogs.newBuilder()
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setBody(AnyValue.newBuilder().setStringValue("first"))
+                                        .addAttributes(attribute("a", "1")))
+                                .addLogRecords(LogRecord.newBuilder()
+                                        .setBody(AnyValue.newBuilder().setStringValue("second")))))
+                .build();
+        try (var root = VectorSchemaRoot.create(OtelLogSchema.SCHEMA, allocator)) {
+            root.allocateNew();
+            LogRecordBatchWriter.write(request.toByteArray(), root);
+            root.getFieldVectors().forEach(ValueVector::reset);
+            root.setRowCount(0);
+            assertEquals(2, LogRecordBatchWriter.write(request.toByteArray(), root));
+
+            assertEquals("first", text(root, "body", 0));
+            assertEquals("second", text(root, "body", 1));
+            assertEquals(Map.of("a", "1"), map(root, "attributes", 0));
+            assertEquals(Map.of(), map(root, "attributes", 1));
+            assertEquals(Map.of("service.name", "auth"), map(root, "resource_attributes", 1));
+        }
+    }
+
+    @Test
+    void malformedRequest() {
+        try (var root = VectorSchemaRoot.create(OtelTraceSchema.SCHEMA, allocator)) {
+            byte[] truncated = ExportTraceServiceRequest.newBuilder()
+                    .addResourceSpans(ResourceSpans.newBuilder()
+                            .addScopeSpans(ScopeSpans.newBuilder().addSpans(Span.newBuilder().setName("span"))))
+                    .build().toByteArray();
+            byte[] request = Arrays.copyOf(truncated, truncated.length - 2);
+            assertThrows(IOException.class, () -> SpanBatchWriter.write(request, root));
+        }
+    }
+
+    private static Resource resource(String key, String value) {
+        return Resource.newBuilder().addAttributes(attribute(key, value)).build();
+    }
+
+    private static KeyValue attribute(String key, String value) {
+        return attribute(key, AnyValue.newBuilder().setStringValue(value));
+    }
+
+    private static KeyValue attribute(String key, AnyValue.Builder value) {
+        return KeyValue.newBuilder().setKey(key).setValue(value).build();
+    }
+
+    private static LocalDateTime millis(long millis) {
+        return LocalDateTime.ofEpochSecond(millis / 1000, (int) (millis % 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static Object value(VectorSchemaRoot root, String column, int row) {
+        return root.getVector(column).getObject(row);
+    }
+
+    private static String text(VectorSchemaRoot root, String column, int row) {
+        Object value = value(root, column, row);
+        return value == null ? null : value.toString();
+    }
+
+    private static Map<String, String> map(VectorSchemaRoot root, String column, int row) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Object entry : (List<?>) value(root, column, row)) {
+            var kv = (Map<?, ?>) entry;
+            map.put(kv.get("key").toString(), kv.get("value").toString());
+        }
+        return map;
+    }
+}
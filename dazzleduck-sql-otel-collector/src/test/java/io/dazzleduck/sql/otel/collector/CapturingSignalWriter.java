@@ -0,0 +1,37 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.dazzleduck.sql.commons.ingestion.IngestionConfig;
+import io.dazzleduck.sql.commons.ingestion.NOOPIngestionTaskFactoryProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the Arrow files it is given, as if they were written to Parquet right away.
+ */
+class CapturingSignalWriter extends SignalWriter {
+
+    final List<Path> batches = new CopyOnWriteArrayList<>();
+
+    CapturingSignalWriter(String signal, Path outputPath) throws IOException {
+        this(signal, outputPath, AckMode.PARQUET);
+    }
+
+    CapturingSignalWriter(String signal, Path outputPath, AckMode ackMode) throws IOException {
+        super(signal, new NOOPIngestionTaskFactoryProvider(outputPath.toString()).getIngestionHandler(),
+                new IngestionConfig(1_048_576L, IngestionConfig.DEFAULT_MAX_BUCKET_SIZE,
+                        IngestionConfig.DEFAULT_MAX_BATCHES, IngestionConfig.DEFAULT_MAX_PENDING_WRITE,
+                        Duration.ofSeconds(5), IngestionConfig.DEFAULT_CONFIG_REFRESH),
+                ackMode, outputPath.resolve("journal"));
+    }
+
+    @Override
+    public CompletableFuture<Void> addBatch(Path arrowFile) {
+        batches.add(arrowFile);
+        return CompletableFuture.completedFuture(null);
+    }
+}
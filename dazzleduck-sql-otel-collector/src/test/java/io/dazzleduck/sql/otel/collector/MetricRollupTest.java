@@ -0,0 +1,238 @@
+package io.dazzleduck.sql.otel.collector;
+
+import io.dazzleduck.sql.otel.collector.config.MetricRollupConfig;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.Gauge;
+import io.opentelemetry.proto.metrics.v1.Histogram;
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.metrics.v1.ScopeMetrics;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the metric rollup against a signal writer that keeps the Arrow files of the rollups. The rollup is closed
+ * to write its open windows, unless the test waits for their grace period.
+ */
+class MetricRollupTest {
+
+    /** The start of a 5 minute window. */
+    private static final long START_MS = 1_699_999_800_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private CapturingSignalWriter writer;
+    private BufferAllocator allocator;
+
+    @BeforeEach
+    void setup() throws IOException {
+        writer = new CapturingSignalWriter("metric_rollups", tempDir.resolve("metric_rollups"));
+        allocator = new RootAllocator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+        allocator.close();
+    }
+
+    @Test
+    void cumulativeSumsRollUpAsDeltas() throws Exception {
+        var rollup = rollup(Duration.ofMinutes(1), Duration.ofMinutes(5));
+        add(rollup, sum("requests", point(0, 10), point(20_000, 15), point(40_000, 25), point(70_000, 30)));
+        rollup.close();
+
+        var rows = rows();
+        assertEquals(3, rows.size());
+        assertEquals(new Row("requests", 60_000, START_MS, 2, null, null, null, 15.0, null, null), rows.get(0));
+        assertEquals(new Row("requests", 60_000, START_MS + 60_000, 1, null, null, null, 5.0, null, null), rows.get(1));
+        assertEquals(new Row("requests", 300_000, START_MS, 3, null, null, null, 20.0, null, null), rows.get(2));
+    }
+
+    @Test
+    void restartedCountersCountFromZero() throws Exception {
+        var rollup = rollup(Duration.ofMinutes(1));
+        add(rollup, sum("requests", point(10_000, 100), point(20_000, 120),
+                point(30_000, 7).toBuilder().setStartTimeUnixNano((START_MS + 25_000) * 1_000_000).build()));
+        rollup.close();
+
+        assertEquals(List.of(new Row("requests", 60_000, START_MS, 2, null, null, null, 27.0, null, null)), rows());
+    }
+
+    @Test
+    void gaugesKeepMinMaxAndLast() throws Exception {
+        var rollup = rollup(Duration.ofMinutes(1));
+        add(rollup, gauge("queue.depth", "a", point(0, 3), point(10_000, 9), point(20_000, 1)));
+        rollup.close();
+
+        assertEquals(List.of(new Row("queue.depth", 60_000, START_MS, 3, 1.0, 9.0, 1.0, 13.0, null, null)), rows());
+    }
+
+    @Test
+    void histogramBucketsRollUpAsDeltas() throws Exception {
+        var rollup = rollup(Duration.ofMinutes(1));
+        add(rollup, histogram("latency",
+                histogramPoint(0, 50, 1, 2, 0),
+                histogramPoint(10_000, 300, 3, 2, 1)));
+        rollup.close();
+
+        assertEquals(List.of(new Row("latency", 60_000, START_MS, 1, null, null, null, 250.0, 3L, "[2,0,1]|[10.0,100.0]")),
+                rows());
+    }
+
+    @Test
+    void seriesAreTheirAttributes() throws Exception {
+        var rollup = rollup(Duration.ofMinutes(1));
+        add(rollup, gauge("queue.depth", "a", point(0, 3)));
+        add(rollup, gauge("queue.depth", "b", point(0, 5)));
+        add(rollup, gauge("queue.depth", "a", point(10_000, 4)));
+        rollup.close();
+
+        var rows = rows();
+        assertEquals(2, rows.size());
+        assertEquals(new Row("queue.depth", 60_000, START_MS, 2, 3.0, 4.0, 4.0, 7.0, null, null), rows.get(0));
+        assertEquals(new Row("queue.depth", 60_000, START_MS, 1, 5.0, 5.0, 5.0, 5.0, null, null), rows.get(1));
+    }
+
+    @Test
+    void windowsAreWrittenAfterTheirGrace() throws Exception {
+        var rollup = new MetricRollup(writer,
+                new MetricRollupConfig(true, List.of(Duration.ofMinutes(1)), Duration.ZERO, 1000));
+        add(rollup, gauge("queue.depth", "a", point(0, 3)));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writer.batches.isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Window was not written in time");
+            Thread.sleep(10);
+        }
+        rollup.close();
+
+        assertEquals(List.of(new Row("queue.depth", 60_000, START_MS, 1, 3.0, 3.0, 3.0, 3.0, null, null)), rows());
+    }
+
+    /**
+     * A rollup row, with its bucket counts and bounds joined by a bar.
+     */
+    private record Row(String name, long windowMs, long windowStartMs, long samples, Double min, Double max,
+                       Double last, Double sum, Long count, String buckets) {
+    }
+
+    private MetricRollup rollup(Duration... windows) {
+        return new MetricRollup(writer, new MetricRollupConfig(true, List.of(windows), Duration.ofDays(1), 1000));
+    }
+
+    private void add(MetricRollup rollup, Metric metric) throws IOException {
+        byte[] request = ExportMetricsServiceRequest.newBuilder()
+                .addResourceMetrics(ResourceMetrics.newBuilder()
+                        .addScopeMetrics(ScopeMetrics.newBuilder().addMetrics(metric)))
+                .build()
+                .toByteArray();
+        try (var root = VectorSchemaRoot.create(OtelMetricSchema.SCHEMA, allocator)) {
+            root.allocateNew();
+            rollup.write(request, root);
+        }
+    }
+
+    private static NumberDataPoint point(long offsetMs, double value) {
+        return NumberDataPoint.newBuilder()
+                .setStartTimeUnixNano((START_MS - 60_000) * 1_000_000)
+                .setTimeUnixNano((START_MS + offsetMs) * 1_000_000)
+                .setAsDouble(value)
+                .build();
+    }
+
+    private static HistogramDataPoint histogramPoint(long offsetMs, double sum, long... buckets) {
+        return HistogramDataPoint.newBuilder()
+                .setStartTimeUnixNano((START_MS - 60_000) * 1_000_000)
+                .setTimeUnixNano((START_MS + offsetMs) * 1_000_000)
+                .setCount(Arrays.stream(buckets).sum())
+                .setSum(sum)
+                .addAllBucketCounts(Arrays.stream(buckets).boxed().toList())
+                .addAllExplicitBounds(List.of(10.0, 100.0))
+                .build();
+    }
+
+    private static Metric sum(String name, NumberDataPoint... points) {
+        return Metric.newBuilder().setName(name)
+                .setSum(Sum.newBuilder()
+                        .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                        .setIsMonotonic(true)
+                        .addAllDataPoints(List.of(points)))
+                .build();
+    }
+
+    private static Metric gauge(String name, String host, NumberDataPoint... points) {
+        var gauge = Gauge.newBuilder();
+        for (var point : points) {
+            gauge.addDataPoints(point.toBuilder().addAttributes(KeyValue.newBuilder().setKey("host")
+                    .setValue(AnyValue.newBuilder().setStringValue(host))));
+        }
+        return Metric.newBuilder().setName(name).setGauge(gauge).build();
+    }
+
+    private static Metric histogram(String name, HistogramDataPoint... points) {
+        return Metric.newBuilder().setName(name)
+                .setHistogram(Histogram.newBuilder()
+                        .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                        .addAllDataPoints(List.of(points)))
+                .build();
+    }
+
+    /**
+     * @return the rows of every rollup written, by window length, then series and start
+     */
+    private List<Row> rows() throws IOException {
+        var rows = new ArrayList<Row>();
+        for (Path arrowFile : writer.batches) {
+            try (var allocator = new RootAllocator();
+                 var in = new FileInputStream(arrowFile.toFile());
+                 var reader = new ArrowStreamReader(in, allocator)) {
+                while (reader.loadNextBatch()) {
+                    var root = reader.getVectorSchemaRoot();
+                    for (int row = 0; row < root.getRowCount(); row++) {
+                        var buckets = root.getVector(OtelMetricRollupSchema.COL_BUCKET_COUNTS).getObject(row);
+                        rows.add(new Row(
+                                root.getVector(OtelMetricRollupSchema.COL_NAME).getObject(row).toString(),
+                                (Long) root.getVector(OtelMetricRollupSchema.COL_WINDOW_MS).getObject(row),
+                                ((TimeStampMilliVector) root.getVector(OtelMetricRollupSchema.COL_WINDOW_START_MS)).get(row),
+                                (Long) root.getVector(OtelMetricRollupSchema.COL_SAMPLES).getObject(row),
+                                (Double) root.getVector(OtelMetricRollupSchema.COL_VALUE_MIN).getObject(row),
+                                (Double) root.getVector(OtelMetricRollupSchema.COL_VALUE_MAX).getObject(row),
+                                (Double) root.getVector(OtelMetricRollupSchema.COL_VALUE_LAST).getObject(row),
+                                (Double) root.getVector(OtelMetricRollupSchema.COL_SUM).getObject(row),
+                                (Long) root.getVector(OtelMetricRollupSchema.COL_COUNT).getObject(row),
+                                buckets == null ? null : buckets + "|"
+                                        + root.getVector(OtelMetricRollupSchema.COL_EXPLICIT_BOUNDS).getObject(row)));
+                    }
+                }
+            }
+        }
+        rows.sort(Comparator.comparingLong(Row::windowMs).thenComparingLong(Row::windowStartMs));
+        return rows;
+    }
+}
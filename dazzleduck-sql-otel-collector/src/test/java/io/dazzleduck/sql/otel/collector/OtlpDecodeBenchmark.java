@@ -0,0 +1,169 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decode throughput of the batch writers, which go from the request bytes to filled Arrow vectors, against parsing
+ * the same requests into protobuf objects alone. The parse is only the first half of decoding through the generated
+ * classes, which still have to be copied into the vectors, so it is a lower bound on that path. No Arrow files, no
+ * Parquet.
+ *
+ * Run with: ./mvnw test -pl dazzleduck-sql-otel-collector -Dtest=OtlpDecodeBenchmark
+ */
+public class OtlpDecodeBenchmark {
+
+    private static final int[] BATCH_SIZES = parseIntArray("benchmark.batches", "100,1000,10000");
+    private static final int   WARMUP_SEC  = 2;
+    private static final int   MEASURE_SEC = Integer.getInteger("benchmark.seconds", 3);
+    private static final int   MSG_BODY_LEN = 200;
+
+    private static final String[] SERVICES = {"payment-service", "auth-service", "order-service"};
+    private static final String BODY_CHARS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 .:/-_[]()";
+    private static final Random RNG = new Random(42);
+
+    @FunctionalInterface
+    private interface Decoder {
+        int decode(byte[] request, VectorSchemaRoot root) throws Exception;
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        System.out.println();
+        System.out.println("=== OTLP decode benchmark ===");
+        System.out.printf("  %-6s  %-8s  %-28s  %14s%n", "Signal", "Batch", "Decoder", "Rec/sec");
+        System.out.println("  " + "-".repeat(62));
+        try (var allocator = new RootAllocator()) {
+            for (int batchSize : BATCH_SIZES) {
+                byte[] logs = logsRequest(batchSize);
+                run(allocator, "logs", batchSize, "parseFrom only", OtelLogSchema.SCHEMA, logs,
+                        (request, root) -> ExportLogsServiceRequest.parseFrom(request)
+                                .getResourceLogs(0).getScopeLogs(0).getLogRecordsCount());
+                run(allocator, "logs", batchSize, "LogRecordBatchWriter", OtelLogSchema.SCHEMA, logs,
+                        LogRecordBatchWriter::write);
+
+                byte[] spans = spansRequest(batchSize);
+                run(allocator, "spans", batchSize, "parseFrom only", OtelTraceSchema.SCHEMA, spans,
+                        (request, root) -> ExportTraceServiceRequest.parseFrom(request)
+                                .getResourceSpans(0).getScopeSpans(0).getSpansCount());
+                run(allocator, "spans", batchSize, "SpanBatchWriter", OtelTraceSchema.SCHEMA, spans,
+                        SpanBatchWriter::write);
+            }
+        }
+        System.out.println("  " + "-".repeat(62));
+        System.out.println();
+    }
+
+    /**
+     * Decodes {@code request} over and over into one reused root, the way {@link SignalWriter#acquireRoot} pools them.
+     */
+    private static void run(RootAllocator allocator, String signal, int batchSize, String name, Schema schema,
+                            byte[] request, Decoder decoder) throws Exception {
+        try (var root = VectorSchemaRoot.create(schema, allocator)) {
+            root.allocateNew();
+            loop(root, request, decoder, WARMUP_SEC);
+            long records = loop(root, request, decoder, MEASURE_SEC);
+            System.out.printf("  %-6s  %-8d  %-28s  %,14.0f%n", signal, batchSize, name, (double) records / MEASURE_SEC);
+        }
+    }
+
+    private static long loop(VectorSchemaRoot root, byte[] request, Decoder decoder, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long records = 0;
+        while (System.nanoTime() < deadline) {
+            root.getFieldVectors().forEach(ValueVector::reset);
+            root.setRowCount(0);
+            records += decoder.decode(request, root);
+        }
+        return records;
+    }
+
+    private static byte[] logsRequest(int recordCount) {
+        ScopeLogs.Builder scopeLogs = ScopeLogs.newBuilder();
+        for (int i = 0; i < recordCount; i++) {
+            scopeLogs.addLogRecords(LogRecord.newBuilder()
+                    .setTimeUnixNano(System.currentTimeMillis() * 1_000_000L)
+                    .setSeverityNumberValue(9)
+                    .setSeverityText("INFO")
+                    .setBody(AnyValue.newBuilder().setStringValue(randomBody()))
+                    .addAttributes(attribute("service.name", SERVICES[RNG.nextInt(SERVICES.length)]))
+                    .addAttributes(attribute("http.status_code", AnyValue.newBuilder().setIntValue(200).build()))
+                    .setTraceId(randomBytes(16))
+                    .setSpanId(randomBytes(8)));
+        }
+        return ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(attribute("host.name", "bench-1")))
+                        .addScopeLogs(scopeLogs))
+                .build().toByteArray();
+    }
+
+    private static byte[] spansRequest(int spanCount) {
+        ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder();
+        long now = System.currentTimeMillis() * 1_000_000L;
+        for (int i = 0; i < spanCount; i++) {
+            scopeSpans.addSpans(Span.newBuilder()
+                    .setTraceId(randomBytes(16))
+                    .setSpanId(randomBytes(8))
+                    .setParentSpanId(randomBytes(8))
+                    .setName("GET /api/orders")
+                    .setKind(Span.SpanKind.SPAN_KIND_SERVER)
+                    .setStartTimeUnixNano(now)
+                    .setEndTimeUnixNano(now + RNG.nextInt(1_000_000_000))
+                    .addAttributes(attribute("http.method", "GET"))
+                    .addAttributes(attribute("http.route", "/api/orders"))
+                    .addEvents(Span.Event.newBuilder().setName("db.query").setTimeUnixNano(now)));
+        }
+        return ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder()
+                        .setResource(Resource.newBuilder().addAttributes(attribute("service.name", "orders")))
+                        .addScopeSpans(scopeSpans))
+                .build().toByteArray();
+    }
+
+    private static KeyValue attribute(String key, String value) {
+        return attribute(key, AnyValue.newBuilder().setStringValue(value).build());
+    }
+
+    private static KeyValue attribute(String key, AnyValue value) {
+        return KeyValue.newBuilder().setKey(key).setValue(value).build();
+    }
+
+    private static ByteString randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RNG.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+    }
+
+    private static String randomBody() {
+        char[] buf = new char[MSG_BODY_LEN];
+        for (int i = 0; i < MSG_BODY_LEN; i++) {
+            buf[i] = BODY_CHARS.charAt(RNG.nextInt(BODY_CHARS.length()));
+        }
+        return new String(buf);
+    }
+
+    private static int[] parseIntArray(String property, String defaults) {
+        String val = System.getProperty(property, defaults);
+        return Arrays.stream(val.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,208 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.ByteString;
+import io.dazzleduck.sql.commons.auth.Validator;
+import io.dazzleduck.sql.otel.collector.auth.JwtAuthenticator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the OTLP/HTTP receiver against signal writers that keep the Arrow files of their batches instead of
+ * writing them to Parquet.
+ */
+class OtlpHttpReceiverTest {
+
+    private static final String SECRET_KEY_BASE64 =
+            "VGhpcyBpcyBhIDY0IGJpdCBsb25nIGtleSB3aGljaCBzaG91bGQgYmUgY2hhbmdlZCBpbiBwcm9kdWN0aW9uLiBTbyBjaGFuZ2UgbWUgYW5kIG1ha2Ugc3VyZSBpdHMgMTI4IGJpdCBsb25nIG9yIG1vcmU";
+    private static final String BASIC_AUTH = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+    private static final byte[] TRACE_ID = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    private static final byte[] SPAN_ID = {0, 1, 2, 3, 4, 5, 6, 7};
+
+    @TempDir
+    Path tempDir;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private CapturingSignalWriter logWriter;
+    private CapturingSignalWriter traceWriter;
+    private CapturingSignalWriter metricsWriter;
+    private OtlpHttpReceiver receiver;
+
+    @BeforeEach
+    void setup() throws IOException {
+        logWriter = new CapturingSignalWriter("logs", tempDir.resolve("logs"));
+        traceWriter = new CapturingSignalWriter("traces", tempDir.resolve("traces"));
+        metricsWriter = new CapturingSignalWriter("metrics", tempDir.resolve("metrics"));
+        var authenticator = new JwtAuthenticator(Validator.fromBase64String(SECRET_KEY_BASE64),
+                Map.of("admin", Validator.hash("admin")), Duration.ofHours(1), null);
+        var metrics = new OtelCollectorMetrics(new SimpleMeterRegistry(), 5000, 5000, 5000);
+        receiver = new OtlpHttpReceiver(0, authenticator, metrics, logWriter, traceWriter, metricsWriter,
+                4, Duration.ofSeconds(1));
+        receiver.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        receiver.close();
+        logWriter.close();
+        traceWriter.close();
+        metricsWriter.close();
+    }
+
+    @Test
+    void coalescesRequestsIntoOneBatch() throws Exception {
+        var responses = new ArrayList<CompletableFuture<HttpResponse<byte[]>>>();
+        for (int i = 0; i < 4; i++) {
+            responses.add(client.sendAsync(post("/v1/logs", "application/x-protobuf", logs("message " + i).toByteArray()).build(),
+                    HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        for (var response : responses) {
+            assertEquals(200, response.get().statusCode());
+            assertEquals(0, response.get().body().length);
+        }
+        assertEquals(1, logWriter.batches.size());
+        assertEquals(List.of("message 0", "message 1", "message 2", "message 3").stream().sorted().toList(),
+                bodies(logWriter.batches.get(0)).stream().sorted().toList());
+    }
+
+    @Test
+    void gzippedJson() throws Exception {
+        String json = """
+                {"resourceSpans": [{"scopeSpans": [{"spans": [{
+                    "traceId": "000102030405060708090A0B0C0D0E0F",
+                    "spanId": "0001020304050607",
+                    "name": "GET /orders",
+                    "kind": 2,
+                    "startTimeUnixNano": "1700000000000000000",
+                    "endTimeUnixNano": 1700000000250000000,
+                    "attributes": [{"key": "http.status_code", "value": {"intValue": "200"}}],
+                    "unknownField": {"ignored": true}
+                }]}]}]}
+                """;
+        var response = client.send(post("/v1/traces", "application/json; charset=utf-8", gzip(json))
+                        .header("Content-Encoding", "gzip").build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertEquals("{}", response.body());
+        assertEquals(1, traceWriter.batches.size());
+        var expected = ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder().addScopeSpans(ScopeSpans.newBuilder().addSpans(
+                        Span.newBuilder()
+                                .setTraceId(ByteString.copyFrom(TRACE_ID))
+                                .setSpanId(ByteString.copyFrom(SPAN_ID))
+                                .setName("GET /orders")
+                                .setKind(Span.SpanKind.SPAN_KIND_SERVER)
+                                .setStartTimeUnixNano(1_700_000_000_000_000_000L)
+                                .setEndTimeUnixNano(1_700_000_000_250_000_000L)
+                                .addAttributes(KeyValue.newBuilder().setKey("http.status_code")
+                                        .setValue(AnyValue.newBuilder().setIntValue(200))))))
+                .build();
+        assertEquals(expected, ExportTraceServiceRequest.parseFrom(
+                OtlpJson.toProtobuf(json.getBytes(StandardCharsets.UTF_8), ExportTraceServiceRequest.newBuilder())));
+        try (var allocator = new RootAllocator();
+             var in = new FileInputStream(traceWriter.batches.get(0).toFile());
+             var reader = new ArrowStreamReader(in, allocator)) {
+            reader.loadNextBatch();
+            var root = reader.getVectorSchemaRoot();
+            assertEquals(1, root.getRowCount());
+            assertArrayEquals(TRACE_ID, ((FixedSizeBinaryVector) root.getVector(OtelTraceSchema.COL_TRACE_ID)).get(0));
+            assertEquals("SERVER", root.getVector(OtelTraceSchema.COL_KIND).getObject(0).toString());
+        }
+    }
+
+    @Test
+    void rejectedRequests() throws Exception {
+        byte[] logs = logs("message").toByteArray();
+        var unauthenticated = HttpRequest.newBuilder(URI.create("http://localhost:" + receiver.port() + "/v1/logs"))
+                .header("Content-Type", "application/x-protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(logs))
+                .build();
+        assertEquals(401, client.send(unauthenticated, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(415, send(post("/v1/logs", "text/plain", logs)));
+        assertEquals(400, send(post("/v1/logs", "application/x-protobuf", logs).header("Content-Encoding", "br")));
+        assertEquals(400, send(post("/v1/logs", "application/x-protobuf", new byte[]{10, 5, 1})));
+        assertEquals(400, send(post("/v1/logs", "application/json", "{\"resourceLogs\": 1}".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(400, send(post("/v1/logs", "application/x-protobuf", logs).header("Content-Encoding", "gzip")));
+        assertTrue(logWriter.batches.isEmpty());
+    }
+
+    private int send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private HttpRequest.Builder post(String path, String contentType, byte[] body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + receiver.port() + path))
+                .header("Authorization", BASIC_AUTH)
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    private static ExportLogsServiceRequest logs(String body) {
+        return ExportLogsServiceRequest.newBuilder()
+                .addResourceLogs(ResourceLogs.newBuilder().addScopeLogs(ScopeLogs.newBuilder()
+                        .addLogRecords(LogRecord.newBuilder()
+                                .setBody(AnyValue.newBuilder().setStringValue(body)))))
+                .build();
+    }
+
+    private static List<String> bodies(Path arrowFile) throws IOException {
+        var bodies = new ArrayList<String>();
+        try (var allocator = new RootAllocator();
+             var in = new FileInputStream(arrowFile.toFile());
+             var reader = new ArrowStreamReader(in, allocator)) {
+            while (reader.loadNextBatch()) {
+                var vector = (VarCharVector) reader.getVectorSchemaRoot().getVector(OtelLogSchema.COL_BODY);
+                for (int i = 0; i < vector.getValueCount(); i++) {
+                    bodies.add(vector.getObject(i).toString());
+                }
+            }
+        }
+        return bodies;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
@@ -5,18 +5,28 @@ import io.dazzleduck.sql.commons.ingestion.DuckLakeIngestionHandler;
 import io.dazzleduck.sql.commons.ingestion.IngestionConfig;
 import io.dazzleduck.sql.commons.ingestion.QueueIdToTableMapping;
 import io.dazzleduck.sql.commons.util.TestUtils;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -37,6 +47,12 @@ class SignalWriterTest {
             IngestionConfig.DEFAULT_MAX_PENDING_WRITE, Duration.ofSeconds(10),
             IngestionConfig.DEFAULT_CONFIG_REFRESH);
 
+    /** Slow-flush config: batches wait in the queue far longer than any test. */
+    private static final IngestionConfig SLOW_CONFIG = new IngestionConfig(
+            IngestionConfig.DEFAULT_MAX_BUCKET_SIZE, IngestionConfig.DEFAULT_MAX_BUCKET_SIZE,
+            IngestionConfig.DEFAULT_MAX_BATCHES, IngestionConfig.DEFAULT_MAX_PENDING_WRITE, Duration.ofHours(1),
+            IngestionConfig.DEFAULT_CONFIG_REFRESH);
+
     @TempDir
     Path tempDir;
 
@@ -131,10 +147,73 @@ class SignalWriterTest {
                 "Expected DuckLake partition dir 'level=...' under " + tablePath);
     }
 
+    // -----------------------------------------------------------------------
+    // Ack mode tests
+    // -----------------------------------------------------------------------
+
+    /**
+     * With the journal ack mode an export is acknowledged once its batch is synced to the journal,
+     * long before the queue writes it to Parquet.
+     */
+    @Test
+    void journalAck_beforeParquetWrite() throws Exception {
+        createTable("logs (level VARCHAR, msg VARCHAR)");
+        Path journal = tempDir.resolve("journal");
+
+        try (var writer = new SignalWriter(QUEUE_ID, handler(null), SLOW_CONFIG, AckMode.JOURNAL, journal)) {
+            var written = writer.addBatch(writeArrowFile(writer, "INFO", "hello"));
+            assertTrue(writer.acknowledgement(written).isDone());
+            assertFalse(written.isDone());
+            try (var files = Files.list(journal.resolve(QUEUE_ID))) {
+                assertEquals(List.of(".arrow"), files.map(f -> f.toString().substring(f.toString().lastIndexOf('.'))).toList());
+            }
+        }
+    }
+
+    /**
+     * Journaled batches left by a previous run are written on startup; partial ones were never acknowledged
+     * and are dropped.
+     */
+    @Test
+    void journal_replayedOnRestart() throws Exception {
+        createTable("logs (level VARCHAR, msg VARCHAR)");
+        Path journalDir = Files.createDirectories(tempDir.resolve("journal").resolve(QUEUE_ID));
+        Path journaled = journalDir.resolve("batch_1_a.arrow");
+        Files.copy(arrowFile("SELECT 'INFO' AS level, 'hello' AS msg"), journaled);
+        Path partial = journalDir.resolve("batch_2_b.partial");
+        Files.writeString(partial, "partial");
+
+        try (var writer = new SignalWriter(QUEUE_ID, handler(null), FAST_CONFIG, AckMode.JOURNAL, tempDir.resolve("journal"))) {
+            assertFalse(Files.exists(partial));
+            // The queue deletes the journaled file once it is written
+            for (int i = 0; i < 100 && Files.exists(journaled); i++) {
+                Thread.sleep(100);
+            }
+            assertFalse(Files.exists(journaled));
+        }
+
+        TestUtils.isEqual(
+                "SELECT 'INFO' AS level, 'hello' AS msg",
+                "SELECT level, msg FROM %s.main.logs".formatted(CATALOG));
+    }
+
     // -----------------------------------------------------------------------
     // Helpers
     // -----------------------------------------------------------------------
 
+    private static Path writeArrowFile(SignalWriter writer, String level, String msg) throws Exception {
+        var schema = new Schema(List.of(
+                Field.nullable("level", ArrowType.Utf8.INSTANCE),
+                Field.nullable("msg", ArrowType.Utf8.INSTANCE)));
+        try (var allocator = new RootAllocator();
+             var root = VectorSchemaRoot.create(schema, allocator)) {
+            ((VarCharVector) root.getVector("level")).setSafe(0, level.getBytes(StandardCharsets.UTF_8));
+            ((VarCharVector) root.getVector("msg")).setSafe(0, msg.getBytes(StandardCharsets.UTF_8));
+            root.setRowCount(1);
+            return writer.writeArrowFile(root);
+        }
+    }
+
     private void createTable(String ddl) throws Exception {
         ConnectionPool.execute("CREATE TABLE %s.main.%s".formatted(CATALOG, ddl));
     }
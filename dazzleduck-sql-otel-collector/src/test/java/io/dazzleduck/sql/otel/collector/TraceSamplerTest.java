@@ -0,0 +1,178 @@
+package io.dazzleduck.sql.otel.collector;
+
+import com.google.protobuf.ByteString;
+import io.dazzleduck.sql.otel.collector.config.TraceSamplingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the trace sampler against a signal writer that keeps the Arrow files of the kept spans. The sampler is
+ * closed to decide the buffered traces, unless the test waits for a decision.
+ */
+class TraceSamplerTest {
+
+    private static final long START_MS = 1_700_000_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private CapturingSignalWriter writer;
+    private OtelCollectorMetrics metrics;
+
+    @BeforeEach
+    void setup() throws IOException {
+        writer = new CapturingSignalWriter("traces", tempDir.resolve("traces"));
+        metrics = new OtelCollectorMetrics(new SimpleMeterRegistry(), 5000, 5000, 5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    void keepsErrorTracesWithAllTheirSpans() throws Exception {
+        var sampler = sampler(Duration.ofSeconds(30), 0, 1);
+        var first = sampler.add(request(
+                span(1, 1, "checkout", 100, false),
+                span(2, 2, "browse", 100, false)));
+        var second = sampler.add(request(span(1, 1, "charge card", 50, true)));
+        assertFalse(first.acknowledged().isDone());
+        sampler.close();
+
+        assertTrue(first.acknowledged().isDone());
+        assertTrue(second.written().isDone());
+        assertEquals(1, writer.batches.size());
+        assertEquals(List.of("checkout", "charge card"), names(writer.batches.get(0)));
+        assertEquals(2, metrics.getKeptSpans());
+        assertEquals(1, metrics.getDroppedSpans());
+        assertEquals(1, metrics.getKeptTraces());
+        assertEquals(1, metrics.getDroppedTraces());
+    }
+
+    @Test
+    void ratioKeepsTheSameTraceIds() throws Exception {
+        for (int run = 0; run < 2; run++) {
+            var sampler = sampler(Duration.ofSeconds(30), 0.5, 1);
+            sampler.add(request(
+                    span(7, 1, "sampled", 10, false),
+                    span(7, Long.MAX_VALUE, "not sampled", 10, false)));
+            sampler.close();
+        }
+        assertEquals(2, writer.batches.size());
+        assertEquals(List.of("sampled"), names(writer.batches.get(0)));
+        assertEquals(List.of("sampled"), names(writer.batches.get(1)));
+    }
+
+    @Test
+    void keepsLatencyOutliers() throws Exception {
+        var sampler = sampler(Duration.ofSeconds(30), 0, 0.99);
+        var spans = new ArrayList<Span>();
+        for (int i = 0; i < 200; i++) {
+            spans.add(span(i, i, "fast", 10, false));
+        }
+        spans.add(span(1000, 1000, "slow", 1000, false));
+        sampler.add(request(spans.toArray(Span[]::new)));
+        sampler.close();
+
+        assertEquals(List.of("slow"), names(writer.batches.get(0)));
+        assertEquals(200, metrics.getDroppedTraces());
+    }
+
+    @Test
+    void lateSpansFollowTheDecision() throws Exception {
+        var sampler = sampler(Duration.ofMillis(200), 0, 1);
+        sampler.add(request(span(1, 1, "failed", 10, true), span(2, 2, "ok", 10, false)));
+        awaitDecisions(2);
+        var late = sampler.add(request(span(1, 1, "late retry", 10, false), span(2, 2, "late ok", 10, false)));
+        late.written().get(10, TimeUnit.SECONDS);
+        sampler.close();
+
+        assertEquals(2, writer.batches.size());
+        assertEquals(List.of("failed"), names(writer.batches.get(0)));
+        assertEquals(List.of("late retry"), names(writer.batches.get(1)));
+        assertEquals(1, metrics.getKeptTraces());
+        assertEquals(1, metrics.getDroppedTraces());
+    }
+
+    private TraceSampler sampler(Duration decisionWait, double ratio, double latencyPercentile) {
+        return new TraceSampler(writer, metrics,
+                new TraceSamplingConfig(true, decisionWait, 1 << 30, true, latencyPercentile, ratio));
+    }
+
+    private void awaitDecisions(long spans) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metrics.getKeptSpans() + metrics.getDroppedSpans() < spans) {
+            assertTrue(System.currentTimeMillis() < deadline, "Spans were not decided in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Span span(long traceHigh, long traceLow, String name, long durationMs, boolean error) {
+        return Span.newBuilder()
+                .setTraceId(ByteString.copyFrom(ByteBuffer.allocate(16).putLong(traceHigh).putLong(traceLow).array()))
+                .setSpanId(ByteString.copyFrom(ByteBuffer.allocate(8).putLong(name.hashCode()).array()))
+                .setName(name)
+                .setStartTimeUnixNano(START_MS * 1_000_000)
+                .setEndTimeUnixNano((START_MS + durationMs) * 1_000_000)
+                .setStatus(Status.newBuilder().setCode(error
+                        ? Status.StatusCode.STATUS_CODE_ERROR
+                        : Status.StatusCode.STATUS_CODE_OK))
+                .addAttributes(KeyValue.newBuilder().setKey("span.name")
+                        .setValue(AnyValue.newBuilder().setStringValue(name)))
+                .build();
+    }
+
+    private static byte[] request(Span... spans) {
+        return ExportTraceServiceRequest.newBuilder()
+                .addResourceSpans(ResourceSpans.newBuilder().addScopeSpans(ScopeSpans.newBuilder()
+                        .addAllSpans(List.of(spans))))
+                .build()
+                .toByteArray();
+    }
+
+    /**
+     * @return the names of the spans in {@code arrowFile}, checked against the attribute copied along with them
+     */
+    private static List<String> names(Path arrowFile) throws IOException {
+        var names = new ArrayList<String>();
+        try (var allocator = new RootAllocator();
+             var in = new FileInputStream(arrowFile.toFile());
+             var reader = new ArrowStreamReader(in, allocator)) {
+            while (reader.loadNextBatch()) {
+                var root = reader.getVectorSchemaRoot();
+                for (int row = 0; row < root.getRowCount(); row++) {
+                    String name = root.getVector(OtelTraceSchema.COL_NAME).getObject(row).toString();
+                    assertTrue(root.getVector(OtelTraceSchema.COL_ATTRIBUTES).getObject(row).toString().contains(name));
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+}
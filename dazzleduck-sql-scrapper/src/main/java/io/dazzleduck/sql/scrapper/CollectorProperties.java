@@ -67,6 +67,11 @@ public class CollectorProperties {
      */
     private int scrapeIntervalMs = 15000;
 
+    /**
+     * Maximum number of targets scraped at the same time.
+     */
+    private int maxConcurrentScrapes = 256;
+
     /**
      * Flush when buffer reaches this size (tailing mode).
      */
@@ -209,6 +214,14 @@ public class CollectorProperties {
         this.scrapeIntervalMs = scrapeIntervalMs;
     }
 
+    public int getMaxConcurrentScrapes() {
+        return maxConcurrentScrapes;
+    }
+
+    public void setMaxConcurrentScrapes(int maxConcurrentScrapes) {
+        this.maxConcurrentScrapes = maxConcurrentScrapes;
+    }
+
     public int getFlushThreshold() {
         return flushThreshold;
     }
@@ -1,27 +1,68 @@
 package io.dazzleduck.sql.scrapper;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Thread-safe buffer for collected metrics.
  * Supports tailing mode - metrics are buffered until flushed based on threshold or interval.
+ *
+ * <p>The buffer is a ring of preallocated slots, one array per column, so buffering a metric allocates nothing.
+ * Each slot has a sequence number that says whether it is free for the producer of a position or holds the metric
+ * of a position for a consumer, after Vyukov's bounded queue: scrapes add concurrently without a lock, and a slot
+ * is read only once its columns are written. An add to a full buffer drops the oldest metric, taking it as a
+ * consumer would. Drops are counted rather than logged, see {@link #getDroppedCount()}.
  */
 public class MetricsBuffer {
 
-    private static final Logger log = LoggerFactory.getLogger(MetricsBuffer.class);
+    /**
+     * Receives the columns of a buffered metric, see {@link #drainTo(MetricSink)}.
+     */
+    @FunctionalInterface
+    public interface MetricSink {
+        void accept(long timestampMs, String name, String type, Map<String, String> tags,
+                    double value, double min, double max, double mean);
+    }
+
+    private final int capacity;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final String[] names;
+    private final String[] types;
+    private final Object[] tags;
+    private final double[] values;
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[] means;
 
-    private final ConcurrentLinkedQueue<CollectedMetric> buffer = new ConcurrentLinkedQueue<>();
-    private final AtomicInteger size = new AtomicInteger(0);
-    private final int maxBufferSize;
+    /** Position of the next metric to read. */
+    private final AtomicLong head = new AtomicLong();
+    /** Position of the next metric to write. */
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
 
+    /**
+     * @param maxBufferSize metrics held at most, at least 2
+     */
     public MetricsBuffer(int maxBufferSize) {
-        this.maxBufferSize = maxBufferSize;
+        this.capacity = Math.max(2, maxBufferSize);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.timestamps = new long[capacity];
+        this.names = new String[capacity];
+        this.types = new String[capacity];
+        this.tags = new Object[capacity];
+        this.values = new double[capacity];
+        this.mins = new double[capacity];
+        this.maxs = new double[capacity];
+        this.means = new double[capacity];
     }
 
     /**
@@ -29,15 +70,34 @@ public class MetricsBuffer {
      * If buffer is full, oldest metrics are dropped.
      */
     public void add(CollectedMetric metric) {
-        if (size.get() >= maxBufferSize) {
-            CollectedMetric dropped = buffer.poll();
-            if (dropped != null) {
-                size.decrementAndGet();
-                log.warn("Buffer full, dropped metric: {}", dropped.name());
+        long pos;
+        int index;
+        while (true) {
+            pos = tail.get();
+            index = index(pos);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // Full: drop the oldest, or wait if its producer is still writing it
+                if (poll(null)) {
+                    dropped.increment();
+                } else {
+                    Thread.onSpinWait();
+                }
             }
         }
-        buffer.offer(metric);
-        size.incrementAndGet();
+        timestamps[index] = metric.timestamp().toEpochMilli();
+        names[index] = metric.name();
+        types[index] = metric.type();
+        tags[index] = metric.tags();
+        values[index] = metric.value();
+        mins[index] = metric.min();
+        maxs[index] = metric.max();
+        means[index] = metric.mean();
+        sequences.set(index, pos + 1);
     }
 
     /**
@@ -49,16 +109,29 @@ public class MetricsBuffer {
         }
     }
 
+    /**
+     * Pass the metrics in the buffer to {@code sink} in the order they were added, without building a
+     * {@link CollectedMetric} for each. Metrics added meanwhile are left for the next drain. A metric the sink
+     * throws on is removed and the rest are kept.
+     *
+     * @return metrics passed to the sink
+     */
+    public int drainTo(MetricSink sink) {
+        long end = tail.get();
+        int drained = 0;
+        while (head.get() < end && poll(sink)) {
+            drained++;
+        }
+        return drained;
+    }
+
     /**
      * Drain all metrics from the buffer.
      */
     public List<CollectedMetric> drain() {
-        List<CollectedMetric> drained = new ArrayList<>();
-        CollectedMetric metric;
-        while ((metric = buffer.poll()) != null) {
-            drained.add(metric);
-            size.decrementAndGet();
-        }
+        List<CollectedMetric> drained = new ArrayList<>(getSize());
+        drainTo((timestampMs, name, type, metricTags, value, min, max, mean) -> drained.add(
+            new CollectedMetric(Instant.ofEpochMilli(timestampMs), name, type, metricTags, value, min, max, mean)));
         return drained;
     }
 
@@ -66,31 +139,79 @@ public class MetricsBuffer {
      * Return metrics to buffer for retry.
      */
     public void returnForRetry(List<CollectedMetric> metrics) {
-        for (CollectedMetric metric : metrics) {
-            buffer.offer(metric);
-            size.incrementAndGet();
-        }
+        addAll(metrics);
     }
 
     /**
      * Get current buffer size.
      */
     public int getSize() {
-        return size.get();
+        long h = head.get();
+        long size = tail.get() - h;
+        return (int) Math.max(0, Math.min(capacity, size));
     }
 
     /**
      * Check if buffer is empty.
      */
     public boolean isEmpty() {
-        return size.get() == 0;
+        return getSize() == 0;
+    }
+
+    /**
+     * Get the number of metrics dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
     }
 
     /**
      * Clear the buffer.
      */
     public void clear() {
-        buffer.clear();
-        size.set(0);
+        while (poll(null)) {
+            // Discard
+        }
+    }
+
+    /**
+     * Take the oldest metric, passing it to {@code sink} unless null.
+     *
+     * @return false if the buffer is empty, or the oldest slot is still being written
+     */
+    @SuppressWarnings("unchecked")
+    private boolean poll(MetricSink sink) {
+        while (true) {
+            long pos = head.get();
+            int index = index(pos);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    long timestampMs = timestamps[index];
+                    String name = names[index];
+                    String type = types[index];
+                    Map<String, String> metricTags = (Map<String, String>) tags[index];
+                    double value = values[index];
+                    double min = mins[index];
+                    double max = maxs[index];
+                    double mean = means[index];
+                    names[index] = null;
+                    types[index] = null;
+                    tags[index] = null;
+                    // Free the slot before the sink runs, so that a slow sink does not hold up adds
+                    sequences.set(index, pos + capacity);
+                    if (sink != null) {
+                        sink.accept(timestampMs, name, type, metricTags, value, min, max, mean);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    private int index(long pos) {
+        return (int) (pos % capacity);
     }
 }
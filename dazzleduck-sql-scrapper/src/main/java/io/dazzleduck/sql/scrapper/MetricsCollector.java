@@ -3,6 +3,7 @@ package io.dazzleduck.sql.scrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -13,7 +14,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Main metrics collector with tailing support.
  *
  * This is a standalone, portable module that:
- * 1. Scrapes Prometheus metrics from configured endpoints at regular intervals
+ * 1. Scrapes Prometheus metrics from configured endpoints at regular intervals, each on its own schedule
  * 2. Buffers metrics in memory
  * 3. Flushes to remote server when threshold or interval is reached (tailing mode)
  *
@@ -40,11 +41,12 @@ public class MetricsCollector {
     private final MetricsScraper scraper;
     private final MetricsForwarder forwarder;
 
-    private final ScheduledExecutorService scraperScheduler;
+    private final ScrapeScheduler scrapeScheduler;
     private final ScheduledExecutorService forwarderScheduler;
 
     private final AtomicBoolean running = new AtomicBoolean(false);
     private volatile long lastFlushTime = System.currentTimeMillis();
+    private volatile long lastDroppedCount;
 
     public MetricsCollector(CollectorProperties properties) {
         this.properties = properties;
@@ -52,12 +54,8 @@ public class MetricsCollector {
         this.scraper = new MetricsScraper(properties, buffer);
         this.forwarder = new MetricsForwarder(properties);
 
-        // Separate thread for scraping
-        this.scraperScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "metrics-scraper");
-            t.setDaemon(true);
-            return t;
-        });
+        // Each target on its own schedule
+        this.scrapeScheduler = new ScrapeScheduler(properties, scraper, buffer);
 
         // Separate thread for forwarding (tailing)
         this.forwarderScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -82,13 +80,8 @@ public class MetricsCollector {
         }
 
         if (running.compareAndSet(false, true)) {
-            // Start scraper - runs at fixed intervals
-            scraperScheduler.scheduleAtFixedRate(
-                this::scrape,
-                0,
-                properties.getScrapeIntervalMs(),
-                TimeUnit.MILLISECONDS
-            );
+            // Start scraper - each target at its own offset in the interval
+            scrapeScheduler.start();
 
             // Start forwarder tailer - checks every 100ms for flush conditions
             forwarderScheduler.scheduleAtFixedRate(
@@ -98,9 +91,10 @@ public class MetricsCollector {
                 TimeUnit.MILLISECONDS
             );
 
-            log.info("Metrics collector started: targets={}, scrapeInterval={}ms, flushThreshold={}, flushInterval={}ms, server={}",
+            log.info("Metrics collector started: targets={}, scrapeInterval={}ms, maxConcurrentScrapes={}, flushThreshold={}, flushInterval={}ms, server={}",
                 properties.getResolvedTargets().size(),
                 properties.getScrapeIntervalMs(),
+                properties.getMaxConcurrentScrapes(),
                 properties.getFlushThreshold(),
                 properties.getFlushIntervalMs(),
                 properties.getServerUrl());
@@ -112,10 +106,11 @@ public class MetricsCollector {
      */
     public void stop() {
         if (running.compareAndSet(true, false)) {
+            scrapeScheduler.stop();
+
             // Final flush before shutdown
             flushBuffer();
 
-            shutdownScheduler(scraperScheduler, "scraper");
             shutdownScheduler(forwarderScheduler, "forwarder");
 
             // Close the forwarder to flush any pending data
@@ -138,21 +133,6 @@ public class MetricsCollector {
         }
     }
 
-    /**
-     * Scrape all targets and add metrics to buffer.
-     */
-    private void scrape() {
-        try {
-            int scraped = scraper.scrapeAllTargets();
-            if (scraped > 0) {
-                log.debug("Scraped {} metrics from {} targets",
-                    scraped, properties.getResolvedTargets().size());
-            }
-        } catch (Exception e) {
-            log.error("Error during scrape cycle: {}", e.getMessage());
-        }
-    }
-
     /**
      * Check buffer and flush if threshold reached OR interval elapsed (tailing mode).
      */
@@ -185,21 +165,27 @@ public class MetricsCollector {
     }
 
     /**
-     * Flush all metrics from buffer to remote server.
+     * Flush all metrics from buffer to remote server, along with the {@code scrape_buffer_dropped_total} series of
+     * the collector.
      */
     private void flushBuffer() {
-        List<CollectedMetric> metrics = buffer.drain();
-
-        if (metrics.isEmpty()) {
+        if (buffer.isEmpty()) {
             return;
         }
 
         lastFlushTime = System.currentTimeMillis();
+        buffer.add(scraper.collectorMetric(Instant.ofEpochMilli(lastFlushTime), "scrape_buffer_dropped_total",
+            "counter", buffer.getDroppedCount()));
 
-        boolean success = forwarder.sendMetrics(metrics);
+        boolean success = forwarder.sendMetrics(buffer);
         if (!success) {
-            buffer.returnForRetry(metrics);
-            log.warn("Forwarding failed, {} metrics returned to buffer", metrics.size());
+            log.warn("Forwarding failed, {} metrics left in buffer", buffer.getSize());
+        }
+
+        long dropped = buffer.getDroppedCount();
+        if (dropped > lastDroppedCount) {
+            log.warn("Buffer full, dropped {} metrics since the last flush", dropped - lastDroppedCount);
+            lastDroppedCount = dropped;
         }
     }
 
@@ -231,6 +217,13 @@ public class MetricsCollector {
         return forwarder.getMetricsDroppedCount();
     }
 
+    /**
+     * Get the number of metrics dropped because the buffer was full.
+     */
+    public long getBufferDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
     /**
      * Get the properties for this collector.
      */
@@ -245,6 +238,13 @@ public class MetricsCollector {
         return buffer;
     }
 
+    /**
+     * Get the status of each target as of its last scrape.
+     */
+    public List<ScrapeScheduler.TargetStatus> getTargetStatuses() {
+        return scrapeScheduler.getTargetStatuses();
+    }
+
     /**
      * Get the scraper (for testing or advanced use).
      */
@@ -1,7 +1,7 @@
 package io.dazzleduck.sql.scrapper;
 
 import io.dazzleduck.sql.client.HttpArrowProducer;
-import io.dazzleduck.sql.common.types.JavaRow;
+import io.dazzleduck.sql.common.types.VectorSchemaRootAppender;
 import org.apache.arrow.vector.types.FloatingPointPrecision;
 import org.apache.arrow.vector.types.TimeUnit;
 import org.apache.arrow.vector.types.pojo.ArrowType;
@@ -14,7 +14,9 @@ import org.slf4j.LoggerFactory;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Forwards collected metrics to a remote server using HttpArrowProducer from dazzleduck-sql-client.
@@ -42,10 +44,13 @@ public class MetricsForwarder {
     private final AtomicLong metricsSentCount = new AtomicLong(0);
     private final AtomicLong metricsDroppedCount = new AtomicLong(0);
 
+    private final RowWriter rowWriter = new RowWriter();
+
     public MetricsForwarder(CollectorProperties properties) {
         this.properties = properties;
 
-        // Arrow schema — matches ArrowMetricSchema from dazzleduck-sql-micrometer exactly
+        // Arrow schema — the leading columns of ArrowMetricSchema from dazzleduck-sql-micrometer, as samples have no
+        // histogram columns
         this.arrowSchema = new Schema(List.of(
             new Field("timestamp", FieldType.notNullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)), null),
             new Field("name", FieldType.notNullable(new ArrowType.Utf8()), null),
@@ -90,15 +95,15 @@ public class MetricsForwarder {
      * Send collected metrics to the remote server.
      * Returns true if metrics were queued successfully.
      */
-    public boolean sendMetrics(List<CollectedMetric> metrics) {
+    public synchronized boolean sendMetrics(List<CollectedMetric> metrics) {
         if (metrics.isEmpty()) {
             return true;
         }
 
         try {
             for (CollectedMetric metric : metrics) {
-                JavaRow row = toJavaRow(metric);
-                producer.addRow(row);
+                rowWriter.accept(metric.timestamp().toEpochMilli(), metric.name(), metric.type(), metric.tags(),
+                    metric.value(), metric.min(), metric.max(), metric.mean());
             }
             metricsSentCount.addAndGet(metrics.size());
             log.debug("Queued {} metrics for sending", metrics.size());
@@ -111,23 +116,74 @@ public class MetricsForwarder {
     }
 
     /**
-     * Convert CollectedMetric to JavaRow for Arrow serialization.
+     * Send the metrics in a buffer to the remote server, writing each straight into the Arrow vectors of the
+     * current batch. If queuing fails, the metric being queued is dropped and the rest stay in the buffer.
+     * Returns true if metrics were queued successfully.
      */
-    private JavaRow toJavaRow(CollectedMetric metric) {
-        Object[] values = new Object[8];
-        values[COL_TIMESTAMP] = metric.timestamp().toEpochMilli();
-        values[COL_NAME] = metric.name();
-        values[COL_TYPE] = metric.type();
-        values[COL_TAGS] = metric.tags();
-
-        double value = metric.value();
-        values[COL_VALUE] = (Double.isNaN(value) || Double.isInfinite(value)) ? null : value;
+    public synchronized boolean sendMetrics(MetricsBuffer buffer) {
+        long sentBefore = rowWriter.rows;
+        try {
+            int sent = buffer.drainTo(rowWriter);
+            metricsSentCount.addAndGet(sent);
+            log.debug("Queued {} metrics for sending", sent);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to queue metrics: {}", e.getMessage());
+            metricsSentCount.addAndGet(rowWriter.rows - sentBefore);
+            metricsDroppedCount.incrementAndGet();
+            return false;
+        }
+    }
 
-        values[COL_MIN] = metric.min();
-        values[COL_MAX] = metric.max();
-        values[COL_MEAN] = metric.mean();
+    /**
+     * Appends metrics to the producer, setting the columns of each on the Arrow vectors. Reused across rows, as
+     * the producer appends a row before returning.
+     */
+    private final class RowWriter implements MetricsBuffer.MetricSink, Consumer<VectorSchemaRootAppender> {
+        long rows;
+        private long timestampMs;
+        private String name;
+        private String type;
+        private Map<String, String> tags;
+        private double value;
+        private double min;
+        private double max;
+        private double mean;
+
+        @Override
+        public void accept(long timestampMs, String name, String type, Map<String, String> tags,
+                           double value, double min, double max, double mean) {
+            this.timestampMs = timestampMs;
+            this.name = name;
+            this.type = type;
+            this.tags = tags;
+            this.value = value;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            try {
+                producer.appendRow(this);
+                rows++;
+            } finally {
+                this.tags = null;
+            }
+        }
 
-        return new JavaRow(values);
+        @Override
+        public void accept(VectorSchemaRootAppender row) {
+            row.setLong(COL_TIMESTAMP, timestampMs)
+                .setString(COL_NAME, name)
+                .setString(COL_TYPE, type)
+                .setObject(COL_TAGS, tags);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                row.setNull(COL_VALUE);
+            } else {
+                row.setDouble(COL_VALUE, value);
+            }
+            row.setDouble(COL_MIN, min)
+                .setDouble(COL_MAX, max)
+                .setDouble(COL_MEAN, mean);
+        }
     }
 
     private static FieldType fp() {
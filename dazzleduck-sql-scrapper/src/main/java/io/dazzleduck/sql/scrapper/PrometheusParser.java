@@ -0,0 +1,822 @@
+package io.dazzleduck.sql.scrapper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a scrape of a Prometheus endpoint into {@link CollectedMetric}s as it streams in, in the Prometheus text,
+ * OpenMetrics text or Prometheus protobuf exposition format.
+ *
+ * <p>The text formats are tokenized byte by byte out of one reused buffer, rather than split into lines and matched
+ * with regexes, and the protobuf format is decoded one metric family at a time. Metric names, label keys and label
+ * values are interned, so that a scrape mostly reuses the strings of the previous scrape of the target. Samples of
+ * counters and gauges are emitted as they are read; those of a histogram or summary are held until the end of their
+ * family, whose {@code _sum} and {@code _count} give them their mean.
+ *
+ * <p>A parser keeps its interned strings from one scrape to the next, so each target has its own, and parses one
+ * scrape at a time.
+ */
+final class PrometheusParser {
+
+    /** Formats in order of preference, as Prometheus itself asks for them. */
+    static final String ACCEPT = "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;"
+            + "encoding=delimited;q=0.7,application/openmetrics-text;version=1.0.0;q=0.5,"
+            + "text/plain;version=0.0.4;q=0.3,*/*;q=0.1";
+    private static final String PROTOBUF = "application/vnd.google.protobuf";
+
+    private static final byte[] TYPE = "TYPE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EOF = "EOF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INF = "Inf".getBytes(StandardCharsets.US_ASCII);
+    /** Types of the protobuf {@code MetricType} enum, by number. */
+    private static final String[] PROTOBUF_TYPES = {"counter", "gauge", "summary", "untyped", "histogram", "gaugehistogram"};
+    private static final String[] SUFFIXES = {"_bucket", "_sum", "_count", "_total", "_created"};
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final String sourceUrl;
+    private final String collectorId;
+    private final String collectorHost;
+    private final Interner names = new Interner(1 << 16);
+    private final Interner values = new Interner(1 << 16);
+    /** The {@code _bucket}, {@code _sum} and {@code _count} names of the histograms and summaries read as protobuf. */
+    private final Map<String, String[]> suffixedNames = new HashMap<>();
+    private byte[] buf = new byte[64 * 1024];
+    private byte[] scratch = new byte[256];
+    private int pos;
+
+    // State of the scrape being parsed
+    private List<CollectedMetric> metrics;
+    private Instant timestamp;
+    private final Map<String, String> declaredTypes = new HashMap<>();
+    /** The family of each sample name, resolved once per scrape. */
+    private final Map<String, Family> families = new HashMap<>();
+    private Family pendingFamily;
+    private final List<Sample> pending = new ArrayList<>();
+
+    private record Family(String name, String type) {
+        boolean hasMean() {
+            return "histogram".equals(type) || "summary".equals(type);
+        }
+    }
+
+    private record Sample(String name, Map<String, String> labels, double value) {
+    }
+
+    PrometheusParser(String sourceUrl, String collectorId, String collectorHost) {
+        this.sourceUrl = sourceUrl;
+        this.collectorId = collectorId;
+        this.collectorHost = collectorHost;
+    }
+
+    /**
+     * Parses a scrape, in the protobuf format if {@code contentType} says so and in a text format otherwise.
+     */
+    synchronized List<CollectedMetric> parse(InputStream in, String contentType) throws IOException {
+        metrics = new ArrayList<>();
+        timestamp = Instant.now();
+        try {
+            if (contentType != null && contentType.startsWith(PROTOBUF)) {
+                parseProtobuf(in);
+            } else {
+                parseText(in);
+            }
+            flushFamily();
+            return metrics;
+        } finally {
+            declaredTypes.clear();
+            families.clear();
+            pending.clear();
+            pendingFamily = null;
+            metrics = null;
+        }
+    }
+
+    // ---- Prometheus and OpenMetrics text ----
+
+    private void parseText(InputStream in) throws IOException {
+        int start = 0;
+        int limit = 0;
+        int scan = 0;
+        while (true) {
+            int newline = indexOf((byte) '\n', scan, limit);
+            if (newline >= 0) {
+                if (!line(start, newline)) {
+                    return;
+                }
+                start = scan = newline + 1;
+                continue;
+            }
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, limit - start);
+                limit -= start;
+                start = 0;
+            }
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            scan = limit;
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                if (limit > 0) {
+                    line(0, limit);
+                }
+                return;
+            }
+            limit += read;
+        }
+    }
+
+    /**
+     * @return false at the {@code # EOF} that ends an OpenMetrics exposition
+     */
+    private boolean line(int from, int to) {
+        int p = skipSpaces(from, to);
+        if (p == to) {
+            return true;
+        }
+        if (buf[p] == '#') {
+            return comment(p + 1, to);
+        }
+        sample(p, to);
+        return true;
+    }
+
+    private boolean comment(int from, int to) {
+        int p = skipSpaces(from, to);
+        int end = tokenEnd(p, to);
+        if (matches(p, end, EOF)) {
+            return false;
+        }
+        if (!matches(p, end, TYPE)) {
+            return true;
+        }
+        int nameStart = skipSpaces(end, to);
+        int nameEnd = tokenEnd(nameStart, to);
+        int typeStart = skipSpaces(nameEnd, to);
+        int typeEnd = tokenEnd(typeStart, to);
+        if (nameStart == nameEnd || typeStart == typeEnd) {
+            return true;
+        }
+        flushFamily();
+        declaredTypes.put(names.intern(buf, nameStart, nameEnd), values.intern(buf, typeStart, typeEnd));
+        return true;
+    }
+
+    private void sample(int from, int to) {
+        if (!isNameStart(buf[from])) {
+            return;
+        }
+        int p = from + 1;
+        while (p < to && isNameChar(buf[p])) {
+            p++;
+        }
+        String name = names.intern(buf, from, p);
+        var labels = new LinkedHashMap<String, String>();
+        if (p < to && buf[p] == '{') {
+            p = labels(p + 1, to, labels);
+            if (p < 0) {
+                return;
+            }
+        }
+        int valueStart = skipSpaces(p, to);
+        if (valueStart == p || valueStart == to) {
+            return;
+        }
+        // A timestamp or an OpenMetrics exemplar may follow; samples are all given the time of the scrape
+        double value;
+        try {
+            value = parseDouble(valueStart, tokenEnd(valueStart, to));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        accept(name, labels, value);
+    }
+
+    /**
+     * Reads the labels after a {@code '{'} into {@code labels}.
+     *
+     * @return the position after the closing {@code '}'}, -1 if the labels are malformed
+     */
+    private int labels(int from, int to, Map<String, String> labels) {
+        int p = from;
+        while (true) {
+            p = skipSpaces(p, to);
+            if (p >= to) {
+                return -1;
+            }
+            if (buf[p] == '}') {
+                return p + 1;
+            }
+            int keyEnd = p;
+            while (keyEnd < to && isNameChar(buf[keyEnd])) {
+                keyEnd++;
+            }
+            if (keyEnd == p) {
+                return -1;
+            }
+            String key = names.intern(buf, p, keyEnd);
+            p = skipSpaces(keyEnd, to);
+            if (p >= to || buf[p] != '=') {
+                return -1;
+            }
+            p = skipSpaces(p + 1, to);
+            if (p >= to || buf[p] != '"') {
+                return -1;
+            }
+            int valueStart = ++p;
+            boolean escaped = false;
+            while (p < to && buf[p] != '"') {
+                if (buf[p] == '\\') {
+                    escaped = true;
+                    p++;
+                }
+                p++;
+            }
+            if (p >= to) {
+                return -1;
+            }
+            labels.put(key, escaped ? unescape(valueStart, p) : values.intern(buf, valueStart, p));
+            p = skipSpaces(p + 1, to);
+            if (p < to && buf[p] == ',') {
+                p++;
+            }
+        }
+    }
+
+    private String unescape(int from, int to) {
+        if (scratch.length < to - from) {
+            scratch = new byte[Math.max(to - from, scratch.length * 2)];
+        }
+        int length = 0;
+        for (int p = from; p < to; p++) {
+            byte b = buf[p];
+            if (b == '\\' && p + 1 < to) {
+                byte next = buf[++p];
+                if (next == 'n') {
+                    b = '\n';
+                } else if (next == '\\' || next == '"') {
+                    b = next;
+                } else {
+                    scratch[length++] = b;
+                    b = next;
+                }
+            }
+            scratch[length++] = b;
+        }
+        return values.intern(scratch, 0, length);
+    }
+
+    /**
+     * Parses a sample value, exactly and without a String for plain decimals of up to 15 digits.
+     */
+    private double parseDouble(int from, int to) {
+        int p = from;
+        boolean negative = false;
+        if (buf[p] == '+' || buf[p] == '-') {
+            negative = buf[p] == '-';
+            p++;
+        }
+        if (matches(p, to, INF)) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        if (p == from && matches(p, to, NAN)) {
+            return Double.NaN;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean any = false;
+        boolean fraction = false;
+        for (; p < to; p++) {
+            byte b = buf[p];
+            if (b == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (b < '0' || b > '9') {
+                break;
+            }
+            any = true;
+            if (digits == 15) {
+                exact = false;
+                break;
+            }
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa != 0) {
+                digits++;
+            }
+            if (fraction) {
+                exponent--;
+            }
+        }
+        if (exact && any && p == to && exponent >= -22) {
+            // Both operands are exact, so their quotient is rounded once, as Double.parseDouble rounds
+            double value = mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    // ---- Prometheus protobuf ----
+
+    /**
+     * Reads length-delimited {@code MetricFamily} messages one at a time into the buffer.
+     */
+    private void parseProtobuf(InputStream in) throws IOException {
+        while (true) {
+            int length = readLength(in);
+            if (length < 0) {
+                return;
+            }
+            if (buf.length < length) {
+                buf = new byte[Math.max(length, buf.length * 2)];
+            }
+            if (in.readNBytes(buf, 0, length) < length) {
+                throw new EOFException("Truncated metric family");
+            }
+            metricFamily(length);
+        }
+    }
+
+    private static int readLength(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Truncated metric family length");
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return length;
+            }
+        }
+        throw new IOException("Malformed metric family length");
+    }
+
+    private void metricFamily(int end) {
+        String name = null;
+        String type = "untyped";
+        pos = 0;
+        while (pos < end) {
+            long tag = varint();
+            switch ((int) tag) {
+                case 1 << 3 | 2 -> {
+                    int length = (int) varint();
+                    name = names.intern(buf, pos, pos + length);
+                    pos += length;
+                }
+                case 3 << 3 -> {
+                    int number = (int) varint();
+                    type = number < PROTOBUF_TYPES.length ? PROTOBUF_TYPES[number] : "untyped";
+                }
+                default -> skip(tag);
+            }
+        }
+        if (name == null) {
+            return;
+        }
+        pos = 0;
+        while (pos < end) {
+            long tag = varint();
+            if (tag == (4 << 3 | 2)) {
+                int length = (int) varint();
+                int metricEnd = pos + length;
+                metric(name, type, metricEnd);
+                pos = metricEnd;
+            } else {
+                skip(tag);
+            }
+        }
+    }
+
+    private void metric(String name, String type, int end) {
+        int start = pos;
+        var labels = new LinkedHashMap<String, String>();
+        while (pos < end) {
+            long tag = varint();
+            if (tag == (1 << 3 | 2)) {
+                int pairEnd = (int) varint() + pos;
+                String key = null;
+                String value = "";
+                while (pos < pairEnd) {
+                    long pairTag = varint();
+                    if (pairTag == (1 << 3 | 2) || pairTag == (2 << 3 | 2)) {
+                        int length = (int) varint();
+                        if (pairTag == (1 << 3 | 2)) {
+                            key = names.intern(buf, pos, pos + length);
+                        } else {
+                            value = values.intern(buf, pos, pos + length);
+                        }
+                        pos += length;
+                    } else {
+                        skip(pairTag);
+                    }
+                }
+                if (key != null) {
+                    labels.put(key, value);
+                }
+            } else {
+                skip(tag);
+            }
+        }
+        pos = start;
+        while (pos < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            if ((tag & 7) != 2 || field < 2 || field == 6 || field > 7) {
+                skip(tag);
+                continue;
+            }
+            int valueEnd = (int) varint() + pos;
+            switch (field) {
+                case 4 -> summary(name, labels, valueEnd);
+                case 7 -> histogram(name, type, labels, valueEnd);
+                default -> {
+                    // Gauge, Counter and Untyped all have their value in field 1
+                    double value = Double.NaN;
+                    while (pos < valueEnd) {
+                        long valueTag = varint();
+                        if (valueTag == (1 << 3 | 1)) {
+                            value = fixed64();
+                        } else {
+                            skip(valueTag);
+                        }
+                    }
+                    emit(name, type, labels, value, 0.0);
+                }
+            }
+            pos = valueEnd;
+        }
+    }
+
+    private void summary(String name, Map<String, String> labels, int end) {
+        int start = pos;
+        double count = 0;
+        double sum = 0;
+        while (pos < end) {
+            long tag = varint();
+            if (tag == (1 << 3)) {
+                count = varint();
+            } else if (tag == (2 << 3 | 1)) {
+                sum = fixed64();
+            } else {
+                skip(tag);
+            }
+        }
+        double mean = count > 0 ? sum / count : 0.0;
+        pos = start;
+        while (pos < end) {
+            long tag = varint();
+            if (tag != (3 << 3 | 2)) {
+                skip(tag);
+                continue;
+            }
+            int quantileEnd = (int) varint() + pos;
+            double quantile = Double.NaN;
+            double value = Double.NaN;
+            while (pos < quantileEnd) {
+                long quantileTag = varint();
+                if (quantileTag == (1 << 3 | 1)) {
+                    quantile = fixed64();
+                } else if (quantileTag == (2 << 3 | 1)) {
+                    value = fixed64();
+                } else {
+                    skip(quantileTag);
+                }
+            }
+            emit(name, "summary", withLabel(labels, "quantile", quantile), value, mean);
+        }
+        String[] suffixed = suffixedNames(name);
+        emit(suffixed[1], "summary", new LinkedHashMap<>(labels), sum, mean);
+        emit(suffixed[2], "summary", labels, count, mean);
+    }
+
+    private void histogram(String name, String type, Map<String, String> labels, int end) {
+        int start = pos;
+        double count = 0;
+        double sum = 0;
+        while (pos < end) {
+            long tag = varint();
+            if (tag == (1 << 3)) {
+                count = varint();
+            } else if (tag == (4 << 3 | 1)) {
+                count = fixed64();
+            } else if (tag == (2 << 3 | 1)) {
+                sum = fixed64();
+            } else {
+                skip(tag);
+            }
+        }
+        double mean = count > 0 ? sum / count : 0.0;
+        String[] suffixed = suffixedNames(name);
+        boolean infinite = false;
+        pos = start;
+        while (pos < end) {
+            long tag = varint();
+            if (tag != (3 << 3 | 2)) {
+                skip(tag);
+                continue;
+            }
+            int bucketEnd = (int) varint() + pos;
+            double bucketCount = 0;
+            double upperBound = Double.NaN;
+            while (pos < bucketEnd) {
+                long bucketTag = varint();
+                if (bucketTag == (1 << 3)) {
+                    bucketCount = varint();
+                } else if (bucketTag == (4 << 3 | 1)) {
+                    bucketCount = fixed64();
+                } else if (bucketTag == (2 << 3 | 1)) {
+                    upperBound = fixed64();
+                } else {
+                    skip(bucketTag);
+                }
+            }
+            infinite |= upperBound == Double.POSITIVE_INFINITY;
+            emit(suffixed[0], type, withLabel(labels, "le", upperBound), bucketCount, mean);
+        }
+        // The text format always has the +Inf bucket, which the protobuf format may leave to the count
+        if (!infinite) {
+            emit(suffixed[0], type, withLabel(labels, "le", Double.POSITIVE_INFINITY), count, mean);
+        }
+        emit(suffixed[1], type, new LinkedHashMap<>(labels), sum, mean);
+        emit(suffixed[2], type, labels, count, mean);
+    }
+
+    private Map<String, String> withLabel(Map<String, String> labels, String key, double value) {
+        var copy = new LinkedHashMap<>(labels);
+        copy.put(key, formatBound(value));
+        return copy;
+    }
+
+    /**
+     * Formats a bucket bound or quantile as the text format does, so that both formats give the same label.
+     */
+    private static String formatBound(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private String[] suffixedNames(String name) {
+        return suffixedNames.computeIfAbsent(name, n -> new String[]{n + "_bucket", n + "_sum", n + "_count"});
+    }
+
+    private long varint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    private double fixed64() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (buf[pos++] & 0xFFL) << (8 * i);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    private void skip(long tag) {
+        switch ((int) (tag & 7)) {
+            case 0 -> varint();
+            case 1 -> pos += 8;
+            case 2 -> {
+                int length = (int) varint();
+                pos += length;
+            }
+            case 5 -> pos += 4;
+            default -> throw new IllegalStateException("Unsupported wire type " + (tag & 7));
+        }
+    }
+
+    // ---- Families and samples ----
+
+    private void accept(String name, Map<String, String> labels, double value) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = family(name);
+            families.put(name, family);
+        }
+        if (name.endsWith("_created") && !name.equals(family.name())) {
+            // OpenMetrics creation times of counters, histograms and summaries are not samples of the text format
+            return;
+        }
+        if (!family.equals(pendingFamily)) {
+            flushFamily();
+        }
+        if (family.hasMean()) {
+            pendingFamily = family;
+            pending.add(new Sample(name, labels, value));
+        } else {
+            emit(name, family.type(), labels, value, 0.0);
+        }
+    }
+
+    /**
+     * Resolves the family of a sample name by its declared type, with or without a histogram, summary or counter
+     * suffix, defaulting to a gauge.
+     */
+    private Family family(String name) {
+        String type = declaredTypes.get(name);
+        if (type != null) {
+            return new Family(name, type);
+        }
+        for (String suffix : SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                String baseName = name.substring(0, name.length() - suffix.length());
+                type = declaredTypes.get(baseName);
+                if (type != null) {
+                    return new Family(baseName, type);
+                }
+            }
+        }
+        return new Family(name, "gauge");
+    }
+
+    /**
+     * Emits the held samples of a histogram or summary with the mean of their {@code _sum} and {@code _count}.
+     */
+    private void flushFamily() {
+        if (pending.isEmpty()) {
+            pendingFamily = null;
+            return;
+        }
+        String sumName = pendingFamily.name() + "_sum";
+        String countName = pendingFamily.name() + "_count";
+        Map<String, double[]> sumAndCount = new HashMap<>();
+        for (Sample sample : pending) {
+            boolean sum = sample.name().equals(sumName);
+            if (sum || sample.name().equals(countName)) {
+                double[] both = sumAndCount.computeIfAbsent(meanKey(sample.labels()), k -> new double[]{Double.NaN, Double.NaN});
+                both[sum ? 0 : 1] = sample.value();
+            }
+        }
+        for (Sample sample : pending) {
+            double[] both = sumAndCount.get(meanKey(sample.labels()));
+            double mean = both != null && !Double.isNaN(both[0]) && both[1] > 0 ? both[0] / both[1] : 0.0;
+            emit(sample.name(), pendingFamily.type(), sample.labels(), sample.value(), mean);
+        }
+        pending.clear();
+        pendingFamily = null;
+    }
+
+    /**
+     * Builds a stable key for matching the samples of a family to their _sum/_count.
+     * Leaves out "le" (histogram bucket label) and "quantile" (summary quantile label) so that
+     * _bucket{method="GET",le="0.1"} and _sum{method="GET"} share the same key.
+     */
+    private static String meanKey(Map<String, String> labels) {
+        List<String> entries = new ArrayList<>(labels.size());
+        labels.forEach((key, value) -> {
+            if (!key.equals("le") && !key.equals("quantile")) {
+                entries.add(key + "=" + value);
+            }
+        });
+        entries.sort(null);
+        return String.join(",", entries);
+    }
+
+    private void emit(String name, String type, Map<String, String> labels, double value, double mean) {
+        labels.put("source_url", sourceUrl);
+        labels.put("collector_id", collectorId);
+        labels.put("collector_host", collectorHost);
+        metrics.add(new CollectedMetric(timestamp, name, type, labels, value, 0.0, 0.0, mean));
+    }
+
+    // ---- Bytes ----
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipSpaces(int from, int to) {
+        int p = from;
+        while (p < to && (buf[p] == ' ' || buf[p] == '\t' || buf[p] == '\r')) {
+            p++;
+        }
+        return p;
+    }
+
+    private int tokenEnd(int from, int to) {
+        int p = from;
+        while (p < to && buf[p] != ' ' && buf[p] != '\t' && buf[p] != '\r') {
+            p++;
+        }
+        return p;
+    }
+
+    private boolean matches(int from, int to, byte[] expected) {
+        return to - from == expected.length && Arrays.equals(buf, from, to, expected, 0, expected.length);
+    }
+
+    private static boolean isNameStart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == ':';
+    }
+
+    private static boolean isNameChar(byte b) {
+        return isNameStart(b) || (b >= '0' && b <= '9');
+    }
+
+    /**
+     * Strings by their UTF-8 bytes, in an open-addressed table that is emptied once it holds {@code maxSize} of
+     * them, so that label values of unbounded cardinality cannot grow it without end.
+     */
+    private static final class Interner {
+
+        private final int maxSize;
+        private byte[][] keys = new byte[1024][];
+        private String[] strings = new String[1024];
+        private int[] hashes = new int[1024];
+        private int size;
+
+        Interner(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        String intern(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = strings.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            for (; strings[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, bytes, from, to)) {
+                    return strings[slot];
+                }
+            }
+            String string = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            if (size == maxSize) {
+                Arrays.fill(strings, null);
+                Arrays.fill(keys, null);
+                size = 0;
+            } else if (2 * (size + 1) > strings.length) {
+                grow();
+            }
+            put(Arrays.copyOfRange(bytes, from, to), string, hash);
+            return string;
+        }
+
+        private void put(byte[] key, String string, int hash) {
+            int mask = strings.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (strings[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            strings[slot] = string;
+            hashes[slot] = hash;
+            size++;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldStrings = strings;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            strings = new String[oldStrings.length * 2];
+            hashes = new int[oldHashes.length * 2];
+            size = 0;
+            for (int i = 0; i < oldStrings.length; i++) {
+                if (oldStrings[i] != null) {
+                    put(oldKeys[i], oldStrings[i], oldHashes[i]);
+                }
+            }
+        }
+    }
+}
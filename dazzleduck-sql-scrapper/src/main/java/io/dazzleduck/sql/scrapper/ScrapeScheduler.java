@@ -0,0 +1,279 @@
+package io.dazzleduck.sql.scrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scrapes each target on a schedule of its own, so that a slow target delays no other and the interval does not
+ * stretch with the number of targets.
+ *
+ * <p>Every target is scraped once at start, then every scrape interval at an offset within the interval given by a
+ * hash of its URL, which spreads the targets over the interval and keeps each one's phase across restarts. A scrape
+ * runs on a virtual thread of its own, once one of {@code max-concurrent-scrapes} permits is free; a scrape still
+ * running when its target is due again makes the target skip that round. A scrape is interrupted after the read
+ * timeout.
+ *
+ * <p>Each scrape is followed by the series Prometheus adds for a target: {@code up},
+ * {@code scrape_duration_seconds} and {@code scrape_samples_scraped}, along with {@code scrape_timeouts_total}.
+ * When a target that was up fails, the series of its last scrape are sent once more with a NaN value, which the
+ * forwarder writes as null, to mark them stale.
+ */
+public class ScrapeScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ScrapeScheduler.class);
+
+    private final CollectorProperties properties;
+    private final MetricsScraper scraper;
+    private final MetricsBuffer buffer;
+    private final Semaphore permits;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("metrics-scrape-", 0).factory());
+    private final List<Target> targets = new ArrayList<>();
+
+    /**
+     * Status of a target as of its last scrape.
+     *
+     * @param lastScrape   start of the last scrape, null before the first has finished
+     * @param lastDuration length of the last scrape in milliseconds
+     * @param lastSamples  samples of the last scrape
+     */
+    public record TargetStatus(
+        String url,
+        boolean up,
+        Instant lastScrape,
+        long lastDuration,
+        int lastSamples,
+        long scrapes,
+        long failures,
+        long timeouts,
+        long skipped
+    ) {
+    }
+
+    /**
+     * State of one target, written by its scrapes, which never overlap.
+     */
+    private static final class Target {
+        final String url;
+        final AtomicBoolean running = new AtomicBoolean();
+        volatile boolean up;
+        volatile Instant lastScrape;
+        volatile long lastDuration;
+        volatile int lastSamples;
+        volatile long scrapes;
+        volatile long failures;
+        volatile long timeouts;
+        volatile long skipped;
+        /** The series of the last successful scrape, marked stale if the target then fails. */
+        SeriesIdentities lastSeries = SeriesIdentities.NONE;
+
+        Target(String url) {
+            this.url = url;
+        }
+
+        TargetStatus status() {
+            return new TargetStatus(url, up, lastScrape, lastDuration, lastSamples, scrapes, failures, timeouts,
+                skipped);
+        }
+    }
+
+    /**
+     * Names, types and tags of the series of a scrape, all that is needed to mark them stale. Rather than keeping
+     * the metrics of the scrape, their strings are interned, so that the ones repeated across series and targets
+     * are held once, and the tags are flattened into alternating keys and values.
+     */
+    record SeriesIdentities(String[] names, String[] types, String[][] tags) {
+
+        static final SeriesIdentities NONE = new SeriesIdentities(new String[0], new String[0], new String[0][]);
+
+        static SeriesIdentities of(List<CollectedMetric> series) {
+            int size = series.size();
+            var names = new String[size];
+            var types = new String[size];
+            var tags = new String[size][];
+            for (int i = 0; i < size; i++) {
+                CollectedMetric metric = series.get(i);
+                names[i] = metric.name().intern();
+                types[i] = metric.type() == null ? null : metric.type().intern();
+                Map<String, String> metricTags = metric.tags();
+                var flat = new String[metricTags == null ? 0 : metricTags.size() * 2];
+                int j = 0;
+                if (metricTags != null) {
+                    for (var tag : metricTags.entrySet()) {
+                        flat[j++] = tag.getKey().intern();
+                        flat[j++] = tag.getValue() == null ? null : tag.getValue().intern();
+                    }
+                }
+                tags[i] = flat;
+            }
+            return new SeriesIdentities(names, types, tags);
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        /**
+         * Adds a stale marker, a NaN value at {@code timestamp}, for each series.
+         */
+        void markStale(Instant timestamp, List<CollectedMetric> report) {
+            for (int i = 0; i < names.length; i++) {
+                var flat = tags[i];
+                var metricTags = new LinkedHashMap<String, String>(flat.length);
+                for (int j = 0; j < flat.length; j += 2) {
+                    metricTags.put(flat[j], flat[j + 1]);
+                }
+                report.add(new CollectedMetric(timestamp, names[i], types[i], metricTags, Double.NaN, 0.0, 0.0, 0.0));
+            }
+        }
+    }
+
+    public ScrapeScheduler(CollectorProperties properties, MetricsScraper scraper, MetricsBuffer buffer) {
+        this.properties = properties;
+        this.scraper = scraper;
+        this.buffer = buffer;
+        this.permits = new Semaphore(properties.getMaxConcurrentScrapes());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-scraper");
+            t.setDaemon(true);
+            return t;
+        });
+        for (String url : properties.getResolvedTargets()) {
+            targets.add(new Target(url));
+        }
+    }
+
+    /**
+     * Scrapes every target once and schedules the following scrapes.
+     */
+    public void start() {
+        long interval = properties.getScrapeIntervalMs();
+        for (Target target : targets) {
+            dispatch(target);
+            scheduler.scheduleAtFixedRate(() -> dispatch(target), initialDelay(target.url, interval), interval,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops scheduling scrapes and waits for those running to finish.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(properties.getReadTimeoutMs() + 1000L, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+                log.warn("Scrapes did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public List<TargetStatus> getTargetStatuses() {
+        return targets.stream().map(Target::status).toList();
+    }
+
+    /**
+     * Delay of the second scrape of a target: an interval, plus an offset within the next one given by its URL.
+     */
+    static long initialDelay(String url, long interval) {
+        long hash = url.hashCode() * 0x9E3779B97F4A7C15L;
+        return interval + Math.floorMod(hash ^ (hash >>> 32), interval);
+    }
+
+    private void dispatch(Target target) {
+        if (!target.running.compareAndSet(false, true)) {
+            target.skipped++;
+            log.debug("Skipped scrape of {}, the previous one is still running", target.url);
+            return;
+        }
+        try {
+            workers.execute(() -> scrape(target));
+        } catch (RuntimeException e) {
+            // Rejected while stopping
+            target.running.set(false);
+        }
+    }
+
+    private void scrape(Target target) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            target.running.set(false);
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            timedOut.set(true);
+            thread.interrupt();
+        }, properties.getReadTimeoutMs(), TimeUnit.MILLISECONDS);
+        Instant start = Instant.now();
+        long startNanos = System.nanoTime();
+        List<CollectedMetric> series = null;
+        Exception failure = null;
+        try {
+            series = scraper.scrapeTarget(target.url);
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            timeout.cancel(false);
+            permits.release();
+        }
+        Thread.interrupted();
+        long durationNanos = System.nanoTime() - startNanos;
+
+        boolean wasUp = target.up;
+        var report = new ArrayList<CollectedMetric>(4);
+        if (series != null) {
+            buffer.addAll(series);
+            target.lastSeries = SeriesIdentities.of(series);
+            target.lastSamples = series.size();
+            target.up = true;
+        } else {
+            boolean isTimeout = timedOut.get() || failure instanceof HttpTimeoutException;
+            if (isTimeout) {
+                target.timeouts++;
+            }
+            target.failures++;
+            target.lastSamples = 0;
+            target.up = false;
+            log.warn("Failed to scrape metrics from {}: {}", target.url,
+                isTimeout ? "timed out after " + properties.getReadTimeoutMs() + " ms" : failure.getMessage());
+            if (wasUp) {
+                report.ensureCapacity(target.lastSeries.size() + 4);
+                target.lastSeries.markStale(start, report);
+            }
+            target.lastSeries = SeriesIdentities.NONE;
+        }
+        target.scrapes++;
+        target.lastScrape = start;
+        target.lastDuration = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+
+        report.add(scraper.targetMetric(target.url, start, "up", "gauge", target.up ? 1 : 0));
+        report.add(scraper.targetMetric(target.url, start, "scrape_duration_seconds", "gauge", durationNanos / 1e9));
+        report.add(scraper.targetMetric(target.url, start, "scrape_samples_scraped", "gauge", target.lastSamples));
+        report.add(scraper.targetMetric(target.url, start, "scrape_timeouts_total", "counter", target.timeouts));
+        buffer.addAll(report);
+        log.debug("Scraped {} metrics from {} in {} ms", target.lastSamples, target.url, target.lastDuration);
+        target.running.set(false);
+    }
+}
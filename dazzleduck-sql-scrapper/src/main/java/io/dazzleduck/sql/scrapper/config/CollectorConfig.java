@@ -29,6 +29,7 @@ import java.util.Map;
  *     server-url = "http://localhost:8081/ingest"
  *     path = "scraped_metrics"
  *     scrape-interval-ms = 15000
+ *     max-concurrent-scrapes = 256
  *
  *     tailing {
  *         flush-threshold = 100
@@ -212,6 +213,13 @@ public class CollectorConfig {
         return getInt("scrape-interval-ms", 15000);
     }
 
+    /**
+     * Get the maximum number of targets scraped at the same time.
+     */
+    public int getMaxConcurrentScrapes() {
+        return getInt("max-concurrent-scrapes", 256);
+    }
+
     /**
      * Get flush threshold (tailing mode).
      */
@@ -345,6 +353,7 @@ public class CollectorConfig {
         props.setBaseUrl(getBaseUrl());
         props.setPath(getPath());
         props.setScrapeIntervalMs(getScrapeIntervalMs());
+        props.setMaxConcurrentScrapes(getMaxConcurrentScrapes());
         props.setFlushThreshold(getFlushThreshold());
         props.setFlushIntervalMs(getFlushIntervalMs());
         props.setMaxBufferSize(getMaxBufferSize());
@@ -453,6 +462,7 @@ public class CollectorConfig {
                 ", serverUrl='" + getServerUrl() + '\'' +
                 ", path='" + getPath() + '\'' +
                 ", scrapeIntervalMs=" + getScrapeIntervalMs() +
+                ", maxConcurrentScrapes=" + getMaxConcurrentScrapes() +
                 ", flushThreshold=" + getFlushThreshold() +
                 ", flushIntervalMs=" + getFlushIntervalMs() +
                 ", maxBufferSize=" + getMaxBufferSize() +
@@ -2,8 +2,13 @@ package io.dazzleduck.sql.scrapper;
 
 import org.junit.jupiter.api.*;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -136,6 +141,103 @@ class MetricsBufferTest {
         assertEquals(2000, buffer.getSize());
     }
 
+    @Test
+    @DisplayName("Should count dropped metrics")
+    void countsDropped() {
+        buffer = new MetricsBuffer(3);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.add(createMetric("metric_" + i, i));
+        }
+
+        assertEquals(3, buffer.getSize());
+        assertEquals(7, buffer.getDroppedCount());
+        assertEquals(List.of("metric_7", "metric_8", "metric_9"),
+            buffer.drain().stream().map(CollectedMetric::name).toList());
+    }
+
+    @Test
+    @DisplayName("Should drain columns into a sink in order")
+    void drainToSink() {
+        CollectedMetric metric = new CollectedMetric(Instant.ofEpochMilli(1_700_000_000_000L), "histogram_sum",
+            "histogram", Map.of("k", "v"), 5.0, 1.0, 3.0, 2.0);
+        buffer.add(metric);
+        buffer.add(createMetric("second", 2.0));
+
+        List<String> seen = new ArrayList<>();
+        int drained = buffer.drainTo((timestampMs, name, type, tags, value, min, max, mean) -> {
+            seen.add(name);
+            if (name.equals("histogram_sum")) {
+                assertEquals(1_700_000_000_000L, timestampMs);
+                assertEquals("histogram", type);
+                assertEquals(Map.of("k", "v"), tags);
+                assertEquals(5.0, value);
+                assertEquals(1.0, min);
+                assertEquals(3.0, max);
+                assertEquals(2.0, mean);
+            }
+        });
+
+        assertEquals(2, drained);
+        assertEquals(List.of("histogram_sum", "second"), seen);
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should keep the rest of the metrics when the sink fails")
+    void drainToFailingSink() {
+        buffer.add(createMetric("metric_1", 1.0));
+        buffer.add(createMetric("metric_2", 2.0));
+        buffer.add(createMetric("metric_3", 3.0));
+
+        assertThrows(IllegalStateException.class, () -> buffer.drainTo((timestampMs, name, type, tags, value,
+                                                                         min, max, mean) -> {
+            if (name.equals("metric_2")) {
+                throw new IllegalStateException("closed");
+            }
+        }));
+
+        assertEquals(List.of("metric_3"), buffer.drain().stream().map(CollectedMetric::name).toList());
+    }
+
+    @Test
+    @DisplayName("Should stay bounded under concurrent adds and drains")
+    void concurrentAddsAndDrains() throws InterruptedException {
+        buffer = new MetricsBuffer(64);
+        int producers = 4;
+        int perProducer = 20_000;
+        AtomicLong drained = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger maxSize = new AtomicInteger();
+
+        Thread consumer = new Thread(() -> {
+            while (!done.get() || !buffer.isEmpty()) {
+                maxSize.accumulateAndGet(buffer.getSize(), Math::max);
+                drained.addAndGet(buffer.drainTo((timestampMs, name, type, tags, value, min, max, mean) -> { }));
+            }
+        });
+        consumer.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    buffer.add(createMetric("metric", i));
+                }
+            });
+            threads.add(producer);
+            producer.start();
+        }
+        for (Thread producer : threads) {
+            producer.join();
+        }
+        done.set(true);
+        consumer.join();
+
+        assertTrue(maxSize.get() <= 64);
+        assertEquals((long) producers * perProducer, drained.get() + buffer.getDroppedCount());
+    }
+
     private CollectedMetric createMetric(String name, double value) {
         return new CollectedMetric(
             name,
@@ -102,6 +102,40 @@ class MetricsForwarderTest {
         }
     }
 
+    @Test
+    @DisplayName("Should queue metrics straight from the buffer")
+    void sendMetrics_FromBuffer() {
+        MetricsForwarder forwarder = new MetricsForwarder(properties);
+        try {
+            MetricsBuffer buffer = new MetricsBuffer(100);
+            buffer.add(createMetric("m1", 1.0));
+            buffer.add(createMetric("m2", Double.NaN));
+            buffer.add(createMetric("m3", 3.0));
+
+            assertTrue(forwarder.sendMetrics(buffer));
+            assertTrue(buffer.isEmpty());
+            assertEquals(3, forwarder.getMetricsSentCount());
+            assertEquals(0, forwarder.getMetricsDroppedCount());
+        } finally {
+            forwarder.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should leave the rest of the buffer when queuing fails")
+    void sendMetrics_FromBufferAfterClose() {
+        MetricsForwarder forwarder = new MetricsForwarder(properties);
+        forwarder.close();
+
+        MetricsBuffer buffer = new MetricsBuffer(100);
+        buffer.add(createMetric("m1", 1.0));
+        buffer.add(createMetric("m2", 2.0));
+
+        assertFalse(forwarder.sendMetrics(buffer));
+        assertEquals(1, buffer.getSize());
+        assertEquals(1, forwarder.getMetricsDroppedCount());
+    }
+
     @Test
     @DisplayName("Should have correct Arrow schema matching ArrowMetricSchema")
     void getArrowSchema_HasCorrectFields() {
@@ -4,7 +4,14 @@ import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.*;
 
+import okio.Buffer;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -330,4 +337,175 @@ class MetricsScraperTest {
         assertEquals(1, count);
         assertEquals(1, buffer.getSize());
     }
+
+    @Test
+    @DisplayName("Should parse OpenMetrics with exemplars, created samples and EOF")
+    void scrapeTarget_OpenMetrics() throws Exception {
+        String openMetricsData = """
+            # TYPE http_requests counter
+            # HELP http_requests Total HTTP requests
+            http_requests_total{method="GET"} 1027 # {trace_id="abc123"} 1 1700000000.000
+            http_requests_created{method="GET"} 1700000000.123
+            # EOF
+            after_eof 1
+            """;
+        targetServer.enqueue(new MockResponse().setBody(openMetricsData).setResponseCode(200)
+            .setHeader("Content-Type", "application/openmetrics-text; version=1.0.0; charset=utf-8"));
+
+        List<CollectedMetric> metrics = scraper.scrapeTarget(targetServer.url("/actuator/prometheus").toString());
+
+        assertEquals(1, metrics.size());
+        assertEquals("http_requests_total", metrics.get(0).name());
+        assertEquals("counter", metrics.get(0).type());
+        assertEquals(1027.0, metrics.get(0).value());
+        assertEquals("GET", metrics.get(0).tags().get("method"));
+    }
+
+    @Test
+    @DisplayName("Should unescape label values")
+    void scrapeTarget_EscapedLabels() throws Exception {
+        String prometheusData = """
+            msg_count{text="say \\"hi\\"",path="C:\\\\tmp",multi="a\\nb", spaced = "x" ,} 3
+            """;
+        targetServer.enqueue(new MockResponse().setBody(prometheusData).setResponseCode(200));
+
+        List<CollectedMetric> metrics = scraper.scrapeTarget(targetServer.url("/actuator/prometheus").toString());
+
+        assertEquals(1, metrics.size());
+        assertEquals("say \"hi\"", metrics.get(0).tags().get("text"));
+        assertEquals("C:\\tmp", metrics.get(0).tags().get("path"));
+        assertEquals("a\nb", metrics.get(0).tags().get("multi"));
+        assertEquals("x", metrics.get(0).tags().get("spaced"));
+    }
+
+    @Test
+    @DisplayName("Should parse bodies larger than the read buffer")
+    void scrapeTarget_LargeBody() throws Exception {
+        StringBuilder prometheusData = new StringBuilder("# TYPE big_gauge gauge\n");
+        for (int i = 0; i < 20_000; i++) {
+            prometheusData.append("big_gauge{pod=\"pod-").append(i).append("\",namespace=\"default\"} ")
+                .append(i).append(".25\n");
+        }
+        targetServer.enqueue(new MockResponse().setBody(prometheusData.toString()).setResponseCode(200));
+
+        List<CollectedMetric> metrics = scraper.scrapeTarget(targetServer.url("/actuator/prometheus").toString());
+
+        assertEquals(20_000, metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            assertEquals("pod-" + i, metrics.get(i).tags().get("pod"));
+            assertEquals(i + 0.25, metrics.get(i).value());
+        }
+        assertSame(metrics.get(0).tags().get("namespace"), metrics.get(19_999).tags().get("namespace"));
+    }
+
+    @Test
+    @DisplayName("Should parse the Prometheus protobuf format")
+    void scrapeTarget_Protobuf() throws Exception {
+        var body = new ByteArrayOutputStream();
+        delimited(body, message(
+            string(1, "jobs_running"),
+            varint(3, 1),
+            message(4, message(label("queue", "default"), message(2, fixed64(1, 7))))));
+        delimited(body, message(
+            string(1, "rpc_seconds"),
+            varint(3, 4),
+            message(4, message(
+                label("method", "get"),
+                message(7, message(
+                    varint(1, 4),
+                    fixed64(2, 2.0),
+                    message(3, message(varint(1, 3), fixed64(2, 0.5))),
+                    message(3, message(varint(1, 4), fixed64(2, 1.0)))))))));
+        targetServer.enqueue(new MockResponse().setBody(new Buffer().write(body.toByteArray())).setResponseCode(200)
+            .setHeader("Content-Type",
+                "application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; encoding=delimited"));
+
+        List<CollectedMetric> metrics = scraper.scrapeTarget(targetServer.url("/actuator/prometheus").toString());
+
+        assertEquals(6, metrics.size());
+        assertEquals("jobs_running", metrics.get(0).name());
+        assertEquals("gauge", metrics.get(0).type());
+        assertEquals(7.0, metrics.get(0).value());
+        assertEquals("default", metrics.get(0).tags().get("queue"));
+
+        List<String> buckets = metrics.stream()
+            .filter(m -> m.name().equals("rpc_seconds_bucket"))
+            .map(m -> m.tags().get("le") + "=" + m.value())
+            .toList();
+        assertEquals(List.of("0.5=3.0", "1=4.0", "+Inf=4.0"), buckets);
+        CollectedMetric sum = metrics.get(4);
+        assertEquals("rpc_seconds_sum", sum.name());
+        assertEquals(2.0, sum.value());
+        assertEquals("get", sum.tags().get("method"));
+        assertEquals("rpc_seconds_count", metrics.get(5).name());
+        for (CollectedMetric m : metrics.subList(1, 6)) {
+            assertEquals("histogram", m.type());
+            assertEquals(0.5, m.mean());
+        }
+    }
+
+    // Protobuf wire encoding of the test families
+
+    private static void delimited(ByteArrayOutputStream out, byte[] message) {
+        writeVarint(out, message.length);
+        out.writeBytes(message);
+    }
+
+    private static byte[] message(byte[]... fields) {
+        var out = new ByteArrayOutputStream();
+        for (byte[] field : fields) {
+            out.writeBytes(field);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] message(int field, byte[] message) {
+        var out = new ByteArrayOutputStream();
+        writeVarint(out, field << 3 | 2);
+        delimited(out, message);
+        return out.toByteArray();
+    }
+
+    private static byte[] label(String name, String value) {
+        return message(1, message(string(1, name), string(2, value)));
+    }
+
+    private static byte[] string(int field, String value) {
+        return message(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] varint(int field, long value) {
+        var out = new ByteArrayOutputStream();
+        writeVarint(out, field << 3);
+        writeVarint(out, value);
+        return out.toByteArray();
+    }
+
+    private static byte[] fixed64(int field, double value) {
+        var out = new ByteArrayOutputStream();
+        writeVarint(out, field << 3 | 1);
+        out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(value).array());
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    @Test
+    @DisplayName("Should tag collector samples without a source")
+    void collectorMetric_TaggedWithCollector() {
+        CollectedMetric metric = scraper.collectorMetric(Instant.EPOCH, "scrape_buffer_dropped_total",
+            "counter", 3);
+
+        assertEquals("scrape_buffer_dropped_total", metric.name());
+        assertEquals("counter", metric.type());
+        assertEquals(3.0, metric.value());
+        assertEquals("test-collector", metric.tags().get("collector_id"));
+        assertFalse(metric.tags().containsKey("source_url"));
+    }
 }
@@ -0,0 +1,136 @@
+package io.dazzleduck.sql.scrapper;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ScrapeScheduler - per-target scrape schedules.
+ */
+class ScrapeSchedulerTest {
+
+    private MockWebServer targetServer;
+    private CollectorProperties properties;
+    private MetricsBuffer buffer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        targetServer = new MockWebServer();
+        targetServer.start();
+
+        properties = new CollectorProperties();
+        properties.setTargets(List.of(targetServer.url("/metrics").toString()));
+        properties.setScrapeIntervalMs(60_000);
+        properties.setConnectionTimeoutMs(500);
+        properties.setReadTimeoutMs(500);
+        buffer = new MetricsBuffer(10_000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        targetServer.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should add the target series after its samples")
+    void addsTargetSeries() throws Exception {
+        targetServer.enqueue(new MockResponse().setBody("a 1\nb 2\n").setResponseCode(200));
+
+        ScrapeScheduler scheduler = start();
+        awaitScrapes(scheduler, 1);
+        scheduler.stop();
+
+        List<CollectedMetric> metrics = buffer.drain();
+        assertEquals(List.of("a", "b", "up", "scrape_duration_seconds", "scrape_samples_scraped",
+            "scrape_timeouts_total"), metrics.stream().map(CollectedMetric::name).toList());
+        assertEquals(1.0, value(metrics, "up"));
+        assertEquals(2.0, value(metrics, "scrape_samples_scraped"));
+        assertEquals(0.0, value(metrics, "scrape_timeouts_total"));
+        assertEquals(targetServer.url("/metrics").toString(), metrics.get(2).tags().get("source_url"));
+
+        ScrapeScheduler.TargetStatus status = scheduler.getTargetStatuses().get(0);
+        assertTrue(status.up());
+        assertEquals(2, status.lastSamples());
+        assertEquals(0, status.failures());
+    }
+
+    @Test
+    @DisplayName("Should time out a slow target and mark its series stale")
+    void timesOutAndMarksStale() throws Exception {
+        properties.setScrapeIntervalMs(100);
+        properties.setReadTimeoutMs(200);
+        targetServer.enqueue(new MockResponse().setBody("a 1\n").setResponseCode(200));
+        targetServer.enqueue(new MockResponse().setBody("a 2\n").setResponseCode(200)
+            .setBodyDelay(2, TimeUnit.SECONDS));
+
+        ScrapeScheduler scheduler = start();
+        awaitCondition(() -> scheduler.getTargetStatuses().get(0).timeouts() > 0);
+        scheduler.stop();
+
+        ScrapeScheduler.TargetStatus status = scheduler.getTargetStatuses().get(0);
+        assertFalse(status.up());
+        assertTrue(status.timeouts() >= 1);
+
+        List<CollectedMetric> metrics = buffer.drain();
+        List<Double> values = metrics.stream().filter(m -> m.name().equals("a")).map(CollectedMetric::value).toList();
+        assertEquals(2, values.size());
+        assertEquals(1.0, values.get(0));
+        assertTrue(values.get(1).isNaN(), "The series should be marked stale");
+        List<Map<String, String>> tags = metrics.stream().filter(m -> m.name().equals("a")).map(CollectedMetric::tags).toList();
+        assertEquals(tags.get(0), tags.get(1), "The stale marker should be of the same series");
+        assertEquals(0.0, metrics.stream().filter(m -> m.name().equals("up")).reduce((x, y) -> y).orElseThrow().value());
+    }
+
+    @Test
+    @DisplayName("Should skip a round while the previous scrape runs")
+    void skipsOverlappingScrapes() throws Exception {
+        properties.setScrapeIntervalMs(20);
+        properties.setReadTimeoutMs(5_000);
+        targetServer.enqueue(new MockResponse().setBody("a 1\n").setResponseCode(200)
+            .setBodyDelay(300, TimeUnit.MILLISECONDS));
+
+        ScrapeScheduler scheduler = start();
+        awaitCondition(() -> scheduler.getTargetStatuses().get(0).skipped() > 0);
+        scheduler.stop();
+    }
+
+    @Test
+    @DisplayName("Should spread targets over the interval")
+    void initialDelayWithinNextInterval() {
+        for (int i = 0; i < 1000; i++) {
+            long delay = ScrapeScheduler.initialDelay("http://host-" + i + ":9100/metrics", 15_000);
+            assertTrue(delay >= 15_000 && delay < 30_000, "Delay out of range: " + delay);
+        }
+        assertEquals(ScrapeScheduler.initialDelay("http://a/metrics", 15_000),
+            ScrapeScheduler.initialDelay("http://a/metrics", 15_000));
+    }
+
+    private ScrapeScheduler start() {
+        ScrapeScheduler scheduler = new ScrapeScheduler(properties, new MetricsScraper(properties, buffer), buffer);
+        scheduler.start();
+        return scheduler;
+    }
+
+    private static void awaitScrapes(ScrapeScheduler scheduler, int scrapes) throws InterruptedException {
+        awaitCondition(() -> scheduler.getTargetStatuses().get(0).scrapes() >= scrapes);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static double value(List<CollectedMetric> metrics, String name) {
+        return metrics.stream().filter(m -> m.name().equals(name)).findFirst().orElseThrow().value();
+    }
+}